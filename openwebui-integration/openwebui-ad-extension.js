@@ -1,6 +1,19 @@
 // OpenWebUI Ad Relevance Extension
 // This extension integrates the Conversational Ad Relevance Engine with OpenWebUI
 
+// Creative templates by the templateId of compact ad cards; the server sends only the fields
+const escapeAdText = (value) => String(value ?? '').replace(/[&<>"']/g, (c) => ({
+    '&': '&amp;', '<': '&lt;', '>': '&gt;', '"': '&quot;', "'": '&#39;'
+}[c]));
+
+const AD_TEMPLATES = {
+    'sponsored-link': (ad) => `
+            <span class="sponsored-pill">Sponsored</span>
+            <a class="sponsored-link-inline" href="${escapeAdText(ad.url)}" target="_blank" rel="noopener noreferrer">${escapeAdText(ad.title || 'Learn more')}</a>
+        `
+};
+const DEFAULT_AD_TEMPLATE = 'sponsored-link';
+
 class OpenWebUIAdExtension {
     constructor() {
         this.adEngineUrl = 'http://localhost:8080/api/chatgpt/process-message';
@@ -9,12 +22,20 @@ class OpenWebUIAdExtension {
         this.sessionId = null;
         this.userId = 'openwebui_user';
         this.processingMessages = new Set(); // Track messages being processed
+        // Push channel: message events go up, ad suggestions come back as they are ready
+        this.pushUrl = 'ws://localhost:8080/ws/ads';
+        this.socket = null;
+        this.reconnectDelay = 1000;
+        this.pendingAds = new Map(); // message key -> assistant element awaiting its ad
+        this.sentMessageKeys = new Set(); // keys already submitted, so rescans don't resend
+        this.maxOverloadRetries = 3; // resends of one message the server turned away as overloaded
         
         this.init();
     }
 
     init() {
         console.log('🚀 OpenWebUI Ad Relevance Extension initialized');
+        this.connectPushChannel();
         this.setupMessageObserver();
         // Immediate scan for existing assistant messages
         this.scanForAssistantMessages();
@@ -23,6 +44,79 @@ class OpenWebUIAdExtension {
         this.setupUI();
     }
 
+    connectPushChannel() {
+        if (typeof WebSocket === 'undefined') return;
+        let socket;
+        try {
+            socket = new WebSocket(this.pushUrl);
+        } catch (error) {
+            console.warn('[Ads] Push channel unavailable, using HTTP:', error);
+            return;
+        }
+
+        socket.onopen = () => {
+            this.socket = socket;
+            this.reconnectDelay = 1000;
+        };
+        socket.onmessage = (event) => this.handlePushedEvent(event.data);
+        socket.onclose = () => {
+            if (this.socket === socket) this.socket = null;
+            // Anything still waiting on this socket is retried over HTTP
+            const stranded = Array.from(this.pendingAds.entries());
+            this.pendingAds.clear();
+            stranded.forEach(([, pending]) => this.requestAdOverHttp(pending.element, pending.context));
+            setTimeout(() => this.connectPushChannel(), this.reconnectDelay);
+            this.reconnectDelay = Math.min(this.reconnectDelay * 2, 30000);
+        };
+    }
+
+    handlePushedEvent(data) {
+        let event;
+        try {
+            event = JSON.parse(data);
+        } catch (error) {
+            return;
+        }
+        const pending = this.pendingAds.get(event.id);
+        if (event.type === 'error' && pending && event.retryAfterSeconds != null
+            && pending.attempts < this.maxOverloadRetries) {
+            // Overloaded: keep the message pending and send it again when the server says to
+            pending.attempts += 1;
+            setTimeout(() => this.resendPending(event.id), event.retryAfterSeconds * 1000);
+            return;
+        }
+        this.pendingAds.delete(event.id);
+        if (event.type === 'error') {
+            console.warn('[Ads] Ad request failed:', event.error);
+            return;
+        }
+        if (pending && event.adSuggestion) {
+            this.displayAdSuggestion(pending.element, { adSuggestion: event.adSuggestion });
+        }
+    }
+
+    resendPending(key) {
+        const pending = this.pendingAds.get(key);
+        if (!pending) return; // the socket closed meanwhile and the message went over HTTP
+        if (this.socket && this.socket.readyState === WebSocket.OPEN) {
+            this.socket.send(JSON.stringify(pending.frame));
+            return;
+        }
+        this.pendingAds.delete(key);
+        this.requestAdOverHttp(pending.element, pending.context);
+    }
+
+    messageKey(conversationId, position, message) {
+        // Small stable hash of the user message and its place in the conversation, so a
+        // rescan maps to the same key while a repeated "yes" later on gets a new one
+        let hash = 5381;
+        const text = `${conversationId}\n${position}\n${message}`;
+        for (let i = 0; i < text.length; i += 1) {
+            hash = ((hash * 33) ^ text.charCodeAt(i)) >>> 0;
+        }
+        return `${hash.toString(36)}_${text.length}`;
+    }
+
     setupMessageObserver() {
         // Observe for new messages in the chat
         const observer = new MutationObserver((mutations) => {
@@ -87,8 +181,34 @@ class OpenWebUIAdExtension {
 
         // Get the conversation context
         const conversationContext = this.getConversationContext();
-        if (!conversationContext) return;
+        if (!conversationContext || !conversationContext.lastUserMessage) return;
+
+        // Several matched elements or a rescan can map to the same user message; submit it once
+        const key = this.messageKey(conversationContext.conversationId,
+            conversationContext.lastUserPosition, conversationContext.lastUserMessage);
+        if (this.sentMessageKeys.has(key)) return;
+        this.sentMessageKeys.add(key);
+        if (this.sentMessageKeys.size > 500) {
+            this.sentMessageKeys.delete(this.sentMessageKeys.values().next().value);
+        }
+
+        if (this.socket && this.socket.readyState === WebSocket.OPEN) {
+            const frame = {
+                id: key,
+                conversationId: conversationContext.conversationId,
+                userId: conversationContext.userId,
+                message: conversationContext.lastUserMessage,
+                format: 'compact'
+            };
+            this.pendingAds.set(key, { element: messageElement, context: conversationContext, frame, attempts: 0 });
+            this.socket.send(JSON.stringify(frame));
+            return;
+        }
 
+        await this.requestAdOverHttp(messageElement, conversationContext);
+    }
+
+    async requestAdOverHttp(messageElement, conversationContext) {
         try {
             // Call our ad relevance engine
             const adSuggestion = await this.getAdSuggestion(conversationContext);
@@ -166,20 +286,19 @@ class OpenWebUIAdExtension {
         const messages = [];
         const messageElements = document.querySelectorAll('[data-message-role="assistant"], [data-message-role="user"], [data-testid="message"], article, li, .message, [class*="message"]');
         
+        const allMessages = Array.from(messageElements);
+        // How many user messages the page holds; the last one's position tells repeats apart
+        const lastUserPosition = allMessages
+            .filter(element => this.isUserMessage(element) && element.textContent?.trim()).length;
+
         // Get the last few messages for context
-        const recentMessages = Array.from(messageElements).slice(-6);
+        const recentMessages = allMessages.slice(-6);
         
         recentMessages.forEach(element => {
-            const roleAttr = element.getAttribute('data-message-role');
-            const isUser = (roleAttr === 'user') ||
-                           (element.hasAttribute('data-testid') && element.getAttribute('data-testid').includes('user')) ||
-                           element.classList.contains('user-message') ||
-                           element.classList.contains('user');
-            
             const content = element.textContent?.trim();
             if (content) {
                 messages.push({
-                    role: isUser ? 'user' : 'assistant',
+                    role: this.isUserMessage(element) ? 'user' : 'assistant',
                     content: content
                 });
             }
@@ -194,17 +313,30 @@ class OpenWebUIAdExtension {
         return {
             messages: messages,
             lastUserMessage,
+            lastUserPosition,
             conversationId: this.getConversationId(),
             userId: this.userId
         };
     }
 
+    isUserMessage(element) {
+        const roleAttr = element.getAttribute('data-message-role');
+        return (roleAttr === 'user') ||
+               (element.hasAttribute('data-testid') && element.getAttribute('data-testid').includes('user')) ||
+               element.classList.contains('user-message') ||
+               element.classList.contains('user');
+    }
+
     getConversationId() {
         // Try to extract conversation ID from URL or page elements
         const urlParams = new URLSearchParams(window.location.search);
+        if (!this.fallbackConversationId) {
+            // One id per page, so repeated lookups describe the same conversation
+            this.fallbackConversationId = `conv_${Date.now()}_${Math.random().toString(36).substr(2, 9)}`;
+        }
         return urlParams.get('id') || 
                document.querySelector('[data-conversation-id]')?.getAttribute('data-conversation-id') ||
-               `conv_${Date.now()}_${Math.random().toString(36).substr(2, 9)}`;
+               this.fallbackConversationId;
     }
 
     async getAdSuggestion(context) {
@@ -219,7 +351,10 @@ class OpenWebUIAdExtension {
             return { adSuggestion: null };
         }
 
-        const response = await fetch(this.adEngineUrl, {
+        // Compact cards carry the ad's fields; the creative is rendered from AD_TEMPLATES
+        const url = new URL(this.adEngineUrl);
+        url.searchParams.set('format', 'compact');
+        const response = await fetch(url, {
             method: 'POST',
             headers: {
                 'Content-Type': 'application/json',
@@ -249,37 +384,22 @@ class OpenWebUIAdExtension {
             return; // do not render any ad banner
         }
 
-        // Build a compact one-line inline ad from either server HTML or fields
-        let url = '';
-        let text = '';
-        if (sug.response) {
-            const responseText = sug.response;
-            const hrefMatch = responseText.match(/<a[^>]+href="([^"]+)"[^>]*>([\s\S]*?)<\/a>/i);
+        // Compact cards carry url and title; older full responses only have them in the server HTML
+        let card = sug.ad || {};
+        if (!card.url && sug.response) {
+            const hrefMatch = sug.response.match(/<a[^>]+href="([^"]+)"[^>]*>([\s\S]*?)<\/a>/i);
             if (hrefMatch) {
-                url = hrefMatch[1];
-                text = (hrefMatch[2] || '').replace(/<[^>]+>/g, '').trim();
+                card = { ...card, url: hrefMatch[1], title: (hrefMatch[2] || '').replace(/<[^>]+>/g, '').trim() };
             }
         }
 
-        if (!url) {
-            // Try to use structured fields if available
-            const ad = sug.ad || {};
-            if (ad.url && ad.title) {
-                url = ad.url;
-                text = ad.title;
-            }
-        }
-
-        if (!url || !/^https?:\/\//i.test(url)) return; // nothing to render
-        if (!text) text = 'Learn more';
+        if (!card.url || !/^https?:\/\//i.test(card.url)) return; // nothing to render
 
-        // Render a single-line inline ad with a Sponsored pill and clickable link
+        // Render a single-line inline ad from the locally held template
+        const template = AD_TEMPLATES[card.templateId] || AD_TEMPLATES[DEFAULT_AD_TEMPLATE];
         const inline = document.createElement('div');
         inline.className = 'openwebui-inline-ad';
-        inline.innerHTML = `
-            <span class="sponsored-pill">Sponsored</span>
-            <a class="sponsored-link-inline" href="${url}" target="_blank" rel="noopener noreferrer">${text}</a>
-        `;
+        inline.innerHTML = template(card);
         this.addAdBannerStyles();
         messageElement.appendChild(inline);
         return;
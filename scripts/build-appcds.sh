@@ -0,0 +1,41 @@
+#!/usr/bin/env bash
+# Builds an AppCDS archive of the classes loaded while starting up and warming up, so
+# later starts map them from the archive instead of loading and verifying them again.
+# CDS only archives classes from jars, so the classes are packaged into target/cds/app.jar
+# with the runtime dependencies next to it in target/cds/lib.
+#
+# Usage: scripts/build-appcds.sh [spring|standalone]
+#   JAVA_OPTS="-Xmx256m"  extra JVM flags for the training run
+# Then start with the flags the script prints; the classpath must stay exactly the same.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+MODE=${1:-spring}
+JAVA_OPTS=${JAVA_OPTS:-}
+OUT=target/cds
+
+case "$MODE" in
+    spring)
+        MAIN=com.adrelevance.api.AdRelevanceApplication
+        TRAINING_ARGS=(--server.port=0 --adrelevance.warmup.exit=true) ;;
+    standalone)
+        MAIN=com.adrelevance.api.StandaloneAdRelevanceServer
+        TRAINING_ARGS=(--port=0 --exit-after-warmup=true) ;;
+    *)
+        echo "Unknown mode $MODE; expected spring or standalone" >&2
+        exit 2 ;;
+esac
+
+rm -rf "$OUT"
+mkdir -p "$OUT"
+mvn -B -q compile dependency:copy-dependencies -DincludeScope=runtime -DoutputDirectory="$OUT/lib"
+jar --create --file "$OUT/app.jar" -C target/classes .
+echo "-cp $OUT/app.jar:$(find "$OUT/lib" -name '*.jar' | sort | paste -sd:)" > "$OUT/classpath.args"
+
+# Training run: starts, replays the warm-up corpus, exits and writes the archive
+# shellcheck disable=SC2086
+java $JAVA_OPTS -XX:ArchiveClassesAtExit="$OUT/$MODE.jsa" @"$OUT/classpath.args" "$MAIN" "${TRAINING_ARGS[@]}" \
+    > "$OUT/training-$MODE.log" 2>&1
+
+echo "Wrote $OUT/$MODE.jsa ($(du -h "$OUT/$MODE.jsa" | cut -f1)); start with:"
+echo "  java -XX:SharedArchiveFile=$OUT/$MODE.jsa @$OUT/classpath.args $MAIN"
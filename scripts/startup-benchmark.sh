@@ -0,0 +1,64 @@
+#!/usr/bin/env bash
+# Compares time-to-first-healthy-response and resident memory of the Spring Boot
+# application and the standalone JDK HttpServer mode.
+#
+# Usage: scripts/startup-benchmark.sh [runs]
+#   PORT=18080            port both modes listen on
+#   JAVA_OPTS="-Xmx256m"  extra JVM flags for both modes
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+PORT=${PORT:-18080}
+JAVA_OPTS=${JAVA_OPTS:-}
+
+mvn -B -q compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+CP="target/classes:$(cat target/classpath.txt)"
+RESULTS=$(mktemp)
+trap 'rm -f "$RESULTS"' EXIT
+
+now_ms() {
+    date +%s%3N
+}
+
+# measure <label> <main class> [args...]: one line "<label> <startup ms> <rss kB>" per run
+measure() {
+    local label=$1
+    shift
+    for run in $(seq "$RUNS"); do
+        local start pid ready rss
+        start=$(now_ms)
+        # shellcheck disable=SC2086
+        java $JAVA_OPTS -cp "$CP" "$@" > "target/startup-$label.log" 2>&1 &
+        pid=$!
+        until curl -sf "http://localhost:$PORT/api/health" > /dev/null; do
+            if ! kill -0 "$pid" 2> /dev/null; then
+                echo "$label exited during startup, see target/startup-$label.log" >&2
+                exit 1
+            fi
+            sleep 0.01
+        done
+        ready=$(( $(now_ms) - start ))
+        # One real request, so the footprint includes a warmed request path
+        curl -sf -X POST "http://localhost:$PORT/api/process-message" \
+            -H 'Content-Type: application/json' \
+            -d '{"conversationId":"bench","userId":"bench","message":"I need new running shoes"}' > /dev/null
+        rss=$(ps -o rss= -p "$pid" | tr -d ' ')
+        kill "$pid"
+        wait "$pid" 2> /dev/null || true
+        echo "$label $ready $rss" | tee -a "$RESULTS"
+    done
+}
+
+# Warm-up off: this compares the frameworks' own startup; scripts/time-to-peak.sh covers warm-up
+measure spring com.adrelevance.api.AdRelevanceApplication --server.port="$PORT" --adrelevance.warmup.enabled=false
+measure standalone com.adrelevance.api.StandaloneAdRelevanceServer --port="$PORT" --warmup-messages=0
+
+echo
+printf '%-12s %14s %14s\n' mode "startup ms" "RSS MB"
+for label in spring standalone; do
+    startup=$(awk -v l="$label" '$1 == l { print $2 }' "$RESULTS" | sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }')
+    rss=$(awk -v l="$label" '$1 == l { print $3 }' "$RESULTS" | sort -n | awk '{ v[NR] = $1 } END { printf "%.0f", v[int((NR + 1) / 2)] / 1024 }')
+    printf '%-12s %14s %14s\n' "$label" "$startup" "$rss"
+done
+echo "(medians of $RUNS runs)"
@@ -0,0 +1,52 @@
+#!/usr/bin/env bash
+# Measures how long after launch the keyword engine API reaches steady-state throughput:
+# time until /api/health answers 200, then until /api/process-message throughput is within
+# 90% of its steady state. See TimeToPeakProbe.
+#
+# Usage: scripts/time-to-peak.sh [spring|standalone] [server args...]
+#   e.g. scripts/time-to-peak.sh spring --adrelevance.warmup.enabled=false
+#        scripts/time-to-peak.sh standalone --warmup-messages=0
+#   CDS=1                 start from the archive built by scripts/build-appcds.sh
+#   PORT=18080            port the server listens on
+#   DURATION=30           seconds of load after the server is ready
+#   CONCURRENCY=8         closed-loop client threads
+#   JAVA_OPTS="-Xmx256m"  extra JVM flags for the server
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+MODE=${1:-spring}
+shift || true
+PORT=${PORT:-18080}
+DURATION=${DURATION:-30}
+CONCURRENCY=${CONCURRENCY:-8}
+JAVA_OPTS=${JAVA_OPTS:-}
+
+case "$MODE" in
+    spring)
+        MAIN=com.adrelevance.api.AdRelevanceApplication
+        PORT_ARG=--server.port="$PORT" ;;
+    standalone)
+        MAIN=com.adrelevance.api.StandaloneAdRelevanceServer
+        PORT_ARG=--port="$PORT" ;;
+    *)
+        echo "Unknown mode $MODE; expected spring or standalone" >&2
+        exit 2 ;;
+esac
+
+mvn -B -q test-compile
+if [ "${CDS:-0}" = 1 ]; then
+    if [ ! -f "target/cds/$MODE.jsa" ]; then
+        echo "No archive at target/cds/$MODE.jsa; run scripts/build-appcds.sh $MODE first" >&2
+        exit 1
+    fi
+    CLASSPATH_ARGS=(-XX:SharedArchiveFile="target/cds/$MODE.jsa" @target/cds/classpath.args)
+else
+    mvn -B -q dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+    CLASSPATH_ARGS=(-cp "target/classes:$(cat target/classpath.txt)")
+fi
+
+: > target/time-to-peak-server.log
+# shellcheck disable=SC2086
+java -cp target/test-classes com.adrelevance.benchmark.TimeToPeakProbe \
+    --port="$PORT" --duration-s="$DURATION" --concurrency="$CONCURRENCY" -- \
+    java $JAVA_OPTS "${CLASSPATH_ARGS[@]}" "$MAIN" "$PORT_ARG" "$@"
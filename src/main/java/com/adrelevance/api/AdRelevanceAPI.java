@@ -1,23 +1,31 @@
 package com.adrelevance.api;
 
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.PreferencesRequest;
 import com.adrelevance.engine.ConversationalAdRelevanceEngine;
-import com.adrelevance.model.*;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
-import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * REST API for the Conversational Ad Relevance Engine
+ * REST API for the Conversational Ad Relevance Engine. Servlet mode only: the keyword
+ * engine answers on the request thread, which must not be an event loop.
+ * {@link StandaloneAdRelevanceServer} serves the same endpoints without Spring.
  */
-@SpringBootApplication
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = "*")
@@ -25,47 +33,53 @@ public class AdRelevanceAPI {
     
     private static final Logger logger = LoggerFactory.getLogger(AdRelevanceAPI.class);
     
-    private final ConversationalAdRelevanceEngine engine;
-    private final ObjectMapper objectMapper;
+    private final AdRelevanceOperations operations;
+    
+    // Durable state; empty directory keeps everything in memory only
+    @Value("${adrelevance.state.dir:}")
+    private String stateDir = "";
+    
+    @Value("${adrelevance.state.snapshot-interval-ms:300000}")
+    private long snapshotIntervalMs = 300000;
+    
+    @Value("${adrelevance.batch.max-items:100}")
+    private int maxBatchItems = 100;
+    
+    // Idle state spills here instead of being dropped; empty disables the cold tier
+    @Value("${adrelevance.cold-tier.dir:}")
+    private String coldTierDir = "";
+    
+    // Messages received are appended here for the load generator; empty disables recording
+    @Value("${adrelevance.trace.record-file:}")
+    private String traceRecordFile = "";
+    
+    @Autowired(required = false)
+    private ApplicationAvailability availability;
     
     public AdRelevanceAPI() {
-        this.engine = new ConversationalAdRelevanceEngine();
-        this.objectMapper = new ObjectMapper();
+        this.operations = new AdRelevanceOperations(new ConversationalAdRelevanceEngine());
+    }
+    
+    @PostConstruct
+    public void initStateStores() throws IOException {
+        operations.initStateStores(stateDir, snapshotIntervalMs, coldTierDir);
+        operations.recordTrace(traceRecordFile);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        operations.shutdown();
     }
     
     public static void main(String[] args) {
-        SpringApplication.run(AdRelevanceAPI.class, args);
+        SpringApplication.run(AdRelevanceApplication.class, args);
         logger.info("🚀 Ad Relevance API started on port 8080");
     }
     
     @PostMapping("/process-message")
-    public ResponseEntity<Map<String, Object>> processMessage(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<?> processMessage(@RequestBody MessageRequest request) {
         try {
-            String conversationId = (String) request.get("conversationId");
-            String userId = (String) request.get("userId");
-            String message = (String) request.get("message");
-            
-            logger.info("Processing message for conversation {}: {}", conversationId, message);
-            
-            // Process the message
-            AdSuggestion suggestion = engine.processMessage(conversationId, userId, message);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("conversationId", conversationId);
-            response.put("userId", userId);
-            response.put("message", message);
-            
-            if (suggestion != null && suggestion.getAd() != null) {
-                Map<String, Object> adSuggestion = new HashMap<>();
-                adSuggestion.put("ad", convertAdToMap(suggestion.getAd()));
-                adSuggestion.put("response", suggestion.getResponse());
-                adSuggestion.put("relevanceScore", suggestion.getRelevanceScore());
-                response.put("adSuggestion", adSuggestion);
-            } else {
-                response.put("adSuggestion", null);
-            }
-            
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(operations.processMessage(request));
             
         } catch (Exception e) {
             logger.error("Error processing message", e);
@@ -75,26 +89,26 @@ public class AdRelevanceAPI {
         }
     }
     
+    /**
+     * Processes an array of {conversationId, userId, message} items in one request.
+     * Different conversations run in parallel, messages within a conversation run in
+     * array order, and results come back in input order with per-item errors.
+     */
+    @PostMapping("/process-messages")
+    public ResponseEntity<?> processMessages(@RequestBody List<MessageRequest> items) {
+        try {
+            return ResponseEntity.ok(operations.processMessages(items, maxBatchItems));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
     @PostMapping("/update-preferences")
-    public ResponseEntity<Map<String, Object>> updatePreferences(@RequestBody Map<String, Object> request) {
+    public ResponseEntity<Map<String, Object>> updatePreferences(@RequestBody PreferencesRequest request) {
         try {
-            String userId = (String) request.get("userId");
-            @SuppressWarnings("unchecked")
-            List<String> interests = (List<String>) request.get("interests");
-            @SuppressWarnings("unchecked")
-            List<String> blockedCategories = (List<String>) request.get("blockedCategories");
-            
-            logger.info("Updating preferences for user {}: interests={}, blocked={}", 
-                       userId, interests, blockedCategories);
-            
-            engine.updateUserPreferences(userId, interests, blockedCategories);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("userId", userId);
-            response.put("message", "Preferences updated successfully");
-            
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(operations.updatePreferences(request));
             
         } catch (Exception e) {
             logger.error("Error updating preferences", e);
@@ -107,15 +121,7 @@ public class AdRelevanceAPI {
     @GetMapping("/stats")
     public ResponseEntity<Map<String, Object>> getStats() {
         try {
-            EngineStats stats = engine.getStats();
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("activeConversations", stats.getActiveConversations());
-            response.put("adInventorySize", stats.getAdInventorySize());
-            response.put("totalUsers", stats.getTotalUsers());
-            response.put("timestamp", System.currentTimeMillis());
-            
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok(operations.stats());
             
         } catch (Exception e) {
             logger.error("Error getting stats", e);
@@ -125,26 +131,12 @@ public class AdRelevanceAPI {
         }
     }
     
+    /**
+     * 503 until the startup warm-up has finished
+     */
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
-        Map<String, Object> response = new HashMap<>();
-        response.put("status", "healthy");
-        response.put("service", "Ad Relevance Engine API");
-        response.put("timestamp", System.currentTimeMillis());
-        response.put("version", "1.0.0");
-        return ResponseEntity.ok(response);
-    }
-    
-    private Map<String, Object> convertAdToMap(Ad ad) {
-        Map<String, Object> adMap = new HashMap<>();
-        adMap.put("id", ad.getId());
-        adMap.put("title", ad.getTitle());
-        adMap.put("description", ad.getDescription());
-        adMap.put("brandName", ad.getBrandName());
-        adMap.put("categories", ad.getCategories());
-        adMap.put("keywords", ad.getKeywords());
-        adMap.put("callToAction", ad.getCallToAction());
-        adMap.put("type", ad.getType().toString());
-        return adMap;
+        boolean ready = WarmUpRunner.isReady(availability);
+        return ChatGPTAdRelevanceAPI.healthResponse(operations.health(ready), ready);
     }
 }
@@ -0,0 +1,18 @@
+package com.adrelevance.api;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+/**
+ * Spring Boot application serving both ad relevance APIs.
+ *
+ * <p>Runs on Tomcat by default; start with {@code --spring.main.web-application-type=reactive}
+ * to serve the ChatGPT API from {@link ReactiveChatGPTAdRelevanceAPI} on Netty instead.
+ */
+@SpringBootApplication(scanBasePackages = "com.adrelevance")
+public class AdRelevanceApplication {
+
+    public static void main(String[] args) {
+        SpringApplication.run(AdRelevanceApplication.class, args);
+    }
+}
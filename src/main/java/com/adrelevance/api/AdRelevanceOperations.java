@@ -0,0 +1,169 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.BatchItemResult;
+import com.adrelevance.api.dto.BatchResponse;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.MessageResponse;
+import com.adrelevance.api.dto.PreferencesRequest;
+import com.adrelevance.engine.ConversationalAdRelevanceEngine;
+import com.adrelevance.model.AdSuggestion;
+import com.adrelevance.model.EngineStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The keyword engine's endpoints without a web framework, shared by {@link AdRelevanceAPI}
+ * and {@link StandaloneAdRelevanceServer}. Must not depend on Spring.
+ */
+public class AdRelevanceOperations {
+    private static final Logger logger = LoggerFactory.getLogger(AdRelevanceOperations.class);
+
+    // This engine returns its suggestion whatever the score
+    private static final double ANY_SCORE = Double.NEGATIVE_INFINITY;
+
+    private final ConversationalAdRelevanceEngine engine;
+    private volatile TraceRecorder traceRecorder;
+
+    public AdRelevanceOperations(ConversationalAdRelevanceEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Enables the cold tier and durable state; blank directories leave them off
+     */
+    public void initStateStores(String stateDir, long snapshotIntervalMs, String coldTierDir) throws IOException {
+        // Cold tier first, so recovered state that is already idle goes straight to it
+        if (coldTierDir != null && !coldTierDir.isBlank()) {
+            engine.enableColdTier(Path.of(coldTierDir, "conversational"));
+        }
+        if (stateDir != null && !stateDir.isBlank()) {
+            // Keep the two engines' logs apart when both APIs run in one application
+            engine.enableDurability(Path.of(stateDir, "conversational"), snapshotIntervalMs);
+        }
+    }
+
+    /**
+     * Records every message received from now on to {@code traceFile} for replay by the load
+     * generator; blank leaves recording off
+     */
+    public void recordTrace(String traceFile) throws IOException {
+        if (traceFile != null && !traceFile.isBlank()) {
+            traceRecorder = new TraceRecorder(Path.of(traceFile));
+        }
+    }
+
+    public MessageResponse processMessage(MessageRequest request) {
+        logger.info("Processing message for conversation {}: {}", request.conversationId(), request.message());
+        record(request);
+        AdSuggestion suggestion = engine.processMessage(request.conversationId(), request.userId(), request.message());
+        return MessageResponse.of(request, suggestion, ANY_SCORE, false);
+    }
+
+    /**
+     * Processes an array of {conversationId, userId, message} items in one request.
+     * Different conversations run in parallel, messages within a conversation run in
+     * array order, and results come back in input order with per-item errors.
+     *
+     * @throws IllegalArgumentException if there are more than {@code maxBatchItems} items
+     */
+    public BatchResponse processMessages(List<MessageRequest> items, int maxBatchItems) {
+        if (items.size() > maxBatchItems) {
+            throw new IllegalArgumentException("Batch of " + items.size() + " messages exceeds the limit of " + maxBatchItems);
+        }
+
+        // Submit everything first so conversations proceed in parallel
+        List<CompletableFuture<AdSuggestion>> pending = new ArrayList<>(items.size());
+        for (MessageRequest item : items) {
+            if (item.conversationId() == null || item.userId() == null || item.message() == null) {
+                pending.add(CompletableFuture.failedFuture(
+                    new IllegalArgumentException("conversationId, userId and message are required")));
+            } else {
+                record(item);
+                pending.add(engine.processMessageAsync(item.conversationId(), item.userId(), item.message()));
+            }
+        }
+
+        List<BatchItemResult> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            MessageRequest item = items.get(i);
+            try {
+                results.add(BatchItemResult.success(i, MessageResponse.of(item, pending.get(i).join(), ANY_SCORE, false)));
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                logger.warn("Batch item {} for conversation {} failed: {}", i, item.conversationId(), cause.getMessage());
+                results.add(BatchItemResult.failure(i, item, cause.getMessage()));
+            }
+        }
+        return BatchResponse.of(results);
+    }
+
+    public Map<String, Object> updatePreferences(PreferencesRequest request) {
+        String userId = request.userId();
+
+        logger.info("Updating preferences for user {}: interests={}, blocked={}",
+                   userId, request.interests(), request.blockedCategories());
+
+        engine.updateUserPreferences(userId, request.interests(), request.blockedCategories());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("userId", userId);
+        response.put("message", "Preferences updated successfully");
+        return response;
+    }
+
+    public Map<String, Object> stats() {
+        EngineStats stats = engine.getStats();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("activeConversations", stats.getActiveConversations());
+        response.put("adInventorySize", stats.getAdInventorySize());
+        response.put("totalUsers", stats.getTotalUsers());
+        response.put("evictedConversations", stats.getEvictedConversations());
+        response.put("evictedUsers", stats.getEvictedUsers());
+        response.put("coldConversations", stats.getColdConversations());
+        response.put("coldUsers", stats.getColdUsers());
+        response.put("timestamp", System.currentTimeMillis());
+        return response;
+    }
+
+    /**
+     * @param ready false while the instance is still warming up; callers answer 503 then
+     */
+    public Map<String, Object> health(boolean ready) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("status", ready ? "healthy" : "warming_up");
+        response.put("service", "Ad Relevance Engine API");
+        response.put("timestamp", System.currentTimeMillis());
+        response.put("version", "1.0.0");
+        return response;
+    }
+
+    public void shutdown() {
+        engine.shutdown();
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the trace file: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void record(MessageRequest request) {
+        TraceRecorder recorder = traceRecorder;
+        if (recorder != null) {
+            recorder.record(request.conversationId(), request.userId(), request.message());
+        }
+    }
+}
@@ -1,25 +1,39 @@
 package com.adrelevance.api;
 
+import com.adrelevance.api.dto.BatchItemResult;
+import com.adrelevance.api.dto.BatchResponse;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.MessageResponse;
+import com.adrelevance.api.dto.PreferencesRequest;
 import com.adrelevance.engine.ChatGPTEnhancedAdRelevanceEngine;
-import com.adrelevance.model.AdSuggestion;
+import com.adrelevance.engine.EngineOverloadedException;
 import com.adrelevance.model.EngineStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
-import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
- * Spring Boot REST API for ChatGPT-enhanced Conversational Ad Relevance Engine
+ * Spring Boot REST API for ChatGPT-enhanced Conversational Ad Relevance Engine.
+ * Serves servlet mode; {@link ReactiveChatGPTAdRelevanceAPI} takes over in reactive mode.
  */
-@SpringBootApplication(scanBasePackages = "com.adrelevance")
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/chatgpt")
 @CrossOrigin(origins = "*")
 public class ChatGPTAdRelevanceAPI {
@@ -28,40 +42,68 @@ public class ChatGPTAdRelevanceAPI {
     @Autowired
     private ChatGPTEnhancedAdRelevanceEngine chatGPTEngine;
     
+    @Value("${adrelevance.batch.max-items:100}")
+    private int maxBatchItems = 100;
+    
+    @Autowired(required = false)
+    private ApplicationAvailability availability;
+    
     public static void main(String[] args) {
-        SpringApplication.run(ChatGPTAdRelevanceAPI.class, args);
+        SpringApplication.run(AdRelevanceApplication.class, args);
         logger.info("🚀 ChatGPT-Enhanced Ad Relevance API started on port 8080");
     }
     
     /**
-     * Process a message using ChatGPT for intelligent ad suggestions
+     * Process a message using ChatGPT for intelligent ad suggestions.
+     * {@code format=compact} returns the ad's fields and template id instead of its HTML.
      */
     @PostMapping("/process-message")
-    public CompletableFuture<Map<String, Object>> processMessage(@RequestBody Map<String, Object> request) {
-        String conversationId = (String) request.get("conversationId");
-        String userId = (String) request.get("userId");
-        String message = (String) request.get("message");
+    public CompletableFuture<MessageResponse> processMessage(@RequestBody MessageRequest request,
+                                                             @RequestParam(name = "format", defaultValue = MessageResponse.FULL) String format) {
+        logger.info("Processing message with ChatGPT for conversation {}: {}", request.conversationId(), request.message());
+        
+        return chatGPTEngine.processMessage(request.conversationId(), request.userId(), request.message())
+            .thenApply(adSuggestion -> MessageResponse.inFormat(request, adSuggestion, 0.0, format));
+    }
+    
+    /**
+     * Process an array of {conversationId, userId, message} items in one request.
+     * Different conversations run in parallel, messages within a conversation run in
+     * array order, and results come back in input order with per-item errors.
+     */
+    @PostMapping("/process-messages")
+    public CompletableFuture<BatchResponse> processMessages(@RequestBody List<MessageRequest> items,
+                                                           @RequestParam(name = "format", defaultValue = MessageResponse.FULL) String format) {
+        if (items.size() > maxBatchItems) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Batch of " + items.size() + " messages exceeds the limit of " + maxBatchItems);
+        }
         
-        logger.info("Processing message with ChatGPT for conversation {}: {}", conversationId, message);
+        List<CompletableFuture<BatchItemResult>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            int index = i;
+            MessageRequest item = items.get(i);
+            CompletableFuture<MessageResponse> result = item.userId() == null || item.message() == null
+                ? CompletableFuture.failedFuture(new IllegalArgumentException("userId and message are required"))
+                : chatGPTEngine.processMessage(item.conversationId(), item.userId(), item.message())
+                    .thenApply(adSuggestion -> MessageResponse.inFormat(item, adSuggestion, 0.0, format));
+            results.add(result.handle((response, error) -> {
+                if (error == null) {
+                    return BatchItemResult.success(index, response);
+                }
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                logger.warn("Batch item {} for conversation {} failed: {}", index, item.conversationId(), cause.getMessage());
+                return BatchItemResult.failure(index, item, cause.getMessage());
+            }));
+        }
         
-        return chatGPTEngine.processMessage(conversationId, userId, message)
-            .thenApply(adSuggestion -> {
-                Map<String, Object> response = new HashMap<>();
-                response.put("conversationId", conversationId);
-                response.put("message", message);
-                response.put("userId", userId);
-                
-                if (adSuggestion != null && adSuggestion.getAd() != null && adSuggestion.getRelevanceScore() > 0.0) {
-                    Map<String, Object> adSuggestionMap = new HashMap<>();
-                    adSuggestionMap.put("ad", convertAdToMap(adSuggestion.getAd()));
-                    adSuggestionMap.put("response", adSuggestion.getResponse());
-                    adSuggestionMap.put("relevanceScore", adSuggestion.getRelevanceScore());
-                    response.put("adSuggestion", adSuggestionMap);
-                } else {
-                    response.put("adSuggestion", null);
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+            .thenApply(done -> {
+                List<BatchItemResult> ordered = new ArrayList<>(results.size());
+                for (CompletableFuture<BatchItemResult> result : results) {
+                    ordered.add(result.join());
                 }
-                
-                return response;
+                return BatchResponse.of(ordered);
             });
     }
     
@@ -69,15 +111,55 @@ public class ChatGPTAdRelevanceAPI {
      * Update user preferences
      */
     @PostMapping("/update-preferences")
-    public Map<String, Object> updatePreferences(@RequestBody Map<String, Object> request) {
-        String userId = (String) request.get("userId");
-        @SuppressWarnings("unchecked")
-        List<String> interests = (List<String>) request.get("interests");
-        @SuppressWarnings("unchecked")
-        List<String> blockedCategories = (List<String>) request.get("blockedCategories");
-        Boolean adPreferencesEnabled = (Boolean) request.get("adPreferencesEnabled");
+    public Map<String, Object> updatePreferences(@RequestBody PreferencesRequest request) {
+        return applyPreferences(chatGPTEngine, request);
+    }
+    
+    /**
+     * Get engine statistics
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        return statsOf(chatGPTEngine);
+    }
+    
+    /**
+     * Health check endpoint; 503 until the startup warm-up has finished
+     */
+    @GetMapping("/health")
+    public ResponseEntity<Map<String, Object>> healthCheck() {
+        boolean ready = WarmUpRunner.isReady(availability);
+        return healthResponse(health(ready), ready);
+    }
+    
+    /**
+     * Messages refused by admission control: 503 with Retry-After
+     */
+    @ExceptionHandler(EngineOverloadedException.class)
+    public ResponseEntity<Map<String, Object>> overloaded(EngineOverloadedException e) {
+        return overloadedResponse(e);
+    }
+    
+    static ResponseEntity<Map<String, Object>> overloadedResponse(EngineOverloadedException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(error);
+    }
+    
+    /**
+     * Preferences update shared by the servlet and reactive controllers
+     */
+    static Map<String, Object> applyPreferences(ChatGPTEnhancedAdRelevanceEngine chatGPTEngine, PreferencesRequest request) {
+        String userId = request.userId();
+        chatGPTEngine.updateUserPreferences(userId, request.interests(), request.blockedCategories(),
+            request.adPreferencesEnabled());
         
-        chatGPTEngine.updateUserPreferences(userId, interests, blockedCategories, adPreferencesEnabled);
+        // Optional tier flag: premium users are served first when the OpenAI quota is tight
+        if (request.premium() != null) {
+            chatGPTEngine.setUserPremium(userId, request.premium());
+        }
         
         Map<String, Object> response = new HashMap<>();
         response.put("status", "success");
@@ -87,52 +169,33 @@ public class ChatGPTAdRelevanceAPI {
         return response;
     }
     
-    /**
-     * Get engine statistics
-     */
-    @GetMapping("/stats")
-    public Map<String, Object> getStats() {
+    static Map<String, Object> statsOf(ChatGPTEnhancedAdRelevanceEngine chatGPTEngine) {
         EngineStats stats = chatGPTEngine.getStats();
         
         Map<String, Object> response = new HashMap<>();
         response.put("activeConversations", stats.getActiveConversations());
         response.put("adInventorySize", stats.getAdInventorySize());
         response.put("totalUsers", stats.getTotalUsers());
+        response.put("evictedConversations", stats.getEvictedConversations());
+        response.put("evictedUsers", stats.getEvictedUsers());
+        response.put("coldConversations", stats.getColdConversations());
+        response.put("coldUsers", stats.getColdUsers());
         response.put("timestamp", System.currentTimeMillis());
         response.put("engine", "ChatGPT-Enhanced");
+        response.put("llm", chatGPTEngine.getLlmStats());
         
         return response;
     }
     
-    /**
-     * Health check endpoint
-     */
-    @GetMapping("/health")
-    public Map<String, Object> healthCheck() {
+    static ResponseEntity<Map<String, Object>> healthResponse(Map<String, Object> body, boolean ready) {
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(body);
+    }
+    
+    static Map<String, Object> health(boolean ready) {
         Map<String, Object> response = new HashMap<>();
-        response.put("status", "healthy");
+        response.put("status", ready ? "healthy" : "warming_up");
         response.put("engine", "ChatGPT-Enhanced Ad Relevance Engine");
         response.put("timestamp", System.currentTimeMillis());
         return response;
     }
-    
-    /**
-     * Convert Ad object to Map for JSON serialization
-     */
-    private Map<String, Object> convertAdToMap(com.adrelevance.model.Ad ad) {
-        if (ad == null) {
-            return null;
-        }
-        Map<String, Object> adMap = new HashMap<>();
-        adMap.put("id", ad.getId());
-        adMap.put("title", ad.getTitle());
-        adMap.put("description", ad.getDescription());
-        adMap.put("brandName", ad.getBrandName());
-        adMap.put("categories", ad.getCategories());
-        adMap.put("keywords", ad.getKeywords());
-        adMap.put("callToAction", ad.getCallToAction());
-        adMap.put("type", ad.getType());
-        adMap.put("conversationalTemplate", ad.getConversationalTemplate());
-        return adMap;
-    }
 }
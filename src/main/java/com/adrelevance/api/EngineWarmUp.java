@@ -0,0 +1,237 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.JsonCodec;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.MessageResponse;
+import com.adrelevance.concurrent.VirtualThreads;
+import com.adrelevance.engine.ConversationalAdRelevanceEngine;
+import com.adrelevance.model.AdSuggestion;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays a synthetic conversation corpus through a throwaway keyword engine before an
+ * instance reports ready, so that context analysis, ad matching and the Jackson request and
+ * response paths are JIT-compiled before real traffic arrives. The compiled code is shared
+ * with the serving engines; the throwaway engine's conversations are discarded with it, so
+ * nothing reaches durable state or the stats. {@link #runOverHttp} then warms the server's
+ * own HTTP stack. Must not depend on Spring.
+ */
+public class EngineWarmUp {
+    private static final Logger logger = LoggerFactory.getLogger(EngineWarmUp.class);
+
+    public static final String CORPUS_RESOURCE = "/warmup/conversations.txt";
+
+    private static final ObjectReader REQUEST_READER = JsonCodec.MAPPER.readerFor(MessageRequest.class);
+    private static final ObjectWriter WRITER = JsonCodec.MAPPER.writer();
+
+    // Every Nth conversation goes through the batch endpoint's path instead
+    private static final int BATCH_EVERY = 8;
+    private static final int USERS = 16;
+
+    private final List<List<String>> conversations;
+
+    public EngineWarmUp(List<List<String>> conversations) {
+        if (conversations.isEmpty()) {
+            throw new IllegalArgumentException("Warm-up corpus has no conversations");
+        }
+        this.conversations = conversations;
+    }
+
+    /**
+     * The corpus bundled with the application
+     */
+    public static EngineWarmUp fromClasspath() {
+        try (InputStream in = EngineWarmUp.class.getResourceAsStream(CORPUS_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Warm-up corpus " + CORPUS_RESOURCE + " is missing");
+            }
+            return new EngineWarmUp(parse(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The corpus, one list of user messages per conversation
+     */
+    public List<List<String>> getConversations() {
+        return conversations;
+    }
+
+    /**
+     * One message per line, conversations separated by blank lines, {@code #} comments
+     */
+    static List<List<String>> parse(BufferedReader reader) throws IOException {
+        List<List<String>> conversations = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.strip();
+            if (line.startsWith("#")) {
+                continue;
+            }
+            if (line.isEmpty()) {
+                if (!current.isEmpty()) {
+                    conversations.add(List.copyOf(current));
+                    current.clear();
+                }
+            } else {
+                current.add(line);
+            }
+        }
+        if (!current.isEmpty()) {
+            conversations.add(List.copyOf(current));
+        }
+        return conversations;
+    }
+
+    /**
+     * Up to 4 threads, leaving cores to the JIT compiler threads
+     */
+    public static int defaultThreads() {
+        return Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Replays whole conversations on {@code threads} threads until at least {@code messages}
+     * messages have gone through; returns the number replayed
+     */
+    public int run(int messages, int threads) {
+        if (messages <= 0) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        ConversationalAdRelevanceEngine engine = new ConversationalAdRelevanceEngine();
+        AdRelevanceOperations operations = new AdRelevanceOperations(engine);
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads), VirtualThreads.daemonFactory("warmup"));
+        AtomicInteger replayed = new AtomicInteger();
+        AtomicInteger nextConversation = new AtomicInteger();
+        try {
+            List<CompletableFuture<Void>> running = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, threads); i++) {
+                running.add(CompletableFuture.runAsync(
+                    () -> replayUntil(engine, operations, messages, replayed, nextConversation), workers));
+            }
+            CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).join();
+        } finally {
+            workers.shutdownNow();
+            operations.shutdown();
+        }
+        logger.info("Warm-up replayed {} messages in {} conversations in {}ms", replayed.get(),
+            nextConversation.get(), (System.nanoTime() - start) / 1_000_000);
+        return replayed.get();
+    }
+
+    private void replayUntil(ConversationalAdRelevanceEngine engine, AdRelevanceOperations operations, int messages,
+                             AtomicInteger replayed, AtomicInteger nextConversation) {
+        while (replayed.get() < messages) {
+            // A fresh conversation id each time, so the suggestion cache never short-circuits a turn
+            int sequence = nextConversation.getAndIncrement();
+            List<String> conversation = conversations.get(sequence % conversations.size());
+            String conversationId = "warmup-" + sequence;
+            String userId = "warmup-user-" + (sequence % USERS);
+            try {
+                if (sequence % BATCH_EVERY == BATCH_EVERY - 1) {
+                    List<MessageRequest> batch = new ArrayList<>(conversation.size());
+                    for (String message : conversation) {
+                        batch.add(roundTrip(new MessageRequest(conversationId, userId, message)));
+                    }
+                    WRITER.writeValueAsBytes(operations.processMessages(batch, batch.size()));
+                } else {
+                    for (String message : conversation) {
+                        MessageRequest request = roundTrip(new MessageRequest(conversationId, userId, message));
+                        AdSuggestion suggestion = engine.processMessage(conversationId, userId, request.message());
+                        // Each response shape the endpoints write: keyword, ChatGPT full and compact
+                        WRITER.writeValueAsBytes(MessageResponse.of(request, suggestion, Double.NEGATIVE_INFINITY, false));
+                        WRITER.writeValueAsBytes(MessageResponse.inFormat(request, suggestion, 0.0, MessageResponse.FULL));
+                        WRITER.writeValueAsBytes(MessageResponse.inFormat(request, suggestion, 0.0, MessageResponse.COMPACT));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            replayed.addAndGet(conversation.size());
+        }
+    }
+
+    /**
+     * Posts empty batches to the server's own batch endpoints, e.g. {@code /api/process-messages}.
+     * Nothing reaches an engine or the logs, while the server's connection handling, dispatch
+     * and JSON conversion run as they do for real traffic; the engine and DTO paths behind
+     * them are warmed by {@link #run}. Returns the number of requests answered.
+     */
+    public int runOverHttp(String baseUrl, List<String> batchPaths, int requests, int threads) {
+        if (requests <= 0 || batchPaths.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, threads), VirtualThreads.daemonFactory("warmup-http"));
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5)).build();
+        AtomicInteger sequence = new AtomicInteger();
+        AtomicInteger answered = new AtomicInteger();
+        try {
+            List<CompletableFuture<Void>> running = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, threads); i++) {
+                running.add(CompletableFuture.runAsync(() -> {
+                    int next;
+                    while ((next = sequence.getAndIncrement()) < requests) {
+                        if (!post(client, URI.create(baseUrl + batchPaths.get(next % batchPaths.size())))) {
+                            return;
+                        }
+                        answered.incrementAndGet();
+                    }
+                }, workers));
+            }
+            CompletableFuture.allOf(running.toArray(new CompletableFuture[0])).join();
+        } finally {
+            workers.shutdownNow();
+        }
+        logger.info("Warm-up sent {} requests to {} in {}ms", answered.get(), batchPaths,
+            (System.nanoTime() - start) / 1_000_000);
+        return answered.get();
+    }
+
+    private static boolean post(HttpClient client, URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri).header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString("[]")).build();
+        try {
+            client.send(request, HttpResponse.BodyHandlers.discarding());
+            return true;
+        } catch (IOException e) {
+            logger.warn("Warm-up request to {} failed, skipping the rest: {}", uri, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * The request as the endpoints see it: written and parsed back through the shared mapper
+     */
+    private static MessageRequest roundTrip(MessageRequest request) throws IOException {
+        return REQUEST_READER.readValue(WRITER.writeValueAsBytes(request));
+    }
+}
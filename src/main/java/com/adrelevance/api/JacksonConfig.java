@@ -0,0 +1,24 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.JsonCodec;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Gives Spring Boot's auto-configured ObjectMapper the module and features of the shared
+ * {@link JsonCodec} mapper, keeping Boot's own modules and {@code spring.jackson.*} settings
+ */
+@Configuration
+public class JacksonConfig {
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer jsonCodecCustomizer() {
+        return builder -> builder
+            .modulesToInstall(new BlackbirdModule())
+            .featuresToDisable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    }
+}
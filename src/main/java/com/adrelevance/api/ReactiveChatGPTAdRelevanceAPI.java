@@ -0,0 +1,127 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.BatchItemResult;
+import com.adrelevance.api.dto.BatchResponse;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.MessageResponse;
+import com.adrelevance.api.dto.PreferencesRequest;
+import com.adrelevance.engine.ChatGPTEnhancedAdRelevanceEngine;
+import com.adrelevance.engine.EngineOverloadedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WebFlux variant of {@link ChatGPTAdRelevanceAPI}, active when the application starts
+ * with {@code spring.main.web-application-type=reactive}. Requests are Mono pipelines
+ * over the non-blocking OpenAI client, so waiting on the LLM holds no thread.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/chatgpt")
+@CrossOrigin(origins = "*")
+public class ReactiveChatGPTAdRelevanceAPI {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveChatGPTAdRelevanceAPI.class);
+    
+    @Autowired
+    private ChatGPTEnhancedAdRelevanceEngine chatGPTEngine;
+    
+    @Autowired(required = false)
+    private ApplicationAvailability availability;
+    
+    @Value("${adrelevance.batch.max-items:100}")
+    private int maxBatchItems = 100;
+    
+    /**
+     * Process a message using ChatGPT for intelligent ad suggestions.
+     * {@code format=compact} returns the ad's fields and template id instead of its HTML.
+     */
+    @PostMapping("/process-message")
+    public Mono<MessageResponse> processMessage(@RequestBody MessageRequest request,
+                                                @RequestParam(name = "format", defaultValue = MessageResponse.FULL) String format) {
+        logger.info("Processing message with ChatGPT for conversation {}: {}", request.conversationId(), request.message());
+        
+        return chatGPTEngine.processMessageReactive(request.conversationId(), request.userId(), request.message())
+            .map(adSuggestion -> MessageResponse.inFormat(request, adSuggestion, 0.0, format));
+    }
+    
+    /**
+     * Batch form of {@link #processMessage}, with the same ordering and per-item errors
+     * as the servlet endpoint
+     */
+    @PostMapping("/process-messages")
+    public Mono<BatchResponse> processMessages(@RequestBody List<MessageRequest> items,
+                                               @RequestParam(name = "format", defaultValue = MessageResponse.FULL) String format) {
+        if (items.size() > maxBatchItems) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Batch of " + items.size() + " messages exceeds the limit of " + maxBatchItems);
+        }
+        if (items.isEmpty()) {
+            return Mono.just(BatchResponse.of(List.of()));
+        }
+        
+        // All items start at once; results are emitted in input order
+        return Flux.range(0, items.size())
+            .flatMapSequential(index -> processItem(index, items.get(index), format), items.size())
+            .collectList()
+            .map(BatchResponse::of);
+    }
+    
+    /**
+     * Update user preferences
+     */
+    @PostMapping("/update-preferences")
+    public Map<String, Object> updatePreferences(@RequestBody PreferencesRequest request) {
+        return ChatGPTAdRelevanceAPI.applyPreferences(chatGPTEngine, request);
+    }
+    
+    /**
+     * Get engine statistics
+     */
+    @GetMapping("/stats")
+    public Map<String, Object> getStats() {
+        return ChatGPTAdRelevanceAPI.statsOf(chatGPTEngine);
+    }
+    
+    /**
+     * Health check endpoint; 503 until the startup warm-up has finished
+     */
+    @GetMapping("/health")
+    public ResponseEntity<Map<String, Object>> healthCheck() {
+        boolean ready = WarmUpRunner.isReady(availability);
+        return ChatGPTAdRelevanceAPI.healthResponse(ChatGPTAdRelevanceAPI.health(ready), ready);
+    }
+    
+    /**
+     * Messages refused by admission control: 503 with Retry-After
+     */
+    @ExceptionHandler(EngineOverloadedException.class)
+    public ResponseEntity<Map<String, Object>> overloaded(EngineOverloadedException e) {
+        return ChatGPTAdRelevanceAPI.overloadedResponse(e);
+    }
+    
+    private Mono<BatchItemResult> processItem(int index, MessageRequest item, String format) {
+        Mono<MessageResponse> result = item.userId() == null || item.message() == null
+            ? Mono.error(new IllegalArgumentException("userId and message are required"))
+            : chatGPTEngine.processMessageReactive(item.conversationId(), item.userId(), item.message())
+                .map(adSuggestion -> MessageResponse.inFormat(item, adSuggestion, 0.0, format));
+        return result
+            .map(response -> BatchItemResult.success(index, response))
+            .onErrorResume(error -> {
+                logger.warn("Batch item {} for conversation {} failed: {}", index, item.conversationId(), error.getMessage());
+                return Mono.just(BatchItemResult.failure(index, item, error.getMessage()));
+            });
+    }
+}
@@ -0,0 +1,284 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.JsonCodec;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.PreferencesRequest;
+import com.adrelevance.concurrent.VirtualThreads;
+import com.adrelevance.engine.ConversationalAdRelevanceEngine;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The keyword engine's {@code /api} endpoints on the JDK's built-in HTTP server, with no
+ * Spring context: for small sidecar instances where Spring Boot startup dominates scale-out.
+ * Handlers run on virtual threads when the runtime has them.
+ *
+ * <p>Requests and responses are the same DTOs as {@link AdRelevanceAPI}, written by the
+ * shared {@link JsonCodec} mapper, with the same status codes.
+ */
+public class StandaloneAdRelevanceServer {
+    private static final Logger logger = LoggerFactory.getLogger(StandaloneAdRelevanceServer.class);
+
+    private static final String JSON = "application/json";
+    private static final ObjectReader MESSAGE_READER = JsonCodec.MAPPER.readerFor(MessageRequest.class);
+    private static final ObjectReader BATCH_READER = JsonCodec.MAPPER.readerFor(new TypeReference<List<MessageRequest>>() { });
+    private static final ObjectReader PREFERENCES_READER = JsonCodec.MAPPER.readerFor(PreferencesRequest.class);
+    private static final ObjectWriter WRITER = JsonCodec.MAPPER.writer();
+
+    private final int requestedPort;
+    private final boolean virtualThreads;
+    private final int maxBatchItems;
+    private final AdRelevanceOperations operations;
+
+    private HttpServer server;
+    private ExecutorService handlerExecutor;
+    // Health answers 503 until this is set, e.g. while the warm-up replay runs
+    private volatile boolean ready = true;
+
+    public StandaloneAdRelevanceServer(int port, boolean virtualThreads, int maxBatchItems, AdRelevanceOperations operations) {
+        this.requestedPort = port;
+        this.virtualThreads = virtualThreads;
+        this.maxBatchItems = maxBatchItems;
+        this.operations = operations;
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        // Headers and body go out in separate writes; without this, Nagle's algorithm and the
+        // client's delayed ACK hold every response back ~40ms. Read once, when the server
+        // implementation is first used.
+        System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(requestedPort), 1024);
+        handlerExecutor = VirtualThreads.newExecutor(virtualThreads, "http-",
+            () -> Executors.newFixedThreadPool(Math.max(8, 2 * Runtime.getRuntime().availableProcessors()),
+                VirtualThreads.daemonFactory("http")));
+        server.setExecutor(handlerExecutor);
+        server.createContext("/api/", this::handle);
+        server.start();
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        handlerExecutor.shutdownNow();
+        operations.shutdown();
+        server = null;
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            if ("OPTIONS".equalsIgnoreCase(method)) {
+                preflight(exchange);
+                return;
+            }
+            switch (path) {
+                case "/api/process-message" -> {
+                    if (requirePost(exchange, method)) {
+                        respondOrFail(exchange, () -> operations.processMessage(read(exchange, MESSAGE_READER)));
+                    }
+                }
+                case "/api/process-messages" -> {
+                    if (requirePost(exchange, method)) {
+                        List<MessageRequest> items = read(exchange, BATCH_READER);
+                        try {
+                            send(exchange, 200, operations.processMessages(items, maxBatchItems));
+                        } catch (IllegalArgumentException e) {
+                            sendError(exchange, 400, e.getMessage());
+                        }
+                    }
+                }
+                case "/api/update-preferences" -> {
+                    if (requirePost(exchange, method)) {
+                        respondOrFail(exchange, () -> operations.updatePreferences(read(exchange, PREFERENCES_READER)));
+                    }
+                }
+                case "/api/stats" -> {
+                    if (requireGet(exchange, method)) {
+                        respondOrFail(exchange, operations::stats);
+                    }
+                }
+                case "/api/health" -> {
+                    if (requireGet(exchange, method)) {
+                        send(exchange, ready ? 200 : 503, operations.health(ready));
+                    }
+                }
+                default -> sendError(exchange, 404, "Not found: " + path);
+            }
+        } catch (JsonProcessingException e) {
+            sendQuietly(exchange, 400, "Malformed request body");
+        } catch (Exception e) {
+            logger.error("Error handling {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            sendQuietly(exchange, 500, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private interface Operation {
+        Object run() throws IOException;
+    }
+
+    /**
+     * Sends the result, or a 500 with the error message as {@link AdRelevanceAPI} does
+     */
+    private void respondOrFail(HttpExchange exchange, Operation operation) throws IOException {
+        Object result;
+        try {
+            result = operation.run();
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error handling {}", exchange.getRequestURI(), e);
+            sendError(exchange, 500, e.getMessage());
+            return;
+        }
+        send(exchange, 200, result);
+    }
+
+    private static <T> T read(HttpExchange exchange, ObjectReader reader) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return reader.readValue(body);
+        }
+    }
+
+    private static boolean requirePost(HttpExchange exchange, String method) throws IOException {
+        return requireMethod(exchange, method, "POST");
+    }
+
+    private static boolean requireGet(HttpExchange exchange, String method) throws IOException {
+        return requireMethod(exchange, method, "GET");
+    }
+
+    private static boolean requireMethod(HttpExchange exchange, String method, String expected) throws IOException {
+        if (expected.equalsIgnoreCase(method)) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", expected);
+        sendError(exchange, 405, "Method " + method + " not allowed");
+        return false;
+    }
+
+    private static void preflight(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        String requested = exchange.getRequestHeaders().getFirst("Access-Control-Request-Headers");
+        headers.set("Access-Control-Allow-Headers", requested != null ? requested : "Content-Type");
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", message);
+        send(exchange, status, error);
+    }
+
+    private static void sendQuietly(HttpExchange exchange, int status, String message) {
+        try {
+            sendError(exchange, status, message);
+        } catch (IOException | IllegalStateException e) {
+            // Client went away, or the response had already started
+            logger.debug("Could not send error response: {}", e.getMessage());
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = WRITER.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Runs the server, e.g. {@code --port=8080 --state-dir=/var/lib/adrelevance
+     * --cold-tier-dir= --snapshot-interval-ms=300000 --batch-max-items=100 --warmup-messages=5000 --warmup-http-requests=500 --record-trace=};
+     * handlers use virtual threads whenever the runtime has them unless {@code --virtual-threads=false}.
+     * Health reports ready once the {@link EngineWarmUp} replay is done; {@code --warmup-messages=0}
+     * skips it, and {@code --exit-after-warmup=true} exits afterwards for AppCDS training runs.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        AdRelevanceOperations operations = new AdRelevanceOperations(new ConversationalAdRelevanceEngine());
+        operations.initStateStores(options.getOrDefault("state-dir", ""),
+            Long.parseLong(options.getOrDefault("snapshot-interval-ms", "300000")),
+            options.getOrDefault("cold-tier-dir", ""));
+        operations.recordTrace(options.getOrDefault("record-trace", ""));
+
+        StandaloneAdRelevanceServer server = new StandaloneAdRelevanceServer(
+            Integer.parseInt(options.getOrDefault("port", "8080")),
+            Boolean.parseBoolean(options.getOrDefault("virtual-threads", String.valueOf(VirtualThreads.isSupported()))),
+            Integer.parseInt(options.getOrDefault("batch-max-items", "100")),
+            operations);
+        int warmupMessages = Integer.parseInt(options.getOrDefault("warmup-messages", "5000"));
+        server.setReady(warmupMessages <= 0);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "standalone-shutdown"));
+
+        // Same wording as Spring Boot's line, so startup benchmarks can watch for either
+        logger.info("🚀 Standalone Ad Relevance API started on port {} in {} seconds", server.getPort(), secondsSinceStart());
+
+        if (warmupMessages > 0) {
+            int warmupThreads = Integer.parseInt(options.getOrDefault("warmup-threads", String.valueOf(EngineWarmUp.defaultThreads())));
+            EngineWarmUp warmUp = EngineWarmUp.fromClasspath();
+            warmUp.run(warmupMessages, warmupThreads);
+            warmUp.runOverHttp("http://localhost:" + server.getPort(), List.of("/api/process-messages"),
+                Integer.parseInt(options.getOrDefault("warmup-http-requests", "500")), warmupThreads);
+            server.setReady(true);
+            logger.info("Standalone Ad Relevance API ready in {} seconds", secondsSinceStart());
+        }
+        if (Boolean.parseBoolean(options.getOrDefault("exit-after-warmup", "false"))) {
+            System.exit(0);
+        }
+    }
+
+    private static double secondsSinceStart() {
+        Instant now = Instant.now();
+        return Duration.between(ProcessHandle.current().info().startInstant().orElse(now), now).toMillis() / 1000.0;
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+}
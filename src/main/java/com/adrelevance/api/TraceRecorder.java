@@ -0,0 +1,67 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.JsonCodec;
+import com.adrelevance.api.dto.TraceEvent;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the messages a server receives to a trace file, timed from when recording
+ * started, so that the load generator in the test sources can replay real traffic. The file holds users'
+ * messages verbatim; treat it like the application's logs.
+ */
+public class TraceRecorder implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(TraceRecorder.class);
+
+    private static final ObjectWriter EVENT_WRITER = JsonCodec.MAPPER.writerFor(TraceEvent.class);
+
+    private final Path file;
+    private final BufferedWriter writer;
+    private final long startNanos = System.nanoTime();
+    private long recorded;
+    private boolean failed;
+
+    public TraceRecorder(Path file) throws IOException {
+        this.file = file;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        logger.info("Recording conversation trace to {}", file);
+    }
+
+    /**
+     * Never throws: a failing trace file stops the recording, not the request
+     */
+    public synchronized void record(String conversationId, String userId, String message) {
+        if (failed) {
+            return;
+        }
+        TraceEvent event = new TraceEvent((System.nanoTime() - startNanos) / 1_000_000, conversationId, userId, message);
+        try {
+            writer.write(EVENT_WRITER.writeValueAsString(event));
+            writer.newLine();
+            recorded++;
+        } catch (IOException e) {
+            failed = true;
+            logger.warn("Stopped recording the trace to {}: {}", file, e.getMessage());
+        }
+    }
+
+    public synchronized long getRecorded() {
+        return recorded;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+        logger.info("Recorded {} messages to {}", recorded, file);
+    }
+}
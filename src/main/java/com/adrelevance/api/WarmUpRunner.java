@@ -0,0 +1,82 @@
+package com.adrelevance.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.web.reactive.context.ReactiveWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Runs the {@link EngineWarmUp} replay, in process and then against this application's own
+ * endpoints, once the context and web server are up. Spring Boot only switches
+ * readiness to {@link ReadinessState#ACCEPTING_TRAFFIC} after its runners return, so the
+ * health endpoints answer 503 until the replay is done.
+ */
+@Component
+public class WarmUpRunner implements ApplicationRunner {
+    private static final Logger logger = LoggerFactory.getLogger(WarmUpRunner.class);
+
+    @Value("${adrelevance.warmup.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${adrelevance.warmup.messages:5000}")
+    private int messages = 5000;
+
+    // 0 picks EngineWarmUp.defaultThreads()
+    @Value("${adrelevance.warmup.threads:0}")
+    private int threads = 0;
+
+    // Requests the application sends to its own batch endpoints once the engine is warm
+    @Value("${adrelevance.warmup.http-requests:500}")
+    private int httpRequests = 500;
+
+    // Training runs for the AppCDS archive exit once warmed up
+    @Value("${adrelevance.warmup.exit:false}")
+    private boolean exitWhenDone = false;
+
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            int workers = threads > 0 ? threads : EngineWarmUp.defaultThreads();
+            EngineWarmUp warmUp = EngineWarmUp.fromClasspath();
+            warmUp.run(messages, workers);
+            Integer port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+            if (port != null) {
+                warmUp.runOverHttp("http://localhost:" + port, batchPaths(), httpRequests, workers);
+            }
+        }
+        if (exitWhenDone) {
+            logger.info("Warm-up finished; exiting as adrelevance.warmup.exit is set");
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    /**
+     * The keyword API only runs in servlet mode; the ChatGPT API has a controller in both
+     */
+    private List<String> batchPaths() {
+        return context instanceof ReactiveWebApplicationContext
+            ? List.of("/api/chatgpt/process-messages")
+            : List.of("/api/process-messages", "/api/chatgpt/process-messages");
+    }
+
+    /**
+     * Whether health checks should report the instance ready; true outside a Spring Boot
+     * application, where there is no availability state to consult
+     */
+    static boolean isReady(ApplicationAvailability availability) {
+        return availability == null || availability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC;
+    }
+}
@@ -0,0 +1,39 @@
+package com.adrelevance.api.dto;
+
+import com.adrelevance.model.Ad;
+import com.adrelevance.model.AdType;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * The client-facing fields of an ad
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AdCard(String id, String title, String description, String brandName,
+                     List<String> categories, List<String> keywords, String callToAction, String url,
+                     AdType type, String templateId, String conversationalTemplate) {
+
+    /**
+     * @param withTemplate whether to include the conversational template, which the ChatGPT API returns
+     */
+    public static AdCard from(Ad ad, boolean withTemplate) {
+        if (ad == null) {
+            return null;
+        }
+        return new AdCard(ad.getId(), ad.getTitle(), ad.getDescription(), ad.getBrandName(),
+            ad.getCategories(), ad.getKeywords(), ad.getCallToAction(), ad.getUrl(), ad.getType(),
+            ad.getTemplateId(), withTemplate ? ad.getConversationalTemplate() : null);
+    }
+
+    /**
+     * Just what a client needs to render the ad from its own copy of template {@code templateId}
+     */
+    public static AdCard compact(Ad ad) {
+        if (ad == null) {
+            return null;
+        }
+        return new AdCard(ad.getId(), ad.getTitle(), ad.getDescription(), null, null, null,
+            ad.getCallToAction(), ad.getUrl(), null, ad.getTemplateId(), null);
+    }
+}
@@ -0,0 +1,25 @@
+package com.adrelevance.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * A frame pushed down the ad push channel: the result for one {@link MessageEvent}
+ * ({@code type} "ad", with a null suggestion when there is nothing to show) or its error.
+ * An error with {@code retryAfterSeconds} was refused under load and may be sent again then.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AdEvent(String type, String id, String conversationId, SuggestionView adSuggestion, String error,
+                      Integer retryAfterSeconds) {
+
+    public static AdEvent ad(MessageEvent event, MessageResponse response) {
+        return new AdEvent("ad", event.id(), response.conversationId(), response.adSuggestion(), null, null);
+    }
+
+    public static AdEvent error(String id, String conversationId, String error) {
+        return new AdEvent("error", id, conversationId, null, error, null);
+    }
+
+    public static AdEvent overloaded(String id, String conversationId, String error, int retryAfterSeconds) {
+        return new AdEvent("error", id, conversationId, null, error, retryAfterSeconds);
+    }
+}
@@ -0,0 +1,24 @@
+package com.adrelevance.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * One item of a batch response: the item's result, or its error
+ */
+public record BatchItemResult(int index, String conversationId, String userId, String message,
+                              SuggestionView adSuggestion,
+                              @JsonInclude(JsonInclude.Include.NON_NULL) String error) {
+
+    public static BatchItemResult success(int index, MessageResponse response) {
+        return new BatchItemResult(index, response.conversationId(), response.userId(), response.message(),
+            response.adSuggestion(), null);
+    }
+
+    public static BatchItemResult failure(int index, MessageRequest request, String error) {
+        return new BatchItemResult(index, request.conversationId(), request.userId(), request.message(), null, error);
+    }
+
+    public boolean failed() {
+        return error != null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.adrelevance.api.dto;
+
+import java.util.List;
+
+/**
+ * Results of a batch call, in input order
+ */
+public record BatchResponse(List<BatchItemResult> results, int count, int failed) {
+
+    public static BatchResponse of(List<BatchItemResult> results) {
+        int failed = 0;
+        for (BatchItemResult result : results) {
+            if (result.failed()) {
+                failed++;
+            }
+        }
+        return new BatchResponse(results, results.size(), failed);
+    }
+}
@@ -0,0 +1,31 @@
+package com.adrelevance.api.dto;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+
+/**
+ * The ObjectMapper shared by the parts of the REST layer that run outside Spring: the
+ * standalone server, the push channel, warm-up and trace recording. Spring's own mapper
+ * gets the same module and features from {@code JacksonConfig}.
+ *
+ * <p>Configured once and reused, since a mapper caches its serializers per type. The
+ * Blackbird module replaces reflective property access with generated lambdas.
+ */
+public final class JsonCodec {
+
+    public static final ObjectMapper MAPPER = newObjectMapper();
+
+    private JsonCodec() { }
+
+    /**
+     * Builds a mapper with the shared configuration, for callers that must not share state
+     */
+    public static ObjectMapper newObjectMapper() {
+        return new ObjectMapper()
+            .registerModule(new BlackbirdModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+    }
+}
@@ -0,0 +1,13 @@
+package com.adrelevance.api.dto;
+
+/**
+ * A message sent up the ad push channel. {@code id} is the client's key for the message;
+ * repeats of a key within a session are dropped. {@code format} is the response format,
+ * as for process-message.
+ */
+public record MessageEvent(String id, String conversationId, String userId, String message, String format) {
+
+    public MessageRequest toRequest() {
+        return new MessageRequest(conversationId, userId, message);
+    }
+}
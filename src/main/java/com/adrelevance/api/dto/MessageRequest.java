@@ -0,0 +1,7 @@
+package com.adrelevance.api.dto;
+
+/**
+ * Body of a process-message call, and one item of a batch
+ */
+public record MessageRequest(String conversationId, String userId, String message) {
+}
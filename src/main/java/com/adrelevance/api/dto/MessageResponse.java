@@ -0,0 +1,50 @@
+package com.adrelevance.api.dto;
+
+import com.adrelevance.model.AdSuggestion;
+
+/**
+ * Result of a process-message call; {@code adSuggestion} is null when there is no ad to show
+ */
+public record MessageResponse(String conversationId, String userId, String message, SuggestionView adSuggestion) {
+
+    /** Response format names accepted by the ChatGPT endpoints */
+    public static final String FULL = "full";
+    public static final String COMPACT = "compact";
+
+    /**
+     * @param minScore suggestions scoring at or below this are returned as no suggestion
+     * @param withTemplate whether the ad card carries its conversational template
+     */
+    public static MessageResponse of(MessageRequest request, AdSuggestion suggestion,
+                                     double minScore, boolean withTemplate) {
+        SuggestionView view = null;
+        if (suggestion != null && suggestion.getAd() != null && suggestion.getRelevanceScore() > minScore) {
+            view = new SuggestionView(AdCard.from(suggestion.getAd(), withTemplate),
+                suggestion.getResponse(), suggestion.getRelevanceScore());
+        }
+        return new MessageResponse(request.conversationId(), request.userId(), request.message(), view);
+    }
+
+    /**
+     * {@link #compact} when {@code format} is "compact", otherwise {@link #of} with the template
+     */
+    public static MessageResponse inFormat(MessageRequest request, AdSuggestion suggestion,
+                                           double minScore, String format) {
+        return COMPACT.equalsIgnoreCase(format)
+            ? compact(request, suggestion, minScore)
+            : of(request, suggestion, minScore, true);
+    }
+
+    /**
+     * Like {@link #of}, but with a {@link AdCard#compact compact} card and the plain response
+     * text; the client renders the creative, so no HTML is built or sent
+     */
+    public static MessageResponse compact(MessageRequest request, AdSuggestion suggestion, double minScore) {
+        SuggestionView view = null;
+        if (suggestion != null && suggestion.getAd() != null && suggestion.getRelevanceScore() > minScore) {
+            view = new SuggestionView(AdCard.compact(suggestion.getAd()),
+                suggestion.getResponseText(), suggestion.getRelevanceScore());
+        }
+        return new MessageResponse(request.conversationId(), request.userId(), request.message(), view);
+    }
+}
@@ -0,0 +1,10 @@
+package com.adrelevance.api.dto;
+
+import java.util.List;
+
+/**
+ * Body of an update-preferences call; absent fields are null
+ */
+public record PreferencesRequest(String userId, List<String> interests, List<String> blockedCategories,
+                                 Boolean adPreferencesEnabled, Boolean premium) {
+}
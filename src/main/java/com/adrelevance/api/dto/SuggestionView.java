@@ -0,0 +1,7 @@
+package com.adrelevance.api.dto;
+
+/**
+ * An ad suggestion as returned to clients
+ */
+public record SuggestionView(AdCard ad, String response, double relevanceScore) {
+}
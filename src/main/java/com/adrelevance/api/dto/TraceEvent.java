@@ -0,0 +1,11 @@
+package com.adrelevance.api.dto;
+
+/**
+ * One line of a message trace: a user message received {@code atMillis} after recording started
+ */
+public record TraceEvent(long atMillis, String conversationId, String userId, String message) {
+
+    public MessageRequest toRequest() {
+        return new MessageRequest(conversationId, userId, message);
+    }
+}
@@ -0,0 +1,53 @@
+package com.adrelevance.api.push;
+
+import com.adrelevance.engine.ChatGPTEnhancedAdRelevanceEngine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import java.util.Map;
+
+/**
+ * Registers the ad push WebSocket at {@value #PATH} for whichever web stack is running
+ */
+public class AdPushConfig {
+
+    public static final String PATH = "/ws/ads";
+
+    @Configuration
+    @EnableWebSocket
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    static class Servlet implements WebSocketConfigurer {
+        private final ChatGPTEnhancedAdRelevanceEngine engine;
+
+        @Value("${adrelevance.push.max-pending:32}")
+        private int maxPending = 32;
+
+        Servlet(ChatGPTEnhancedAdRelevanceEngine engine) {
+            this.engine = engine;
+        }
+
+        @Override
+        public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+            registry.addHandler(new ServletAdPushHandler(engine, maxPending), PATH).setAllowedOrigins("*");
+        }
+    }
+
+    @Configuration
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    static class Reactive {
+
+        @Bean
+        HandlerMapping adPushHandlerMapping(ChatGPTEnhancedAdRelevanceEngine engine,
+                                            @Value("${adrelevance.push.max-pending:32}") int maxPending) {
+            // Ahead of the annotated controllers
+            return new SimpleUrlHandlerMapping(Map.of(PATH, new ReactiveAdPushHandler(engine, maxPending)), -1);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.adrelevance.api.push;
+
+import com.adrelevance.api.dto.AdEvent;
+import com.adrelevance.api.dto.JsonCodec;
+import com.adrelevance.api.dto.MessageEvent;
+import com.adrelevance.api.dto.MessageResponse;
+import com.adrelevance.engine.EngineOverloadedException;
+import com.adrelevance.model.AdSuggestion;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-connection state of the ad push channel, shared by the servlet and reactive transports.
+ *
+ * <p>Drops messages whose id was already seen on this connection, which is how the
+ * extension's DOM scanner re-submitting a message is absorbed, and caps the messages in
+ * progress per connection. Inbound frames of one connection are handled one at a time by
+ * both transports; completions may arrive on any thread, so the seen ids are guarded.
+ */
+public class AdPushSession {
+
+    public enum Admission { ACCEPTED, DUPLICATE, OVERLOADED, INVALID }
+
+    static final int RECENT_IDS = 512;
+    // A connection's in-progress messages finish quickly, so a refused one is worth resending soon
+    static final int OVERLOADED_RETRY_AFTER_SECONDS = 1;
+
+    private static final ObjectReader EVENT_READER = JsonCodec.MAPPER.readerFor(MessageEvent.class);
+    private static final ObjectWriter EVENT_WRITER = JsonCodec.MAPPER.writerFor(AdEvent.class);
+
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Map<String, Boolean> recentIds = new LinkedHashMap<>(64, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_IDS;
+        }
+    };
+
+    public AdPushSession(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Decides whether to process an inbound message; an accepted message must be
+     * followed by {@link #finished} once its result is sent
+     */
+    public Admission admit(MessageEvent event) {
+        if (event.userId() == null || event.message() == null || event.message().isBlank()) {
+            return Admission.INVALID;
+        }
+        String key = key(event);
+        synchronized (recentIds) {
+            if (recentIds.containsKey(key)) {
+                return Admission.DUPLICATE;
+            }
+            if (pending.incrementAndGet() > maxPending) {
+                pending.decrementAndGet();
+                return Admission.OVERLOADED;
+            }
+            recentIds.put(key, Boolean.TRUE);
+        }
+        return Admission.ACCEPTED;
+    }
+
+    /**
+     * Forgets an accepted message that failed, so the client's resend of it is admitted again
+     */
+    public void forget(MessageEvent event) {
+        synchronized (recentIds) {
+            recentIds.remove(key(event));
+        }
+    }
+
+    private static String key(MessageEvent event) {
+        return event.conversationId() + '\u0000' + (event.id() != null ? event.id() : event.message());
+    }
+
+    public void finished() {
+        pending.decrementAndGet();
+    }
+
+    public int getPending() {
+        return pending.get();
+    }
+
+    public static MessageEvent decode(String frame) throws IOException {
+        return EVENT_READER.readValue(frame);
+    }
+
+    public static String encode(AdEvent event) {
+        try {
+            return EVENT_WRITER.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to encode ad event", e);
+        }
+    }
+
+    /**
+     * The frame answering {@code event}, with the same suggestion filtering as the REST endpoint
+     */
+    public static AdEvent result(MessageEvent event, AdSuggestion suggestion) {
+        return AdEvent.ad(event, MessageResponse.inFormat(event.toRequest(), suggestion, 0.0, event.format()));
+    }
+
+    /**
+     * The error frame for a message that was not admitted, or null if it is silently dropped
+     */
+    public static AdEvent rejection(MessageEvent event, Admission admission) {
+        return switch (admission) {
+            case INVALID -> AdEvent.error(event.id(), event.conversationId(), "userId and message are required");
+            case OVERLOADED -> AdEvent.overloaded(event.id(), event.conversationId(), "Too many messages in progress",
+                OVERLOADED_RETRY_AFTER_SECONDS);
+            default -> null;
+        };
+    }
+
+    /**
+     * The error frame for an accepted message that failed; engine overload carries its Retry-After
+     */
+    public static AdEvent failure(MessageEvent event, Throwable error) {
+        if (error instanceof EngineOverloadedException overloaded) {
+            return AdEvent.overloaded(event.id(), event.conversationId(), overloaded.getMessage(),
+                overloaded.getRetryAfterSeconds());
+        }
+        return AdEvent.error(event.id(), event.conversationId(), error.getMessage());
+    }
+}
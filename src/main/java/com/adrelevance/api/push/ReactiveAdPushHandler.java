@@ -0,0 +1,62 @@
+package com.adrelevance.api.push;
+
+import com.adrelevance.api.dto.AdEvent;
+import com.adrelevance.api.dto.MessageEvent;
+import com.adrelevance.engine.ChatGPTEnhancedAdRelevanceEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+
+/**
+ * Ad push channel over a WebFlux WebSocket. Results are pushed in completion order; at
+ * most {@code maxPending} messages per connection are in progress, beyond which inbound
+ * frames are simply not read until one finishes.
+ */
+public class ReactiveAdPushHandler implements WebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveAdPushHandler.class);
+
+    private final ChatGPTEnhancedAdRelevanceEngine engine;
+    private final int maxPending;
+
+    public ReactiveAdPushHandler(ChatGPTEnhancedAdRelevanceEngine engine, int maxPending) {
+        this.engine = engine;
+        this.maxPending = maxPending;
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        AdPushSession push = new AdPushSession(maxPending);
+        return session.send(session.receive()
+            .map(WebSocketMessage::getPayloadAsText)
+            .flatMap(frame -> process(push, frame), maxPending)
+            .map(event -> session.textMessage(AdPushSession.encode(event))));
+    }
+
+    private Mono<AdEvent> process(AdPushSession push, String frame) {
+        MessageEvent event;
+        try {
+            event = AdPushSession.decode(frame);
+        } catch (IOException e) {
+            return Mono.just(AdEvent.error(null, null, "Malformed message event"));
+        }
+
+        AdPushSession.Admission admission = push.admit(event);
+        if (admission != AdPushSession.Admission.ACCEPTED) {
+            return Mono.justOrEmpty(AdPushSession.rejection(event, admission));
+        }
+
+        return engine.processMessageReactive(event.conversationId(), event.userId(), event.message())
+            .map(suggestion -> AdPushSession.result(event, suggestion))
+            .onErrorResume(e -> {
+                logger.warn("Pushed message for conversation {} failed: {}", event.conversationId(), e.getMessage());
+                push.forget(event);
+                return Mono.just(AdPushSession.failure(event, e));
+            })
+            .doFinally(signal -> push.finished());
+    }
+}
@@ -0,0 +1,97 @@
+package com.adrelevance.api.push;
+
+import com.adrelevance.api.dto.AdEvent;
+import com.adrelevance.api.dto.MessageEvent;
+import com.adrelevance.engine.ChatGPTEnhancedAdRelevanceEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Ad push channel over a servlet WebSocket. Each message is handed to the engine as it
+ * arrives and its result is pushed when ready, so a slow conversation does not hold up
+ * the others on the same connection.
+ */
+public class ServletAdPushHandler extends TextWebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ServletAdPushHandler.class);
+
+    private static final String STATE = AdPushSession.class.getName();
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    private static final int SEND_BUFFER_BYTES = 512 * 1024;
+
+    private final ChatGPTEnhancedAdRelevanceEngine engine;
+    private final int maxPending;
+
+    public ServletAdPushHandler(ChatGPTEnhancedAdRelevanceEngine engine, int maxPending) {
+        this.engine = engine;
+        this.maxPending = maxPending;
+    }
+
+    private record State(WebSocketSession out, AdPushSession push) {}
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        // Results complete on engine threads; the decorator serializes their sends
+        WebSocketSession out = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_BYTES);
+        session.getAttributes().put(STATE, new State(out, new AdPushSession(maxPending)));
+        logger.debug("Ad push session {} opened", session.getId());
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        State state = (State) session.getAttributes().get(STATE);
+        MessageEvent event;
+        try {
+            event = AdPushSession.decode(message.getPayload());
+        } catch (IOException e) {
+            send(state.out(), AdEvent.error(null, null, "Malformed message event"));
+            return;
+        }
+
+        AdPushSession.Admission admission = state.push().admit(event);
+        if (admission != AdPushSession.Admission.ACCEPTED) {
+            AdEvent rejection = AdPushSession.rejection(event, admission);
+            if (rejection != null) {
+                send(state.out(), rejection);
+            }
+            return;
+        }
+
+        engine.processMessage(event.conversationId(), event.userId(), event.message())
+            .whenComplete((suggestion, error) -> {
+                state.push().finished();
+                if (error == null) {
+                    send(state.out(), AdPushSession.result(event, suggestion));
+                } else {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    logger.warn("Pushed message for conversation {} failed: {}", event.conversationId(), cause.getMessage());
+                    state.push().forget(event);
+                    send(state.out(), AdPushSession.failure(event, cause));
+                }
+            });
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        logger.debug("Ad push session {} closed: {}", session.getId(), status);
+    }
+
+    private static void send(WebSocketSession out, AdEvent event) {
+        if (!out.isOpen()) {
+            return;
+        }
+        try {
+            out.sendMessage(new TextMessage(AdPushSession.encode(event)));
+        } catch (IOException | RuntimeException e) {
+            // The decorator closes sessions that stop reading; nothing else to do here
+            logger.debug("Could not push to session {}: {}", out.getId(), e.getMessage());
+        }
+    }
+}
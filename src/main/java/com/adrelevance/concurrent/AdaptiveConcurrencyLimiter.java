@@ -0,0 +1,162 @@
+package com.adrelevance.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Concurrency limit that adjusts itself from observed latency, gradient style: the limit
+ * grows while latency stays near its long-run average, shrinks in proportion when latency
+ * rises above it (work is queueing somewhere), and is cut multiplicatively when a request
+ * is dropped. Acquisition never waits; callers decide what to do without a permit.
+ */
+public class AdaptiveConcurrencyLimiter {
+    // EWMA weights: roughly the last 10 samples, and the last 500
+    private static final double SHORT_ALPHA = 2.0 / 11;
+    private static final double LONG_ALPHA = 2.0 / 501;
+    // Latency may rise this far above its long-run average before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile double limit;
+    // Guarded by this
+    private double shortRttNanos;
+    private double longRttNanos;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        this(name, initialLimit, minLimit, maxLimit, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, LongSupplier nanoClock) {
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Need 0 < minLimit <= maxLimit");
+        }
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.nanoClock = nanoClock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * A permit if fewer than {@link #getLimit} requests are in flight, otherwise null
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= getLimit()) {
+                rejected.incrementAndGet();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(current + 1, nanoClock.getAsLong());
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    synchronized void onSample(long rttNanos, int inFlightAtStart) {
+        if (longRttNanos == 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+        } else {
+            shortRttNanos += (rttNanos - shortRttNanos) * SHORT_ALPHA;
+            longRttNanos += (rttNanos - longRttNanos) * LONG_ALPHA;
+        }
+        // After a long slow spell, let the baseline come back down quickly
+        if (longRttNanos > 2 * shortRttNanos) {
+            longRttNanos *= 0.95;
+        }
+        // A limit the traffic is not using says nothing about capacity
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRttNanos));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * (1 - SMOOTHING) + target * SMOOTHING);
+    }
+
+    synchronized void onDropped() {
+        dropped.incrementAndGet();
+        limit = clamp(limit * BACKOFF_RATIO);
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("limit", getLimit());
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("rejected", rejected.get());
+        metrics.put("dropped", dropped.get());
+        metrics.put("shortLatencyMs", shortRttNanos / 1_000_000.0);
+        metrics.put("longLatencyMs", longRttNanos / 1_000_000.0);
+        return metrics;
+    }
+
+    /**
+     * One admitted request; only the first completion call takes effect and returns true
+     */
+    public final class Permit {
+        private final int inFlightAtStart;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart, long startNanos) {
+            this.inFlightAtStart = inFlightAtStart;
+            this.startNanos = startNanos;
+        }
+
+        /** The request completed normally; its latency feeds the limit */
+        public boolean success() {
+            if (!release()) {
+                return false;
+            }
+            onSample(nanoClock.getAsLong() - startNanos, inFlightAtStart);
+            return true;
+        }
+
+        /** The request was refused or timed out downstream; the limit backs off */
+        public boolean dropped() {
+            if (!release()) {
+                return false;
+            }
+            onDropped();
+            return true;
+        }
+
+        /** The request ended without telling anything about capacity */
+        public boolean ignore() {
+            return release();
+        }
+
+        private boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+            inFlight.decrementAndGet();
+            return true;
+        }
+    }
+}
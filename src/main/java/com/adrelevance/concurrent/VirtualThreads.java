@@ -0,0 +1,89 @@
+package com.adrelevance.concurrent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Supplier;
+
+/**
+ * Creates virtual-thread executors when the runtime has them (Java 21+).
+ *
+ * <p>The code base still compiles for Java 17, so the Java 21 APIs are looked up
+ * reflectively. Virtual mode is switched on with the same property Spring Boot uses for
+ * Tomcat, {@code spring.threads.virtual.enabled}.
+ */
+public final class VirtualThreads {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL = find(Thread.class, "ofVirtual");
+
+    private VirtualThreads() { }
+
+    /**
+     * True when this JVM can start virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * An executor that starts one virtual thread per task, named {@code prefix} plus a counter
+     *
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    public static ExecutorService newPerTaskExecutor(String prefix) {
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later");
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = builder.getClass().getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builder.getClass().getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Failed to create a virtual-thread executor", e);
+        }
+    }
+
+    /**
+     * A virtual-thread executor if {@code virtual} is set and supported, else {@code platform}'s executor.
+     * Asking for virtual threads on an older runtime logs a warning and falls back.
+     */
+    public static ExecutorService newExecutor(boolean virtual, String prefix, Supplier<ExecutorService> platform) {
+        if (virtual) {
+            if (isSupported()) {
+                return newPerTaskExecutor(prefix);
+            }
+            logger.warn("Virtual threads requested for {} but Java {} has none; using platform threads",
+                prefix, Runtime.version().feature());
+        }
+        return platform.get();
+    }
+
+    /**
+     * A thread factory for daemon platform threads all named {@code name}
+     */
+    public static ThreadFactory daemonFactory(String name) {
+        return r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Method find(Class<?> type, String name) {
+        try {
+            Method method = type.getMethod(name);
+            // Preview builds expose the method but throw unless previews are enabled
+            method.invoke(null);
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
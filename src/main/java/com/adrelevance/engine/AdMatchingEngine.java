@@ -131,14 +131,14 @@ public class AdMatchingEngine {
 
         // Check if user has shown interest in ad categories
         for (String category : ad.getCategories()) {
-            if (userState.getInterests().contains(category)) {
+            if (userState.hasInterest(category)) {
                 score += 0.3;
             }
         }
 
         // Check if user has interacted with similar ads before
-        Integer interactionCount = userState.getAdInteractionHistory().get(ad.getId());
-        if (interactionCount != null && interactionCount > 0) {
+        int interactionCount = userState.getAdInteractionCount(ad.getId());
+        if (interactionCount > 0) {
             score += Math.min(0.4, interactionCount * 0.1);
         }
 
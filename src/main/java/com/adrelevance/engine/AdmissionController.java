@@ -0,0 +1,167 @@
+package com.adrelevance.engine;
+
+import com.adrelevance.concurrent.AdaptiveConcurrencyLimiter;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides what each incoming message may cost, degrading in stages as the engine falls behind:
+ * <ol>
+ *   <li>{@link Stage#FULL}: within the adaptive limit for LLM-backed turns</li>
+ *   <li>{@link Stage#SKIP_LLM}: answered by local matching, within its own adaptive limit</li>
+ *   <li>{@link Stage#NO_AD}: an immediate no-ad answer that does not touch the engine,
+ *       up to {@code noAdRatio} times the turns the engine completed in the last second</li>
+ *   <li>{@link Stage#REJECT}: refused, to be retried after {@code retryAfterSeconds}</li>
+ * </ol>
+ * Both limits shrink as turn latency rises, so excess load is shed up front instead of
+ * queueing in the executors until every request times out.
+ */
+public class AdmissionController {
+
+    public enum Stage { FULL, SKIP_LLM, NO_AD, REJECT }
+
+    private static final long WINDOW_MS = 1000;
+
+    /** Ticket for when admission control is off: always the full path, nothing to release */
+    public static final Ticket UNLIMITED = new Ticket(null, Stage.FULL, null);
+
+    private final AdaptiveConcurrencyLimiter llmLimiter;
+    private final AdaptiveConcurrencyLimiter localLimiter;
+    private final double noAdRatio;
+    private final int retryAfterSeconds;
+    private final LongSupplier millisClock;
+    private final Map<Stage, AtomicLong> admitted = new EnumMap<>(Stage.class);
+
+    // One-second windows of completed turns and no-ad answers; guarded by this
+    private long windowStart;
+    private long completedInWindow;
+    private long completedInPreviousWindow;
+    private long noAdInWindow;
+
+    public AdmissionController(AdaptiveConcurrencyLimiter llmLimiter, AdaptiveConcurrencyLimiter localLimiter,
+                               double noAdRatio, int retryAfterSeconds) {
+        this(llmLimiter, localLimiter, noAdRatio, retryAfterSeconds, System::currentTimeMillis);
+    }
+
+    AdmissionController(AdaptiveConcurrencyLimiter llmLimiter, AdaptiveConcurrencyLimiter localLimiter,
+                        double noAdRatio, int retryAfterSeconds, LongSupplier millisClock) {
+        this.llmLimiter = llmLimiter;
+        this.localLimiter = localLimiter;
+        this.noAdRatio = noAdRatio;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.millisClock = millisClock;
+        this.windowStart = millisClock.getAsLong();
+        for (Stage stage : Stage.values()) {
+            admitted.put(stage, new AtomicLong());
+        }
+    }
+
+    /**
+     * Assigns a stage to one message; the ticket must be completed when its turn ends
+     */
+    public Ticket admit() {
+        AdaptiveConcurrencyLimiter.Permit permit = llmLimiter.tryAcquire();
+        if (permit != null) {
+            return ticket(Stage.FULL, permit);
+        }
+        permit = localLimiter.tryAcquire();
+        if (permit != null) {
+            return ticket(Stage.SKIP_LLM, permit);
+        }
+        return ticket(takeNoAdBudget() ? Stage.NO_AD : Stage.REJECT, null);
+    }
+
+    private Ticket ticket(Stage stage, AdaptiveConcurrencyLimiter.Permit permit) {
+        admitted.get(stage).incrementAndGet();
+        return new Ticket(this, stage, permit);
+    }
+
+    private synchronized boolean takeNoAdBudget() {
+        rollWindow();
+        // Never less than one local limit's worth, so a cold engine still answers
+        double budget = Math.max(localLimiter.getLimit(), noAdRatio * completedInPreviousWindow);
+        if (noAdInWindow < budget) {
+            noAdInWindow++;
+            return true;
+        }
+        return false;
+    }
+
+    private synchronized void turnCompleted() {
+        rollWindow();
+        completedInWindow++;
+    }
+
+    private void rollWindow() {
+        long now = millisClock.getAsLong();
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_MS) {
+            return;
+        }
+        completedInPreviousWindow = elapsed < 2 * WINDOW_MS ? completedInWindow : 0;
+        completedInWindow = 0;
+        noAdInWindow = 0;
+        windowStart = now - elapsed % WINDOW_MS;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        admitted.forEach((stage, count) -> metrics.put(stage.name(), count.get()));
+        metrics.put("llmLimiter", llmLimiter.getMetrics());
+        metrics.put("localLimiter", localLimiter.getMetrics());
+        return metrics;
+    }
+
+    /**
+     * A message's admission; {@link #success}, {@link #dropped} and {@link #release}
+     * are idempotent and only the first call counts
+     */
+    public static final class Ticket {
+        private final AdmissionController owner;
+        private final Stage stage;
+        private final AdaptiveConcurrencyLimiter.Permit permit;
+
+        private Ticket(AdmissionController owner, Stage stage, AdaptiveConcurrencyLimiter.Permit permit) {
+            this.owner = owner;
+            this.stage = stage;
+            this.permit = permit;
+        }
+
+        public Stage stage() {
+            return stage;
+        }
+
+        public int retryAfterSeconds() {
+            return owner != null ? owner.retryAfterSeconds : 0;
+        }
+
+        /** The turn completed at the admitted stage */
+        public void success() {
+            if (permit != null && permit.success()) {
+                owner.turnCompleted();
+            }
+        }
+
+        /** The turn could not be served at its stage, e.g. the LLM call was refused; it was still answered */
+        public void dropped() {
+            if (permit != null && permit.dropped()) {
+                owner.turnCompleted();
+            }
+        }
+
+        /** Frees the slot without a sample, for turns that never ran */
+        public void release() {
+            if (permit != null) {
+                permit.ignore();
+            }
+        }
+    }
+}
@@ -1,17 +1,32 @@
 package com.adrelevance.engine;
 
+import com.adrelevance.concurrent.AdaptiveConcurrencyLimiter;
+import com.adrelevance.concurrent.VirtualThreads;
+import com.adrelevance.llm.ChatGPTCallRejectedException;
 import com.adrelevance.llm.ChatGPTService;
 import com.adrelevance.model.*;
+import com.adrelevance.persistence.ColdConversationStore;
+import com.adrelevance.persistence.DurableStateStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Enhanced Ad Relevance Engine that uses ChatGPT for intelligent context analysis
@@ -20,128 +35,398 @@ import java.util.concurrent.Executors;
 public class ChatGPTEnhancedAdRelevanceEngine {
     private static final Logger logger = LoggerFactory.getLogger(ChatGPTEnhancedAdRelevanceEngine.class);
     
+    private static final String NO_AD_RESPONSE = "I don't have ad suggestions for this product right now. Try asking about technology, fashion, travel, food, fitness, or beauty products! 💡";
+    private static final String LOCAL_NO_AD_RESPONSE = "I'm here to help! What are you interested in today? 🤔";
+    
     private final ChatGPTService chatGPTService;
     private final ConversationManager conversationManager;
     private final ExecutorService executorService;
-    private final ConcurrentHashMap<String, ConversationContext> conversationCache;
+    // Serializes work per conversation so turns are applied in order
+    private final KeyedSerialExecutor<String> conversationLanes;
+    
+    // Local matching used when the ChatGPT call is refused before it leaves the process
+    private final ContextAnalyzer contextAnalyzer;
+    private final AdMatchingEngine adMatchingEngine;
+    private final ConversationalResponseGenerator responseGenerator;
+    private final AtomicLong degradedResponses = new AtomicLong();
+    private final AtomicLong shedResponses = new AtomicLong();
+    
+    // Durable state; empty directory keeps everything in memory only
+    @Value("${adrelevance.state.dir:}")
+    private String stateDir = "";
+    
+    @Value("${adrelevance.state.snapshot-interval-ms:300000}")
+    private long snapshotIntervalMs = 300000;
+    
+    // Idle state spills here instead of being dropped; empty disables the cold tier
+    @Value("${adrelevance.cold-tier.dir:}")
+    private String coldTierDir = "";
+    
+    // Adaptive admission control; disabled, every message takes the full LLM path
+    @Value("${adrelevance.admission.enabled:true}")
+    private boolean admissionEnabled = true;
+    
+    @Value("${adrelevance.admission.llm-initial-limit:20}")
+    private int llmInitialLimit = 20;
+    
+    @Value("${adrelevance.admission.llm-max-limit:200}")
+    private int llmMaxLimit = 200;
+    
+    @Value("${adrelevance.admission.local-max-limit:1000}")
+    private int localMaxLimit = 1000;
+    
+    @Value("${adrelevance.admission.no-ad-ratio:1.0}")
+    private double noAdRatio = 1.0;
+    
+    @Value("${adrelevance.admission.retry-after-seconds:1}")
+    private int retryAfterSeconds = 1;
+    
+    private volatile AdmissionController admission;
     
-    @Autowired
     public ChatGPTEnhancedAdRelevanceEngine(ChatGPTService chatGPTService) {
+        this(chatGPTService, MessageHistory.DEFAULT_CAPACITY, ConversationManager.DEFAULT_IDLE_TTL_MS, false);
+    }
+    
+    /**
+     * @param virtualThreads run conversation lanes on virtual threads, when the runtime has them,
+     *                       instead of a fixed pool of 10; lanes mostly wait on the OpenAI call
+     */
+    @Autowired
+    public ChatGPTEnhancedAdRelevanceEngine(ChatGPTService chatGPTService,
+                                            @Value("${adrelevance.history.capacity:50}") int historyCapacity,
+                                            @Value("${adrelevance.idle-ttl-ms:1800000}") long idleTtlMs,
+                                            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
         this.chatGPTService = chatGPTService;
-        this.conversationManager = new ConversationManager();
-        this.executorService = Executors.newFixedThreadPool(10);
-        this.conversationCache = new ConcurrentHashMap<>();
-    }
-    
-    /**
-     * Processes a message using ChatGPT for intelligent ad suggestions
-     */
-    public CompletableFuture<AdSuggestion> processMessage(String conversationId, String userId, String message) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                long startTime = System.currentTimeMillis();
-                
-                // Get or create conversation context
-                ConversationContext context = getOrCreateConversationContext(conversationId, userId);
-                
-                // Add user message to context
-                Message userMessage = new Message(message, userId, MessageType.USER_MESSAGE);
-                context.addMessage(userMessage);
-                
-                // Get conversation history for context
-                List<Message> conversationHistory = context.getMessages();
-                UserState userState = context.getUserState();
-                
-                // Use ChatGPT to analyze context and suggest ads
-                ChatGPTService.ChatGPTAdSuggestion chatGPTSuggestion = chatGPTService
-                    .analyzeContextAndSuggestAd(conversationId, userId, message, conversationHistory, userState)
-                    .join();
-                
-                long processingTime = System.currentTimeMillis() - startTime;
-                
-                if (chatGPTSuggestion.hasAd()) {
-                    // Create ad suggestion response
-                    AdSuggestion adSuggestion = new AdSuggestion(
-                        chatGPTSuggestion.getAd(),
-                        chatGPTSuggestion.getAd().getConversationalTemplate(),
-                        chatGPTSuggestion.getConfidence()
-                    );
-                    
-                    // Add assistant response to context
-                    Message assistantMessage = new Message(adSuggestion.getResponse(), "assistant", MessageType.BOT_RESPONSE);
-                    context.addMessage(assistantMessage);
-                    
-                    logger.info("Generated ChatGPT-powered ad suggestion for conversation {}: {} (score: {}) in {}ms", 
-                        conversationId, chatGPTSuggestion.getAd().getTitle(), chatGPTSuggestion.getConfidence(), processingTime);
-                    
-                    return adSuggestion;
-                } else {
-                    // No relevant ad found
-                    String fallbackResponse = "I don't have ad suggestions for this product right now. Try asking about technology, fashion, travel, food, fitness, or beauty products! 💡";
-                    
-                    // Add assistant response to context
-                    Message assistantMessage = new Message(fallbackResponse, "assistant", MessageType.BOT_RESPONSE);
-                    context.addMessage(assistantMessage);
+        EngineComponents components = EngineComponents.initialize();
+        this.conversationManager = new ConversationManager(idleTtlMs, ConversationManager.DEFAULT_EVICTION_TICK_MS);
+        this.conversationManager.setHistoryCapacity(historyCapacity);
+        this.contextAnalyzer = components.contextAnalyzer();
+        this.adMatchingEngine = components.adMatchingEngine();
+        this.responseGenerator = components.responseGenerator();
+        this.executorService = VirtualThreads.newExecutor(virtualThreads, "conversation-",
+            () -> Executors.newFixedThreadPool(10));
+        this.conversationLanes = new KeyedSerialExecutor<>(executorService);
+        initAdmission();
+    }
+    
+    @PostConstruct
+    public void init() throws IOException {
+        initAdmission();
+        initStateStores();
+    }
+    
+    /**
+     * (Re)builds admission control from the configured settings; also called from the
+     * constructor so that instances created outside Spring run with the defaults
+     */
+    private void initAdmission() {
+        this.admission = admissionEnabled
+            ? new AdmissionController(
+                new AdaptiveConcurrencyLimiter("llm", llmInitialLimit, 1, llmMaxLimit),
+                new AdaptiveConcurrencyLimiter("local", Math.min(100, localMaxLimit), 1, localMaxLimit),
+                noAdRatio, retryAfterSeconds)
+            : null;
+    }
+    
+    public void initStateStores() throws IOException {
+        // Cold tier first, so recovered state that is already idle goes straight to it
+        if (coldTierDir != null && !coldTierDir.isBlank()) {
+            enableColdTier(Path.of(coldTierDir, "chatgpt"));
+        }
+        if (stateDir != null && !stateDir.isBlank()) {
+            enableDurability(Path.of(stateDir, "chatgpt"), snapshotIntervalMs);
+        }
+    }
+    
+    /**
+     * Processes a message using ChatGPT for intelligent ad suggestions.
+     * Messages for one conversation are processed one at a time, in arrival order.
+     * Under load the message is answered from local matching, then with no ad and without
+     * touching the conversation, then refused with {@link EngineOverloadedException}.
+     */
+    public CompletableFuture<AdSuggestion> processMessage(String requestedConversationId, String userId, String message) {
+        String conversationId = conversationIdFor(requestedConversationId, userId);
+        AdmissionController.Ticket ticket = admit();
+        CompletableFuture<AdSuggestion> result = switch (ticket.stage()) {
+            case REJECT -> CompletableFuture.failedFuture(new EngineOverloadedException(ticket.retryAfterSeconds()));
+            case NO_AD -> CompletableFuture.completedFuture(shedTurn());
+            case SKIP_LLM -> conversationLanes.submit(conversationId, () -> {
+                beginTurn(conversationId, userId, message);
+                AdSuggestion suggestion = processLocally(conversationId, userId);
+                ticket.success();
+                return suggestion;
+            });
+            case FULL -> conversationLanes.submit(conversationId, () -> {
+                try {
+                    Turn turn = beginTurn(conversationId, userId, message);
                     
-                    logger.info("No relevant ad found for conversation {} (confidence: {}) in {}ms", 
-                        conversationId, chatGPTSuggestion.getConfidence(), processingTime);
+                    // Use ChatGPT to analyze context and suggest ads
+                    ChatGPTService.ChatGPTAdSuggestion chatGPTSuggestion = chatGPTService
+                        .analyzeContextAndSuggestAd(conversationId, userId, message, turn.history(), turn.context().getUserState())
+                        .join();
                     
-                    return new AdSuggestion(null, fallbackResponse, 0.0);
+                    ticket.success();
+                    return completeTurn(turn, chatGPTSuggestion);
+                } catch (Exception e) {
+                    failed(ticket, e);
+                    return failTurn(conversationId, userId, e);
                 }
-                
-            } catch (Exception e) {
-                logger.error("Error processing message with ChatGPT for conversation {}: {}", conversationId, e.getMessage(), e);
-                return new AdSuggestion(null, "Sorry, I encountered an error processing your message.", 0.0);
+            });
+        };
+        // Frees the slot if the turn failed before reporting its outcome
+        return result.whenComplete((suggestion, error) -> ticket.release());
+    }
+    
+    /**
+     * Reactive form of {@link #processMessage}: the OpenAI call goes through the non-blocking
+     * client, so no thread waits on it. Turns of one conversation still run in arrival order;
+     * the lane is held until the call completes, without a thread.
+     */
+    public Mono<AdSuggestion> processMessageReactive(String requestedConversationId, String userId, String message) {
+        String conversationId = conversationIdFor(requestedConversationId, userId);
+        return Mono.defer(() -> {
+            AdmissionController.Ticket ticket = admit();
+            Mono<AdSuggestion> result = switch (ticket.stage()) {
+                case REJECT -> Mono.error(new EngineOverloadedException(ticket.retryAfterSeconds()));
+                case NO_AD -> Mono.fromSupplier(this::shedTurn);
+                case SKIP_LLM -> Mono.fromCompletionStage(() -> conversationLanes.submit(conversationId, () -> {
+                    beginTurn(conversationId, userId, message);
+                    AdSuggestion suggestion = processLocally(conversationId, userId);
+                    ticket.success();
+                    return suggestion;
+                }));
+                case FULL -> Mono.fromCompletionStage(() -> conversationLanes.submitAsync(conversationId, () -> {
+                    Turn turn = beginTurn(conversationId, userId, message);
+                    return chatGPTService
+                        .suggestAdReactive(conversationId, message, turn.history(), turn.context().getUserState())
+                        .map(chatGPTSuggestion -> {
+                            ticket.success();
+                            return completeTurn(turn, chatGPTSuggestion);
+                        })
+                        .onErrorResume(e -> Mono.fromSupplier(() -> {
+                            failed(ticket, e);
+                            return failTurn(conversationId, userId, e);
+                        }))
+                        .toFuture();
+                }));
+            };
+            return result.doFinally(signal -> ticket.release());
+        });
+    }
+    
+    private AdmissionController.Ticket admit() {
+        AdmissionController admission = this.admission;
+        return admission != null ? admission.admit() : AdmissionController.UNLIMITED;
+    }
+    
+    /**
+     * Cheapest answer under overload: no ad, and the conversation is left as it was
+     */
+    private AdSuggestion shedTurn() {
+        shedResponses.incrementAndGet();
+        return new AdSuggestion(null, LOCAL_NO_AD_RESPONSE, 0.0);
+    }
+    
+    /**
+     * Records the user's message and captures the history the LLM call is made with
+     */
+    private Turn beginTurn(String conversationId, String userId, String message) {
+        // Get or create conversation context
+        ConversationContext context = conversationManager.getOrCreateContext(conversationId, userId);
+        
+        // Add user message to context
+        Message userMessage = new Message(message, userId, MessageType.USER_MESSAGE);
+        conversationManager.appendMessage(context, userMessage);
+        
+        // Get conversation history for context
+        List<Message> conversationHistory = context.getRecentMessages(conversationManager.getHistoryCapacity());
+        return new Turn(conversationId, context, conversationHistory, System.currentTimeMillis());
+    }
+    
+    /**
+     * Turns the LLM's answer into the reply and records it in the conversation
+     */
+    private AdSuggestion completeTurn(Turn turn, ChatGPTService.ChatGPTAdSuggestion chatGPTSuggestion) {
+        long processingTime = System.currentTimeMillis() - turn.startMillis();
+        
+        if (chatGPTSuggestion.hasAd()) {
+            // Create ad suggestion response; the HTML creative is rendered only if a client asks for it
+            Ad ad = chatGPTSuggestion.getAd();
+            AdSuggestion adSuggestion = AdSuggestion.rendered(
+                ad,
+                chatGPTSuggestion.getReasoning(),
+                ad::getConversationalTemplate,
+                chatGPTSuggestion.getConfidence()
+            );
+            
+            // Add assistant response to context, as text: the banner markup means nothing to the model
+            Message assistantMessage = new Message(adSuggestion.getResponseText(), "assistant", MessageType.BOT_RESPONSE);
+            conversationManager.appendMessage(turn.context(), assistantMessage);
+            
+            logger.info("Generated ChatGPT-powered ad suggestion for conversation {}: {} (score: {}) in {}ms", 
+                turn.conversationId(), chatGPTSuggestion.getAd().getTitle(), chatGPTSuggestion.getConfidence(), processingTime);
+            
+            return adSuggestion;
+        } else {
+            // No relevant ad found
+            String fallbackResponse = NO_AD_RESPONSE;
+            
+            // Add assistant response to context
+            Message assistantMessage = Message.canned(fallbackResponse, "assistant", MessageType.BOT_RESPONSE);
+            conversationManager.appendMessage(turn.context(), assistantMessage);
+            
+            logger.info("No relevant ad found for conversation {} (confidence: {}) in {}ms", 
+                turn.conversationId(), chatGPTSuggestion.getConfidence(), processingTime);
+            
+            return new AdSuggestion(null, fallbackResponse, 0.0);
+        }
+    }
+    
+    private AdSuggestion failTurn(String conversationId, String userId, Throwable e) {
+        if (isRejectedLocally(e)) {
+            // Quota exhausted, breaker open or bulkhead full: answer from local matching instead
+            return processLocally(conversationId, userId);
+        }
+        logger.error("Error processing message with ChatGPT for conversation {}: {}", conversationId, e.getMessage(), e);
+        return new AdSuggestion(null, "Sorry, I encountered an error processing your message.", 0.0);
+    }
+    
+    /**
+     * Degraded path: keyword context analysis and inventory matching, no LLM call
+     */
+    private AdSuggestion processLocally(String conversationId, String userId) {
+        degradedResponses.incrementAndGet();
+        ConversationContext context = conversationManager.getOrCreateContext(conversationId, userId);
+        contextAnalyzer.analyzeContext(context);
+        conversationManager.syncUserState(context.getUserState());
+        
+        List<Ad> relevantAds = adMatchingEngine.findRelevantAds(context, 1);
+        if (relevantAds.isEmpty()) {
+            logger.info("ChatGPT unavailable for conversation {}, no local ad match", conversationId);
+            return new AdSuggestion(null, LOCAL_NO_AD_RESPONSE, 0.0);
+        }
+        
+        Ad bestAd = relevantAds.get(0);
+        String response = responseGenerator.generateResponse(bestAd, context);
+        conversationManager.appendMessage(context, new Message(response, "assistant", MessageType.BOT_RESPONSE));
+        logger.info("ChatGPT unavailable for conversation {}, served local match {}", conversationId, bestAd.getTitle());
+        return new AdSuggestion(bestAd, response, bestAd.getRelevanceScore());
+    }
+    
+    /**
+     * Only a refused or timed-out call says the LLM path is overloaded and the limit should
+     * come down; any other failure frees the slot without a sample
+     */
+    private static void failed(AdmissionController.Ticket ticket, Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ChatGPTCallRejectedException || cause instanceof TimeoutException
+                    || cause instanceof SocketTimeoutException) {
+                ticket.dropped();
+                return;
+            }
+        }
+        ticket.release();
+    }
+    
+    private static boolean isRejectedLocally(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ChatGPTCallRejectedException) {
+                return true;
             }
-        }, executorService);
+        }
+        return false;
     }
     
     /**
-     * Updates user preferences
+     * Updates user preferences in place. Conversations hold the user's state by reference,
+     * so only this user's conversations see the change and every other context is untouched.
+     * A null {@code adPreferencesEnabled} keeps the user's current setting.
      */
-    public void updateUserPreferences(String userId, List<String> interests, List<String> blockedCategories, boolean adPreferencesEnabled) {
+    public void updateUserPreferences(String userId, List<String> interests, List<String> blockedCategories, Boolean adPreferencesEnabled) {
         UserState userState = conversationManager.getOrCreateUserState(userId);
         userState.setInterests(interests);
         userState.setBlockedCategories(blockedCategories);
-        userState.setAdPreferencesEnabled(adPreferencesEnabled);
+        if (adPreferencesEnabled != null) {
+            userState.setAdPreferencesEnabled(adPreferencesEnabled);
+        }
         conversationManager.updateUserState(userId, userState);
         
-        // Clear conversation cache to ensure fresh context
-        conversationCache.clear();
-        
         logger.info("Updated user preferences for user {}: interests={}, blocked={}, enabled={}", 
             userId, interests, blockedCategories, adPreferencesEnabled);
     }
     
+    /**
+     * Spills conversations and users idle past the TTL to memory-mapped files under
+     * {@code coldDir} instead of dropping them; they are restored on their next message
+     */
+    public void enableColdTier(Path coldDir) throws IOException {
+        conversationManager.enableColdTier(new ColdConversationStore(coldDir));
+    }
+    
+    /**
+     * Restores conversations and users saved in {@code stateDir} and keeps them durable
+     * from now on with a write-ahead log and periodic snapshots
+     */
+    public void enableDurability(Path stateDir, long snapshotIntervalMs) throws IOException {
+        conversationManager.enableDurability(new DurableStateStore(stateDir), snapshotIntervalMs);
+    }
+    
+    /**
+     * Marks a user as a paying tenant, which raises their priority for OpenAI quota
+     */
+    public void setUserPremium(String userId, boolean premium) {
+        UserState userState = conversationManager.getOrCreateUserState(userId);
+        userState.setPremium(premium);
+        conversationManager.syncUserState(userState);
+    }
+    
     /**
      * Gets engine statistics
      */
     public EngineStats getStats() {
-        return new EngineStats(
-            conversationCache.size(),
+        EngineStats stats = new EngineStats(
+            conversationManager.getActiveConversationCount(),
             0, // No hardcoded inventory with ChatGPT
-            conversationManager.getTotalUserCount()
+            conversationManager.getTotalUserCount(),
+            conversationManager.getEvictedConversationCount(),
+            conversationManager.getEvictedUserCount()
         );
+        stats.setColdConversations(conversationManager.getColdConversationCount());
+        stats.setColdUsers(conversationManager.getColdUserCount());
+        return stats;
     }
     
     /**
-     * Gets or creates a conversation context
+     * Gets circuit breaker, bulkhead and quota state of the ChatGPT upstream
      */
-    private ConversationContext getOrCreateConversationContext(String conversationId, String userId) {
+    public Map<String, Object> getLlmStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(chatGPTService.getResilienceStats());
+        stats.put("degradedToLocalMatching", degradedResponses.get());
+        stats.put("shedWithoutAd", shedResponses.get());
+        AdmissionController admission = this.admission;
+        if (admission != null) {
+            stats.put("admission", admission.getMetrics());
+        }
+        return stats;
+    }
+    
+    /**
+     * Resolves the conversation a message belongs to
+     */
+    private static String conversationIdFor(String conversationId, String userId) {
         // Handle null conversationId by generating a default one
-        String safeConversationId = conversationId != null ? conversationId : "default_" + userId + "_" + System.currentTimeMillis();
-        
-        return conversationCache.computeIfAbsent(safeConversationId, id -> {
-            ConversationContext context = new ConversationContext(id, userId);
-            context.setUserState(conversationManager.getOrCreateUserState(userId));
-            return context;
-        });
+        return conversationId != null ? conversationId : "default_" + userId + "_" + System.currentTimeMillis();
     }
     
     /**
-     * Shuts down the executor service
+     * Shuts down the executor service, the idle eviction timer and the state journal
      */
+    @PreDestroy
     public void shutdown() {
         executorService.shutdown();
+        conversationManager.shutdown();
+    }
+    
+    private record Turn(String conversationId, ConversationContext context, List<Message> history, long startMillis) {
     }
 }
@@ -27,12 +27,11 @@ public class ContextAnalyzer {
      * Analyzes the conversation context and updates it with detected information
      */
     public void analyzeContext(ConversationContext context) {
-        if (context.getMessages() == null || context.getMessages().isEmpty()) {
+        // Analyze recent messages for intent and mood
+        List<Message> recentMessages = context.getRecentMessages(5);
+        if (recentMessages.isEmpty()) {
             return;
         }
-
-        // Analyze recent messages for intent and mood
-        List<Message> recentMessages = getRecentMessages(context.getMessages(), 5);
         String combinedText = combineMessages(recentMessages);
         
         // Detect intents
@@ -56,16 +55,12 @@ public class ContextAnalyzer {
                    context.getConversationId(), mood, detectedIntents);
     }
 
-    private List<Message> getRecentMessages(List<Message> messages, int count) {
-        int startIndex = Math.max(0, messages.size() - count);
-        return messages.subList(startIndex, messages.size());
-    }
-
     private String combineMessages(List<Message> messages) {
         StringBuilder combined = new StringBuilder();
         for (Message message : messages) {
-            if (message.getContent() != null) {
-                combined.append(message.getContent()).append(" ");
+            String content = message.getContent();
+            if (content != null) {
+                combined.append(content).append(" ");
             }
         }
         return combined.toString().toLowerCase().trim();
@@ -149,11 +144,9 @@ public class ContextAnalyzer {
         UserMood userMood = mapConversationMoodToUserMood(mood);
         userState.setCurrentMood(userMood);
         
-        // Add detected intents as interests if they're not already present
+        // Add detected intents as interests (a no-op for ones already present)
         for (String intent : intents) {
-            if (!userState.getInterests().contains(intent)) {
-                userState.addInterest(intent);
-            }
+            userState.addInterest(intent);
         }
     }
 
@@ -1,72 +1,439 @@
 package com.adrelevance.engine;
 
 import com.adrelevance.model.*;
+import com.adrelevance.persistence.ColdConversationStore;
+import com.adrelevance.persistence.DurableStateStore;
+import com.adrelevance.persistence.StateJournal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 /**
- * Manages conversation contexts and user states
+ * Manages conversation contexts and user states.
+ * Conversations and users idle for longer than the TTL are evicted by a timer wheel,
+ * so memory follows the number of active users rather than every user ever seen.
  */
 public class ConversationManager {
     private static final Logger logger = LoggerFactory.getLogger(ConversationManager.class);
     
+    public static final long DEFAULT_IDLE_TTL_MS = TimeUnit.MINUTES.toMillis(30);
+    public static final long DEFAULT_EVICTION_TICK_MS = 1000;
+    private static final int MISS_LOCK_STRIPES = 64;
+    
+    // One daemon thread ticks every manager's wheels, however many managers a process creates
+    private static final ScheduledThreadPoolExecutor EVICTION_TIMER = newEvictionTimer();
+    
+    /**
+     * Called once idle state is dropped, e.g. to persist it. Runs on the eviction thread,
+     * which all managers share, outside the map's locks; a lookup of the same id waits
+     * until it returns, so it may write to disk but should not dawdle.
+     */
+    public interface EvictionListener {
+        default void onConversationEvicted(ConversationContext context) { }
+        default void onUserEvicted(UserState userState) { }
+    }
+    
     private final Map<String, ConversationContext> conversations;
     private final Map<String, UserState> userStates;
+    // userId -> ids of that user's live conversations, so per-user updates skip everyone else
+    private final Map<String, Set<String>> conversationIdsByUser = new ConcurrentHashMap<>();
+    private volatile int historyCapacity = MessageHistory.DEFAULT_CAPACITY;
+    private volatile BiConsumer<String, Message> historyEvictionListener;
+    private volatile StateJournal journal = StateJournal.NONE;
+    private volatile ColdConversationStore coldStore;
+    
+    // Idle eviction
+    private final long idleTtlMs;
+    private final IdleEvictionWheel<String> conversationWheel;
+    private final IdleEvictionWheel<String> userWheel;
+    private final ScheduledFuture<?> evictionTask;
+    private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong evictedConversations = new AtomicLong();
+    private final AtomicLong evictedUsers = new AtomicLong();
+    
+    // Misses are resolved under a striped lock instead of inside computeIfAbsent, so cold-tier
+    // reads, which touch the disk, never hold a map bin lock or pin a virtual thread
+    private final ReentrantLock[] conversationMissLocks = newStripes();
+    private final ReentrantLock[] userMissLocks = newStripes();
 
     public ConversationManager() {
+        this(DEFAULT_IDLE_TTL_MS, DEFAULT_EVICTION_TICK_MS);
+    }
+
+    /**
+     * @param idleTtlMs how long a conversation or user may stay idle; 0 or less disables eviction
+     */
+    public ConversationManager(long idleTtlMs, long evictionTickMs) {
         this.conversations = new ConcurrentHashMap<>();
         this.userStates = new ConcurrentHashMap<>();
+        this.idleTtlMs = idleTtlMs;
+        
+        if (idleTtlMs <= 0) {
+            this.conversationWheel = null;
+            this.userWheel = null;
+            this.evictionTask = null;
+            return;
+        }
+        long now = System.currentTimeMillis();
+        this.conversationWheel = new IdleEvictionWheel<>(idleTtlMs, evictionTickMs, now,
+            this::conversationLastActivity, this::evictConversation);
+        this.userWheel = new IdleEvictionWheel<>(idleTtlMs, evictionTickMs, now,
+            this::userLastActivity, this::evictUser);
+        this.evictionTask = EVICTION_TIMER.scheduleWithFixedDelay(() -> runEviction(System.currentTimeMillis()),
+            evictionTickMs, evictionTickMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static ScheduledThreadPoolExecutor newEvictionTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "conversation-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // A shut-down manager's task leaves the queue at once rather than at its next tick
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
     }
 
     /**
      * Gets or creates a conversation context
      */
     public ConversationContext getOrCreateContext(String conversationId, String userId) {
-        return conversations.computeIfAbsent(conversationId, id -> {
-            ConversationContext context = new ConversationContext(id, userId);
-            UserState userState = getOrCreateUserState(userId);
-            context.setUserState(userState);
-            logger.info("Created new conversation context: {}", id);
-            return context;
-        });
+        while (true) {
+            ConversationContext context = conversations.get(conversationId);
+            if (context == null) {
+                context = resolveMiss(conversationId, userId);
+            }
+            touch(context);
+            // Evicted between the lookup and the touch: use what was spilled instead
+            if (conversations.get(conversationId) == context) {
+                return context;
+            }
+        }
+    }
+
+    /**
+     * Rehydrates a conversation missing from the heap or, if {@code userId} is set and the
+     * cold tier does not have it either, creates it; null otherwise
+     */
+    private ConversationContext resolveMiss(String conversationId, String userId) {
+        ReentrantLock lock = stripe(conversationMissLocks, conversationId);
+        lock.lock();
+        try {
+            ConversationContext context = conversations.get(conversationId);
+            if (context != null) {
+                return context;
+            }
+            context = rehydrate(conversationId);
+            if (context == null) {
+                if (userId == null) {
+                    return null;
+                }
+                context = newContext(conversationId, userId);
+                context.setUserState(getOrCreateUserState(userId));
+                index(context);
+                logger.info("Created new conversation context: {}", conversationId);
+            }
+            ConversationContext raced = conversations.putIfAbsent(conversationId, context);
+            return raced != null ? raced : context;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates a context with this manager's history window and eviction listener
+     */
+    public ConversationContext newContext(String conversationId, String userId) {
+        ConversationContext context = new ConversationContext(conversationId, userId, historyCapacity);
+        BiConsumer<String, Message> listener = historyEvictionListener;
+        if (listener != null) {
+            context.getMessageHistory().setEvictionListener(message -> listener.accept(conversationId, message));
+        }
+        return context;
+    }
+
+    /**
+     * Sets how many messages each new conversation keeps in its history window
+     */
+    public void setHistoryCapacity(int historyCapacity) {
+        if (historyCapacity <= 0) {
+            throw new IllegalArgumentException("historyCapacity must be positive");
+        }
+        this.historyCapacity = historyCapacity;
+    }
+
+    public int getHistoryCapacity() {
+        return historyCapacity;
+    }
+
+    /**
+     * Receives (conversationId, message) for messages that fall out of a history window
+     */
+    public void setHistoryEvictionListener(BiConsumer<String, Message> historyEvictionListener) {
+        this.historyEvictionListener = historyEvictionListener;
+    }
+
+    /**
+     * Adds a message to a conversation and journals it. Callers serialize calls per
+     * conversation, so journal order matches history order.
+     */
+    public void appendMessage(ConversationContext context, Message message) {
+        context.addMessage(message);
+        StateJournal journal = this.journal;
+        if (journal != StateJournal.NONE) {
+            journal.messageAdded(context, message, context.getTotalMessageCount());
+        }
+    }
+
+    /**
+     * Journals the user's durable fields if they changed since they were last journaled
+     */
+    public void syncUserState(UserState userState) {
+        StateJournal journal = this.journal;
+        if (userState != null && journal != StateJournal.NONE && userState.markJournaled()) {
+            journal.userStateChanged(userState);
+        }
+    }
+
+    /**
+     * Recovers state from {@code store}, installs it, and from then on journals every
+     * change to the store and snapshots it every {@code snapshotIntervalMs}
+     */
+    public void enableDurability(DurableStateStore store, long snapshotIntervalMs) throws IOException {
+        DurableStateStore.RecoveredState recovered = store.recover(this::newContext);
+        long cutoff = idleTtlMs > 0 ? System.currentTimeMillis() - idleTtlMs : Long.MIN_VALUE;
+        ColdConversationStore coldStore = this.coldStore;
+        int restoredConversations = 0;
+        for (UserState userState : recovered.users()) {
+            if (userState.getLastActiveMillis() > cutoff) {
+                userStates.put(userState.getUserId(), userState);
+                if (userWheel != null) {
+                    userWheel.schedule(userState.getUserId(), userState.getLastActiveMillis());
+                }
+            } else if (coldStore != null) {
+                coldStore.spill(userState);
+            }
+        }
+        for (ConversationContext context : recovered.conversations()) {
+            // Anything idle past the TTL would have been evicted had the process stayed up
+            if (context.getLastActivityMillis() <= cutoff) {
+                if (coldStore != null) {
+                    coldStore.spill(context);
+                }
+            } else {
+                context.setUserState(userStates.computeIfAbsent(context.getUserId(), UserState::new));
+                conversations.put(context.getConversationId(), context);
+                index(context);
+                if (conversationWheel != null) {
+                    conversationWheel.schedule(context.getConversationId(), context.getLastActivityMillis());
+                }
+                restoredConversations++;
+            }
+        }
+        this.journal = store;
+        store.startSnapshots(() -> new ArrayList<>(userStates.values()),
+            () -> new ArrayList<>(conversations.values()),
+            records -> {
+                ColdConversationStore spilled = this.coldStore;
+                if (spilled != null) {
+                    spilled.forEachRecord(records);
+                }
+            },
+            snapshotIntervalMs);
+        logger.info("Durable state enabled in {}: restored {} users and {} conversations",
+            store.getDirectory(), userStates.size(), restoredConversations);
     }
 
     /**
      * Gets an existing conversation context
      */
     public ConversationContext getContext(String conversationId) {
-        return conversations.get(conversationId);
+        while (true) {
+            ConversationContext context = conversations.get(conversationId);
+            if (context == null && coldStore != null) {
+                // Not inserted when the cold tier does not have it either
+                context = resolveMiss(conversationId, null);
+            }
+            if (context == null) {
+                return null;
+            }
+            touch(context);
+            // Evicted between the lookup and the touch: use what was spilled instead
+            if (conversations.get(conversationId) == context) {
+                return context;
+            }
+        }
+    }
+    
+    /**
+     * Brings a spilled conversation back from the cold tier, with its user; null if it is not there
+     */
+    private ConversationContext rehydrate(String conversationId) {
+        ColdConversationStore coldStore = this.coldStore;
+        if (coldStore == null) {
+            return null;
+        }
+        long startNanos = System.nanoTime();
+        ConversationContext context = coldStore.takeConversation(conversationId, this::newContext);
+        if (context != null) {
+            context.setUserState(getOrCreateUserState(context.getUserId()));
+            index(context);
+            logger.debug("Rehydrated conversation {} from the cold tier in {}us",
+                conversationId, (System.nanoTime() - startNanos) / 1000);
+        }
+        return context;
+    }
+
+    /**
+     * Spills conversations and users to {@code store} when they go idle instead of
+     * dropping them, and brings them back on their next access
+     */
+    public void enableColdTier(ColdConversationStore store) {
+        this.coldStore = store;
+        addEvictionListener(new EvictionListener() {
+            @Override
+            public void onConversationEvicted(ConversationContext context) {
+                store.spill(context);
+            }
+
+            @Override
+            public void onUserEvicted(UserState userState) {
+                store.spill(userState);
+            }
+        });
+        logger.info("Cold tier enabled, idle state spills after {}ms", idleTtlMs);
+    }
+
+    private void touch(ConversationContext context) {
+        // Also touches the user: a user is never idler than their conversations, so users expire after them
+        context.touch();
+        if (conversationWheel != null) {
+            conversationWheel.schedule(context.getConversationId(), context.getLastActivityMillis());
+        }
     }
 
     /**
      * Gets or creates a user state
      */
     public UserState getOrCreateUserState(String userId) {
-        return userStates.computeIfAbsent(userId, id -> {
-            UserState userState = new UserState(id);
-            logger.info("Created new user state: {}", id);
-            return userState;
-        });
+        while (true) {
+            UserState userState = userStates.get(userId);
+            if (userState == null) {
+                userState = resolveUserMiss(userId, true);
+            }
+            userState.touch();
+            if (userWheel != null) {
+                userWheel.schedule(userId, userState.getLastActiveMillis());
+            }
+            // Evicted between the lookup and the touch: use what was spilled instead
+            if (userStates.get(userId) == userState) {
+                return userState;
+            }
+        }
     }
 
     /**
      * Gets an existing user state
      */
     public UserState getUserState(String userId) {
-        return userStates.get(userId);
+        UserState userState = userStates.get(userId);
+        ColdConversationStore coldStore = this.coldStore;
+        if (userState == null && coldStore != null) {
+            userState = resolveUserMiss(userId, false);
+        }
+        return userState;
+    }
+
+    /**
+     * Rehydrates a user missing from the heap or, if {@code create} is set, creates it; null otherwise
+     */
+    private UserState resolveUserMiss(String userId, boolean create) {
+        ReentrantLock lock = stripe(userMissLocks, userId);
+        lock.lock();
+        try {
+            UserState userState = userStates.get(userId);
+            if (userState != null) {
+                return userState;
+            }
+            ColdConversationStore coldStore = this.coldStore;
+            userState = coldStore != null ? coldStore.takeUser(userId) : null;
+            if (userState == null) {
+                if (!create) {
+                    return null;
+                }
+                userState = new UserState(userId);
+                logger.info("Created new user state: {}", userId);
+            }
+            UserState raced = userStates.putIfAbsent(userId, userState);
+            return raced != null ? raced : userState;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ReentrantLock[] newStripes() {
+        ReentrantLock[] stripes = new ReentrantLock[MISS_LOCK_STRIPES];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        return stripes;
+    }
+
+    private static ReentrantLock stripe(ReentrantLock[] stripes, String key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
     }
 
     /**
      * Clears a conversation context
      */
     public void clearConversation(String conversationId) {
-        conversations.remove(conversationId);
+        discardConversation(conversationId);
         logger.info("Cleared conversation: {}", conversationId);
     }
 
+    /**
+     * Clears every conversation context, spilled ones included; user states are kept
+     */
+    public void clearAllConversations() {
+        Set<String> conversationIds = new HashSet<>(conversations.keySet());
+        ColdConversationStore coldStore = this.coldStore;
+        if (coldStore != null) {
+            conversationIds.addAll(coldStore.getConversationIds());
+        }
+        conversationIds.forEach(this::discardConversation);
+        logger.info("Cleared {} conversations", conversationIds.size());
+    }
+
+    /**
+     * Drops a conversation from the heap, the cold tier and the durable state
+     */
+    private void discardConversation(String conversationId) {
+        unindex(conversations.remove(conversationId));
+        if (conversationWheel != null) {
+            conversationWheel.cancel(conversationId);
+        }
+        ColdConversationStore coldStore = this.coldStore;
+        if (coldStore != null) {
+            coldStore.discardConversation(conversationId);
+        }
+        journal.conversationCleared(conversationId);
+    }
+
     /**
      * Gets the number of active conversations
      */
@@ -82,18 +449,204 @@ public class ConversationManager {
     }
 
     /**
-     * Updates user state
+     * Ids of the user's conversations currently on the heap
+     */
+    public Set<String> getConversationIds(String userId) {
+        Set<String> ids = conversationIdsByUser.get(userId);
+        return ids != null ? Collections.unmodifiableSet(ids) : Collections.emptySet();
+    }
+
+    /**
+     * Updates user state. If it replaces a different instance, only that user's
+     * conversations are repointed at the new one.
      */
     public void updateUserState(String userId, UserState userState) {
-        userStates.put(userId, userState);
+        UserState previous = userStates.put(userId, userState);
+        if (previous != userState) {
+            for (String conversationId : getConversationIds(userId)) {
+                ConversationContext context = conversations.get(conversationId);
+                if (context != null) {
+                    context.setUserState(userState);
+                }
+            }
+        }
+        userState.touch();
+        if (userWheel != null) {
+            userWheel.schedule(userId, userState.getLastActiveMillis());
+        }
+        syncUserState(userState);
         logger.info("Updated user state: {}", userId);
     }
 
     /**
-     * Removes a user state
+     * Removes a user state from the heap, the cold tier and the durable state
      */
     public void removeUserState(String userId) {
         userStates.remove(userId);
+        if (userWheel != null) {
+            userWheel.cancel(userId);
+        }
+        ColdConversationStore coldStore = this.coldStore;
+        if (coldStore != null) {
+            coldStore.discardUser(userId);
+        }
+        journal.userRemoved(userId);
         logger.info("Removed user state: {}", userId);
     }
+
+    public void addEvictionListener(EvictionListener listener) {
+        evictionListeners.add(listener);
+    }
+
+    public long getIdleTtlMs() {
+        return idleTtlMs;
+    }
+
+    /**
+     * Number of idle conversations currently spilled to the cold tier
+     */
+    public int getColdConversationCount() {
+        ColdConversationStore coldStore = this.coldStore;
+        return coldStore != null ? coldStore.getConversationCount() : 0;
+    }
+
+    /**
+     * Number of idle users currently spilled to the cold tier
+     */
+    public int getColdUserCount() {
+        ColdConversationStore coldStore = this.coldStore;
+        return coldStore != null ? coldStore.getUserCount() : 0;
+    }
+
+    /**
+     * Number of conversations dropped for being idle since startup
+     */
+    public long getEvictedConversationCount() {
+        return evictedConversations.get();
+    }
+
+    /**
+     * Number of user states dropped for being idle since startup
+     */
+    public long getEvictedUserCount() {
+        return evictedUsers.get();
+    }
+
+    /**
+     * Runs the eviction wheels up to the given time; normally driven by the eviction timer
+     */
+    void runEviction(long nowMillis) {
+        if (conversationWheel == null) {
+            return;
+        }
+        try {
+            int conversationsEvicted = conversationWheel.advance(nowMillis);
+            int usersEvicted = userWheel.advance(nowMillis);
+            if (conversationsEvicted + usersEvicted > 0) {
+                logger.debug("Evicted {} idle conversations and {} idle users", conversationsEvicted, usersEvicted);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Idle eviction pass failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private long conversationLastActivity(String conversationId) {
+        ConversationContext context = conversations.get(conversationId);
+        return context != null ? context.getLastActivityMillis() : -1;
+    }
+
+    private long userLastActivity(String userId) {
+        UserState userState = userStates.get(userId);
+        return userState != null ? userState.getLastActiveMillis() : -1;
+    }
+
+    private boolean evictConversation(String conversationId, long nowMillis) {
+        ConversationContext[] evicted = new ConversationContext[1];
+        long cutoff = nowMillis - idleTtlMs;
+        // The miss stripe keeps a lookup of this id from finding neither the entry nor its spill
+        ReentrantLock lock = stripe(conversationMissLocks, conversationId);
+        lock.lock();
+        try {
+            conversations.computeIfPresent(conversationId, (id, context) -> {
+                if (context.getLastActivityMillis() > cutoff) {
+                    return context;
+                }
+                evicted[0] = context;
+                return null;
+            });
+            if (evicted[0] == null) {
+                return false;
+            }
+            // Listeners may write to disk, so they run after the map's bin lock is released
+            unindex(evicted[0]);
+            for (EvictionListener listener : evictionListeners) {
+                listener.onConversationEvicted(evicted[0]);
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictedConversations.incrementAndGet();
+        return true;
+    }
+
+    private void index(ConversationContext context) {
+        conversationIdsByUser.compute(context.getUserId(), (userId, ids) -> {
+            Set<String> updated = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            updated.add(context.getConversationId());
+            return updated;
+        });
+    }
+
+    private void unindex(ConversationContext context) {
+        if (context == null) {
+            return;
+        }
+        conversationIdsByUser.computeIfPresent(context.getUserId(), (userId, ids) -> {
+            ids.remove(context.getConversationId());
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private boolean evictUser(String userId, long nowMillis) {
+        UserState[] evicted = new UserState[1];
+        long cutoff = nowMillis - idleTtlMs;
+        ReentrantLock lock = stripe(userMissLocks, userId);
+        lock.lock();
+        try {
+            userStates.computeIfPresent(userId, (id, userState) -> {
+                if (userState.getLastActiveMillis() > cutoff) {
+                    return userState;
+                }
+                evicted[0] = userState;
+                return null;
+            });
+            if (evicted[0] == null) {
+                return false;
+            }
+            for (EvictionListener listener : evictionListeners) {
+                listener.onUserEvicted(evicted[0]);
+            }
+        } finally {
+            lock.unlock();
+        }
+        evictedUsers.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stops the eviction timer, closes the journal, flushing what it has buffered,
+     * and deletes the cold tier's segments
+     */
+    public void shutdown() {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+        }
+        StateJournal journal = this.journal;
+        this.journal = StateJournal.NONE;
+        journal.close();
+        ColdConversationStore coldStore = this.coldStore;
+        if (coldStore != null) {
+            coldStore.close();
+        }
+    }
 }
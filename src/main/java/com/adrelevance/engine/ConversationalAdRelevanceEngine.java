@@ -1,9 +1,13 @@
 package com.adrelevance.engine;
 
 import com.adrelevance.model.*;
+import com.adrelevance.persistence.ColdConversationStore;
+import com.adrelevance.persistence.DurableStateStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
@@ -26,27 +30,44 @@ public class ConversationalAdRelevanceEngine {
     
     // Performance optimizations
     private final ExecutorService executorService;
+    // Serializes work per conversation so turns are applied in order
+    private final KeyedSerialExecutor<String> conversationLanes;
     private final ConcurrentHashMap<String, AdSuggestion> suggestionCache;
     private final ConcurrentHashMap<String, Long> cacheTimestamps;
     private static final long CACHE_TTL_MS = 30000; // 30 seconds cache TTL
     private static final int MAX_CACHE_SIZE = 1000;
 
     public ConversationalAdRelevanceEngine() {
-        this.contextAnalyzer = new ContextAnalyzer();
-        this.adMatchingEngine = new AdMatchingEngine();
-        this.responseGenerator = new ConversationalResponseGenerator();
+        EngineComponents components = EngineComponents.initialize();
+        this.contextAnalyzer = components.contextAnalyzer();
+        this.adMatchingEngine = components.adMatchingEngine();
+        this.responseGenerator = components.responseGenerator();
         this.conversationManager = new ConversationManager();
         
         // Performance optimizations
         this.executorService = Executors.newFixedThreadPool(4);
+        this.conversationLanes = new KeyedSerialExecutor<>(executorService);
         this.suggestionCache = new ConcurrentHashMap<>();
         this.cacheTimestamps = new ConcurrentHashMap<>();
     }
 
     /**
-     * Processes a new message and returns relevant ad suggestions with low latency
+     * Processes a new message and returns relevant ad suggestions with low latency.
+     * Runs on the calling thread, after any earlier work for the same conversation.
      */
     public AdSuggestion processMessage(String conversationId, String userId, String messageContent) {
+        return conversationLanes.call(conversationId, () -> processInLane(conversationId, userId, messageContent));
+    }
+
+    /**
+     * Async version for non-blocking processing; messages for one conversation are
+     * processed in the order they were submitted
+     */
+    public CompletableFuture<AdSuggestion> processMessageAsync(String conversationId, String userId, String messageContent) {
+        return conversationLanes.submit(conversationId, () -> processInLane(conversationId, userId, messageContent));
+    }
+
+    private AdSuggestion processInLane(String conversationId, String userId, String messageContent) {
         long startTime = System.currentTimeMillis();
         logger.debug("Processing message for conversation {}: {}", conversationId, messageContent);
 
@@ -63,10 +84,11 @@ public class ConversationalAdRelevanceEngine {
         
         // Add the new message
         Message message = new Message(messageContent, userId, MessageType.USER_MESSAGE);
-        context.addMessage(message);
+        conversationManager.appendMessage(context, message);
 
         // Analyze context (optimized for speed)
         contextAnalyzer.analyzeContext(context);
+        conversationManager.syncUserState(context.getUserState());
 
         // Find relevant ads with optimized matching
         List<Ad> relevantAds = adMatchingEngine.findRelevantAds(context, 3);
@@ -97,18 +119,14 @@ public class ConversationalAdRelevanceEngine {
         return suggestion;
     }
 
-    /**
-     * Async version for non-blocking processing
-     */
-    public CompletableFuture<AdSuggestion> processMessageAsync(String conversationId, String userId, String messageContent) {
-        return CompletableFuture.supplyAsync(() -> 
-            processMessage(conversationId, userId, messageContent), executorService);
-    }
-
     /**
      * Processes user response to an ad suggestion with low latency
      */
     public String processAdResponse(String conversationId, String adId, String userResponse) {
+        return conversationLanes.call(conversationId, () -> processAdResponseInLane(conversationId, adId, userResponse));
+    }
+
+    private String processAdResponseInLane(String conversationId, String adId, String userResponse) {
         long startTime = System.currentTimeMillis();
         logger.debug("Processing ad response for conversation {}: {}", conversationId, userResponse);
 
@@ -131,6 +149,7 @@ public class ConversationalAdRelevanceEngine {
         // Record user interaction
         if (context.getUserState() != null) {
             context.getUserState().recordAdInteraction(adId);
+            conversationManager.syncUserState(context.getUserState());
         }
 
         // Generate follow-up response
@@ -138,7 +157,7 @@ public class ConversationalAdRelevanceEngine {
 
         // Add bot response to conversation
         Message botMessage = new Message(followUpResponse, "bot", MessageType.BOT_RESPONSE);
-        context.addMessage(botMessage);
+        conversationManager.appendMessage(context, botMessage);
 
         long endTime = System.currentTimeMillis();
         logger.debug("Processed ad response in {}ms", (endTime - startTime));
@@ -157,7 +176,7 @@ public class ConversationalAdRelevanceEngine {
 
         return new ConversationAnalytics(
             context.getConversationId(),
-            context.getMessages() != null ? context.getMessages().size() : 0,
+            (int) Math.min(context.getTotalMessageCount(), Integer.MAX_VALUE),
             context.getMood(),
             context.getDetectedIntents(),
             context.getTopicWeights()
@@ -171,12 +190,13 @@ public class ConversationalAdRelevanceEngine {
         UserState userState = conversationManager.getOrCreateUserState(userId);
         
         if (interests != null) {
-            userState.setInterests(new java.util.ArrayList<>(interests));
+            userState.setInterests(interests);
         }
         
         if (blockedCategories != null) {
-            userState.setBlockedCategories(new java.util.ArrayList<>(blockedCategories));
+            userState.setBlockedCategories(blockedCategories);
         }
+        conversationManager.syncUserState(userState);
 
         // Clear related caches
         clearUserRelatedCaches(userId);
@@ -185,6 +205,22 @@ public class ConversationalAdRelevanceEngine {
                    userId, interests, blockedCategories);
     }
 
+    /**
+     * Spills conversations and users idle past the TTL to memory-mapped files under
+     * {@code coldDir} instead of dropping them; they are restored on their next message
+     */
+    public void enableColdTier(Path coldDir) throws IOException {
+        conversationManager.enableColdTier(new ColdConversationStore(coldDir));
+    }
+    
+    /**
+     * Restores conversations and users saved in {@code stateDir} and keeps them durable
+     * from now on with a write-ahead log and periodic snapshots
+     */
+    public void enableDurability(Path stateDir, long snapshotIntervalMs) throws IOException {
+        conversationManager.enableDurability(new DurableStateStore(stateDir), snapshotIntervalMs);
+    }
+
     /**
      * Adds a new ad to the inventory with cache invalidation
      */
@@ -215,11 +251,16 @@ public class ConversationalAdRelevanceEngine {
      * Gets engine statistics including performance metrics
      */
     public EngineStats getStats() {
-        return new EngineStats(
+        EngineStats stats = new EngineStats(
             conversationManager.getActiveConversationCount(),
             adMatchingEngine.getInventorySize(),
-            conversationManager.getTotalUserCount()
+            conversationManager.getTotalUserCount(),
+            conversationManager.getEvictedConversationCount(),
+            conversationManager.getEvictedUserCount()
         );
+        stats.setColdConversations(conversationManager.getColdConversationCount());
+        stats.setColdUsers(conversationManager.getColdUserCount());
+        return stats;
     }
 
     /**
@@ -227,6 +268,7 @@ public class ConversationalAdRelevanceEngine {
      */
     public void shutdown() {
         executorService.shutdown();
+        conversationManager.shutdown();
         suggestionCache.clear();
         cacheTimestamps.clear();
         logger.info("Engine shutdown completed");
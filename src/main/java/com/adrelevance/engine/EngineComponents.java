@@ -0,0 +1,29 @@
+package com.adrelevance.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The stateless matching components both engines are built from. They share nothing, so
+ * their keyword maps, ad inventory and templates are built in parallel rather than one
+ * after another while the engine itself is being constructed.
+ */
+record EngineComponents(ContextAnalyzer contextAnalyzer,
+                        AdMatchingEngine adMatchingEngine,
+                        ConversationalResponseGenerator responseGenerator) {
+
+    static EngineComponents initialize() {
+        CompletableFuture<ContextAnalyzer> analyzer = CompletableFuture.supplyAsync(ContextAnalyzer::new);
+        CompletableFuture<AdMatchingEngine> matcher = CompletableFuture.supplyAsync(AdMatchingEngine::new);
+        // The caller builds the third component instead of waiting idle
+        ConversationalResponseGenerator generator = new ConversationalResponseGenerator();
+        try {
+            return new EngineComponents(analyzer.join(), matcher.join(), generator);
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.adrelevance.engine;
+
+/**
+ * Thrown when a message is refused at admission because the engine is overloaded
+ */
+public class EngineOverloadedException extends RuntimeException {
+    private final int retryAfterSeconds;
+
+    public EngineOverloadedException(int retryAfterSeconds) {
+        super("Engine overloaded, retry after " + retryAfterSeconds + "s");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() { return retryAfterSeconds; }
+}
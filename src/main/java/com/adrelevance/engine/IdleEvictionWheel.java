@@ -0,0 +1,137 @@
+package com.adrelevance.engine;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Hashed timer wheel that expires idle keys without scanning all of them.
+ *
+ * <p>Each key sits in the bucket of its expected expiry tick. Activity does not move it:
+ * callers just update the key's last-activity timestamp. When the wheel reaches a bucket
+ * it re-reads each key's timestamp and either evicts the key or re-files it under its new
+ * expiry, so the cost is proportional to keys actually coming due. Scheduling a key that
+ * is already filed, which is every touch after the first, takes no lock.
+ */
+class IdleEvictionWheel<K> {
+
+    /**
+     * Removes an expired key; returns false if it turned out to be active again
+     */
+    interface Evictor<K> {
+        boolean evict(K key, long nowMillis);
+    }
+
+    private final long ttlMillis;
+    private final long tickMillis;
+    private final Set<K>[] buckets;
+    // Read without the lock by schedule(); written only under it
+    private final ConcurrentHashMap<K, Integer> slots = new ConcurrentHashMap<>();
+    private final ToLongFunction<K> lastActivity;
+    private final Evictor<K> evictor;
+    private long currentTick;
+
+    /**
+     * @param lastActivity returns the key's last activity in epoch millis, or a negative value if it is gone
+     */
+    @SuppressWarnings("unchecked")
+    IdleEvictionWheel(long ttlMillis, long tickMillis, long nowMillis,
+                      ToLongFunction<K> lastActivity, Evictor<K> evictor) {
+        if (ttlMillis <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("ttlMillis and tickMillis must be positive");
+        }
+        this.ttlMillis = ttlMillis;
+        this.tickMillis = tickMillis;
+        // Enough buckets to cover one TTL, so an untouched key is looked at once
+        int wheelSize = (int) Math.min(4096, ttlMillis / tickMillis + 2);
+        this.buckets = new Set[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new HashSet<>();
+        }
+        this.lastActivity = lastActivity;
+        this.evictor = evictor;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Starts tracking a key; later activity only needs to update its timestamp
+     */
+    void schedule(K key, long lastActivityMillis) {
+        if (slots.containsKey(key)) {
+            // Filed already; when its slot comes due the wheel re-reads the timestamp
+            return;
+        }
+        synchronized (this) {
+            if (!slots.containsKey(key)) {
+                file(key, lastActivityMillis + ttlMillis);
+            }
+        }
+    }
+
+    /**
+     * Stops tracking a key that was removed by other means
+     */
+    synchronized void cancel(K key) {
+        Integer slot = slots.remove(key);
+        if (slot != null) {
+            buckets[slot].remove(key);
+        }
+    }
+
+    /**
+     * Processes every bucket up to {@code nowMillis}; returns the number of keys evicted
+     */
+    int advance(long nowMillis) {
+        int evicted = 0;
+        long targetTick = nowMillis / tickMillis;
+        while (true) {
+            List<K> due;
+            synchronized (this) {
+                if (currentTick >= targetTick) {
+                    return evicted;
+                }
+                currentTick++;
+                Set<K> bucket = buckets[(int) (currentTick % buckets.length)];
+                if (bucket.isEmpty()) {
+                    continue;
+                }
+                due = new ArrayList<>(bucket);
+                bucket.clear();
+                due.forEach(slots::remove);
+            }
+            // Evictor callbacks run outside the wheel lock so they may persist state
+            for (K key : due) {
+                long last = lastActivity.applyAsLong(key);
+                if (last < 0) {
+                    continue;
+                }
+                if (last + ttlMillis <= nowMillis && evictor.evict(key, nowMillis)) {
+                    evicted++;
+                } else {
+                    synchronized (this) {
+                        if (!slots.containsKey(key)) {
+                            file(key, Math.max(last + ttlMillis, nowMillis + tickMillis));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    private void file(K key, long expiryMillis) {
+        // Never file into the bucket being processed or one already passed
+        long tick = Math.max((expiryMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+        // Keys further out than one rotation are simply revisited and re-filed
+        tick = Math.min(tick, currentTick + buckets.length - 1);
+        int slot = (int) (tick % buckets.length);
+        buckets[slot].add(key);
+        slots.put(key, slot);
+    }
+}
@@ -0,0 +1,139 @@
+package com.adrelevance.engine;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs tasks one at a time per key and in submission order, while tasks for
+ * different keys run in parallel on the shared executor.
+ *
+ * <p>Each key maps to the tail of its lane: a new task is chained behind the current
+ * tail and becomes the new tail. Lanes hold no threads and are dropped once they drain,
+ * so there is no lock shared across keys.
+ */
+public class KeyedSerialExecutor<K> {
+
+    private final Executor executor;
+    private final ConcurrentHashMap<K, CompletableFuture<?>> tails = new ConcurrentHashMap<>();
+
+    public KeyedSerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a task on the key's lane; it starts on the executor after every earlier
+     * task for that key has finished, whether or not they failed
+     */
+    public <T> CompletableFuture<T> submit(K key, Supplier<T> task) {
+        CompletableFuture<T> next = new CompletableFuture<>();
+        CompletableFuture<?> previous = tails.put(key, next);
+        Runnable run = () -> {
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = task.get();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            // Drop the lane before completing, so it is gone once callers observe completion
+            tails.remove(key, next);
+            if (failure != null) {
+                next.completeExceptionally(failure);
+            } else {
+                next.complete(result);
+            }
+        };
+        start(key, next, previous, run);
+        return next;
+    }
+
+    /**
+     * Like {@link #submit}, for a task that starts asynchronous work: the task runs on the
+     * executor, and the lane stays held, without a thread, until the stage it returns completes
+     */
+    public <T> CompletableFuture<T> submitAsync(K key, Supplier<? extends CompletionStage<T>> task) {
+        CompletableFuture<T> next = new CompletableFuture<>();
+        CompletableFuture<?> previous = tails.put(key, next);
+        Runnable run = () -> {
+            CompletionStage<T> stage;
+            try {
+                stage = task.get();
+            } catch (Throwable t) {
+                tails.remove(key, next);
+                next.completeExceptionally(t);
+                return;
+            }
+            stage.whenComplete((result, failure) -> {
+                // Drop the lane before completing, so it is gone once callers observe completion
+                tails.remove(key, next);
+                if (failure != null) {
+                    next.completeExceptionally(failure);
+                } else {
+                    next.complete(result);
+                }
+            });
+        };
+        start(key, next, previous, run);
+        return next;
+    }
+
+    /**
+     * Runs a task on the calling thread once every earlier task for the key has
+     * finished; later submissions for the key wait until it returns
+     */
+    public <T> T call(K key, Supplier<T> task) {
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<?> previous = tails.put(key, mine);
+        try {
+            if (previous != null) {
+                awaitQuietly(previous);
+            }
+            T result = task.get();
+            tails.remove(key, mine);
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            tails.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private void start(K key, CompletableFuture<?> next, CompletableFuture<?> previous, Runnable run) {
+        if (previous == null) {
+            execute(key, next, run);
+        } else {
+            previous.whenComplete((result, error) -> execute(key, next, run));
+        }
+    }
+
+    private void execute(K key, CompletableFuture<?> next, Runnable run) {
+        try {
+            executor.execute(run);
+        } catch (RuntimeException e) {
+            // A rejected task still releases its lane, or every later task for the key would wait on it
+            tails.remove(key, next);
+            next.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Number of keys with queued or running work
+     */
+    public int activeLanes() {
+        return tails.size();
+    }
+
+    private static void awaitQuietly(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException | CancellationException ignored) {
+            // An earlier task's failure belongs to its own caller
+        }
+    }
+}
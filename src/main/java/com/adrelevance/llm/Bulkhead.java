@@ -0,0 +1,61 @@
+package com.adrelevance.llm;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps the number of concurrent upstream LLM calls so a slow provider
+ * cannot tie up every worker thread in the service
+ */
+public class Bulkhead {
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMs;
+    private final Semaphore permits;
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    public Bulkhead(String name, int maxConcurrentCalls, long maxWaitMs) {
+        if (maxConcurrentCalls <= 0) {
+            throw new IllegalArgumentException("maxConcurrentCalls must be positive");
+        }
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMs = maxWaitMs;
+        this.permits = new Semaphore(maxConcurrentCalls, true);
+    }
+
+    /**
+     * Waits up to the configured time for a free slot
+     */
+    public boolean tryAcquire() {
+        try {
+            boolean acquired = maxWaitMs <= 0
+                    ? permits.tryAcquire()
+                    : permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+            if (!acquired) {
+                rejectedCalls.incrementAndGet();
+            }
+            return acquired;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedCalls.incrementAndGet();
+            return false;
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("maxConcurrentCalls", maxConcurrentCalls);
+        metrics.put("availableConcurrentCalls", permits.availablePermits());
+        metrics.put("rejectedCalls", rejectedCalls.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,58 @@
+package com.adrelevance.llm;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Streams through a chat completion envelope and returns
+ * {@code choices[0].message.content} without building a tree for the rest of it
+ */
+final class ChatCompletionDecoder {
+
+    private ChatCompletionDecoder() {
+    }
+
+    /**
+     * Reads the first choice's message content; returns an empty string if it is absent
+     */
+    static String readContent(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Chat completion response is not a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                return parser.nextToken() == JsonToken.START_OBJECT ? readChoice(parser) : "";
+            }
+            parser.skipChildren();
+        }
+        return "";
+    }
+
+    private static String readChoice(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("message".equals(field) && value == JsonToken.START_OBJECT) {
+                return readMessage(parser);
+            }
+            parser.skipChildren();
+        }
+        return "";
+    }
+
+    private static String readMessage(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("content".equals(field)) {
+                return value == JsonToken.VALUE_STRING ? parser.getText() : "";
+            }
+            parser.skipChildren();
+        }
+        return "";
+    }
+}
@@ -0,0 +1,89 @@
+package com.adrelevance.llm;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Chat completion request body written straight into the OkHttp sink.
+ * Everything up to the user message (model, temperature and the system prompt) is
+ * JSON-encoded once per {@link Template}; each call only escapes the user content.
+ */
+final class ChatCompletionRequestBody extends RequestBody {
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final byte[] USER_CONTENT_END = "\"}],\"max_tokens\":".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Pre-encoded request prefix for one model and system prompt. The prefix is
+     * byte-identical across calls, which keeps it eligible for provider-side prompt caching.
+     */
+    static final class Template {
+        private final byte[] prefix;
+        private final int systemPromptLength;
+
+        Template(String model, double temperature, String systemPrompt) {
+            JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+            String prefix = "{\"model\":\"" + new String(encoder.quoteAsString(model))
+                    + "\",\"temperature\":" + temperature
+                    + ",\"messages\":[{\"role\":\"system\",\"content\":\"" + new String(encoder.quoteAsString(systemPrompt))
+                    + "\"},{\"role\":\"user\",\"content\":\"";
+            this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+            this.systemPromptLength = systemPrompt.length();
+        }
+
+        ChatCompletionRequestBody body(String userContent, int maxTokens) {
+            return new ChatCompletionRequestBody(prefix, JsonStringEncoder.getInstance().quoteAsUTF8(userContent), maxTokens);
+        }
+
+        int getSystemPromptLength() {
+            return systemPromptLength;
+        }
+    }
+
+    private final byte[] prefix;
+    private final byte[] userContent;
+    private final byte[] maxTokens;
+
+    private ChatCompletionRequestBody(byte[] prefix, byte[] userContent, int maxTokens) {
+        this.prefix = prefix;
+        this.userContent = userContent;
+        this.maxTokens = Integer.toString(maxTokens).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        return prefix.length + userContent.length + USER_CONTENT_END.length + maxTokens.length + 1;
+    }
+
+    /**
+     * The encoded body, for clients other than OkHttp
+     */
+    byte[] toByteArray() {
+        byte[] body = new byte[(int) contentLength()];
+        int offset = 0;
+        for (byte[] part : new byte[][] {prefix, userContent, USER_CONTENT_END, maxTokens}) {
+            System.arraycopy(part, 0, body, offset, part.length);
+            offset += part.length;
+        }
+        body[offset] = '}';
+        return body;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        sink.write(prefix);
+        sink.write(userContent);
+        sink.write(USER_CONTENT_END);
+        sink.write(maxTokens);
+        sink.writeByte('}');
+    }
+}
@@ -0,0 +1,31 @@
+package com.adrelevance.llm;
+
+import java.io.IOException;
+
+/**
+ * Non-2xx response from the OpenAI chat completions endpoint
+ */
+public class ChatGPTApiException extends IOException {
+    private final int statusCode;
+    private final long retryAfterMs;
+
+    public ChatGPTApiException(int statusCode, String message, long retryAfterMs) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public int getStatusCode() { return statusCode; }
+
+    /**
+     * Server-requested delay from the Retry-After header, or -1 if absent
+     */
+    public long getRetryAfterMs() { return retryAfterMs; }
+
+    /**
+     * Rate limiting and transient server-side errors are worth retrying
+     */
+    public boolean isRetryable() {
+        return statusCode == 408 || statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,20 @@
+package com.adrelevance.llm;
+
+import java.io.IOException;
+
+/**
+ * Thrown without contacting OpenAI when the call is refused locally
+ * (open circuit breaker, full bulkhead or exhausted rate-limit quota)
+ */
+public class ChatGPTCallRejectedException extends IOException {
+    public enum Reason { CIRCUIT_OPEN, BULKHEAD_FULL, QUOTA_EXHAUSTED }
+
+    private final Reason reason;
+
+    public ChatGPTCallRejectedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() { return reason; }
+}
@@ -1,20 +1,39 @@
 package com.adrelevance.llm;
 
+import com.adrelevance.concurrent.VirtualThreads;
 import com.adrelevance.model.*;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.netty.channel.ChannelOption;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service for integrating with OpenAI ChatGPT for intelligent ad suggestions
@@ -25,6 +44,8 @@ public class ChatGPTService {
     
     private final OkHttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final ObjectReader payloadReader;
+    private final ObjectReader batchPayloadReader;
     
     @Value("${openai.api.key:}")
     private String openaiApiKey;
@@ -33,7 +54,241 @@ public class ChatGPTService {
     private String openaiApiUrl;
     
     @Value("${openai.model:gpt-3.5-turbo}")
-    private String openaiModel;
+    private String openaiModel = "gpt-3.5-turbo";
+    
+    // Resilience settings for the upstream call
+    @Value("${openai.resilience.window-size:50}")
+    private int breakerWindowSize = 50;
+    
+    @Value("${openai.resilience.minimum-calls:10}")
+    private int breakerMinimumCalls = 10;
+    
+    @Value("${openai.resilience.failure-rate-threshold:50}")
+    private double failureRateThreshold = 50;
+    
+    @Value("${openai.resilience.slow-call-rate-threshold:80}")
+    private double slowCallRateThreshold = 80;
+    
+    @Value("${openai.resilience.slow-call-duration-ms:10000}")
+    private long slowCallDurationMs = 10000;
+    
+    @Value("${openai.resilience.open-duration-ms:30000}")
+    private long openDurationMs = 30000;
+    
+    @Value("${openai.resilience.half-open-calls:3}")
+    private int halfOpenPermittedCalls = 3;
+    
+    @Value("${openai.resilience.max-concurrent-calls:20}")
+    private int maxConcurrentCalls = 20;
+    
+    @Value("${openai.resilience.bulkhead-max-wait-ms:100}")
+    private long bulkheadMaxWaitMs = 100;
+    
+    @Value("${openai.resilience.max-attempts:3}")
+    private int maxAttempts = 3;
+    
+    @Value("${openai.resilience.initial-backoff-ms:200}")
+    private long initialBackoffMs = 200;
+    
+    @Value("${openai.resilience.max-backoff-ms:2000}")
+    private long maxBackoffMs = 2000;
+    
+    // Optional micro-batching of concurrent classification requests
+    @Value("${openai.batch.enabled:false}")
+    private boolean batchingEnabled = false;
+    
+    @Value("${openai.batch.max-size:8}")
+    private int batchMaxSize = 8;
+    
+    @Value("${openai.batch.max-delay-ms:5}")
+    private long batchMaxDelayMs = 5;
+    
+    // Optional client-side scheduling against the OpenAI rate-limit quota (0 = unlimited)
+    @Value("${openai.quota.requests-per-minute:0}")
+    private long quotaRequestsPerMinute = 0;
+    
+    @Value("${openai.quota.tokens-per-minute:0}")
+    private long quotaTokensPerMinute = 0;
+    
+    @Value("${openai.quota.headroom-percent:5}")
+    private double quotaHeadroomPercent = 5;
+    
+    @Value("${openai.quota.burst-ms:10000}")
+    private long quotaBurstMs = 10000;
+    
+    @Value("${openai.quota.max-queue-wait-ms:2000}")
+    private long quotaMaxQueueWaitMs = 2000;
+    
+    // Calls the reactive path may queue behind openai.resilience.max-concurrent-calls in flight
+    @Value("${openai.reactive.queue-capacity:1000}")
+    private int reactiveQueueCapacity = 1000;
+    
+    // Blocking OpenAI calls run on virtual threads instead of a cached platform pool (Java 21+)
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads = false;
+    
+    /**
+     * Instructions for single-conversation classification. Sent as the system message so the
+     * request starts with the same bytes every time and the provider can cache the prefix.
+     */
+    private static final String AD_SUGGESTION_SYSTEM_PROMPT = """
+            You are a friendly, conversational AI assistant that responds naturally to users and ONLY suggests ads when there's clear commercial intent.
+            
+            Your task is to:
+            1. Respond naturally to the user's message as a conversational AI
+            2. Include an ad_suggestion when the user mentions buying, shopping, or specific products/services
+            3. Keep the conversation engaging and human-like
+            4. Always be helpful and friendly
+            
+            Please respond in the following JSON format (ensure valid JSON with no trailing commas):
+            {
+                "intent": "shopping|travel|technology|fashion|health|food|entertainment|conversation|other",
+                "mood": "excited|happy|curious|neutral|frustrated|other",
+                "confidence": 0.0-1.0,
+                "conversational_response": "Your natural response to the user's message"
+            }
+            
+            If you want to suggest an ad, add this field to the JSON:
+            "ad_suggestion": {
+                "title": "Ad Title",
+                "description": "Brief ad description", 
+                "category": "fashion|tech|travel|food|fitness|beauty|other",
+                "call_to_action": "Shop Now|Learn More|Book Now|Get Started|etc",
+                "url": "https://example.com/product",
+                "relevance_reasoning": "Brief explanation of why this ad is relevant"
+            }
+            
+            CRITICAL GUIDELINES:
+            - Always provide a conversational_response
+            - Be friendly, helpful, and engaging in your responses
+            - Include ad_suggestion when user mentions buying, shopping, or specific products/services
+            - For greetings, casual conversation, general questions - respond WITHOUT any ad
+            - For "hello", "hi", "how are you", and similar greetings: set conversational_response EXACTLY to "How can I help ?" (no additional text)
+            - For "what's the weather", etc. - NO ad, just conversational response
+            - confidence should be 0.0 for non-commercial messages, 0.6-1.0 for commercial intent
+            - Make ad suggestions feel natural and helpful, not pushy
+            - Keep responses conversational and natural
+            - Consider user interests and mood when making suggestions
+            """;
+    
+    /**
+     * Instructions for classifying several conversations in one call
+     */
+    private static final String BATCH_SYSTEM_PROMPT = """
+            You are a friendly, conversational AI assistant that responds naturally to users and ONLY suggests ads when there's clear commercial intent.
+            
+            You will receive several independent conversations, each introduced by "### Conversation <id>".
+            Handle each one on its own, exactly as if it were the only conversation.
+            
+            Respond with a JSON array (ensure valid JSON with no trailing commas) containing one object per conversation:
+            {
+                "id": <the conversation id>,
+                "intent": "shopping|travel|technology|fashion|health|food|entertainment|conversation|other",
+                "mood": "excited|happy|curious|neutral|frustrated|other",
+                "confidence": 0.0-1.0,
+                "conversational_response": "Your natural response to the user's message"
+            }
+            
+            If you want to suggest an ad for a conversation, add this field to its object:
+            "ad_suggestion": {
+                "title": "Ad Title",
+                "description": "Brief ad description", 
+                "category": "fashion|tech|travel|food|fitness|beauty|other",
+                "call_to_action": "Shop Now|Learn More|Book Now|Get Started|etc",
+                "url": "https://example.com/product",
+                "relevance_reasoning": "Brief explanation of why this ad is relevant"
+            }
+            
+            CRITICAL GUIDELINES:
+            - Always provide a conversational_response
+            - Include ad_suggestion when user mentions buying, shopping, or specific products/services
+            - For greetings, casual conversation, general questions - respond WITHOUT any ad
+            - For "hello", "hi", "how are you", and similar greetings: set conversational_response EXACTLY to "How can I help ?" (no additional text)
+            - confidence should be 0.0 for non-commercial messages, 0.6-1.0 for commercial intent
+            - Consider user interests and mood when making suggestions
+            
+            """;
+    
+    private static final double TEMPERATURE = 0.7;
+    private static final int MAX_TOKENS = 1000;
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int BATCH_MAX_TOKENS_PER_ITEM = 400;
+    
+    /**
+     * Client-side name of the creative below; compact responses send the ad's fields and this id
+     */
+    public static final String SPONSORED_LINK_TEMPLATE_ID = "sponsored-link";
+    
+    /**
+     * Sponsored-link creative appended to the conversational response, compiled once
+     */
+    private static final CreativeTemplate SPONSORED_LINK_TEMPLATE = CreativeTemplate.compile("""
+            {{response}} <div class="sponsored-link" style="
+                border-left: 1px solid #3b82f6;
+                background: #f8fafc;
+                padding: 4px 6px;
+                margin: 2px 0;
+                border-radius: 2px;
+                font-size: 11px;
+            ">
+                <div style="
+                    display: flex;
+                    justify-content: space-between;
+                    align-items: center;
+                    gap: 4px;
+                ">
+                    <div style="flex: 1;">
+                        <div style="
+                            font-size: 8px;
+                            color: #6b7280;
+                            text-transform: uppercase;
+                            font-weight: 600;
+                            margin-bottom: 1px;
+                        ">Sponsored</div>
+                        <a href="{{url}}" target="_blank" style="
+                            color: #1f2937;
+                            text-decoration: none;
+                            font-weight: 600;
+                            font-size: 11px;
+                            line-height: 1.1;
+                        " onmouseover="this.style.color='#3b82f6'" onmouseout="this.style.color='#1f2937'">{{title}}</a>
+                        <div style="
+                            color: #6b7280;
+                            font-size: 9px;
+                            line-height: 1.1;
+                            margin-top: 1px;
+                        ">{{description}}</div>
+                    </div>
+                    <div style="
+                        background: #3b82f6;
+                        color: white;
+                        padding: 2px 4px;
+                        border-radius: 2px;
+                        font-size: 8px;
+                        font-weight: 600;
+                        white-space: nowrap;
+                    ">{{call_to_action}}</div>
+                </div>
+            </div>
+            """, "response", "url", "title", "description", "call_to_action");
+    
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile Bulkhead bulkhead;
+    private volatile RetryPolicy retryPolicy;
+    private volatile OpenAIQuotaScheduler quotaScheduler;
+    private volatile ChatCompletionRequestBody.Template adSuggestionTemplate;
+    private volatile ChatCompletionRequestBody.Template batchTemplate;
+    private final AtomicLong retriedCalls = new AtomicLong();
+    private volatile MicroBatcher<BatchItem, SuggestionPayload> batcher;
+    private ExecutorService batchExecutor;
+    // Runs calls to OpenAI; they block on the network, so they are kept off the common pool
+    private volatile ExecutorService callExecutor;
+    private boolean callExecutorVirtual;
+    private int callExecutorSize;
+    // Non-blocking client for the reactive path; calls are admitted through the queue instead of the bulkhead
+    private volatile WebClient webClient;
+    private volatile ConnectionProvider connectionProvider;
+    private volatile ReactiveCallQueue reactiveCallQueue;
     
     public ChatGPTService() {
         this.httpClient = new OkHttpClient.Builder()
@@ -42,6 +297,146 @@ public class ChatGPTService {
                 .writeTimeout(60, TimeUnit.SECONDS)
                 .build();
         this.objectMapper = new ObjectMapper();
+        this.payloadReader = objectMapper.readerFor(SuggestionPayload.class);
+        this.batchPayloadReader = objectMapper.readerFor(SuggestionPayload[].class);
+        configure();
+    }
+    
+    /**
+     * Applies the injected settings; also called from the constructor so that
+     * instances created outside Spring run with the defaults
+     */
+    @PostConstruct
+    void configure() {
+        initExecutors();
+        initRequestTemplates();
+        initResilience();
+        initQuota();
+        initBatching();
+        initReactiveClient();
+    }
+    
+    /**
+     * Pre-encodes the constant part of both request shapes for the configured model
+     */
+    private void initRequestTemplates() {
+        this.adSuggestionTemplate = new ChatCompletionRequestBody.Template(openaiModel, TEMPERATURE, AD_SUGGESTION_SYSTEM_PROMPT);
+        this.batchTemplate = new ChatCompletionRequestBody.Template(openaiModel, TEMPERATURE, BATCH_SYSTEM_PROMPT);
+    }
+    
+    /**
+     * (Re)builds the circuit breaker, bulkhead and retry policy from the configured settings
+     */
+    private void initResilience() {
+        this.circuitBreaker = new CircuitBreaker("openai", breakerWindowSize, breakerMinimumCalls,
+                failureRateThreshold, slowCallRateThreshold, slowCallDurationMs, openDurationMs, halfOpenPermittedCalls);
+        this.bulkhead = new Bulkhead("openai", maxConcurrentCalls, bulkheadMaxWaitMs);
+        this.retryPolicy = new RetryPolicy(maxAttempts, initialBackoffMs, maxBackoffMs);
+    }
+    
+    private void initExecutors() {
+        if (callExecutor != null && callExecutorVirtual == virtualThreads && callExecutorSize == maxConcurrentCalls) {
+            return;
+        }
+        ExecutorService previous = callExecutor;
+        this.callExecutor = VirtualThreads.newExecutor(virtualThreads, "openai-call-",
+            () -> newPlatformPool("openai-call"));
+        this.callExecutorVirtual = virtualThreads;
+        this.callExecutorSize = maxConcurrentCalls;
+        if (previous != null) {
+            previous.shutdown();
+        }
+    }
+    
+    /**
+     * (Re)builds the non-blocking client with one pooled connection per permitted concurrent call.
+     * Nothing is connected, and no event loop started, until the first reactive call.
+     */
+    private void initReactiveClient() {
+        ConnectionProvider previousProvider = this.connectionProvider;
+        ReactiveCallQueue previousQueue = this.reactiveCallQueue;
+        this.connectionProvider = ConnectionProvider.builder("openai")
+                .maxConnections(maxConcurrentCalls)
+                .build();
+        HttpClient client = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 30_000)
+                .responseTimeout(Duration.ofSeconds(60));
+        this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(client))
+                .build();
+        this.reactiveCallQueue = new ReactiveCallQueue("openai", maxConcurrentCalls, reactiveQueueCapacity);
+        if (previousProvider != null) {
+            previousQueue.dispose();
+            previousProvider.dispose();
+        }
+    }
+    
+    private void initQuota() {
+        if (quotaRequestsPerMinute <= 0 && quotaTokensPerMinute <= 0) {
+            this.quotaScheduler = null;
+            return;
+        }
+        this.quotaScheduler = new OpenAIQuotaScheduler("openai", Math.max(0, quotaRequestsPerMinute),
+                Math.max(0, quotaTokensPerMinute), quotaHeadroomPercent, quotaBurstMs, quotaMaxQueueWaitMs);
+        logger.info("OpenAI quota scheduling enabled: rpm={}, tpm={}", quotaRequestsPerMinute, quotaTokensPerMinute);
+    }
+    
+    private void initBatching() {
+        if (!batchingEnabled || batcher != null) {
+            return;
+        }
+        this.batchExecutor = VirtualThreads.newExecutor(virtualThreads, "openai-batch-",
+            () -> newPlatformPool("openai-batch"));
+        this.batcher = new MicroBatcher<>("openai", batchMaxSize, batchMaxDelayMs, this::classifyBatch, batchExecutor);
+        logger.info("ChatGPT micro-batching enabled: maxSize={}, maxDelayMs={}", batchMaxSize, batchMaxDelayMs);
+    }
+    
+    /**
+     * Platform fallback: no more threads than the bulkhead admits calls, since any extra ones
+     * would only park in the bulkhead; further tasks queue and idle threads time out
+     */
+    private ExecutorService newPlatformPool(String name) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maxConcurrentCalls, maxConcurrentCalls,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), VirtualThreads.daemonFactory(name));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (batcher != null) {
+            batcher.shutdown();
+            batchExecutor.shutdown();
+        }
+        callExecutor.shutdown();
+        reactiveCallQueue.dispose();
+        connectionProvider.dispose();
+    }
+    
+    /**
+     * Circuit breaker, bulkhead, retry and batching counters for the stats endpoint
+     */
+    public Map<String, Object> getResilienceStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("circuitBreaker", circuitBreaker.getMetrics());
+        stats.put("bulkhead", bulkhead.getMetrics());
+        stats.put("reactiveQueue", reactiveCallQueue.getMetrics());
+        stats.put("retriedCalls", retriedCalls.get());
+        OpenAIQuotaScheduler quotaScheduler = this.quotaScheduler;
+        if (quotaScheduler != null) {
+            stats.put("quota", quotaScheduler.getMetrics());
+        }
+        
+        Map<String, Object> batching = new LinkedHashMap<>();
+        batching.put("enabled", batcher != null);
+        if (batcher != null) {
+            long batches = batcher.getBatchesSent();
+            batching.put("batchesSent", batches);
+            batching.put("itemsSent", batcher.getItemsSent());
+            batching.put("averageBatchSize", batches == 0 ? 0.0 : (double) batcher.getItemsSent() / batches);
+        }
+        stats.put("batching", batching);
+        return stats;
     }
     
     /**
@@ -54,26 +449,92 @@ public class ChatGPTService {
             List<Message> conversationHistory,
             UserState userState) {
         
+        OpenAIQuotaScheduler.Priority priority = priorityOf(userState);
+        MicroBatcher<BatchItem, SuggestionPayload> batcher = this.batcher;
+        if (batcher != null && hasApiKey()) {
+            // Context is captured now so the batch sees the history as of this message
+            String conversationContext = buildConversationContext(conversationHistory, userState);
+            return batcher.submit(new BatchItem(conversationContext, message, priority))
+                // Fails the way the single-call path does, rather than with the batch's raw exception
+                .<SuggestionPayload>exceptionally(e -> {
+                    throw unavailable(e);
+                })
+                .thenCompose(payload -> payload != null
+                    ? CompletableFuture.completedFuture(toSuggestion(payload, message))
+                    // The model dropped this conversation from the batch; ask for it on its own
+                    : analyzeIndividually(conversationId, message, conversationContext, priority));
+        }
+        
         return CompletableFuture.supplyAsync(() -> {
-            try {
-                // Build conversation context for ChatGPT
-                String conversationContext = buildConversationContext(conversationHistory, userState);
-                
-                // Create prompt for ChatGPT
-                String prompt = createAdSuggestionPrompt(message, conversationContext);
-                
-                // Call ChatGPT API
-                String chatGPTResponse = callChatGPTAPI(prompt);
-                
-                // Parse ChatGPT response and extract ad suggestion
-                return parseChatGPTResponse(chatGPTResponse, message);
-                
-            } catch (Exception e) {
-                logger.error("Error analyzing context with ChatGPT for conversation {}: {}", conversationId, e.getMessage(), e);
-                // Don't fall back to mock - let the error propagate
-                throw new RuntimeException("ChatGPT API unavailable: " + e.getMessage(), e);
-            }
-        });
+            // Build conversation context for ChatGPT
+            String conversationContext = buildConversationContext(conversationHistory, userState);
+            return analyze(conversationId, message, conversationContext, priority);
+        }, callExecutor);
+    }
+    
+    /**
+     * Non-blocking form of {@link #analyzeContextAndSuggestAd} over the reactive client.
+     * Calls queue for one of the concurrent-call slots instead of holding a thread; the
+     * breaker, retries and quota apply as on the blocking path. Micro-batching does not.
+     */
+    public Mono<ChatGPTAdSuggestion> suggestAdReactive(String conversationId, String message,
+                                                       List<Message> conversationHistory, UserState userState) {
+        OpenAIQuotaScheduler.Priority priority = priorityOf(userState);
+        String prompt = buildAdSuggestionPrompt(message, conversationHistory, userState);
+        return callChatGPTAPIReactive(adSuggestionTemplate, prompt, MAX_TOKENS, priority)
+            .handle((content, sink) -> {
+                try {
+                    sink.next(toSuggestion(readPayload(content), message));
+                } catch (IOException e) {
+                    sink.error(e);
+                }
+            })
+            .cast(ChatGPTAdSuggestion.class)
+            .doOnError(e -> logger.warn("Reactive ChatGPT call for conversation {} failed: {}", conversationId, e.getMessage()));
+    }
+    
+    private CompletableFuture<ChatGPTAdSuggestion> analyzeIndividually(String conversationId, String message, String conversationContext,
+                                                                     OpenAIQuotaScheduler.Priority priority) {
+        return CompletableFuture.supplyAsync(() -> analyze(conversationId, message, conversationContext, priority), callExecutor);
+    }
+    
+    private ChatGPTAdSuggestion analyze(String conversationId, String message, String conversationContext,
+                                        OpenAIQuotaScheduler.Priority priority) {
+        try {
+            // Create prompt for ChatGPT
+            String prompt = createAdSuggestionPrompt(message, conversationContext);
+            
+            // Call ChatGPT API
+            String content = callChatGPTAPI(adSuggestionTemplate, prompt, MAX_TOKENS, priority);
+            
+            // Bind ChatGPT's JSON answer and extract ad suggestion
+            return toSuggestion(readPayload(content), message);
+            
+        } catch (Exception e) {
+            logger.error("Error analyzing context with ChatGPT for conversation {}: {}", conversationId, e.getMessage(), e);
+            // Don't fall back to mock - let the error propagate
+            throw unavailable(e);
+        }
+    }
+    
+    /**
+     * How a failed call reaches the caller, batched or not: its cause, wrapped once
+     */
+    private static RuntimeException unavailable(Throwable e) {
+        return new RuntimeException("ChatGPT API unavailable: " + e.getMessage(), e);
+    }
+    
+    /**
+     * Paying tenants are scheduled ahead of everyone else when the quota is tight
+     */
+    private static OpenAIQuotaScheduler.Priority priorityOf(UserState userState) {
+        return userState != null && userState.isPremium()
+            ? OpenAIQuotaScheduler.Priority.HIGH
+            : OpenAIQuotaScheduler.Priority.NORMAL;
+    }
+    
+    private boolean hasApiKey() {
+        return openaiApiKey != null && !openaiApiKey.trim().isEmpty();
     }
     
     /**
@@ -105,96 +566,323 @@ public class ChatGPTService {
     }
     
     /**
-     * Creates a prompt for ChatGPT to generate conversational responses with ad suggestions
+     * The user message of a single-conversation call; package-private for the benchmarks
      */
-    private String createAdSuggestionPrompt(String currentMessage, String conversationContext) {
-        return String.format("""
-            You are a friendly, conversational AI assistant that responds naturally to users and ONLY suggests ads when there's clear commercial intent.
-            
-            %s
-            
-            Current User Message: "%s"
-            
-            Your task is to:
-            1. Respond naturally to the user's message as a conversational AI
-            2. Include an ad_suggestion when the user mentions buying, shopping, or specific products/services
-            3. Keep the conversation engaging and human-like
-            4. Always be helpful and friendly
-            
-            Please respond in the following JSON format (ensure valid JSON with no trailing commas):
-            {
-                "intent": "shopping|travel|technology|fashion|health|food|entertainment|conversation|other",
-                "mood": "excited|happy|curious|neutral|frustrated|other",
-                "confidence": 0.0-1.0,
-                "conversational_response": "Your natural response to the user's message"
+    String buildAdSuggestionPrompt(String message, List<Message> conversationHistory, UserState userState) {
+        return createAdSuggestionPrompt(message, buildConversationContext(conversationHistory, userState));
+    }
+    
+    /**
+     * The request body a single-conversation call sends for this prompt
+     */
+    RequestBody adSuggestionRequestBody(String prompt) {
+        return adSuggestionTemplate.body(prompt, MAX_TOKENS);
+    }
+    
+    /**
+     * Decodes a chat completion response body into a suggestion, as a live call does
+     */
+    ChatGPTAdSuggestion parseAdSuggestionResponse(byte[] responseBody, String message) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(responseBody)) {
+            return toSuggestion(readPayload(ChatCompletionDecoder.readContent(parser)), message);
+        }
+    }
+    
+    /**
+     * Creates the per-call user message: profile, recent history and the current message.
+     * The instructions live in {@link #AD_SUGGESTION_SYSTEM_PROMPT}.
+     */
+    private static String createAdSuggestionPrompt(String currentMessage, String conversationContext) {
+        return conversationContext + "Current User Message: \"" + currentMessage + "\"";
+    }
+    
+    /**
+     * Creates one user message carrying several conversations; the instructions
+     * live in {@link #BATCH_SYSTEM_PROMPT}
+     */
+    private static String createBatchPrompt(List<BatchItem> items) {
+        StringBuilder prompt = new StringBuilder(items.size() * 512);
+        for (int i = 0; i < items.size(); i++) {
+            BatchItem item = items.get(i);
+            prompt.append("### Conversation ").append(i).append('\n')
+                  .append(item.conversationContext)
+                  .append("Current User Message: \"").append(item.message).append("\"\n\n");
+        }
+        return prompt.toString();
+    }
+    
+    /**
+     * Batch handler: one upstream call for the whole batch, results matched back by id
+     */
+    private List<SuggestionPayload> classifyBatch(List<BatchItem> items) throws IOException {
+        if (items.size() == 1) {
+            BatchItem item = items.get(0);
+            String content = callChatGPTAPI(adSuggestionTemplate,
+                createAdSuggestionPrompt(item.message, item.conversationContext), MAX_TOKENS, item.priority);
+            return Collections.singletonList(readPayload(content));
+        }
+        
+        // The batch is scheduled at the priority of its most important member
+        OpenAIQuotaScheduler.Priority priority = OpenAIQuotaScheduler.Priority.LOW;
+        for (BatchItem item : items) {
+            if (item.priority.compareTo(priority) < 0) {
+                priority = item.priority;
             }
-            
-            If you want to suggest an ad, add this field to the JSON:
-            "ad_suggestion": {
-                "title": "Ad Title",
-                "description": "Brief ad description", 
-                "category": "fashion|tech|travel|food|fitness|beauty|other",
-                "call_to_action": "Shop Now|Learn More|Book Now|Get Started|etc",
-                "url": "https://example.com/product",
-                "relevance_reasoning": "Brief explanation of why this ad is relevant"
+        }
+        String content = callChatGPTAPI(batchTemplate, createBatchPrompt(items),
+            BATCH_MAX_TOKENS_PER_ITEM * items.size(), priority);
+        SuggestionPayload[] results = readBatchPayload(content);
+        
+        SuggestionPayload[] byId = new SuggestionPayload[items.size()];
+        for (SuggestionPayload result : results) {
+            Integer id = result.id();
+            if (id != null && id >= 0 && id < byId.length && byId[id] == null) {
+                byId[id] = result;
             }
-            
-            CRITICAL GUIDELINES:
-            - Always provide a conversational_response
-            - Be friendly, helpful, and engaging in your responses
-            - Include ad_suggestion when user mentions buying, shopping, or specific products/services
-            - For greetings, casual conversation, general questions - respond WITHOUT any ad
-            - For "hello", "hi", "how are you", and similar greetings: set conversational_response EXACTLY to "How can I help ?" (no additional text)
-            - For "what's the weather", etc. - NO ad, just conversational response
-            - confidence should be 0.0 for non-commercial messages, 0.6-1.0 for commercial intent
-            - Make ad suggestions feel natural and helpful, not pushy
-            - Keep responses conversational and natural
-            - Consider user interests and mood when making suggestions
-            """, conversationContext, currentMessage);
+        }
+        return Arrays.asList(byId);
     }
     
     /**
-     * Calls the ChatGPT API with the given prompt
+     * Calls the ChatGPT API with the template's system prompt and the given user
+     * message, and returns the assistant message content
      */
-    private String callChatGPTAPI(String prompt) throws IOException {
-        if (openaiApiKey == null || openaiApiKey.trim().isEmpty()) {
+    private String callChatGPTAPI(ChatCompletionRequestBody.Template template, String prompt, int maxTokens,
+                                  OpenAIQuotaScheduler.Priority priority) throws IOException {
+        if (!hasApiKey()) {
             logger.warn("OpenAI API key not configured, using mock response");
-            return createMockChatGPTResponse(prompt);
+            try (JsonParser parser = objectMapper.getFactory().createParser(createMockChatGPTResponse(prompt))) {
+                return ChatCompletionDecoder.readContent(parser);
+            }
         }
         
         logger.info("Attempting ChatGPT API call");
         
-        ObjectNode requestBody = objectMapper.createObjectNode();
-        requestBody.put("model", openaiModel);
-        requestBody.put("temperature", 0.7);
-        requestBody.put("max_tokens", 1000);
-        
-        ArrayNode messages = requestBody.putArray("messages");
-        ObjectNode message = messages.addObject();
-        message.put("role", "user");
-        message.put("content", prompt);
-        
         Request request = new Request.Builder()
                 .url(openaiApiUrl)
                 .addHeader("Authorization", "Bearer " + openaiApiKey)
-                .addHeader("Content-Type", "application/json")
-                .post(RequestBody.create(
-                    objectMapper.writeValueAsString(requestBody),
-                    MediaType.get("application/json")
-                ))
+                .post(template.body(prompt, maxTokens))
                 .build();
         
+        int estimatedTokens = estimateTokens(template.getSystemPromptLength() + prompt.length(), maxTokens);
+        return executeWithResilience(request, estimatedTokens, priority);
+    }
+    
+    private Mono<String> callChatGPTAPIReactive(ChatCompletionRequestBody.Template template, String prompt, int maxTokens,
+                                                OpenAIQuotaScheduler.Priority priority) {
+        if (!hasApiKey()) {
+            return Mono.fromCallable(() -> {
+                try (JsonParser parser = objectMapper.getFactory().createParser(createMockChatGPTResponse(prompt))) {
+                    return ChatCompletionDecoder.readContent(parser);
+                }
+            });
+        }
+        byte[] body = template.body(prompt, maxTokens).toByteArray();
+        int estimatedTokens = estimateTokens(template.getSystemPromptLength() + prompt.length(), maxTokens);
+        return executeReactive(body, estimatedTokens, priority, 1);
+    }
+    
+    /**
+     * One attempt through the call queue, circuit breaker and quota scheduler, then retries on the same terms
+     * as {@link #executeWithResilience}, with the backoff on a timer instead of a sleeping thread
+     */
+    private Mono<String> executeReactive(byte[] body, int estimatedTokens, OpenAIQuotaScheduler.Priority priority, int attempt) {
+        OpenAIQuotaScheduler quotaScheduler = this.quotaScheduler;
+        RetryPolicy retryPolicy = this.retryPolicy;
+        Mono<String> call = reactiveCallQueue.submit(Mono.defer(() -> exchangeOnce(body, estimatedTokens, priority)));
+        return call.onErrorResume(IOException.class, failure -> {
+            if (quotaScheduler != null && failure instanceof ChatGPTApiException && ((ChatGPTApiException) failure).getStatusCode() == 429) {
+                quotaScheduler.onRateLimited(((ChatGPTApiException) failure).getRetryAfterMs());
+            }
+            if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(failure)) {
+                return Mono.error(failure);
+            }
+            long backoffMs = retryPolicy.backoffMillis(attempt, failure);
+            retriedCalls.incrementAndGet();
+            logger.warn("ChatGPT API attempt {} failed ({}), retrying in {}ms", attempt, failure.getMessage(), backoffMs);
+            return Mono.delay(Duration.ofMillis(backoffMs))
+                .then(Mono.defer(() -> executeReactive(body, estimatedTokens, priority, attempt + 1)));
+        });
+    }
+    
+    private Mono<String> exchangeOnce(byte[] body, int estimatedTokens, OpenAIQuotaScheduler.Priority priority) {
+        CircuitBreaker breaker = this.circuitBreaker;
+        OpenAIQuotaScheduler quotaScheduler = this.quotaScheduler;
+        if (!breaker.tryAcquirePermission()) {
+            return Mono.error(new ChatGPTCallRejectedException(ChatGPTCallRejectedException.Reason.CIRCUIT_OPEN,
+                "ChatGPT circuit breaker is open"));
+        }
+        if (quotaScheduler == null) {
+            return exchangeAdmitted(body, breaker);
+        }
+        // Quota once admitted; the scheduler waits by parking, so it is kept off the event loop
+        return Mono.fromCallable(() -> {
+                quotaScheduler.acquire(estimatedTokens, priority);
+                return Boolean.TRUE;
+            })
+            .subscribeOn(Schedulers.boundedElastic())
+            .doOnError(e -> breaker.releasePermission())
+            .doOnCancel(breaker::releasePermission)
+            .then(Mono.defer(() -> exchangeAdmitted(body, breaker)));
+    }
+    
+    private Mono<String> exchangeAdmitted(byte[] body, CircuitBreaker breaker) {
+        long start = System.nanoTime();
+        return webClient.post()
+            .uri(openaiApiUrl)
+            .header(HttpHeaders.AUTHORIZATION, "Bearer " + openaiApiKey)
+            .contentType(org.springframework.http.MediaType.APPLICATION_JSON)
+            .bodyValue(body)
+            .exchangeToMono(response -> response.bodyToMono(byte[].class)
+                .defaultIfEmpty(new byte[0])
+                .flatMap(bytes -> {
+                    if (!response.statusCode().is2xxSuccessful()) {
+                        String responseBody = new String(bytes, StandardCharsets.UTF_8);
+                        logger.error("ChatGPT API call failed: {} - Response: {}", response.statusCode().value(), responseBody);
+                        return Mono.error(new ChatGPTApiException(response.statusCode().value(),
+                            "ChatGPT API call failed: " + response.statusCode().value() + " - " + responseBody,
+                            parseRetryAfterMs(response.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER))));
+                    }
+                    return Mono.fromCallable(() -> {
+                        try (JsonParser parser = objectMapper.getFactory().createParser(bytes)) {
+                            return ChatCompletionDecoder.readContent(parser);
+                        }
+                    });
+                }))
+            // Transport failures and timeouts count as I/O errors, as they do on the blocking path
+            .onErrorMap(WebClientRequestException.class, ChatGPTService::asIOException)
+            .doOnSuccess(content -> breaker.onSuccess(System.nanoTime() - start))
+            .doOnError(e -> breaker.onError(System.nanoTime() - start))
+            .doOnCancel(breaker::releasePermission);
+    }
+    
+    /**
+     * A reactive transport failure as OkHttp reports it on the blocking path; a timeout
+     * becomes a {@link SocketTimeoutException}
+     */
+    private static IOException asIOException(WebClientRequestException e) {
+        if (e.getCause() instanceof IOException cause) {
+            return cause;
+        }
+        IOException mapped = e.getCause() instanceof io.netty.handler.timeout.TimeoutException
+            ? new SocketTimeoutException(e.getMessage())
+            : new IOException(e.getMessage());
+        mapped.initCause(e);
+        return mapped;
+    }
+    
+    /**
+     * Rough token cost of a call as OpenAI meters it against the per-minute quota:
+     * the prompt (about four characters per token) plus the full max_tokens allowance
+     */
+    static int estimateTokens(int promptChars, int maxTokens) {
+        return promptChars / CHARS_PER_TOKEN + maxTokens;
+    }
+    
+    /**
+     * Runs the request through the circuit breaker, bulkhead and quota scheduler, in that
+     * order, retrying retryable failures with jittered backoff. Each attempt is recorded by the
+     * breaker separately and draws from the quota once admitted, since OpenAI meters retries
+     * like any other call.
+     */
+    private String executeWithResilience(Request request, int estimatedTokens, OpenAIQuotaScheduler.Priority priority) throws IOException {
+        CircuitBreaker breaker = this.circuitBreaker;
+        Bulkhead bulkhead = this.bulkhead;
+        RetryPolicy retryPolicy = this.retryPolicy;
+        OpenAIQuotaScheduler quotaScheduler = this.quotaScheduler;
+        
+        for (int attempt = 1; ; attempt++) {
+            if (!breaker.tryAcquirePermission()) {
+                throw new ChatGPTCallRejectedException(ChatGPTCallRejectedException.Reason.CIRCUIT_OPEN,
+                    "ChatGPT circuit breaker is open");
+            }
+            if (!bulkhead.tryAcquire()) {
+                breaker.releasePermission();
+                throw new ChatGPTCallRejectedException(ChatGPTCallRejectedException.Reason.BULKHEAD_FULL,
+                    "Too many concurrent ChatGPT calls");
+            }
+            // Quota last, so calls the breaker or bulkhead turn away never spend any
+            if (quotaScheduler != null) {
+                try {
+                    quotaScheduler.acquire(estimatedTokens, priority);
+                } catch (ChatGPTCallRejectedException e) {
+                    bulkhead.release();
+                    breaker.releasePermission();
+                    throw e;
+                }
+            }
+            
+            long start = System.nanoTime();
+            IOException failure;
+            try {
+                String responseBody = executeRequest(request);
+                breaker.onSuccess(System.nanoTime() - start);
+                return responseBody;
+            } catch (IOException e) {
+                breaker.onError(System.nanoTime() - start);
+                if (quotaScheduler != null && e instanceof ChatGPTApiException && ((ChatGPTApiException) e).getStatusCode() == 429) {
+                    quotaScheduler.onRateLimited(((ChatGPTApiException) e).getRetryAfterMs());
+                }
+                failure = e;
+            } catch (RuntimeException e) {
+                breaker.onError(System.nanoTime() - start);
+                throw e;
+            } finally {
+                bulkhead.release();
+            }
+            
+            if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(failure)) {
+                throw failure;
+            }
+            long backoffMs = retryPolicy.backoffMillis(attempt, failure);
+            retriedCalls.incrementAndGet();
+            logger.warn("ChatGPT API attempt {} failed ({}), retrying in {}ms", attempt, failure.getMessage(), backoffMs);
+            sleepBeforeRetry(backoffMs, failure);
+        }
+    }
+    
+    private String executeRequest(Request request) throws IOException {
         try (Response response = httpClient.newCall(request).execute()) {
-            String responseBody = response.body().string();
+            ResponseBody body = response.body();
             
             if (!response.isSuccessful()) {
+                String responseBody = body != null ? body.string() : "";
                 logger.error("ChatGPT API call failed: {} {} - Response: {}", 
                     response.code(), response.message(), responseBody);
-                throw new IOException("ChatGPT API call failed: " + response.code() + " " + response.message() + " - " + responseBody);
+                throw new ChatGPTApiException(response.code(),
+                    "ChatGPT API call failed: " + response.code() + " " + response.message() + " - " + responseBody,
+                    parseRetryAfterMs(response.header("Retry-After")));
+            }
+            if (body == null) {
+                throw new IOException("ChatGPT API returned an empty body");
             }
             
-            logger.debug("ChatGPT API response: {}", responseBody);
-            return responseBody;
+            // Decode the envelope straight off the socket; only the content string is materialized
+            try (JsonParser parser = objectMapper.getFactory().createParser(body.byteStream())) {
+                String content = ChatCompletionDecoder.readContent(parser);
+                logger.debug("ChatGPT API response content: {}", content);
+                return content;
+            }
+        }
+    }
+    
+    private static long parseRetryAfterMs(String retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return (long) (Double.parseDouble(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    private static void sleepBeforeRetry(long backoffMs, IOException cause) throws IOException {
+        try {
+            Thread.sleep(backoffMs);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw cause;
         }
     }
     
@@ -439,113 +1127,64 @@ public class ChatGPTService {
     }
     
     /**
-     * Parses the ChatGPT API response and extracts conversational response with optional ad suggestion
+     * Binds the JSON object ChatGPT returned as message content
      */
-    private ChatGPTAdSuggestion parseChatGPTResponse(String chatGPTResponse, String originalMessage) {
-        try {
-            JsonNode responseNode = objectMapper.readTree(chatGPTResponse);
-            String content = responseNode.path("choices").path(0).path("message").path("content").asText();
-            
-            // Parse the JSON content from ChatGPT's response
-            JsonNode suggestionNode = objectMapper.readTree(content);
-            
-            String intent = suggestionNode.path("intent").asText();
-            String mood = suggestionNode.path("mood").asText();
-            double confidence = suggestionNode.path("confidence").asDouble();
-            String conversationalResponse = suggestionNode.path("conversational_response").asText();
-            
-            // Extract ad suggestion if present
-            JsonNode adNode = suggestionNode.path("ad_suggestion");
-            Ad ad = null;
-            logger.info("ChatGPT raw response - ad_suggestion present: {}, confidence: {}", !adNode.isMissingNode(), confidence);
-            
-            if (!adNode.isMissingNode() && confidence >= 0.6) {
-                ad = new Ad(
-                    "chatgpt_" + System.currentTimeMillis(),
-                    adNode.path("title").asText(),
-                    adNode.path("description").asText(),
-                    "ChatGPT"
-                );
-                ad.addCategory(adNode.path("category").asText());
-                ad.setCallToAction(adNode.path("call_to_action").asText());
-                
-                // Create conversational template with sponsored banner
-                String url = adNode.path("url").asText();
-                String callToAction = adNode.path("call_to_action").asText();
-                String title = adNode.path("title").asText();
-                String description = adNode.path("description").asText();
-                
-                String sponsoredLink = String.format("""
-                    <div class="sponsored-link" style="
-                        border-left: 1px solid #3b82f6;
-                        background: #f8fafc;
-                        padding: 4px 6px;
-                        margin: 2px 0;
-                        border-radius: 2px;
-                        font-size: 11px;
-                    ">
-                        <div style="
-                            display: flex;
-                            justify-content: space-between;
-                            align-items: center;
-                            gap: 4px;
-                        ">
-                            <div style="flex: 1;">
-                                <div style="
-                                    font-size: 8px;
-                                    color: #6b7280;
-                                    text-transform: uppercase;
-                                    font-weight: 600;
-                                    margin-bottom: 1px;
-                                ">Sponsored</div>
-                                <a href="%s" target="_blank" style="
-                                    color: #1f2937;
-                                    text-decoration: none;
-                                    font-weight: 600;
-                                    font-size: 11px;
-                                    line-height: 1.1;
-                                " onmouseover="this.style.color='#3b82f6'" onmouseout="this.style.color='#1f2937'">%s</a>
-                                <div style="
-                                    color: #6b7280;
-                                    font-size: 9px;
-                                    line-height: 1.1;
-                                    margin-top: 1px;
-                                ">%s</div>
-                            </div>
-                            <div style="
-                                background: #3b82f6;
-                                color: white;
-                                padding: 2px 4px;
-                                border-radius: 2px;
-                                font-size: 8px;
-                                font-weight: 600;
-                                white-space: nowrap;
-                            ">%s</div>
-                        </div>
-                    </div>
-                    """, url, title, description, callToAction);
-                
-                String template = String.format("%s %s", conversationalResponse, sponsoredLink);
-                ad.setConversationalTemplate(template);
-            } else {
-                // No ad suggestion - don't create an Ad object
-                ad = null;
-            }
+    private SuggestionPayload readPayload(String content) throws IOException {
+        return payloadReader.readValue(content);
+    }
+    
+    /**
+     * Binds a batched answer; accepts a bare array or an object wrapping it in "results"
+     */
+    private SuggestionPayload[] readBatchPayload(String content) throws IOException {
+        String trimmed = content.trim();
+        if (trimmed.startsWith("[")) {
+            return batchPayloadReader.readValue(trimmed);
+        }
+        JsonNode results = objectMapper.readTree(trimmed).path("results");
+        return results.isArray() ? batchPayloadReader.readValue(results) : new SuggestionPayload[0];
+    }
+    
+    /**
+     * Builds the suggestion from one parsed result object
+     */
+    private ChatGPTAdSuggestion toSuggestion(SuggestionPayload payload, String originalMessage) {
+        double confidence = payload.confidence();
+        String conversationalResponse = textOf(payload.conversationalResponse());
+        
+        // Extract ad suggestion if present
+        SuggestionPayload.AdPayload adPayload = payload.adSuggestion();
+        boolean hasAdSuggestion = adPayload != null;
+        Ad ad = null;
+        logger.info("ChatGPT raw response - ad_suggestion present: {}, confidence: {}", hasAdSuggestion, confidence);
+        
+        if (hasAdSuggestion && confidence >= 0.6) {
+            String title = textOf(adPayload.title());
+            String description = textOf(adPayload.description());
+            String callToAction = textOf(adPayload.callToAction());
             
-            // For non-commercial messages, set confidence to 0.0 to prevent ad display
-            boolean hasAdSuggestion = !adNode.isMissingNode();
-            double finalConfidence = (hasAdSuggestion && confidence >= 0.6) ? confidence : 0.0;
-            logger.info("ChatGPT Response - Original confidence: {}, has ad suggestion: {}, ad is null: {}, final confidence: {}", 
-                       confidence, hasAdSuggestion, (ad == null), finalConfidence);
-            return new ChatGPTAdSuggestion(originalMessage, ad, finalConfidence, conversationalResponse);
+            ad = new Ad("chatgpt_" + System.currentTimeMillis(), title, description, "ChatGPT");
+            ad.addCategory(textOf(adPayload.category()));
+            ad.setCallToAction(callToAction);
+            String url = textOf(adPayload.url());
+            ad.setUrl(url);
+            ad.setTemplateId(SPONSORED_LINK_TEMPLATE_ID);
             
-        } catch (Exception e) {
-            logger.error("Error parsing ChatGPT response: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to parse ChatGPT response: " + e.getMessage(), e);
+            // Conversational template with sponsored banner, built only for clients that want the HTML
+            ad.setTemplateRenderer(() -> SPONSORED_LINK_TEMPLATE.render(
+                conversationalResponse, url, title, description, callToAction));
         }
+        
+        // For non-commercial messages, set confidence to 0.0 to prevent ad display
+        double finalConfidence = (hasAdSuggestion && confidence >= 0.6) ? confidence : 0.0;
+        logger.info("ChatGPT Response - Original confidence: {}, has ad suggestion: {}, ad is null: {}, final confidence: {}", 
+                   confidence, hasAdSuggestion, (ad == null), finalConfidence);
+        return new ChatGPTAdSuggestion(originalMessage, ad, finalConfidence, conversationalResponse);
     }
     
-
+    private static String textOf(String value) {
+        return value != null ? value : "";
+    }
     
     /**
      * Data class for ChatGPT ad suggestions
@@ -571,4 +1210,19 @@ public class ChatGPTService {
         public String getReasoning() { return reasoning; }
         public boolean hasAd() { return ad != null && confidence >= 0.3; }
     }
+    
+    /**
+     * One conversation waiting in a classification batch
+     */
+    private static final class BatchItem {
+        final String conversationContext;
+        final String message;
+        final OpenAIQuotaScheduler.Priority priority;
+        
+        BatchItem(String conversationContext, String message, OpenAIQuotaScheduler.Priority priority) {
+            this.conversationContext = conversationContext;
+            this.message = message;
+            this.priority = priority;
+        }
+    }
 }
@@ -0,0 +1,189 @@
+package com.adrelevance.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Count-based sliding-window circuit breaker for upstream LLM calls.
+ * Tracks both failures and slow calls; opens when either rate crosses its threshold,
+ * fast-fails while open, and lets a few probe calls through when half-open.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDurationNanos;
+    private final long openDurationNanos;
+    private final int halfOpenPermittedCalls;
+
+    // Sliding window of the most recent call outcomes (guarded by this)
+    private final byte[] window;
+    private int windowIndex;
+    private int bufferedCalls;
+    private int failedCalls;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAtNanos;
+    private int halfOpenInFlight;
+    private int halfOpenCompleted;
+    private int halfOpenFailed;
+    private int halfOpenSlow;
+
+    private final AtomicLong notPermittedCalls = new AtomicLong();
+    private final AtomicLong stateTransitions = new AtomicLong();
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls,
+                          double failureRateThreshold, double slowCallRateThreshold,
+                          long slowCallDurationMs, long openDurationMs, int halfOpenPermittedCalls) {
+        if (windowSize <= 0 || halfOpenPermittedCalls <= 0) {
+            throw new IllegalArgumentException("windowSize and halfOpenPermittedCalls must be positive");
+        }
+        this.name = name;
+        this.window = new byte[windowSize];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationNanos = slowCallDurationMs * 1_000_000L;
+        this.openDurationNanos = openDurationMs * 1_000_000L;
+        this.halfOpenPermittedCalls = halfOpenPermittedCalls;
+    }
+
+    /**
+     * Returns true if a call may proceed. Every permitted call must be followed by
+     * exactly one of {@link #onSuccess}, {@link #onError} or {@link #releasePermission}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAtNanos < openDurationNanos) {
+                notPermittedCalls.incrementAndGet();
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight + halfOpenCompleted >= halfOpenPermittedCalls) {
+                notPermittedCalls.incrementAndGet();
+                return false;
+            }
+            halfOpenInFlight++;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back a permission for a call that was never executed
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN && halfOpenInFlight > 0) {
+            halfOpenInFlight--;
+        }
+    }
+
+    public void onSuccess(long durationNanos) {
+        record(durationNanos >= slowCallDurationNanos ? SLOW : 0);
+    }
+
+    public void onError(long durationNanos) {
+        record((byte) (FAILED | (durationNanos >= slowCallDurationNanos ? SLOW : 0)));
+    }
+
+    private synchronized void record(byte outcome) {
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight > 0) {
+                halfOpenInFlight--;
+            }
+            halfOpenCompleted++;
+            if ((outcome & FAILED) != 0) halfOpenFailed++;
+            if ((outcome & SLOW) != 0) halfOpenSlow++;
+            if (halfOpenCompleted >= halfOpenPermittedCalls) {
+                boolean stillUnhealthy = halfOpenFailed * 100.0 / halfOpenCompleted >= failureRateThreshold
+                        || halfOpenSlow * 100.0 / halfOpenCompleted >= slowCallRateThreshold;
+                transitionTo(stillUnhealthy ? State.OPEN : State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // Late completion of a call started before the breaker opened
+            return;
+        }
+
+        byte evicted = window[windowIndex];
+        if (bufferedCalls == window.length) {
+            if ((evicted & FAILED) != 0) failedCalls--;
+            if ((evicted & SLOW) != 0) slowCalls--;
+        } else {
+            bufferedCalls++;
+        }
+        window[windowIndex] = outcome;
+        windowIndex = (windowIndex + 1) % window.length;
+        if ((outcome & FAILED) != 0) failedCalls++;
+        if ((outcome & SLOW) != 0) slowCalls++;
+
+        if (bufferedCalls >= minimumCalls
+                && (failureRate() >= failureRateThreshold || slowCallRate() >= slowCallRateThreshold)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State newState) {
+        State previous = state;
+        state = newState;
+        halfOpenInFlight = 0;
+        halfOpenCompleted = 0;
+        halfOpenFailed = 0;
+        halfOpenSlow = 0;
+        if (newState == State.OPEN) {
+            openedAtNanos = System.nanoTime();
+        }
+        if (newState == State.CLOSED) {
+            windowIndex = 0;
+            bufferedCalls = 0;
+            failedCalls = 0;
+            slowCalls = 0;
+        }
+        stateTransitions.incrementAndGet();
+        logger.warn("Circuit breaker '{}' transitioned from {} to {}", name, previous, newState);
+    }
+
+    private double failureRate() {
+        return bufferedCalls == 0 ? 0.0 : failedCalls * 100.0 / bufferedCalls;
+    }
+
+    private double slowCallRate() {
+        return bufferedCalls == 0 ? 0.0 : slowCalls * 100.0 / bufferedCalls;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Snapshot of breaker state for the stats endpoint
+     */
+    public synchronized Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("state", state.name());
+        metrics.put("bufferedCalls", bufferedCalls);
+        metrics.put("failedCalls", failedCalls);
+        metrics.put("slowCalls", slowCalls);
+        metrics.put("failureRate", failureRate());
+        metrics.put("slowCallRate", slowCallRate());
+        metrics.put("notPermittedCalls", notPermittedCalls.get());
+        metrics.put("stateTransitions", stateTransitions.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,79 @@
+package com.adrelevance.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Text template with named {@code {{slot}}} placeholders, split into literal
+ * segments once so rendering is a single pass of appends into a pre-sized buffer
+ */
+public final class CreativeTemplate {
+    private final String[] literals;
+    private final int[] slotOrder;
+    private final int literalLength;
+
+    private CreativeTemplate(String[] literals, int[] slotOrder) {
+        this.literals = literals;
+        this.slotOrder = slotOrder;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Compiles the template; {@code slots} defines the argument order for {@link #render}
+     */
+    public static CreativeTemplate compile(String template, String... slots) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> order = new ArrayList<>();
+        int position = 0;
+        while (true) {
+            int start = template.indexOf("{{", position);
+            if (start < 0) {
+                break;
+            }
+            int end = template.indexOf("}}", start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unterminated placeholder at " + start);
+            }
+            String name = template.substring(start + 2, end).trim();
+            int slot = indexOf(slots, name);
+            if (slot < 0) {
+                throw new IllegalArgumentException("Unknown placeholder: " + name);
+            }
+            literals.add(template.substring(position, start));
+            order.add(slot);
+            position = end + 2;
+        }
+        literals.add(template.substring(position));
+        return new CreativeTemplate(literals.toArray(new String[0]),
+                order.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Renders with values given in the slot order passed to {@link #compile}; nulls render as "null"
+     */
+    public String render(String... values) {
+        int capacity = literalLength;
+        for (int slot : slotOrder) {
+            String value = values[slot];
+            capacity += value != null ? value.length() : 4;
+        }
+        StringBuilder out = new StringBuilder(capacity);
+        for (int i = 0; i < slotOrder.length; i++) {
+            out.append(literals[i]).append(values[slotOrder[i]]);
+        }
+        return out.append(literals[literals.length - 1]).toString();
+    }
+
+    private static int indexOf(String[] slots, String name) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
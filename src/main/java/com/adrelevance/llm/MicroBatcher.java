@@ -0,0 +1,154 @@
+package com.adrelevance.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Gathers individual requests for a short window (or until the batch is full)
+ * and hands them to a handler as one batch, fanning results back out to each caller
+ */
+public class MicroBatcher<T, R> {
+    private static final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+    /**
+     * Processes a batch; the returned list must be aligned with the input items
+     */
+    public interface BatchHandler<T, R> {
+        List<R> handle(List<T> items) throws Exception;
+    }
+
+    private final String name;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final BatchHandler<T, R> handler;
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<Pending<T, R>> pending;
+    private ScheduledFuture<?> scheduledFlush;
+
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong itemsSent = new AtomicLong();
+
+    public MicroBatcher(String name, int maxBatchSize, long maxDelayMs, BatchHandler<T, R> handler, Executor executor) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        this.name = name;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = Math.max(0, maxDelayMs);
+        this.handler = handler;
+        this.executor = executor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-batch-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pending = new ArrayList<>(maxBatchSize);
+    }
+
+    /**
+     * Queues an item; the future completes when its batch has been processed
+     */
+    public CompletableFuture<R> submit(T item) {
+        Pending<T, R> request = new Pending<>(item);
+        List<Pending<T, R>> ready = null;
+
+        lock.lock();
+        try {
+            pending.add(request);
+            if (pending.size() >= maxBatchSize) {
+                ready = drainLocked();
+            } else if (pending.size() == 1) {
+                scheduledFlush = timer.schedule(this::flushOnDeadline, maxDelayMs, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (ready != null) {
+            dispatch(ready);
+        }
+        return request.future;
+    }
+
+    private void flushOnDeadline() {
+        List<Pending<T, R>> ready;
+        lock.lock();
+        try {
+            ready = pending.isEmpty() ? null : drainLocked();
+        } finally {
+            lock.unlock();
+        }
+        if (ready != null) {
+            dispatch(ready);
+        }
+    }
+
+    private List<Pending<T, R>> drainLocked() {
+        List<Pending<T, R>> ready = pending;
+        pending = new ArrayList<>(maxBatchSize);
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return ready;
+    }
+
+    private void dispatch(List<Pending<T, R>> batch) {
+        try {
+            executor.execute(() -> process(batch));
+        } catch (RuntimeException e) {
+            batch.forEach(p -> p.future.completeExceptionally(e));
+        }
+    }
+
+    private void process(List<Pending<T, R>> batch) {
+        List<T> items = new ArrayList<>(batch.size());
+        for (Pending<T, R> p : batch) {
+            items.add(p.item);
+        }
+        batchesSent.incrementAndGet();
+        itemsSent.addAndGet(batch.size());
+
+        try {
+            List<R> results = handler.handle(items);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(i < results.size() ? results.get(i) : null);
+            }
+        } catch (Exception e) {
+            logger.error("Batch '{}' of {} items failed: {}", name, batch.size(), e.getMessage());
+            batch.forEach(p -> p.future.completeExceptionally(e));
+        }
+    }
+
+    public long getBatchesSent() { return batchesSent.get(); }
+
+    public long getItemsSent() { return itemsSent.get(); }
+
+    public void shutdown() {
+        flushOnDeadline();
+        timer.shutdown();
+    }
+
+    private static final class Pending<T, R> {
+        final T item;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+
+        Pending(T item) {
+            this.item = item;
+        }
+    }
+}
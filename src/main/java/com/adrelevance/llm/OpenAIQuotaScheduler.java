@@ -0,0 +1,263 @@
+package com.adrelevance.llm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps OpenAI calls inside the account's requests-per-minute and tokens-per-minute quota.
+ * Two continuously refilled token buckets gate every call; callers that cannot go right away
+ * wait in a priority queue (tier first, then shorter prompts, then arrival order). A call whose
+ * queue position cannot be served from the budget refilled within the maximum wait is shed
+ * immediately so the caller can degrade instead of queueing into a 429.
+ */
+public class OpenAIQuotaScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(OpenAIQuotaScheduler.class);
+
+    public enum Priority { HIGH, NORMAL, LOW }
+
+    private static final long DEFAULT_RATE_LIMIT_PAUSE_MS = 1000;
+
+    private final String name;
+    private final long maxWaitNanos;
+
+    // Refill rates per nanosecond and bucket sizes; a rate of 0 disables that dimension
+    private final double requestsPerNano;
+    private final double tokensPerNano;
+    private final double requestCapacity;
+    private final double tokenCapacity;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final PriorityQueue<Waiter> queue = new PriorityQueue<>();
+    private double availableRequests;
+    private double availableTokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private long sequence;
+
+    private final AtomicLong grantedCalls = new AtomicLong();
+    private final AtomicLong queuedCalls = new AtomicLong();
+    private final AtomicLong shedCalls = new AtomicLong();
+    private final AtomicLong rateLimitedResponses = new AtomicLong();
+
+    /**
+     * @param headroomPercent share of the quota held back to absorb estimation error
+     * @param burstMs how much of the per-minute budget may be spent back to back
+     */
+    public OpenAIQuotaScheduler(String name, long requestsPerMinute, long tokensPerMinute,
+                                double headroomPercent, long burstMs, long maxWaitMs) {
+        if (requestsPerMinute < 0 || tokensPerMinute < 0 || burstMs <= 0) {
+            throw new IllegalArgumentException("quota must be non-negative and burstMs positive");
+        }
+        double usable = 1.0 - Math.max(0.0, Math.min(headroomPercent, 100.0)) / 100.0;
+        long minuteNanos = TimeUnit.MINUTES.toNanos(1);
+        this.name = name;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+        this.requestsPerNano = requestsPerMinute * usable / minuteNanos;
+        this.tokensPerNano = tokensPerMinute * usable / minuteNanos;
+        long burstNanos = TimeUnit.MILLISECONDS.toNanos(burstMs);
+        // Never smaller than one call, otherwise a low quota could admit nothing at all
+        this.requestCapacity = Math.max(1.0, requestsPerNano * burstNanos);
+        this.tokenCapacity = Math.max(1.0, tokensPerNano * burstNanos);
+        this.availableRequests = requestCapacity;
+        this.availableTokens = tokenCapacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Blocks until the call fits the quota and is at the head of the queue.
+     *
+     * @throws ChatGPTCallRejectedException if the call was shed because the remaining
+     *         budget cannot reach it within the maximum wait
+     */
+    public void acquire(int estimatedTokens, Priority priority) throws ChatGPTCallRejectedException {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+            Waiter waiter = new Waiter(priority, clampTokens(estimatedTokens), sequence++, lock.newCondition());
+
+            if (queue.isEmpty() && canGrant(waiter, now)) {
+                grant(waiter);
+                return;
+            }
+            if (!fitsBudget(waiter, now)) {
+                throw shed("queued demand exceeds the remaining OpenAI quota");
+            }
+
+            queue.add(waiter);
+            queuedCalls.incrementAndGet();
+            long deadline = now + maxWaitNanos;
+            try {
+                while (true) {
+                    now = System.nanoTime();
+                    refill(now);
+                    if (queue.peek() == waiter && canGrant(waiter, now)) {
+                        queue.poll();
+                        grant(waiter);
+                        return;
+                    }
+                    long remaining = deadline - now;
+                    if (remaining <= 0) {
+                        queue.remove(waiter);
+                        throw shed("timed out waiting for OpenAI quota");
+                    }
+                    long wait = queue.peek() == waiter ? Math.min(remaining, nanosUntilAvailable(waiter, now)) : remaining;
+                    waiter.ready.awaitNanos(Math.max(wait, 1));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.remove(waiter);
+                throw shed("interrupted while waiting for OpenAI quota");
+            } finally {
+                signalHead();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called when OpenAI still answered 429: empties both buckets and holds
+     * every caller until the server's Retry-After has passed
+     */
+    public void onRateLimited(long retryAfterMs) {
+        rateLimitedResponses.incrementAndGet();
+        lock.lock();
+        try {
+            long pause = TimeUnit.MILLISECONDS.toNanos(retryAfterMs > 0 ? retryAfterMs : DEFAULT_RATE_LIMIT_PAUSE_MS);
+            pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + pause);
+            availableRequests = 0;
+            availableTokens = 0;
+        } finally {
+            lock.unlock();
+        }
+        logger.warn("Quota scheduler '{}' paused for {}ms after a 429 from OpenAI", name, retryAfterMs);
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefillNanos;
+        lastRefillNanos = now;
+        if (now < pausedUntilNanos || elapsed <= 0) {
+            return;
+        }
+        availableRequests = Math.min(requestCapacity, availableRequests + elapsed * requestsPerNano);
+        availableTokens = Math.min(tokenCapacity, availableTokens + elapsed * tokensPerNano);
+    }
+
+    private boolean canGrant(Waiter waiter, long now) {
+        return now >= pausedUntilNanos
+                && (requestsPerNano == 0 || availableRequests >= 1.0)
+                && (tokensPerNano == 0 || availableTokens >= waiter.tokens);
+    }
+
+    private void grant(Waiter waiter) {
+        if (requestsPerNano > 0) {
+            availableRequests -= 1.0;
+        }
+        if (tokensPerNano > 0) {
+            availableTokens -= waiter.tokens;
+        }
+        grantedCalls.incrementAndGet();
+    }
+
+    /**
+     * True if everything queued ahead of the waiter, plus the waiter itself, can be
+     * paid for from what is available now plus what refills within the maximum wait
+     */
+    private boolean fitsBudget(Waiter waiter, long now) {
+        double requestsAhead = 1.0;
+        double tokensAhead = waiter.tokens;
+        for (Waiter queued : queue) {
+            if (queued.compareTo(waiter) < 0) {
+                requestsAhead += 1.0;
+                tokensAhead += queued.tokens;
+            }
+        }
+        long refillWindow = Math.max(0, now + maxWaitNanos - Math.max(now, pausedUntilNanos));
+        boolean requestsFit = requestsPerNano == 0 || requestsAhead <= availableRequests + refillWindow * requestsPerNano;
+        boolean tokensFit = tokensPerNano == 0 || tokensAhead <= availableTokens + refillWindow * tokensPerNano;
+        return requestsFit && tokensFit;
+    }
+
+    private long nanosUntilAvailable(Waiter waiter, long now) {
+        long wait = Math.max(0, pausedUntilNanos - now);
+        if (requestsPerNano > 0 && availableRequests < 1.0) {
+            wait = Math.max(wait, (long) Math.ceil((1.0 - availableRequests) / requestsPerNano));
+        }
+        if (tokensPerNano > 0 && availableTokens < waiter.tokens) {
+            wait = Math.max(wait, (long) Math.ceil((waiter.tokens - availableTokens) / tokensPerNano));
+        }
+        return wait;
+    }
+
+    private void signalHead() {
+        Waiter head = queue.peek();
+        if (head != null) {
+            head.ready.signal();
+        }
+    }
+
+    private int clampTokens(int estimatedTokens) {
+        // A single call larger than the bucket could otherwise never be admitted
+        return (int) Math.min(Math.max(estimatedTokens, 0), (long) tokenCapacity);
+    }
+
+    private ChatGPTCallRejectedException shed(String message) {
+        shedCalls.incrementAndGet();
+        return new ChatGPTCallRejectedException(ChatGPTCallRejectedException.Reason.QUOTA_EXHAUSTED, message);
+    }
+
+    /**
+     * Snapshot of bucket levels and queue counters for the stats endpoint
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            metrics.put("name", name);
+            metrics.put("availableRequests", requestsPerNano == 0 ? -1 : (long) availableRequests);
+            metrics.put("availableTokens", tokensPerNano == 0 ? -1 : (long) availableTokens);
+            metrics.put("queueDepth", queue.size());
+        } finally {
+            lock.unlock();
+        }
+        metrics.put("grantedCalls", grantedCalls.get());
+        metrics.put("queuedCalls", queuedCalls.get());
+        metrics.put("shedCalls", shedCalls.get());
+        metrics.put("rateLimitedResponses", rateLimitedResponses.get());
+        return metrics;
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+        final Priority priority;
+        final int tokens;
+        final long sequence;
+        final Condition ready;
+
+        Waiter(Priority priority, int tokens, long sequence, Condition ready) {
+            this.priority = priority != null ? priority : Priority.NORMAL;
+            this.tokens = tokens;
+            this.sequence = sequence;
+            this.ready = ready;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            int byPriority = priority.compareTo(other.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+            int byTokens = Integer.compare(tokens, other.tokens);
+            return byTokens != 0 ? byTokens : Long.compare(sequence, other.sequence);
+        }
+    }
+}
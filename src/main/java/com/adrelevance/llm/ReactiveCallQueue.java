@@ -0,0 +1,136 @@
+package com.adrelevance.llm;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The reactive counterpart of {@link Bulkhead}: caps concurrent upstream calls without
+ * holding a thread per waiting caller.
+ *
+ * <p>Calls go into a bounded sink that one {@code flatMap} drains with at most
+ * {@code maxConcurrentCalls} in flight. flatMap asks for the next call only when one
+ * finishes, so a slow upstream backs the queue up, and once the queue is full new calls
+ * are rejected at once rather than buffered without bound.
+ */
+public class ReactiveCallQueue {
+    private final String name;
+    private final int maxConcurrentCalls;
+    private final int queueCapacity;
+    private final Sinks.Many<PendingCall<?>> sink;
+    private final Disposable drain;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    public ReactiveCallQueue(String name, int maxConcurrentCalls, int queueCapacity) {
+        if (maxConcurrentCalls <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("maxConcurrentCalls and queueCapacity must be positive");
+        }
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.queueCapacity = queueCapacity;
+        this.sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<PendingCall<?>>get(queueCapacity).get());
+        this.drain = sink.asFlux().flatMap(PendingCall::run, maxConcurrentCalls).subscribe();
+    }
+
+    /**
+     * Runs {@code call} once a slot is free. The returned Mono fails with a
+     * {@link ChatGPTCallRejectedException} if the queue is full; cancelling it
+     * drops the call from the queue or cancels it in flight.
+     */
+    public <T> Mono<T> submit(Mono<T> call) {
+        return Mono.create(caller -> {
+            if (queued.incrementAndGet() > queueCapacity) {
+                queued.decrementAndGet();
+                caller.error(reject());
+                return;
+            }
+            PendingCall<T> pending = new PendingCall<>(call, caller);
+            caller.onCancel(pending::cancel);
+            Sinks.EmitResult result;
+            do {
+                // Concurrent emitters are told to retry rather than being serialized for us
+                result = sink.tryEmitNext(pending);
+            } while (result == Sinks.EmitResult.FAIL_NON_SERIALIZED);
+            if (result.isFailure()) {
+                queued.decrementAndGet();
+                caller.error(reject());
+            }
+        });
+    }
+
+    /**
+     * Stops draining; queued calls are never started
+     */
+    public void dispose() {
+        sink.tryEmitComplete();
+        drain.dispose();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("name", name);
+        metrics.put("maxConcurrentCalls", maxConcurrentCalls);
+        metrics.put("queueCapacity", queueCapacity);
+        metrics.put("inFlightCalls", inFlight.get());
+        metrics.put("queuedCalls", queued.get());
+        metrics.put("rejectedCalls", rejectedCalls.get());
+        return metrics;
+    }
+
+    private ChatGPTCallRejectedException reject() {
+        rejectedCalls.incrementAndGet();
+        return new ChatGPTCallRejectedException(ChatGPTCallRejectedException.Reason.BULKHEAD_FULL,
+            "Too many queued ChatGPT calls");
+    }
+
+    private final class PendingCall<T> {
+        private final Mono<T> call;
+        private final MonoSink<T> caller;
+        private volatile boolean cancelled;
+        private volatile Disposable running;
+
+        PendingCall(Mono<T> call, MonoSink<T> caller) {
+            this.call = call;
+            this.caller = caller;
+        }
+
+        /**
+         * Starts the call; the returned Mono completes when it finishes, freeing the slot
+         */
+        Mono<Void> run() {
+            queued.decrementAndGet();
+            if (cancelled) {
+                return Mono.empty();
+            }
+            return Mono.create(slot -> {
+                inFlight.incrementAndGet();
+                running = call
+                    .doFinally(signal -> {
+                        inFlight.decrementAndGet();
+                        slot.success();
+                    })
+                    .subscribe(value -> caller.success(value), caller::error, () -> caller.success());
+                if (cancelled) {
+                    running.dispose();
+                }
+            });
+        }
+
+        void cancel() {
+            cancelled = true;
+            Disposable call = running;
+            if (call != null) {
+                call.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.adrelevance.llm;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter for retryable LLM call failures
+ */
+public class RetryPolicy {
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public RetryPolicy(int maxAttempts, long initialBackoffMs, long maxBackoffMs) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMs = Math.max(0, initialBackoffMs);
+        this.maxBackoffMs = Math.max(this.initialBackoffMs, maxBackoffMs);
+    }
+
+    public int getMaxAttempts() { return maxAttempts; }
+
+    /**
+     * Retryable status codes and transport errors are retried; local rejections are not
+     */
+    public boolean isRetryable(IOException e) {
+        if (e instanceof ChatGPTCallRejectedException) {
+            return false;
+        }
+        if (e instanceof ChatGPTApiException) {
+            return ((ChatGPTApiException) e).isRetryable();
+        }
+        return true;
+    }
+
+    /**
+     * Delay before the given retry (1-based), honouring a server Retry-After hint
+     */
+    public long backoffMillis(int retry, IOException cause) {
+        long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(retry - 1, 20));
+        long delay = ceiling == 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (cause instanceof ChatGPTApiException) {
+            long retryAfter = ((ChatGPTApiException) cause).getRetryAfterMs();
+            if (retryAfter > 0) {
+                delay = Math.max(delay, Math.min(retryAfter, maxBackoffMs));
+            }
+        }
+        return delay;
+    }
+}
@@ -0,0 +1,31 @@
+package com.adrelevance.llm;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Typed form of the JSON object ChatGPT returns inside the message content.
+ * {@code id} is only present for results of a batched request.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SuggestionPayload(
+        @JsonProperty("id") Integer id,
+        @JsonProperty("intent") String intent,
+        @JsonProperty("mood") String mood,
+        @JsonProperty("confidence") double confidence,
+        @JsonProperty("conversational_response") String conversationalResponse,
+        @JsonProperty("ad_suggestion") AdPayload adSuggestion) {
+
+    /**
+     * The optional ad_suggestion object
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record AdPayload(
+            @JsonProperty("title") String title,
+            @JsonProperty("description") String description,
+            @JsonProperty("category") String category,
+            @JsonProperty("call_to_action") String callToAction,
+            @JsonProperty("url") String url,
+            @JsonProperty("relevance_reasoning") String relevanceReasoning) {
+    }
+}
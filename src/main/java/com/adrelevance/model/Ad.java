@@ -3,6 +3,7 @@ package com.adrelevance.model;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.function.Supplier;
 
 /**
  * Represents an advertisement with targeting and conversational properties
@@ -19,6 +20,10 @@ public class Ad {
     private Map<UserMood, Double> moodRelevance;
     private List<String> keywords;
     private String conversationalTemplate;
+    // Rendered into conversationalTemplate on first read, for ads whose creative is rarely needed
+    private Supplier<String> templateRenderer;
+    private String url;
+    private String templateId;
     private AdType type;
     private double relevanceScore;
     private boolean isActive;
@@ -71,9 +76,31 @@ public class Ad {
     public List<String> getKeywords() { return keywords; }
     public void setKeywords(List<String> keywords) { this.keywords = keywords; }
 
-    public String getConversationalTemplate() { return conversationalTemplate; }
+    public String getConversationalTemplate() {
+        if (conversationalTemplate == null && templateRenderer != null) {
+            conversationalTemplate = templateRenderer.get();
+        }
+        return conversationalTemplate;
+    }
     public void setConversationalTemplate(String conversationalTemplate) { this.conversationalTemplate = conversationalTemplate; }
 
+    /**
+     * Defers building the conversational template until it is first read
+     */
+    public void setTemplateRenderer(Supplier<String> templateRenderer) {
+        this.conversationalTemplate = null;
+        this.templateRenderer = templateRenderer;
+    }
+
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+
+    /**
+     * Names the client-side creative template that renders this ad from its fields
+     */
+    public String getTemplateId() { return templateId; }
+    public void setTemplateId(String templateId) { this.templateId = templateId; }
+
     public AdType getType() { return type; }
     public void setType(AdType type) { this.type = type; }
 
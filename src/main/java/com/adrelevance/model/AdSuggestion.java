@@ -1,25 +1,56 @@
 package com.adrelevance.model;
 
+import java.util.function.Supplier;
+
 /**
  * Represents an ad suggestion with conversational response and relevance score
  */
 public class AdSuggestion {
     private Ad ad;
     private String response;
+    private Supplier<String> responseRenderer;
+    private String responseText;
     private double relevanceScore;
 
     public AdSuggestion(Ad ad, String response, double relevanceScore) {
         this.ad = ad;
         this.response = response;
+        this.responseText = response;
         this.relevanceScore = relevanceScore;
     }
 
+    /**
+     * A suggestion whose response is a rendered creative around {@code responseText},
+     * built only if {@link #getResponse} is called
+     */
+    public static AdSuggestion rendered(Ad ad, String responseText, Supplier<String> responseRenderer,
+                                        double relevanceScore) {
+        AdSuggestion suggestion = new AdSuggestion(ad, null, relevanceScore);
+        suggestion.responseText = responseText;
+        suggestion.responseRenderer = responseRenderer;
+        return suggestion;
+    }
+
     // Getters and Setters
     public Ad getAd() { return ad; }
     public void setAd(Ad ad) { this.ad = ad; }
 
-    public String getResponse() { return response; }
-    public void setResponse(String response) { this.response = response; }
+    public String getResponse() {
+        if (response == null && responseRenderer != null) {
+            response = responseRenderer.get();
+        }
+        return response;
+    }
+    public void setResponse(String response) {
+        this.response = response;
+        this.responseText = response;
+        this.responseRenderer = null;
+    }
+
+    /**
+     * The response without any creative markup
+     */
+    public String getResponseText() { return responseText; }
 
     public double getRelevanceScore() { return relevanceScore; }
     public void setRelevanceScore(double relevanceScore) { this.relevanceScore = relevanceScore; }
@@ -28,7 +59,7 @@ public class AdSuggestion {
     public String toString() {
         return "AdSuggestion{" +
                 "ad=" + (ad != null ? ad.getTitle() : "null") +
-                ", response='" + response + '\'' +
+                ", response='" + responseText + '\'' +
                 ", relevanceScore=" + relevanceScore +
                 '}';
     }
@@ -1,6 +1,8 @@
 package com.adrelevance.model;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -11,25 +13,34 @@ import java.util.HashMap;
 public class ConversationContext {
     private String conversationId;
     private String userId;
-    private List<Message> messages;
+    private MessageHistory messages;
     private UserState userState;
     private Map<String, Object> metadata;
-    private LocalDateTime lastActivity;
+    private volatile long lastActivityMillis;
     private ConversationMood mood;
     private List<String> detectedIntents;
     private Map<String, Double> topicWeights;
 
     public ConversationContext() {
-        this.metadata = new HashMap<>();
-        this.detectedIntents = new java.util.ArrayList<>();
-        this.topicWeights = new HashMap<>();
+        this(new MessageHistory());
     }
 
     public ConversationContext(String conversationId, String userId) {
-        this();
+        this(conversationId, userId, MessageHistory.DEFAULT_CAPACITY);
+    }
+
+    public ConversationContext(String conversationId, String userId, int historyCapacity) {
+        this(new MessageHistory(historyCapacity));
         this.conversationId = conversationId;
         this.userId = userId;
-        this.lastActivity = LocalDateTime.now();
+        this.lastActivityMillis = System.currentTimeMillis();
+    }
+
+    private ConversationContext(MessageHistory messages) {
+        this.messages = messages;
+        this.metadata = new HashMap<>();
+        this.detectedIntents = new java.util.ArrayList<>();
+        this.topicWeights = new HashMap<>();
     }
 
     // Getters and Setters
@@ -39,8 +50,32 @@ public class ConversationContext {
     public String getUserId() { return userId; }
     public void setUserId(String userId) { this.userId = userId; }
 
-    public List<Message> getMessages() { return messages; }
-    public void setMessages(List<Message> messages) { this.messages = messages; }
+    /**
+     * Read-only view of the message window, oldest first
+     */
+    public List<Message> getMessages() { return messages.asList(); }
+
+    /**
+     * Replaces the history; only the newest messages that fit the window are kept
+     */
+    public void setMessages(List<Message> messages) {
+        this.messages.clear();
+        if (messages != null) {
+            messages.forEach(this.messages::add);
+        }
+    }
+
+    public MessageHistory getMessageHistory() { return messages; }
+
+    /**
+     * Copy of the newest {@code count} messages, oldest first
+     */
+    public List<Message> getRecentMessages(int count) { return messages.recent(count); }
+
+    /**
+     * Messages seen over the whole conversation, not just those still in the window
+     */
+    public long getTotalMessageCount() { return messages.getTotalAdded(); }
 
     public UserState getUserState() { return userState; }
     public void setUserState(UserState userState) { this.userState = userState; }
@@ -48,8 +83,26 @@ public class ConversationContext {
     public Map<String, Object> getMetadata() { return metadata; }
     public void setMetadata(Map<String, Object> metadata) { this.metadata = metadata; }
 
-    public LocalDateTime getLastActivity() { return lastActivity; }
-    public void setLastActivity(LocalDateTime lastActivity) { this.lastActivity = lastActivity; }
+    public LocalDateTime getLastActivity() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(lastActivityMillis), ZoneId.systemDefault());
+    }
+    public void setLastActivity(LocalDateTime lastActivity) {
+        this.lastActivityMillis = lastActivity.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    public long getLastActivityMillis() { return lastActivityMillis; }
+    public void setLastActivityMillis(long lastActivityMillis) { this.lastActivityMillis = lastActivityMillis; }
+
+    /**
+     * Marks the conversation (and its user) as active now, which postpones idle eviction
+     */
+    public void touch() {
+        this.lastActivityMillis = System.currentTimeMillis();
+        UserState userState = this.userState;
+        if (userState != null) {
+            userState.touch();
+        }
+    }
 
     public ConversationMood getMood() { return mood; }
     public void setMood(ConversationMood mood) { this.mood = mood; }
@@ -61,11 +114,8 @@ public class ConversationContext {
     public void setTopicWeights(Map<String, Double> topicWeights) { this.topicWeights = topicWeights; }
 
     public void addMessage(Message message) {
-        if (this.messages == null) {
-            this.messages = new java.util.ArrayList<>();
-        }
         this.messages.add(message);
-        this.lastActivity = LocalDateTime.now();
+        touch();
     }
 
     public void addIntent(String intent) {
@@ -81,10 +131,10 @@ public class ConversationContext {
         return "ConversationContext{" +
                 "conversationId='" + conversationId + '\'' +
                 ", userId='" + userId + '\'' +
-                ", messageCount=" + (messages != null ? messages.size() : 0) +
+                ", messageCount=" + messages.getTotalAdded() +
                 ", mood=" + mood +
                 ", intents=" + detectedIntents +
-                ", lastActivity=" + lastActivity +
+                ", lastActivity=" + getLastActivity() +
                 '}';
     }
 }
@@ -7,6 +7,10 @@ public class EngineStats {
     private int activeConversations;
     private int adInventorySize;
     private int totalUsers;
+    private long evictedConversations;
+    private long evictedUsers;
+    private int coldConversations;
+    private int coldUsers;
 
     public EngineStats(int activeConversations, int adInventorySize, int totalUsers) {
         this.activeConversations = activeConversations;
@@ -14,6 +18,13 @@ public class EngineStats {
         this.totalUsers = totalUsers;
     }
 
+    public EngineStats(int activeConversations, int adInventorySize, int totalUsers,
+                       long evictedConversations, long evictedUsers) {
+        this(activeConversations, adInventorySize, totalUsers);
+        this.evictedConversations = evictedConversations;
+        this.evictedUsers = evictedUsers;
+    }
+
     // Getters and Setters
     public int getActiveConversations() { return activeConversations; }
     public void setActiveConversations(int activeConversations) { this.activeConversations = activeConversations; }
@@ -24,12 +35,28 @@ public class EngineStats {
     public int getTotalUsers() { return totalUsers; }
     public void setTotalUsers(int totalUsers) { this.totalUsers = totalUsers; }
 
+    public long getEvictedConversations() { return evictedConversations; }
+    public void setEvictedConversations(long evictedConversations) { this.evictedConversations = evictedConversations; }
+
+    public long getEvictedUsers() { return evictedUsers; }
+    public void setEvictedUsers(long evictedUsers) { this.evictedUsers = evictedUsers; }
+
+    public int getColdConversations() { return coldConversations; }
+    public void setColdConversations(int coldConversations) { this.coldConversations = coldConversations; }
+
+    public int getColdUsers() { return coldUsers; }
+    public void setColdUsers(int coldUsers) { this.coldUsers = coldUsers; }
+
     @Override
     public String toString() {
         return "EngineStats{" +
                 "activeConversations=" + activeConversations +
                 ", adInventorySize=" + adInventorySize +
                 ", totalUsers=" + totalUsers +
+                ", evictedConversations=" + evictedConversations +
+                ", evictedUsers=" + evictedUsers +
+                ", coldConversations=" + coldConversations +
+                ", coldUsers=" + coldUsers +
                 '}';
     }
 }
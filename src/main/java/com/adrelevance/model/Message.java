@@ -1,61 +1,124 @@
 package com.adrelevance.model;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
- * Represents a single message in a conversation
+ * Represents a single message in a conversation.
+ *
+ * <p>Stored compactly since conversations retain many of them: an epoch-millis timestamp,
+ * a byte type code, an interned sender id, and content as UTF-8 bytes, or as a shared
+ * String reference for canned responses (see {@link #canned}). Content is decoded on each
+ * read and the decoded String is not kept, so messages stay compact once read; callers
+ * reading it more than once per pass should hold on to it. Rarely used fields live in a
+ * side object that is only allocated when set.
  */
 public class Message {
-    private String id;
-    private String content;
+    private static final Interner<String> SENDER_IDS = Interners.newWeakInterner();
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final byte NO_TYPE = -1;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private long timestampMillis;
+    // byte[] (UTF-8) for ordinary content, String for shared canned content
+    private Object content;
     private String senderId;
-    private MessageType type;
-    private LocalDateTime timestamp;
-    private double sentimentScore;
-    private String detectedLanguage;
+    private Extras extras;
+    private byte type = NO_TYPE;
 
     public Message() {
-        this.timestamp = LocalDateTime.now();
+        this.timestampMillis = System.currentTimeMillis();
     }
 
     public Message(String content, String senderId, MessageType type) {
         this();
-        this.content = content;
-        this.senderId = senderId;
-        this.type = type;
+        setContent(content);
+        setSenderId(senderId);
+        setType(type);
+    }
+
+    /**
+     * Creates a message whose content is a constant or otherwise shared string;
+     * the message keeps a reference to it instead of its own copy
+     */
+    public static Message canned(String content, String senderId, MessageType type) {
+        Message message = new Message(null, senderId, type);
+        message.content = content;
+        return message;
     }
 
     // Getters and Setters
-    public String getId() { return id; }
-    public void setId(String id) { this.id = id; }
+    public String getId() { return extras != null ? extras.id : null; }
+    public void setId(String id) { extras().id = id; }
 
-    public String getContent() { return content; }
-    public void setContent(String content) { this.content = content; }
+    public String getContent() {
+        Object content = this.content;
+        if (content instanceof byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        return (String) content;
+    }
+    public void setContent(String content) {
+        this.content = content != null ? content.getBytes(StandardCharsets.UTF_8) : null;
+    }
 
     public String getSenderId() { return senderId; }
-    public void setSenderId(String senderId) { this.senderId = senderId; }
+    public void setSenderId(String senderId) { this.senderId = senderId != null ? SENDER_IDS.intern(senderId) : null; }
 
-    public MessageType getType() { return type; }
-    public void setType(MessageType type) { this.type = type; }
+    public MessageType getType() { return type == NO_TYPE ? null : TYPES[type]; }
+    public void setType(MessageType type) { this.type = type != null ? (byte) type.ordinal() : NO_TYPE; }
 
-    public LocalDateTime getTimestamp() { return timestamp; }
-    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+    public LocalDateTime getTimestamp() {
+        if (timestampMillis == NO_TIMESTAMP) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestampMillis), ZoneId.systemDefault());
+    }
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestampMillis = timestamp != null
+            ? timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+            : NO_TIMESTAMP;
+    }
+
+    public long getTimestampMillis() { return timestampMillis; }
+    public void setTimestampMillis(long timestampMillis) { this.timestampMillis = timestampMillis; }
+
+    public double getSentimentScore() { return extras != null ? extras.sentimentScore : 0.0; }
+    public void setSentimentScore(double sentimentScore) { extras().sentimentScore = sentimentScore; }
 
-    public double getSentimentScore() { return sentimentScore; }
-    public void setSentimentScore(double sentimentScore) { this.sentimentScore = sentimentScore; }
+    public String getDetectedLanguage() { return extras != null ? extras.detectedLanguage : null; }
+    public void setDetectedLanguage(String detectedLanguage) { extras().detectedLanguage = detectedLanguage; }
 
-    public String getDetectedLanguage() { return detectedLanguage; }
-    public void setDetectedLanguage(String detectedLanguage) { this.detectedLanguage = detectedLanguage; }
+    private Extras extras() {
+        if (extras == null) {
+            extras = new Extras();
+        }
+        return extras;
+    }
 
     @Override
     public String toString() {
         return "Message{" +
-                "id='" + id + '\'' +
-                ", content='" + content + '\'' +
+                "id='" + getId() + '\'' +
+                ", content='" + getContent() + '\'' +
                 ", senderId='" + senderId + '\'' +
-                ", type=" + type +
-                ", timestamp=" + timestamp +
-                ", sentimentScore=" + sentimentScore +
+                ", type=" + getType() +
+                ", timestamp=" + getTimestamp() +
+                ", sentimentScore=" + getSentimentScore() +
                 '}';
     }
+
+    /**
+     * Optional per-message fields that most messages never set
+     */
+    private static final class Extras {
+        String id;
+        double sentimentScore;
+        String detectedLanguage;
+    }
 }
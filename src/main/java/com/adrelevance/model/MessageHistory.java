@@ -0,0 +1,151 @@
+package com.adrelevance.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Fixed-capacity ring buffer of the most recent messages in a conversation.
+ * Once full, each new message overwrites the oldest one, which is handed to the
+ * optional eviction listener (e.g. to spill or summarize it), so memory per
+ * conversation stays constant however long it runs.
+ */
+public class MessageHistory {
+    public static final int DEFAULT_CAPACITY = 50;
+
+    /**
+     * Receives messages as they fall out of the window
+     */
+    @FunctionalInterface
+    public interface EvictionListener {
+        void onEvicted(Message message);
+    }
+
+    private final Message[] buffer;
+    private int head;
+    private int size;
+    private long totalAdded;
+    private volatile EvictionListener evictionListener;
+    private final List<Message> view = new View();
+
+    public MessageHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MessageHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.buffer = new Message[capacity];
+    }
+
+    public void add(Message message) {
+        Message evicted = null;
+        synchronized (this) {
+            if (size == buffer.length) {
+                evicted = buffer[head];
+                buffer[head] = message;
+                head = (head + 1) % buffer.length;
+            } else {
+                buffer[(head + size) % buffer.length] = message;
+                size++;
+            }
+            totalAdded++;
+        }
+        EvictionListener listener = evictionListener;
+        if (evicted != null && listener != null) {
+            listener.onEvicted(evicted);
+        }
+    }
+
+    public synchronized Message get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return buffer[(head + index) % buffer.length];
+    }
+
+    /**
+     * Copies the newest {@code count} messages, oldest first
+     */
+    public synchronized List<Message> recent(int count) {
+        int n = Math.max(0, Math.min(count, size));
+        List<Message> recent = new ArrayList<>(n);
+        for (int i = size - n; i < size; i++) {
+            recent.add(buffer[(head + i) % buffer.length]);
+        }
+        return recent;
+    }
+
+    /**
+     * Read-only view over the current window, oldest first; reflects later additions
+     */
+    public List<Message> asList() {
+        return view;
+    }
+
+    /**
+     * Replaces the window with recovered messages, keeping the newest that fit,
+     * and restores the lifetime message count
+     */
+    public synchronized void restore(List<Message> messages, long totalAdded) {
+        clear();
+        int skip = Math.max(0, messages.size() - buffer.length);
+        for (int i = skip; i < messages.size(); i++) {
+            buffer[size++] = messages.get(i);
+        }
+        this.totalAdded = Math.max(totalAdded, size);
+    }
+
+    /**
+     * Copies the window and the lifetime message count together, so they agree
+     * even while messages are being added
+     */
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(recent(size), totalAdded);
+    }
+
+    /**
+     * Consistent copy of a history: its window, oldest first, and lifetime message count
+     */
+    public record Snapshot(List<Message> messages, long totalAdded) { }
+
+    public synchronized void clear() {
+        Arrays.fill(buffer, null);
+        head = 0;
+        size = 0;
+        totalAdded = 0;
+    }
+
+    public synchronized int size() { return size; }
+
+    public int capacity() { return buffer.length; }
+
+    /**
+     * Number of messages ever added, including those evicted from the window
+     */
+    public synchronized long getTotalAdded() { return totalAdded; }
+
+    public void setEvictionListener(EvictionListener evictionListener) { this.evictionListener = evictionListener; }
+
+    private final class View extends AbstractList<Message> implements RandomAccess {
+        @Override
+        public Message get(int index) {
+            return MessageHistory.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return MessageHistory.this.size();
+        }
+
+        @Override
+        public List<Message> subList(int fromIndex, int toIndex) {
+            // Snapshot rather than a live window, since the ring shifts underneath it
+            return Collections.unmodifiableList(new ArrayList<>(super.subList(fromIndex, toIndex)));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.adrelevance.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide mapping between strings (categories, ad ids) and small dense ints,
+ * so per-user state can hold ids in bitsets and primitive maps instead of strings.
+ * Ids are never reused, so the table is bounded: once it holds {@code maxSize} names, or
+ * for names longer than {@code maxNameLength}, {@link #idOf} returns -1 and callers keep
+ * the string itself. Names sent by clients therefore cannot grow it without limit.
+ */
+public class SymbolTable {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final int maxNameLength;
+    private volatile String[] names = new String[64];
+    private int nextId;
+
+    public SymbolTable(int maxSize, int maxNameLength) {
+        if (maxSize <= 0 || maxNameLength <= 0) {
+            throw new IllegalArgumentException("maxSize and maxNameLength must be positive");
+        }
+        this.maxSize = maxSize;
+        this.maxNameLength = maxNameLength;
+    }
+
+    /**
+     * Returns the id for the name, assigning the next free one on first sight,
+     * or -1 if the name is too long or the table is full
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        return name.length() > maxNameLength ? -1 : register(name);
+    }
+
+    /**
+     * Returns the id for the name, or -1 if it has never been registered
+     */
+    public int find(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    public String nameOf(int id) {
+        String[] names = this.names;
+        return id >= 0 && id < names.length ? names[id] : null;
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    private synchronized int register(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        if (nextId >= maxSize) {
+            return -1;
+        }
+        int id = nextId++;
+        String[] current = names;
+        if (id >= current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = name;
+        // Publish the name before the id so readers resolving the id always find it
+        names = current;
+        ids.put(name, id);
+        return id;
+    }
+}
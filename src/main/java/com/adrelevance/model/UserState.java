@@ -1,29 +1,50 @@
 package com.adrelevance.model;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
 /**
- * Represents the current state and preferences of a user
+ * Represents the current state and preferences of a user.
+ *
+ * <p>Interests and blocked categories are bitsets over {@link #CATEGORIES} ids, ad
+ * interactions are a primitive map keyed by {@link #AD_IDS} ids, and recent searches
+ * are a fixed ring. Names the bounded tables will not take are kept as strings on the
+ * user instead, so they go away with the user. The list and map getters return
+ * read-only snapshots.
  */
 public class UserState {
+    // Far above the built-in categories and a typical ad inventory; names past these stay per user
+    public static final SymbolTable CATEGORIES = new SymbolTable(1024, 64);
+    public static final SymbolTable AD_IDS = new SymbolTable(65536, 128);
+
+    private static final int MAX_RECENT_SEARCHES = 10;
+
     private String userId;
-    private List<String> interests;
+    private final CategorySet interests = new CategorySet();
     private Map<String, Double> topicPreferences;
     private UserMood currentMood;
-    private List<String> recentSearches;
-    private Map<String, Integer> adInteractionHistory;
+    private final String[] recentSearches = new String[MAX_RECENT_SEARCHES];
+    private int recentSearchHead;
+    private int recentSearchCount;
+    private final IntIntHashMap adInteractionHistory = new IntIntHashMap();
+    // Interactions with ads AD_IDS would not take; allocated on first use
+    private Map<String, Integer> uninternedAdInteractions;
     private String preferredLanguage;
     private boolean adPreferencesEnabled;
-    private List<String> blockedCategories;
+    private final CategorySet blockedCategories = new CategorySet();
+    private boolean premium;
+    private volatile long lastActiveMillis = System.currentTimeMillis();
+    // Bumped by every change to durable fields, so a journal can tell when to write the user out
+    private int revision;
+    private int journaledRevision;
 
     public UserState() {
         this.topicPreferences = new HashMap<>();
-        this.recentSearches = new java.util.ArrayList<>();
-        this.adInteractionHistory = new HashMap<>();
-        this.interests = new java.util.ArrayList<>();
-        this.blockedCategories = new java.util.ArrayList<>();
     }
 
     public UserState(String userId) {
@@ -35,8 +56,8 @@ public class UserState {
     public String getUserId() { return userId; }
     public void setUserId(String userId) { this.userId = userId; }
 
-    public List<String> getInterests() { return interests; }
-    public void setInterests(List<String> interests) { this.interests = interests; }
+    public synchronized List<String> getInterests() { return interests.names(); }
+    public synchronized void setInterests(List<String> interests) { this.interests.fill(interests); revision++; }
 
     public Map<String, Double> getTopicPreferences() { return topicPreferences; }
     public void setTopicPreferences(Map<String, Double> topicPreferences) { this.topicPreferences = topicPreferences; }
@@ -44,48 +65,179 @@ public class UserState {
     public UserMood getCurrentMood() { return currentMood; }
     public void setCurrentMood(UserMood currentMood) { this.currentMood = currentMood; }
 
-    public List<String> getRecentSearches() { return recentSearches; }
-    public void setRecentSearches(List<String> recentSearches) { this.recentSearches = recentSearches; }
+    public synchronized List<String> getRecentSearches() {
+        List<String> searches = new ArrayList<>(recentSearchCount);
+        for (int i = 0; i < recentSearchCount; i++) {
+            searches.add(recentSearches[(recentSearchHead + i) % MAX_RECENT_SEARCHES]);
+        }
+        return Collections.unmodifiableList(searches);
+    }
+    public synchronized void setRecentSearches(List<String> recentSearches) {
+        recentSearchHead = 0;
+        recentSearchCount = 0;
+        if (recentSearches != null) {
+            recentSearches.forEach(this::addRecentSearch);
+        }
+        revision++;
+    }
 
-    public Map<String, Integer> getAdInteractionHistory() { return adInteractionHistory; }
-    public void setAdInteractionHistory(Map<String, Integer> adInteractionHistory) { this.adInteractionHistory = adInteractionHistory; }
+    public synchronized Map<String, Integer> getAdInteractionHistory() {
+        Map<String, Integer> history = new LinkedHashMap<>();
+        adInteractionHistory.forEach((adId, count) -> history.put(AD_IDS.nameOf(adId), count));
+        if (uninternedAdInteractions != null) {
+            history.putAll(uninternedAdInteractions);
+        }
+        return Collections.unmodifiableMap(history);
+    }
+    public synchronized void setAdInteractionHistory(Map<String, Integer> adInteractionHistory) {
+        this.adInteractionHistory.clear();
+        uninternedAdInteractions = null;
+        if (adInteractionHistory != null) {
+            adInteractionHistory.forEach(this::addAdInteractions);
+        }
+        revision++;
+    }
 
     public String getPreferredLanguage() { return preferredLanguage; }
-    public void setPreferredLanguage(String preferredLanguage) { this.preferredLanguage = preferredLanguage; }
+    public synchronized void setPreferredLanguage(String preferredLanguage) { this.preferredLanguage = preferredLanguage; revision++; }
 
     public boolean isAdPreferencesEnabled() { return adPreferencesEnabled; }
-    public void setAdPreferencesEnabled(boolean adPreferencesEnabled) { this.adPreferencesEnabled = adPreferencesEnabled; }
+    public synchronized void setAdPreferencesEnabled(boolean adPreferencesEnabled) { this.adPreferencesEnabled = adPreferencesEnabled; revision++; }
+
+    public synchronized List<String> getBlockedCategories() { return blockedCategories.names(); }
+    public synchronized void setBlockedCategories(List<String> blockedCategories) { this.blockedCategories.fill(blockedCategories); revision++; }
+
+    public boolean isPremium() { return premium; }
+    public synchronized void setPremium(boolean premium) { this.premium = premium; revision++; }
 
-    public List<String> getBlockedCategories() { return blockedCategories; }
-    public void setBlockedCategories(List<String> blockedCategories) { this.blockedCategories = blockedCategories; }
+    public long getLastActiveMillis() { return lastActiveMillis; }
+    public void setLastActiveMillis(long lastActiveMillis) { this.lastActiveMillis = lastActiveMillis; }
 
-    public void addInterest(String interest) {
-        if (this.interests == null) {
-            this.interests = new java.util.ArrayList<>();
+    /**
+     * Returns whether durable fields changed since the last call, and marks them as journaled
+     */
+    public synchronized boolean markJournaled() {
+        boolean changed = journaledRevision != revision;
+        journaledRevision = revision;
+        return changed;
+    }
+
+    /**
+     * Marks the user as active now, which postpones idle eviction
+     */
+    public void touch() { this.lastActiveMillis = System.currentTimeMillis(); }
+
+    public synchronized void addInterest(String interest) {
+        if (interests.add(interest)) {
+            revision++;
         }
-        this.interests.add(interest);
+    }
+
+    /**
+     * Constant-time interest check for interned categories; a lookup never registers an unknown category
+     */
+    public synchronized boolean hasInterest(String category) {
+        return interests.contains(category);
     }
 
     public void setTopicPreference(String topic, Double preference) {
         this.topicPreferences.put(topic, preference);
     }
 
-    public void addRecentSearch(String search) {
-        this.recentSearches.add(search);
-        if (this.recentSearches.size() > 10) {
-            this.recentSearches.remove(0);
+    public synchronized void addRecentSearch(String search) {
+        if (recentSearchCount < MAX_RECENT_SEARCHES) {
+            recentSearches[(recentSearchHead + recentSearchCount) % MAX_RECENT_SEARCHES] = search;
+            recentSearchCount++;
+        } else {
+            recentSearches[recentSearchHead] = search;
+            recentSearchHead = (recentSearchHead + 1) % MAX_RECENT_SEARCHES;
+        }
+        revision++;
+    }
+
+    public synchronized void recordAdInteraction(String adId) {
+        addAdInteractions(adId, 1);
+        revision++;
+    }
+
+    public synchronized int getAdInteractionCount(String adId) {
+        int id = AD_IDS.find(adId);
+        if (id >= 0) {
+            return adInteractionHistory.get(id, 0);
+        }
+        return uninternedAdInteractions == null ? 0 : uninternedAdInteractions.getOrDefault(adId, 0);
+    }
+
+    private void addAdInteractions(String adId, int count) {
+        int id = AD_IDS.idOf(adId);
+        if (id >= 0) {
+            adInteractionHistory.addTo(id, count);
+        } else {
+            if (uninternedAdInteractions == null) {
+                uninternedAdInteractions = new HashMap<>();
+            }
+            uninternedAdInteractions.merge(adId, count, Integer::sum);
         }
     }
 
-    public void recordAdInteraction(String adId) {
-        this.adInteractionHistory.put(adId, this.adInteractionHistory.getOrDefault(adId, 0) + 1);
+    /**
+     * A bitset over {@link #CATEGORIES} ids plus the names the table would not take
+     */
+    private static final class CategorySet {
+        private final BitSet ids = new BitSet();
+        private List<String> uninterned;
+
+        boolean add(String category) {
+            int id = CATEGORIES.idOf(category);
+            if (id >= 0) {
+                if (ids.get(id)) {
+                    return false;
+                }
+                ids.set(id);
+                return true;
+            }
+            if (uninterned == null) {
+                uninterned = new ArrayList<>(1);
+            } else if (uninterned.contains(category)) {
+                return false;
+            }
+            uninterned.add(category);
+            return true;
+        }
+
+        boolean contains(String category) {
+            int id = CATEGORIES.find(category);
+            if (id >= 0) {
+                return ids.get(id);
+            }
+            return uninterned != null && uninterned.contains(category);
+        }
+
+        List<String> names() {
+            List<String> names = new ArrayList<>(ids.cardinality() + (uninterned == null ? 0 : uninterned.size()));
+            for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+                names.add(CATEGORIES.nameOf(id));
+            }
+            if (uninterned != null) {
+                names.addAll(uninterned);
+            }
+            return Collections.unmodifiableList(names);
+        }
+
+        void fill(List<String> categories) {
+            ids.clear();
+            uninterned = null;
+            if (categories != null) {
+                categories.forEach(this::add);
+            }
+        }
     }
 
     @Override
     public String toString() {
         return "UserState{" +
                 "userId='" + userId + '\'' +
-                ", interests=" + interests +
+                ", interests=" + getInterests() +
                 ", currentMood=" + currentMood +
                 ", adPreferencesEnabled=" + adPreferencesEnabled +
                 '}';
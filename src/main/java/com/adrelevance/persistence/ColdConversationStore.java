@@ -0,0 +1,293 @@
+package com.adrelevance.persistence;
+
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.UserState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Off-heap tier for idle conversations and users.
+ *
+ * <p>Spilled state is encoded with {@link ConversationStateCodec} and appended to
+ * memory-mapped segment files, leaving only a key-to-location entry on the heap. Taking
+ * an entry back out decodes it and frees its slot; a segment file is deleted once every
+ * record in it has been taken or superseded. The tier lives for the life of the process;
+ * durability across restarts is the write-ahead log's job, whose snapshots include
+ * spilled records via {@link #forEachRecord}.
+ */
+public class ColdConversationStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ColdConversationStore.class);
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "cold-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int RECORD_HEADER_BYTES = 5;
+
+    private final Path directory;
+    private final int segmentBytes;
+    // Location = segment id in the high 32 bits, offset in the low 32 bits
+    private final Map<String, Long> conversations = new ConcurrentHashMap<>();
+    private final Map<String, Long> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    // A lock rather than a monitor: segment files are created and deleted while it is held,
+    // which would pin a virtual thread to its carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private Segment active;
+    private int nextSegmentId;
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong rehydrated = new AtomicLong();
+
+    public ColdConversationStore(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the tier in {@code directory}, deleting segments left by an earlier process
+     */
+    public ColdConversationStore(Path directory, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        try (Stream<Path> stale = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) stale::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves a conversation's history into the tier, replacing any earlier copy
+     */
+    public void spill(ConversationContext context) {
+        write(conversations, context.getConversationId(), ConversationStateCodec.CONVERSATION,
+            ConversationStateCodec.encodeConversation(context));
+    }
+
+    public void spill(UserState userState) {
+        write(users, userState.getUserId(), ConversationStateCodec.USER_STATE,
+            ConversationStateCodec.encodeUserState(userState));
+    }
+
+    /**
+     * Removes a conversation from the tier and rebuilds it in a context from
+     * {@code contextFactory}; returns null if it is not here
+     */
+    public ConversationContext takeConversation(String conversationId,
+                                                BiFunction<String, String, ConversationContext> contextFactory) {
+        byte[] payload = take(conversations, conversationId);
+        if (payload == null) {
+            return null;
+        }
+        ConversationContext context = contextFactory.apply(conversationId, ConversationStateCodec.conversationUserId(payload));
+        ConversationStateCodec.decodeConversationInto(payload, context);
+        return context;
+    }
+
+    /**
+     * Removes a user from the tier and decodes it; returns null if it is not here
+     */
+    public UserState takeUser(String userId) {
+        byte[] payload = take(users, userId);
+        return payload != null ? ConversationStateCodec.decodeUserState(payload) : null;
+    }
+
+    /**
+     * Drops a conversation from the tier without reading it
+     */
+    public void discardConversation(String conversationId) {
+        Long location = conversations.remove(conversationId);
+        if (location != null) {
+            release(location);
+        }
+    }
+
+    /**
+     * Drops a user from the tier without reading it
+     */
+    public void discardUser(String userId) {
+        Long location = users.remove(userId);
+        if (location != null) {
+            release(location);
+        }
+    }
+
+    /**
+     * Ids of the conversations currently in the tier
+     */
+    public Set<String> getConversationIds() {
+        return Collections.unmodifiableSet(conversations.keySet());
+    }
+
+    /**
+     * Passes every spilled record, as raw codec payloads, to {@code consumer}
+     */
+    public void forEachRecord(WriteAheadLog.RecordConsumer consumer) {
+        conversations.forEach((id, location) -> {
+            byte[] payload = read(location);
+            if (payload != null && location.equals(conversations.get(id))) {
+                consumer.accept(ConversationStateCodec.CONVERSATION, payload);
+            }
+        });
+        users.forEach((id, location) -> {
+            byte[] payload = read(location);
+            if (payload != null && location.equals(users.get(id))) {
+                consumer.accept(ConversationStateCodec.USER_STATE, payload);
+            }
+        });
+    }
+
+    public int getConversationCount() { return conversations.size(); }
+
+    public int getUserCount() { return users.size(); }
+
+    public int getSegmentCount() { return segments.size(); }
+
+    public long getSpilledCount() { return spilled.get(); }
+
+    public long getRehydratedCount() { return rehydrated.get(); }
+
+    private void write(Map<String, Long> index, String key, byte type, byte[] payload) {
+        int recordBytes = RECORD_HEADER_BYTES + payload.length;
+        long location;
+        writeLock.lock();
+        try {
+            Segment segment = active;
+            if (segment == null || segment.buffer.capacity() - segment.writePosition < recordBytes) {
+                segment = openSegment(Math.max(segmentBytes, recordBytes));
+            }
+            int offset = segment.writePosition;
+            segment.buffer.putInt(offset, payload.length);
+            segment.buffer.put(offset + 4, type);
+            segment.buffer.put(offset + RECORD_HEADER_BYTES, payload);
+            segment.writePosition = offset + recordBytes;
+            segment.liveRecords.incrementAndGet();
+            location = ((long) segment.id << 32) | offset;
+        } finally {
+            writeLock.unlock();
+        }
+        Long superseded = index.put(key, location);
+        if (superseded != null) {
+            release(superseded);
+        }
+        spilled.incrementAndGet();
+    }
+
+    private byte[] take(Map<String, Long> index, String key) {
+        Long location = index.remove(key);
+        if (location == null) {
+            return null;
+        }
+        byte[] payload = read(location);
+        release(location);
+        rehydrated.incrementAndGet();
+        return payload;
+    }
+
+    private byte[] read(long location) {
+        Segment segment = segments.get((int) (location >>> 32));
+        if (segment == null) {
+            return null;
+        }
+        int offset = (int) location;
+        byte[] payload = new byte[segment.buffer.getInt(offset)];
+        segment.buffer.get(offset + RECORD_HEADER_BYTES, payload);
+        return payload;
+    }
+
+    private void release(long location) {
+        int segmentId = (int) (location >>> 32);
+        Segment segment = segments.get(segmentId);
+        if (segment != null && segment.liveRecords.decrementAndGet() == 0) {
+            writeLock.lock();
+            try {
+                // The active segment is kept for further writes even when it is empty
+                if (segment != active && segment.liveRecords.get() == 0) {
+                    segments.remove(segmentId);
+                    segment.delete();
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private Segment openSegment(int capacity) {
+        Segment previous = active;
+        int id = nextSegmentId++;
+        Path path = directory.resolve(String.format(SEGMENT_PREFIX + "%08d" + SEGMENT_SUFFIX, id));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            Segment segment = new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+            segments.put(id, segment);
+            active = segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create cold segment " + path, e);
+        }
+        if (previous != null && previous.liveRecords.get() == 0) {
+            segments.remove(previous.id);
+            previous.delete();
+        }
+        return active;
+    }
+
+    /**
+     * Deletes every segment; spilled state is lost
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            conversations.clear();
+            users.clear();
+            segments.values().forEach(Segment::delete);
+            segments.clear();
+            active = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final Path path;
+        final MappedByteBuffer buffer;
+        final AtomicInteger liveRecords = new AtomicInteger();
+        int writePosition;
+
+        Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        void delete() {
+            try {
+                // Pages are released once the buffer is collected
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Failed to delete cold segment {}: {}", path, e.getMessage());
+            }
+        }
+    }
+}
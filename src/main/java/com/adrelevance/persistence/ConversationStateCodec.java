@@ -0,0 +1,245 @@
+package com.adrelevance.persistence;
+
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.Message;
+import com.adrelevance.model.MessageHistory;
+import com.adrelevance.model.MessageType;
+import com.adrelevance.model.UserState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary encoding of the state records kept in the write-ahead log and snapshots.
+ * Every payload starts with the key it belongs to (a user id for user records,
+ * a conversation id otherwise), so recovery can partition records without decoding them.
+ */
+public final class ConversationStateCodec {
+
+    public static final byte USER_STATE = 1;
+    public static final byte MESSAGE = 2;
+    public static final byte CONVERSATION_CLEARED = 3;
+    public static final byte CONVERSATION = 4;
+    public static final byte USER_REMOVED = 5;
+
+    private static final MessageType[] MESSAGE_TYPES = MessageType.values();
+    private static final int FLAG_AD_PREFERENCES = 1;
+    private static final int FLAG_PREMIUM = 2;
+
+    private ConversationStateCodec() { }
+
+    /**
+     * A decoded MESSAGE record
+     */
+    public record MessageRecord(String conversationId, String userId, long sequence, Message message) { }
+
+    public static byte[] encodeUserState(UserState userState) {
+        return encode(out -> {
+            writeString(out, userState.getUserId());
+            int flags = (userState.isAdPreferencesEnabled() ? FLAG_AD_PREFERENCES : 0)
+                | (userState.isPremium() ? FLAG_PREMIUM : 0);
+            out.writeByte(flags);
+            writeString(out, userState.getPreferredLanguage());
+            out.writeLong(userState.getLastActiveMillis());
+            writeStrings(out, userState.getInterests());
+            writeStrings(out, userState.getBlockedCategories());
+            writeStrings(out, userState.getRecentSearches());
+            Map<String, Integer> interactions = userState.getAdInteractionHistory();
+            out.writeInt(interactions.size());
+            for (Map.Entry<String, Integer> entry : interactions.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        });
+    }
+
+    public static UserState decodeUserState(byte[] payload) {
+        return decode(payload, in -> {
+            UserState userState = new UserState(readString(in));
+            int flags = in.readUnsignedByte();
+            userState.setAdPreferencesEnabled((flags & FLAG_AD_PREFERENCES) != 0);
+            userState.setPremium((flags & FLAG_PREMIUM) != 0);
+            userState.setPreferredLanguage(readString(in));
+            long lastActive = in.readLong();
+            userState.setInterests(readStrings(in));
+            userState.setBlockedCategories(readStrings(in));
+            userState.setRecentSearches(readStrings(in));
+            int interactionCount = in.readInt();
+            Map<String, Integer> interactions = new LinkedHashMap<>();
+            for (int i = 0; i < interactionCount; i++) {
+                interactions.put(readString(in), in.readInt());
+            }
+            userState.setAdInteractionHistory(interactions);
+            userState.setLastActiveMillis(lastActive);
+            // Recovered state is already on disk
+            userState.markJournaled();
+            return userState;
+        });
+    }
+
+    public static byte[] encodeMessage(ConversationContext context, Message message, long sequence) {
+        return encode(out -> {
+            writeString(out, context.getConversationId());
+            writeString(out, context.getUserId());
+            out.writeLong(sequence);
+            writeMessage(out, message);
+        });
+    }
+
+    public static MessageRecord decodeMessage(byte[] payload) {
+        return decode(payload, in -> new MessageRecord(readString(in), readString(in), in.readLong(), readMessage(in)));
+    }
+
+    public static byte[] encodeConversationCleared(String conversationId) {
+        return encode(out -> writeString(out, conversationId));
+    }
+
+    public static byte[] encodeUserRemoved(String userId) {
+        return encode(out -> writeString(out, userId));
+    }
+
+    /**
+     * Full conversation, as written to snapshots
+     */
+    public static byte[] encodeConversation(ConversationContext context) {
+        MessageHistory.Snapshot history = context.getMessageHistory().snapshot();
+        return encode(out -> {
+            writeString(out, context.getConversationId());
+            writeString(out, context.getUserId());
+            out.writeLong(context.getLastActivityMillis());
+            out.writeLong(history.totalAdded());
+            out.writeInt(history.messages().size());
+            for (Message message : history.messages()) {
+                writeMessage(out, message);
+            }
+        });
+    }
+
+    /**
+     * Restores a snapshotted conversation into a context created by the caller
+     */
+    public static void decodeConversationInto(byte[] payload, ConversationContext context) {
+        decode(payload, in -> {
+            readString(in);
+            readString(in);
+            long lastActivity = in.readLong();
+            long totalAdded = in.readLong();
+            int count = in.readInt();
+            List<Message> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(readMessage(in));
+            }
+            context.getMessageHistory().restore(messages, totalAdded);
+            context.setLastActivityMillis(lastActivity);
+            return null;
+        });
+    }
+
+    /**
+     * Reads the conversation or user id a payload starts with
+     */
+    public static String key(byte[] payload) {
+        return decode(payload, ConversationStateCodec::readString);
+    }
+
+    /**
+     * Reads the user id that follows the conversation id in MESSAGE and CONVERSATION payloads
+     */
+    public static String conversationUserId(byte[] payload) {
+        return decode(payload, in -> {
+            readString(in);
+            return readString(in);
+        });
+    }
+
+    private static void writeMessage(DataOutput out, Message message) throws IOException {
+        out.writeLong(message.getTimestampMillis());
+        MessageType type = message.getType();
+        out.writeByte(type != null ? type.ordinal() : -1);
+        writeString(out, message.getSenderId());
+        writeString(out, message.getContent());
+    }
+
+    private static Message readMessage(DataInput in) throws IOException {
+        long timestamp = in.readLong();
+        byte type = in.readByte();
+        String sender = readString(in);
+        String content = readString(in);
+        Message message = new Message(content, sender, type >= 0 ? MESSAGE_TYPES[type] : null);
+        message.setTimestampMillis(timestamp);
+        return message;
+    }
+
+    private static void writeStrings(DataOutput out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private interface Writer {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private interface Reader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    private static byte[] encode(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try {
+            writer.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(byte[] payload, Reader<T> reader) {
+        try {
+            return reader.read(new DataInputStream(new ByteArrayInputStream(payload)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Malformed state record", e);
+        }
+    }
+}
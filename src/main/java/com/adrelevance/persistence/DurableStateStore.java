@@ -0,0 +1,381 @@
+package com.adrelevance.persistence;
+
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.Message;
+import com.adrelevance.model.UserState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Keeps conversation and user state durable in a local directory: a write-ahead log of
+ * every mutation plus periodic compacted snapshots.
+ *
+ * <p>A snapshot named {@code snapshot-N.snap} holds the state as of the moment segment
+ * {@code N} was started, so recovery loads the newest snapshot and replays segments
+ * {@code N} and later. Snapshots are taken while requests keep running, so replay is
+ * idempotent: user records carry the whole user, the last one wins, and message records
+ * carry their position in the conversation so ones already in the snapshot are skipped.
+ *
+ * <p>Recovery partitions records by conversation or user id and replays the partitions
+ * in parallel; records for one key stay in log order.
+ */
+public class DurableStateStore implements StateJournal {
+    private static final Logger logger = LoggerFactory.getLogger(DurableStateStore.class);
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * State read back from disk, ready to be installed in a ConversationManager
+     */
+    public record RecoveredState(Collection<UserState> users, Collection<ConversationContext> conversations) { }
+
+    private final Path directory;
+    private WriteAheadLog log;
+    private ScheduledExecutorService snapshotTimer;
+
+    public DurableStateStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads the newest snapshot and replays the log after it, then opens a fresh log
+     * segment for new records. Must be called once, before the store is used as a journal.
+     *
+     * @param contextFactory creates an empty context for (conversationId, userId)
+     */
+    public synchronized RecoveredState recover(BiFunction<String, String, ConversationContext> contextFactory) throws IOException {
+        long startNanos = System.nanoTime();
+        Files.createDirectories(directory);
+        List<Long> snapshots = listIds(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        List<Long> segments = listIds(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        long base = snapshots.isEmpty() ? 0 : snapshots.get(snapshots.size() - 1);
+
+        int partitionCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+        List<List<Record>> partitions = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
+            partitions.add(new ArrayList<>());
+        }
+        WriteAheadLog.RecordConsumer dispatch = (type, payload) -> {
+            boolean user = type == ConversationStateCodec.USER_STATE || type == ConversationStateCodec.USER_REMOVED;
+            String key = (user ? "u:" : "c:") + ConversationStateCodec.key(payload);
+            partitions.get(Math.floorMod(key.hashCode(), partitionCount)).add(new Record(type, payload));
+        };
+
+        long records = 0;
+        if (!snapshots.isEmpty()) {
+            Path snapshot = directory.resolve(snapshotName(base));
+            WriteAheadLog.ReadResult read = WriteAheadLog.readRecords(snapshot, dispatch);
+            if (!read.complete()) {
+                // Snapshots are written aside and renamed into place, so they are never torn
+                throw new IOException("Snapshot " + snapshot + " is corrupt after " + read.records() + " records");
+            }
+            records += read.records();
+        }
+        List<Long> replayed = new ArrayList<>();
+        long lastSegment = base;
+        for (long segment : segments) {
+            lastSegment = Math.max(lastSegment, segment);
+            if (segment >= base) {
+                replayed.add(segment);
+            }
+        }
+        // Segments after the snapshot run without gaps; only the last can end in a torn write
+        long expected = snapshots.isEmpty() && !replayed.isEmpty() ? replayed.get(0) : base;
+        for (int i = 0; i < replayed.size(); i++) {
+            long segment = replayed.get(i);
+            if (segment != expected) {
+                throw new IOException("Write-ahead log segment " + WriteAheadLog.segmentName(expected)
+                    + " is missing from " + directory + "; refusing to replay past the gap");
+            }
+            expected++;
+            Path file = directory.resolve(WriteAheadLog.segmentName(segment));
+            WriteAheadLog.ReadResult read = WriteAheadLog.readRecords(file, dispatch);
+            records += read.records();
+            if (read.complete()) {
+                continue;
+            }
+            if (i < replayed.size() - 1) {
+                throw new IOException("Write-ahead log segment " + file + " is corrupt after " + read.records()
+                    + " records; refusing to replay past it");
+            }
+            truncateTornTail(file, read);
+        }
+
+        Map<String, UserState> users = new ConcurrentHashMap<>();
+        Map<String, ConversationContext> conversations = new ConcurrentHashMap<>();
+        ExecutorService replayers = Executors.newFixedThreadPool(partitionCount, r -> new Thread(r, "state-recovery"));
+        try {
+            List<Future<?>> replays = new ArrayList<>(partitionCount);
+            for (List<Record> partition : partitions) {
+                replays.add(replayers.submit(() -> replay(partition, users, conversations, contextFactory)));
+            }
+            for (Future<?> replay : replays) {
+                replay.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while recovering state", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to replay state records", e.getCause());
+        } finally {
+            replayers.shutdown();
+        }
+
+        // Link conversations to their users now that both sides are rebuilt
+        for (ConversationContext context : conversations.values()) {
+            context.setUserState(users.computeIfAbsent(context.getUserId(), UserState::new));
+        }
+
+        this.log = new WriteAheadLog(directory, lastSegment + 1);
+        logger.info("Recovered {} users and {} conversations from {} records in {}ms",
+            users.size(), conversations.size(), records, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return new RecoveredState(users.values(), conversations.values());
+    }
+
+    /**
+     * Cuts the torn write off the end of the last segment, so that once later segments
+     * follow it, a record that fails to read there can only mean corruption
+     */
+    private static void truncateTornTail(Path segment, WriteAheadLog.ReadResult read) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(read.intactBytes());
+            channel.force(true);
+        }
+        logger.warn("Dropped a torn write of {} bytes from the end of {}", read.fileBytes() - read.intactBytes(), segment);
+    }
+
+    private static void replay(List<Record> records, Map<String, UserState> users,
+                               Map<String, ConversationContext> conversations,
+                               BiFunction<String, String, ConversationContext> contextFactory) {
+        for (Record record : records) {
+            switch (record.type()) {
+                case ConversationStateCodec.USER_STATE -> {
+                    UserState userState = ConversationStateCodec.decodeUserState(record.payload());
+                    users.put(userState.getUserId(), userState);
+                }
+                case ConversationStateCodec.CONVERSATION -> {
+                    String conversationId = ConversationStateCodec.key(record.payload());
+                    ConversationContext context = contextFactory.apply(conversationId,
+                        ConversationStateCodec.conversationUserId(record.payload()));
+                    ConversationStateCodec.decodeConversationInto(record.payload(), context);
+                    conversations.put(conversationId, context);
+                }
+                case ConversationStateCodec.MESSAGE -> {
+                    ConversationStateCodec.MessageRecord added = ConversationStateCodec.decodeMessage(record.payload());
+                    ConversationContext context = conversations.computeIfAbsent(added.conversationId(),
+                        id -> contextFactory.apply(id, added.userId()));
+                    // Already part of the snapshot this record is replayed on top of
+                    if (added.sequence() > context.getTotalMessageCount()) {
+                        context.getMessageHistory().add(added.message());
+                        context.setLastActivityMillis(Math.max(context.getLastActivityMillis(),
+                            added.message().getTimestampMillis()));
+                    }
+                }
+                case ConversationStateCodec.CONVERSATION_CLEARED ->
+                    conversations.remove(ConversationStateCodec.key(record.payload()));
+                case ConversationStateCodec.USER_REMOVED ->
+                    users.remove(ConversationStateCodec.key(record.payload()));
+                default -> logger.warn("Skipping state record of unknown type {}", record.type());
+            }
+        }
+    }
+
+    @Override
+    public void messageAdded(ConversationContext context, Message message, long sequence) {
+        append(ConversationStateCodec.MESSAGE, ConversationStateCodec.encodeMessage(context, message, sequence));
+    }
+
+    @Override
+    public void userStateChanged(UserState userState) {
+        append(ConversationStateCodec.USER_STATE, ConversationStateCodec.encodeUserState(userState));
+    }
+
+    @Override
+    public void conversationCleared(String conversationId) {
+        append(ConversationStateCodec.CONVERSATION_CLEARED, ConversationStateCodec.encodeConversationCleared(conversationId));
+    }
+
+    @Override
+    public void userRemoved(String userId) {
+        append(ConversationStateCodec.USER_REMOVED, ConversationStateCodec.encodeUserRemoved(userId));
+    }
+
+    private void append(byte type, byte[] payload) {
+        WriteAheadLog log = this.log;
+        if (log == null) {
+            throw new IllegalStateException("recover() must be called before the store records changes");
+        }
+        log.append(type, payload);
+    }
+
+    /**
+     * Writes a compacted snapshot of the given state and deletes the log segments and
+     * snapshots it supersedes
+     */
+    public void snapshot(Collection<UserState> users, Collection<ConversationContext> conversations) throws IOException {
+        snapshot(users, conversations, records -> { });
+    }
+
+    /**
+     * Like {@link #snapshot(Collection, Collection)}, also including records that are
+     * already encoded, such as state spilled to the cold tier
+     */
+    public synchronized void snapshot(Collection<UserState> users, Collection<ConversationContext> conversations,
+                                      Consumer<WriteAheadLog.RecordConsumer> encodedRecords) throws IOException {
+        long startNanos = System.nanoTime();
+        // Everything journaled from here on lands in the new segment and is replayed over this snapshot
+        long segment = log.rotate();
+        Path target = directory.resolve(snapshotName(segment));
+        Path temporary = directory.resolve(snapshotName(segment) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            // Encoded records go first: anything also on the heap is newer and replays over them
+            try {
+                encodedRecords.accept((type, payload) -> {
+                    try {
+                        write(out, type, payload);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            for (UserState userState : users) {
+                write(out, ConversationStateCodec.USER_STATE, ConversationStateCodec.encodeUserState(userState));
+            }
+            for (ConversationContext context : conversations) {
+                write(out, ConversationStateCodec.CONVERSATION, ConversationStateCodec.encodeConversation(context));
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (long id : listIds(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (id < segment) {
+                Files.deleteIfExists(directory.resolve(snapshotName(id)));
+            }
+        }
+        for (long id : listIds(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (id < segment) {
+                Files.deleteIfExists(directory.resolve(WriteAheadLog.segmentName(id)));
+            }
+        }
+        logger.info("Wrote state snapshot {} ({} users, {} conversations) in {}ms", segment,
+            users.size(), conversations.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    }
+
+    /**
+     * Takes a snapshot every {@code intervalMs} of whatever the suppliers return at the time
+     */
+    public synchronized void startSnapshots(Supplier<Collection<UserState>> users,
+                                            Supplier<Collection<ConversationContext>> conversations,
+                                            Consumer<WriteAheadLog.RecordConsumer> encodedRecords,
+                                            long intervalMs) {
+        if (intervalMs <= 0 || snapshotTimer != null) {
+            return;
+        }
+        snapshotTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "state-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotTimer.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(users.get(), conversations.get(), encodedRecords);
+            } catch (IOException | UncheckedIOException e) {
+                logger.error("State snapshot failed, the log keeps growing until one succeeds: {}", e.getMessage(), e);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Blocks until every change recorded so far is on disk
+     */
+    public void flush() throws IOException {
+        try {
+            log.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the write-ahead log", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (snapshotTimer != null) {
+            snapshotTimer.shutdownNow();
+        }
+        if (log != null) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.error("Failed to close the write-ahead log: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private List<Long> listIds(String prefix, String suffix) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                .forEach(name -> {
+                    try {
+                        ids.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Ignoring unexpected file {} in {}", name, directory);
+                    }
+                });
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    private static String snapshotName(long id) {
+        return String.format(SNAPSHOT_PREFIX + "%016d" + SNAPSHOT_SUFFIX, id);
+    }
+
+    private static void write(OutputStream out, byte type, byte[] payload) throws IOException {
+        ByteBuffer frame = WriteAheadLog.frame(type, payload);
+        out.write(frame.array(), 0, frame.limit());
+    }
+
+    private record Record(byte type, byte[] payload) { }
+}
@@ -0,0 +1,37 @@
+package com.adrelevance.persistence;
+
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.Message;
+import com.adrelevance.model.UserState;
+
+/**
+ * Receives conversation and user state mutations so they can be made durable.
+ * Calls happen on request threads and must return quickly.
+ */
+public interface StateJournal {
+
+    /**
+     * Journal that records nothing, used while durability is off
+     */
+    StateJournal NONE = new StateJournal() { };
+
+    /**
+     * A message was appended to a conversation; {@code sequence} is its 1-based
+     * position over the whole conversation
+     */
+    default void messageAdded(ConversationContext context, Message message, long sequence) { }
+
+    /**
+     * A user's interests, blocked categories, flags, searches or ad interactions changed
+     */
+    default void userStateChanged(UserState userState) { }
+
+    default void conversationCleared(String conversationId) { }
+
+    default void userRemoved(String userId) { }
+
+    /**
+     * Flushes anything buffered and releases files
+     */
+    default void close() { }
+}
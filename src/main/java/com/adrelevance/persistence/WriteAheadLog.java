@@ -0,0 +1,347 @@
+package com.adrelevance.persistence;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of state records with group-commit fsync.
+ *
+ * <p>Each record is framed as {@code [int length][byte type][payload][int crc32c]}, where
+ * the length and checksum cover the type and payload. {@link #append} only frames the
+ * record and queues it, so callers never wait for the disk. A single writer thread writes
+ * everything queued since its last pass and then fsyncs once, so one fsync covers every
+ * record that arrived while the previous one was running.
+ *
+ * <p>The log is split into numbered segments. {@link #rotate} starts a new one, so older
+ * segments can be deleted once a snapshot covers them.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    static final int HEADER_BYTES = 5;
+    static final int TRAILER_BYTES = 4;
+    // Guards against treating garbage after a torn write as a huge record
+    static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Receives each intact record read back from a segment or snapshot
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(byte type, byte[] payload);
+    }
+
+    /**
+     * How far {@link #readRecords} got: the records read and the length of the intact
+     * prefix, which is the whole file unless it stopped at a truncated or corrupt record
+     */
+    public record ReadResult(long records, long intactBytes, long fileBytes) {
+        public boolean complete() {
+            return intactBytes == fileBytes;
+        }
+    }
+
+    private final Path directory;
+    // Guards the queue and sequence numbers; a lock rather than a monitor so appenders on
+    // virtual threads are not pinned while they contend for it
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition queueChanged = queueLock.newCondition();
+    // Held while writing to or switching the current segment, so batches reach disk in queue order
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private List<ByteBuffer> queued = new ArrayList<>();
+    private long appendedSequence;
+    private volatile long durableSequence;
+    private long segmentId;
+    private FileChannel channel;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private final Thread writer;
+
+    /**
+     * Opens a new segment with the given id in {@code directory}
+     */
+    public WriteAheadLog(Path directory, long segmentId) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        this.segmentId = segmentId;
+        this.channel = openSegment(segmentId);
+        this.writer = new Thread(this::writeLoop, "wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a record and returns its sequence number; durable once {@link #awaitDurable} returns for it.
+     *
+     * @throws UncheckedIOException once a write has failed, since nothing appended after it could become durable
+     */
+    public long append(byte type, byte[] payload) {
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+        IOException failure = this.failure;
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed earlier, records can no longer be made durable", failure);
+        }
+        ByteBuffer frame = frame(type, payload);
+        queueLock.lock();
+        try {
+            queued.add(frame);
+            long sequence = ++appendedSequence;
+            if (queued.size() == 1) {
+                queueChanged.signalAll();
+            }
+            return sequence;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the record with the given sequence number, and all before it, are fsynced
+     */
+    public void awaitDurable(long sequence) throws IOException, InterruptedException {
+        queueLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw failure;
+                }
+                queueChanged.await(100, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until everything appended so far is fsynced
+     */
+    public void flush() throws IOException, InterruptedException {
+        long sequence;
+        queueLock.lock();
+        try {
+            sequence = appendedSequence;
+        } finally {
+            queueLock.unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    /**
+     * Writes out everything queued, then directs later records to a new segment.
+     * Returns the new segment's id; all earlier records are in lower-numbered segments.
+     */
+    public long rotate() throws IOException {
+        ioLock.lock();
+        try {
+            writeQueued();
+            channel.close();
+            segmentId++;
+            channel = openSegment(segmentId);
+            return segmentId;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    public long getSegmentId() {
+        ioLock.lock();
+        try {
+            return segmentId;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        signalQueueChanged();
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ioLock.lock();
+        try {
+            writeQueued();
+            channel.close();
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            queueLock.lock();
+            try {
+                while (queued.isEmpty() && !closed) {
+                    try {
+                        queueChanged.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queued.isEmpty()) {
+                    return;
+                }
+            } finally {
+                queueLock.unlock();
+            }
+            ioLock.lock();
+            try {
+                writeQueued();
+            } catch (IOException e) {
+                logger.error("Write-ahead log write failed, further appends will fail: {}", e.getMessage(), e);
+                failure = e;
+                signalQueueChanged();
+                return;
+            } finally {
+                ioLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes and fsyncs the queued batch; callers hold {@link #ioLock}
+     */
+    private void writeQueued() throws IOException {
+        List<ByteBuffer> batch;
+        long batchSequence;
+        queueLock.lock();
+        try {
+            if (queued.isEmpty()) {
+                return;
+            }
+            batch = queued;
+            batchSequence = appendedSequence;
+            queued = new ArrayList<>();
+        } finally {
+            queueLock.unlock();
+        }
+        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+        channel.force(false);
+        queueLock.lock();
+        try {
+            durableSequence = batchSequence;
+            queueChanged.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void signalQueueChanged() {
+        queueLock.lock();
+        try {
+            queueChanged.signalAll();
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        return FileChannel.open(directory.resolve(segmentName(id)),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    static String segmentName(long id) {
+        return String.format("wal-%016d.log", id);
+    }
+
+    /**
+     * Frames a record for the log or a snapshot file
+     */
+    static ByteBuffer frame(byte type, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length + TRAILER_BYTES);
+        frame.putInt(1 + payload.length);
+        frame.put(type);
+        frame.put(payload);
+        CRC32C crc = new CRC32C();
+        crc.update(frame.array(), 4, 1 + payload.length);
+        frame.putInt((int) crc.getValue());
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Reads intact records from a segment or snapshot file in order. Stops at the first
+     * truncated or corrupt record, which after a crash is the torn tail of the last write;
+     * anywhere else the caller should treat it as corruption.
+     */
+    public static ReadResult readRecords(Path file, RecordConsumer consumer) throws IOException {
+        long count = 0;
+        long intact = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer header = ByteBuffer.allocate(4);
+            CRC32C crc = new CRC32C();
+            while (true) {
+                header.clear();
+                if (!readFully(in, header)) {
+                    return new ReadResult(count, intact, size);
+                }
+                int length = header.getInt(0);
+                if (length < 1 || length > MAX_RECORD_BYTES) {
+                    logger.warn("Stopping at malformed record length {} in {} after {} records", length, file, count);
+                    return new ReadResult(count, intact, size);
+                }
+                ByteBuffer body = ByteBuffer.allocate(length + TRAILER_BYTES);
+                if (!readFully(in, body)) {
+                    logger.warn("Stopping at truncated record in {} after {} records", file, count);
+                    return new ReadResult(count, intact, size);
+                }
+                crc.reset();
+                crc.update(body.array(), 0, length);
+                if ((int) crc.getValue() != body.getInt(length)) {
+                    logger.warn("Stopping at record with bad checksum in {} after {} records", file, count);
+                    return new ReadResult(count, intact, size);
+                }
+                byte[] payload = new byte[length - 1];
+                System.arraycopy(body.array(), 1, payload, 0, payload.length);
+                consumer.accept(body.get(0), payload);
+                count++;
+                intact += 4 + length + TRAILER_BYTES;
+            }
+        }
+    }
+
+    private static boolean readFully(FileChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer) < 0) {
+                // Clean end of file, or a partial record left by a torn write
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,68 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.BatchResponse;
+import com.adrelevance.api.dto.MessageRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the keyword engine's batch endpoint, called directly
+ */
+public class AdRelevanceAPITest {
+
+    private AdRelevanceAPI api;
+
+    @Before
+    public void setUp() {
+        api = new AdRelevanceAPI();
+        ReflectionTestUtils.setField(api, "maxBatchItems", 20);
+    }
+
+    @After
+    public void tearDown() {
+        api.shutdown();
+    }
+
+    @Test
+    public void testProcessMessagesKeepsInputOrderAndReportsItemErrors() {
+        List<MessageRequest> items = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            items.add(i == 5
+                ? new MessageRequest("conv_" + i, "user_" + i, null)
+                : new MessageRequest("conv_" + i, "user_" + i, "I need running shoes for a marathon"));
+        }
+
+        ResponseEntity<?> response = api.processMessages(items);
+
+        assertEquals(200, response.getStatusCode().value());
+        BatchResponse batch = (BatchResponse) response.getBody();
+        assertEquals(12, batch.count());
+        assertEquals(1, batch.failed());
+        for (int i = 0; i < 12; i++) {
+            assertEquals(i, batch.results().get(i).index());
+            assertEquals("conv_" + i, batch.results().get(i).conversationId());
+            assertEquals(i == 5, batch.results().get(i).failed());
+        }
+        assertEquals("conversationId, userId and message are required", batch.results().get(5).error());
+    }
+
+    @Test
+    public void testProcessMessagesRejectsBatchesOverTheLimit() {
+        List<MessageRequest> items = Collections.nCopies(21, new MessageRequest("conv_1", "user_1", "hi"));
+
+        ResponseEntity<?> response = api.processMessages(items);
+
+        assertEquals(400, response.getStatusCode().value());
+        assertEquals("Batch of 21 messages exceeds the limit of 20", ((Map<?, ?>) response.getBody()).get("error"));
+        assertEquals(0, api.getStats().getBody().get("activeConversations"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.BatchResponse;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.MessageResponse;
+import com.adrelevance.api.dto.PreferencesRequest;
+import com.adrelevance.engine.ChatGPTEnhancedAdRelevanceEngine;
+import com.adrelevance.engine.ConversationManager;
+import com.adrelevance.llm.ChatGPTService;
+import com.adrelevance.llm.stub.OpenAIStubServer;
+import com.adrelevance.model.UserState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the servlet ChatGPT batch and preferences endpoints, called directly against an {@link OpenAIStubServer}
+ */
+public class ChatGPTAdRelevanceAPITest {
+
+    private OpenAIStubServer stub;
+    private ChatGPTService service;
+    private ChatGPTEnhancedAdRelevanceEngine engine;
+    private ChatGPTAdRelevanceAPI api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new OpenAIStubServer(0);
+        stub.start();
+
+        service = new ChatGPTService();
+        ReflectionTestUtils.setField(service, "openaiApiKey", "stub-key");
+        ReflectionTestUtils.setField(service, "openaiApiUrl", stub.getCompletionsUrl());
+        ReflectionTestUtils.invokeMethod(service, "configure");
+        engine = new ChatGPTEnhancedAdRelevanceEngine(service);
+
+        api = new ChatGPTAdRelevanceAPI();
+        ReflectionTestUtils.setField(api, "chatGPTEngine", engine);
+        ReflectionTestUtils.setField(api, "maxBatchItems", 3);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+        service.shutdown();
+        stub.stop();
+    }
+
+    @Test
+    public void testProcessMessagesKeepsInputOrderAndReportsItemErrors() {
+        List<MessageRequest> items = List.of(
+            new MessageRequest("conv_1", "user_1", "Which laptop should I buy?"),
+            new MessageRequest("conv_2", null, "Any good hotel in Rome?"),
+            new MessageRequest("conv_3", "user_3", "Any good hotel in Rome?"));
+
+        BatchResponse response = api.processMessages(items, MessageResponse.COMPACT).join();
+
+        assertEquals(3, response.count());
+        assertEquals(1, response.failed());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, response.results().get(i).index());
+            assertEquals("conv_" + (i + 1), response.results().get(i).conversationId());
+        }
+        assertEquals("Ultrabook Pro", response.results().get(0).adSuggestion().ad().title());
+        assertEquals("userId and message are required", response.results().get(1).error());
+        assertNull(response.results().get(1).adSuggestion());
+        assertEquals("Luxury Hotel Collection", response.results().get(2).adSuggestion().ad().title());
+        assertEquals(2L, stub.getStats().get("requests"));
+    }
+
+    @Test
+    public void testUpdatePreferencesWithoutTheEnabledFlagKeepsTheCurrentSetting() {
+        api.updatePreferences(new PreferencesRequest("user_1", List.of("travel"), null, true, null));
+
+        // As in the README example: no adPreferencesEnabled
+        Map<String, Object> response = api.updatePreferences(
+            new PreferencesRequest("user_1", List.of("technology"), List.of("gambling"), null, true));
+
+        ConversationManager conversations = (ConversationManager) ReflectionTestUtils.getField(engine, "conversationManager");
+        UserState userState = conversations.getUserState("user_1");
+        assertEquals("success", response.get("status"));
+        assertTrue(userState.isAdPreferencesEnabled());
+        assertTrue(userState.hasInterest("technology"));
+        assertTrue(userState.isPremium());
+    }
+
+    @Test
+    public void testProcessMessagesRejectsBatchesOverTheLimit() {
+        List<MessageRequest> items = Collections.nCopies(4, new MessageRequest("conv_1", "user_1", "hi"));
+
+        try {
+            api.processMessages(items, MessageResponse.FULL);
+            fail("a batch over the limit is refused");
+        } catch (ResponseStatusException expected) {
+            assertEquals(400, expected.getStatusCode().value());
+        }
+        assertEquals(0L, stub.getStats().get("requests"));
+    }
+}
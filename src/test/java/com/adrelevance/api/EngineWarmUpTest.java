@@ -0,0 +1,39 @@
+package com.adrelevance.api;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.List;
+
+/**
+ * Tests the warm-up corpus format and replay
+ */
+public class EngineWarmUpTest {
+
+    @Test
+    public void testParseSplitsConversationsOnBlankLines() throws Exception {
+        String corpus = "# comment\n\nfirst a\nfirst b\n\n\n  second a  \n# inner comment\nsecond b\n";
+
+        List<List<String>> conversations = EngineWarmUp.parse(new BufferedReader(new StringReader(corpus)));
+
+        assertEquals(List.of(List.of("first a", "first b"), List.of("second a", "second b")), conversations);
+    }
+
+    @Test
+    public void testRunReplaysWholeConversationsUntilTheTarget() {
+        EngineWarmUp warmUp = new EngineWarmUp(List.of(List.of("I want to buy running shoes", "Which brand is best?")));
+
+        int replayed = warmUp.run(25, 2);
+
+        // Whole conversations of two messages each, so up to one extra per thread
+        assertTrue("replayed " + replayed, replayed >= 25 && replayed <= 25 + 2 * 2);
+        assertEquals(0, warmUp.run(0, 2));
+    }
+
+    @Test
+    public void testBundledCorpusLoads() {
+        assertTrue(EngineWarmUp.fromClasspath().run(1, 1) > 0);
+    }
+}
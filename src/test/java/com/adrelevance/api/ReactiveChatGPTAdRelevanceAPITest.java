@@ -0,0 +1,97 @@
+package com.adrelevance.api;
+
+import com.adrelevance.api.dto.BatchResponse;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.MessageResponse;
+import com.adrelevance.engine.ChatGPTEnhancedAdRelevanceEngine;
+import com.adrelevance.llm.ChatGPTService;
+import com.adrelevance.llm.stub.OpenAIStubServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the WebFlux ChatGPT endpoints, called directly against an {@link OpenAIStubServer}
+ */
+public class ReactiveChatGPTAdRelevanceAPITest {
+
+    private OpenAIStubServer stub;
+    private ChatGPTService service;
+    private ChatGPTEnhancedAdRelevanceEngine engine;
+    private ReactiveChatGPTAdRelevanceAPI api;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new OpenAIStubServer(0);
+        stub.start();
+
+        service = new ChatGPTService();
+        ReflectionTestUtils.setField(service, "openaiApiKey", "stub-key");
+        ReflectionTestUtils.setField(service, "openaiApiUrl", stub.getCompletionsUrl());
+        ReflectionTestUtils.invokeMethod(service, "configure");
+        engine = new ChatGPTEnhancedAdRelevanceEngine(service);
+
+        api = new ReactiveChatGPTAdRelevanceAPI();
+        ReflectionTestUtils.setField(api, "chatGPTEngine", engine);
+        ReflectionTestUtils.setField(api, "maxBatchItems", 3);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+        service.shutdown();
+        stub.stop();
+    }
+
+    @Test
+    public void testProcessMessageInCompactFormat() {
+        MessageRequest request = new MessageRequest("conv_1", "user_1", "Any good hotel in Rome?");
+
+        MessageResponse response = api.processMessage(request, MessageResponse.COMPACT).block();
+
+        assertNotNull(response);
+        assertEquals("conv_1", response.conversationId());
+        assertNotNull(response.adSuggestion());
+        assertEquals("Luxury Hotel Collection", response.adSuggestion().ad().title());
+    }
+
+    @Test
+    public void testProcessMessagesKeepsInputOrderAndReportsItemErrors() {
+        List<MessageRequest> items = List.of(
+            new MessageRequest("conv_1", "user_1", "Which laptop should I buy?"),
+            new MessageRequest("conv_2", "user_2", null),
+            new MessageRequest("conv_3", "user_3", "Any good hotel in Rome?"));
+
+        BatchResponse response = api.processMessages(items, MessageResponse.FULL).block();
+
+        assertNotNull(response);
+        assertEquals(3, response.count());
+        assertEquals(1, response.failed());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, response.results().get(i).index());
+            assertEquals("conv_" + (i + 1), response.results().get(i).conversationId());
+        }
+        assertEquals("Ultrabook Pro", response.results().get(0).adSuggestion().ad().title());
+        assertEquals("userId and message are required", response.results().get(1).error());
+        assertEquals("Luxury Hotel Collection", response.results().get(2).adSuggestion().ad().title());
+    }
+
+    @Test
+    public void testProcessMessagesRejectsBatchesOverTheLimit() {
+        List<MessageRequest> items = Collections.nCopies(4, new MessageRequest("conv_1", "user_1", "hi"));
+
+        try {
+            api.processMessages(items, MessageResponse.FULL);
+            fail("a batch over the limit is refused");
+        } catch (ResponseStatusException expected) {
+            assertEquals(400, expected.getStatusCode().value());
+        }
+        assertEquals(0L, stub.getStats().get("requests"));
+    }
+}
@@ -0,0 +1,79 @@
+package com.adrelevance.api;
+
+import com.adrelevance.engine.ConversationalAdRelevanceEngine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+/**
+ * Tests the standalone server's routing and status codes over real HTTP
+ */
+public class StandaloneAdRelevanceServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private StandaloneAdRelevanceServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandaloneAdRelevanceServer(0, false, 2,
+            new AdRelevanceOperations(new ConversationalAdRelevanceEngine()));
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test
+    public void testProcessMessageReturnsTheSuggestion() throws Exception {
+        HttpResponse<String> response = post("/api/process-message",
+            "{\"conversationId\":\"c1\",\"userId\":\"u1\",\"message\":\"I need new running shoes\"}");
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().startsWith("{\"conversationId\":\"c1\",\"userId\":\"u1\""));
+        assertTrue(response.body().contains("\"adSuggestion\":{\"ad\":"));
+    }
+
+    @Test
+    public void testErrorsUseTheSpringModesStatusCodes() throws Exception {
+        assertEquals(400, post("/api/process-messages", "[{},{},{}]").statusCode());
+        assertEquals(400, post("/api/process-message", "{not json").statusCode());
+        assertEquals(404, get("/api/unknown").statusCode());
+        assertEquals(405, get("/api/process-message").statusCode());
+        assertEquals(200, get("/api/health").statusCode());
+    }
+
+    @Test
+    public void testHealthIsUnavailableUntilReady() throws Exception {
+        server.setReady(false);
+        HttpResponse<String> warming = get("/api/health");
+        assertEquals(503, warming.statusCode());
+        assertTrue(warming.body().contains("\"status\":\"warming_up\""));
+
+        server.setReady(true);
+        assertEquals(200, get("/api/health").statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String json) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uri(path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getPort() + path);
+    }
+}
@@ -0,0 +1,54 @@
+package com.adrelevance.api.dto;
+
+import com.adrelevance.model.Ad;
+import com.adrelevance.model.AdSuggestion;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the full and compact response formats
+ */
+public class MessageResponseTest {
+
+    private final MessageRequest request = new MessageRequest("conv", "user", "hotels in Paris");
+    private final AtomicInteger renders = new AtomicInteger();
+
+    @Test
+    public void testCompactFormatNeverRendersTheCreative() throws Exception {
+        MessageResponse response = MessageResponse.inFormat(request, suggestion(), 0.0, "compact");
+
+        AdCard card = response.adSuggestion().ad();
+        assertEquals("https://example.com/paris", card.url());
+        assertEquals("sponsored-link", card.templateId());
+        assertNull(card.conversationalTemplate());
+        assertEquals("Paris is lovely in spring!", response.adSuggestion().response());
+        assertEquals(0, renders.get());
+
+        String json = JsonCodec.MAPPER.writeValueAsString(response);
+        assertFalse(json.contains("<div"));
+        assertFalse(json.contains("categories"));
+    }
+
+    @Test
+    public void testFullFormatRendersTheCreativeOnce() {
+        MessageResponse response = MessageResponse.inFormat(request, suggestion(), 0.0, null);
+
+        assertEquals("<div>Hotel deals</div>", response.adSuggestion().response());
+        assertEquals("<div>Hotel deals</div>", response.adSuggestion().ad().conversationalTemplate());
+        assertEquals(1, renders.get());
+    }
+
+    private AdSuggestion suggestion() {
+        Ad ad = new Ad("ad_1", "Hotel deals", "Stay for less", "ChatGPT");
+        ad.addCategory("travel");
+        ad.setUrl("https://example.com/paris");
+        ad.setTemplateId("sponsored-link");
+        ad.setTemplateRenderer(() -> {
+            renders.incrementAndGet();
+            return "<div>Hotel deals</div>";
+        });
+        return AdSuggestion.rendered(ad, "Paris is lovely in spring!", ad::getConversationalTemplate, 0.8);
+    }
+}
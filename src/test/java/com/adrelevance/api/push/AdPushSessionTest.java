@@ -0,0 +1,79 @@
+package com.adrelevance.api.push;
+
+import com.adrelevance.api.dto.AdEvent;
+import com.adrelevance.api.dto.MessageEvent;
+import com.adrelevance.engine.EngineOverloadedException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for admission and framing on the ad push channel
+ */
+public class AdPushSessionTest {
+
+    @Test
+    public void testRepeatedIdIsDroppedPerConversation() {
+        AdPushSession push = new AdPushSession(8);
+
+        assertEquals(AdPushSession.Admission.ACCEPTED, push.admit(event("m1", "conv_1", "hotels in Paris")));
+        assertEquals(AdPushSession.Admission.DUPLICATE, push.admit(event("m1", "conv_1", "hotels in Paris")));
+        assertEquals(AdPushSession.Admission.ACCEPTED, push.admit(event("m1", "conv_2", "hotels in Paris")));
+        assertNull(AdPushSession.rejection(event("m1", "conv_1", "x"), AdPushSession.Admission.DUPLICATE));
+    }
+
+    @Test
+    public void testPendingLimitFreesUpWhenMessagesFinish() {
+        AdPushSession push = new AdPushSession(2);
+
+        assertEquals(AdPushSession.Admission.ACCEPTED, push.admit(event("a", "conv", "one")));
+        assertEquals(AdPushSession.Admission.ACCEPTED, push.admit(event("b", "conv", "two")));
+        assertEquals(AdPushSession.Admission.OVERLOADED, push.admit(event("c", "conv", "three")));
+
+        push.finished();
+        assertEquals(AdPushSession.Admission.ACCEPTED, push.admit(event("c", "conv", "three")));
+        assertEquals(2, push.getPending());
+    }
+
+    @Test
+    public void testResendOfFailedMessageIsAcceptedAgain() {
+        AdPushSession push = new AdPushSession(8);
+        MessageEvent event = event("m1", "conv", "hotels in Paris");
+
+        assertEquals(AdPushSession.Admission.ACCEPTED, push.admit(event));
+        // The engine shed it; the client resends the same id after Retry-After
+        push.forget(event);
+        push.finished();
+
+        assertEquals(AdPushSession.Admission.ACCEPTED, push.admit(event));
+        assertEquals(AdPushSession.Admission.DUPLICATE, push.admit(event));
+    }
+
+    @Test
+    public void testOverloadErrorsTellTheClientWhenToRetry() {
+        MessageEvent event = event("m1", "conv", "hotels in Paris");
+
+        String refused = AdPushSession.encode(AdPushSession.rejection(event, AdPushSession.Admission.OVERLOADED));
+        String shed = AdPushSession.encode(AdPushSession.failure(event, new EngineOverloadedException(3)));
+        String failed = AdPushSession.encode(AdPushSession.failure(event, new IllegalStateException("boom")));
+
+        assertTrue(refused, refused.contains("\"retryAfterSeconds\":1"));
+        assertTrue(shed, shed.contains("\"retryAfterSeconds\":3"));
+        assertFalse(failed, failed.contains("retryAfterSeconds"));
+    }
+
+    @Test
+    public void testFramesRoundTrip() throws Exception {
+        MessageEvent event = AdPushSession.decode(
+            "{\"id\":\"m1\",\"conversationId\":\"conv\",\"userId\":\"u\",\"message\":\"hi\",\"extra\":1}");
+        assertEquals("m1", event.id());
+        assertEquals(AdPushSession.Admission.INVALID, new AdPushSession(1).admit(event("m2", "conv", " ")));
+
+        String frame = AdPushSession.encode(AdPushSession.result(event, null));
+        assertEquals("{\"type\":\"ad\",\"id\":\"m1\",\"conversationId\":\"conv\"}", frame);
+        assertTrue(AdPushSession.encode(AdEvent.error("m1", "conv", "boom")).contains("\"error\":\"boom\""));
+    }
+
+    private static MessageEvent event(String id, String conversationId, String message) {
+        return new MessageEvent(id, conversationId, "user", message, null);
+    }
+}
@@ -0,0 +1,95 @@
+package com.adrelevance.benchmark;
+
+import com.adrelevance.model.Ad;
+import com.adrelevance.model.AdType;
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.Message;
+import com.adrelevance.model.MessageType;
+import com.adrelevance.model.UserMood;
+import com.adrelevance.model.UserState;
+
+import java.util.Arrays;
+
+/**
+ * Conversations, users and ads the engine benchmarks are built from, so that every
+ * benchmark sees the same inputs for the same parameters
+ */
+public final class BenchmarkFixtures {
+
+    /** User turns, spread over the analyzer's intent, mood and topic keywords */
+    public static final String[] USER_MESSAGES = {
+        "I'm training for a marathon and need new running shoes",
+        "My laptop is so slow, is it worth buying a new computer?",
+        "Planning a trip to Lisbon, any hotel or flight tips?",
+        "Looking for an easy dinner recipe, something healthy",
+        "I want to start budgeting and saving money this year",
+        "Wow, that outfit looks amazing, where can I shop for it?",
+        "This skincare routine is frustrating, nothing works for me",
+        "Any funny movie to watch tonight with friends?"
+    };
+
+    private static final String ASSISTANT_REPLY = "Sure, here are a few things worth considering.";
+
+    // Topics, keywords and moods synthetic ads are spread over
+    private static final String[][] TOPICS = {
+        {"fashion", "style", "outfit", "shoes"},
+        {"electronics", "phone", "laptop", "computer"},
+        {"travel", "trip", "hotel", "flight"},
+        {"food", "recipe", "dinner", "restaurant"},
+        {"finance", "money", "budget", "saving"},
+        {"beauty", "skincare", "makeup", "routine"},
+        {"sports", "fitness", "running", "marathon"},
+        {"entertainment", "movie", "music", "game"}
+    };
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * A conversation of {@code length} messages, alternating user turns and assistant
+     * replies and ending on a user turn, with a user who has a few interests
+     */
+    public static ConversationContext conversation(String conversationId, String userId, int length) {
+        ConversationContext context = new ConversationContext(conversationId, userId, Math.max(length, 1));
+        for (int i = length - 1; i >= 0; i--) {
+            boolean userTurn = i % 2 == 0;
+            context.addMessage(userTurn
+                ? new Message(userMessage(length - 1 - i), userId, MessageType.USER_MESSAGE)
+                : new Message(ASSISTANT_REPLY, "assistant", MessageType.BOT_RESPONSE));
+        }
+        context.setUserState(user(userId));
+        return context;
+    }
+
+    public static UserState user(String userId) {
+        UserState user = new UserState(userId);
+        user.setInterests(Arrays.asList("technology", "travel", "fitness"));
+        user.setBlockedCategories(Arrays.asList("gambling"));
+        return user;
+    }
+
+    /**
+     * The {@code n}th user message, made unique so the engine's suggestion cache never answers
+     */
+    public static String userMessage(long n) {
+        return USER_MESSAGES[(int) (n % USER_MESSAGES.length)] + " (" + n + ")";
+    }
+
+    /**
+     * Inventory padding: an ad shaped like the built-in ones, on one of eight topics
+     */
+    public static Ad syntheticAd(int n) {
+        String[] topic = TOPICS[n % TOPICS.length];
+        Ad ad = new Ad("bench_" + n, "Offer " + n + " for " + topic[0], "Synthetic " + topic[0] + " ad", "Brand" + n);
+        ad.setCallToAction("Learn More");
+        ad.addCategory(topic[0]);
+        for (int k = 1; k < topic.length; k++) {
+            ad.addKeyword(topic[k]);
+        }
+        ad.setTopicRelevance(topic[0], 0.5 + (n % 5) / 10.0);
+        ad.setMoodRelevance(UserMood.values()[n % UserMood.values().length], 0.7);
+        ad.setConversationalTemplate("Into " + topic[0] + "? Offer " + n + " might be worth a look.");
+        ad.setType(AdType.PRODUCT_PROMOTION);
+        return ad;
+    }
+}
@@ -0,0 +1,105 @@
+package com.adrelevance.benchmark;
+
+import com.adrelevance.engine.ConversationalAdRelevanceEngine;
+import com.adrelevance.model.AdSuggestion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ConversationalAdRelevanceEngine#processMessage} end to end: conversation lookup,
+ * history, context analysis, matching, response generation and caching. Each thread plays
+ * its own conversations of {@code conversationLength} turns, then clears them and starts a
+ * new one, so the engine's state stays bounded. Messages are unique, so the suggestion
+ * cache never answers; one engine is shared by all threads, as in the API.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.include=EngineBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Engine {
+        ConversationalAdRelevanceEngine engine;
+        final AtomicInteger threadIds = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            engine = new ConversationalAdRelevanceEngine();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            engine.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Conversation {
+        @Param({"1", "10", "50"})
+        public int conversationLength;
+
+        String userId;
+        String conversationId;
+        int conversationNumber;
+        long turn;
+
+        @Setup(Level.Trial)
+        public void setUp(Engine engine) {
+            userId = "bench_user_" + engine.threadIds.getAndIncrement();
+            engine.engine.updateUserPreferences(userId, Arrays.asList("technology", "travel", "fitness"),
+                Arrays.asList("gambling"));
+            conversationId = userId + "_conv_0";
+        }
+
+        String nextMessage(ConversationalAdRelevanceEngine engine) {
+            if (turn > 0 && turn % conversationLength == 0) {
+                engine.clearConversation(conversationId);
+                conversationId = userId + "_conv_" + (++conversationNumber);
+            }
+            return BenchmarkFixtures.userMessage(turn++);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public AdSuggestion processMessage(Engine engine, Conversation conversation) {
+        return process(engine, conversation);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public AdSuggestion processMessage4Threads(Engine engine, Conversation conversation) {
+        return process(engine, conversation);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public AdSuggestion processMessage16Threads(Engine engine, Conversation conversation) {
+        return process(engine, conversation);
+    }
+
+    private static AdSuggestion process(Engine engine, Conversation conversation) {
+        String message = conversation.nextMessage(engine.engine);
+        return engine.engine.processMessage(conversation.conversationId, conversation.userId, message);
+    }
+}
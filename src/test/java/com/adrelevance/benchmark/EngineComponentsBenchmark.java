@@ -0,0 +1,125 @@
+package com.adrelevance.benchmark;
+
+import com.adrelevance.engine.AdMatchingEngine;
+import com.adrelevance.engine.ContextAnalyzer;
+import com.adrelevance.engine.ConversationalResponseGenerator;
+import com.adrelevance.model.Ad;
+import com.adrelevance.model.ConversationContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The keyword engine's per-message stages on their own: context analysis over the recent
+ * history, ad matching against inventories of different sizes, and response generation.
+ * Conversation state is per thread, so {@code -t N} measures the stages under contention
+ * for the shared inventory and keyword maps.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.include=EngineComponents}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineComponentsBenchmark {
+
+    /**
+     * The built-in ads padded with synthetic ones to {@code inventorySize}
+     */
+    @State(Scope.Benchmark)
+    public static class Inventory {
+        @Param({"10", "100", "1000"})
+        public int inventorySize;
+
+        AdMatchingEngine matcher;
+
+        @Setup
+        public void setUp() {
+            matcher = new AdMatchingEngine();
+            for (int n = matcher.getInventorySize(); n < inventorySize; n++) {
+                matcher.addAd(BenchmarkFixtures.syntheticAd(n));
+            }
+        }
+    }
+
+    /**
+     * One analyzed conversation of {@code conversationLength} messages per thread
+     */
+    @State(Scope.Thread)
+    public static class Conversation {
+        @Param({"1", "10", "50"})
+        public int conversationLength;
+
+        ConversationContext context;
+
+        @Setup
+        public void setUp(Components components) {
+            context = BenchmarkFixtures.conversation("bench_conv_" + Thread.currentThread().getId(),
+                "bench_user", conversationLength);
+            components.analyzer.analyzeContext(context);
+        }
+    }
+
+    /**
+     * An ad with its own conversational template, which is personalized, or without one,
+     * which makes the generator pick a mood or intent template
+     */
+    @State(Scope.Benchmark)
+    public static class Creative {
+        @Param({"true", "false"})
+        public boolean templated;
+
+        Ad ad;
+
+        @Setup
+        public void setUp() {
+            ad = BenchmarkFixtures.syntheticAd(0);
+            if (!templated) {
+                ad.setConversationalTemplate(null);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Components {
+        ContextAnalyzer analyzer;
+        ConversationalResponseGenerator generator;
+
+        @Setup
+        public void setUp() {
+            analyzer = new ContextAnalyzer();
+            generator = new ConversationalResponseGenerator();
+        }
+    }
+
+    @Benchmark
+    public List<Ad> findRelevantAds(Inventory inventory, Conversation conversation) {
+        return inventory.matcher.findRelevantAds(conversation.context, 3);
+    }
+
+    /**
+     * Re-analyzing the same context: every stage runs, and the result is the same each time
+     */
+    @Benchmark
+    public ConversationContext analyzeContext(Components components, Conversation conversation) {
+        components.analyzer.analyzeContext(conversation.context);
+        return conversation.context;
+    }
+
+    @Benchmark
+    public String generateResponse(Components components, Conversation conversation, Creative creative) {
+        return components.generator.generateResponse(creative.ad, conversation.context);
+    }
+}
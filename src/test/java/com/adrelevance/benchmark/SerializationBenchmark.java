@@ -0,0 +1,120 @@
+package com.adrelevance.benchmark;
+
+import com.adrelevance.api.dto.AdCard;
+import com.adrelevance.api.dto.JsonCodec;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.MessageResponse;
+import com.adrelevance.model.Ad;
+import com.adrelevance.model.AdSuggestion;
+import com.adrelevance.model.AdType;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the REST layer's old map-based JSON handling with the DTO records and the
+ * shared Blackbird mapper, for parsing a process-message request and writing its response.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.include=Serialization};
+ * the profile adds {@code -prof gc} for allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final byte[] REQUEST_JSON = ("{\"conversationId\":\"conv_42\",\"userId\":\"user_7\","
+        + "\"message\":\"I'm training for a marathon and need new running shoes\"}").getBytes();
+
+    private ObjectReader mapRequestReader;
+    private ObjectReader dtoRequestReader;
+    private ObjectWriter mapWriter;
+    private ObjectWriter dtoWriter;
+    private AdSuggestion suggestion;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper plain = new ObjectMapper();
+        mapRequestReader = plain.readerFor(new TypeReference<Map<String, Object>>() { });
+        mapWriter = plain.writer();
+        dtoRequestReader = JsonCodec.MAPPER.readerFor(MessageRequest.class);
+        dtoWriter = JsonCodec.MAPPER.writer();
+
+        Ad ad = new Ad("ad_nike_1", "Nike Air Zoom Pegasus", "Responsive cushioning for every run", "Nike");
+        ad.setCategories(Arrays.asList("sports", "fitness", "running"));
+        ad.setKeywords(Arrays.asList("running", "shoes", "marathon", "training"));
+        ad.setCallToAction("Shop now");
+        ad.setType(AdType.PRODUCT_PROMOTION);
+        ad.setConversationalTemplate("Training for a race? {title} could help.");
+        suggestion = new AdSuggestion(ad, "Training for a race? Nike Air Zoom Pegasus could help.", 0.82);
+    }
+
+    @Benchmark
+    public Object parseRequestAsMap() throws Exception {
+        return mapRequestReader.readValue(REQUEST_JSON);
+    }
+
+    @Benchmark
+    public Object parseRequestAsRecord() throws Exception {
+        return dtoRequestReader.readValue(REQUEST_JSON);
+    }
+
+    /**
+     * The response as the controllers used to build it, one HashMap per object
+     */
+    @Benchmark
+    public byte[] writeResponseFromMaps() throws Exception {
+        Ad ad = suggestion.getAd();
+        Map<String, Object> adMap = new HashMap<>();
+        adMap.put("id", ad.getId());
+        adMap.put("title", ad.getTitle());
+        adMap.put("description", ad.getDescription());
+        adMap.put("brandName", ad.getBrandName());
+        adMap.put("categories", ad.getCategories());
+        adMap.put("keywords", ad.getKeywords());
+        adMap.put("callToAction", ad.getCallToAction());
+        adMap.put("type", ad.getType());
+        adMap.put("conversationalTemplate", ad.getConversationalTemplate());
+        Map<String, Object> suggestionMap = new HashMap<>();
+        suggestionMap.put("ad", adMap);
+        suggestionMap.put("response", suggestion.getResponse());
+        suggestionMap.put("relevanceScore", suggestion.getRelevanceScore());
+        Map<String, Object> response = new HashMap<>();
+        response.put("conversationId", "conv_42");
+        response.put("userId", "user_7");
+        response.put("message", "I'm training for a marathon and need new running shoes");
+        response.put("adSuggestion", suggestionMap);
+        return mapWriter.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] writeResponseFromRecords() throws Exception {
+        MessageRequest request = new MessageRequest("conv_42", "user_7",
+            "I'm training for a marathon and need new running shoes");
+        return dtoWriter.writeValueAsBytes(MessageResponse.of(request, suggestion, 0.0, true));
+    }
+
+    @Benchmark
+    public byte[] writeAdCard() throws Exception {
+        return dtoWriter.writeValueAsBytes(AdCard.from(suggestion.getAd(), true));
+    }
+}
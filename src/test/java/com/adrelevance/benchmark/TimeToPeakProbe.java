@@ -0,0 +1,202 @@
+package com.adrelevance.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Launches a server process and measures how long after launch it reaches steady-state
+ * throughput on {@code /api/process-message}: waits for {@code /api/health} to answer 200,
+ * as a load balancer would, then drives closed-loop load and reports throughput per interval.
+ *
+ * <p>Run through {@code scripts/time-to-peak.sh}, or directly with
+ * {@code TimeToPeakProbe [--port=18080 --duration-s=30 --concurrency=8] -- java -cp ... MainClass args}.
+ * The probe warms its own HTTP client against a local stub before launching, so the
+ * numbers describe the server's warm-up rather than the probe's.
+ */
+public class TimeToPeakProbe {
+
+    private static final long BUCKET_MS = 250;
+    private static final double PEAK_FRACTION = 0.9;
+
+    // Not in the warm-up corpus, so a server can't look warm just by having seen these
+    private static final String[] MESSAGES = {
+        "Do you know a good pair of hiking shoes for rocky trails?",
+        "My phone battery dies by lunch, is a new phone worth it?",
+        "Looking for a cheap flight and hotel for a weekend away",
+        "I would love a healthy recipe that takes under twenty minutes",
+        "What budget app helps with tracking money each month?",
+        "Any funny movie to watch with the kids tonight?",
+        "Need a sofa and a rug for a small apartment",
+        "Which skincare products are gentle for everyday use?"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int separator = Arrays.asList(args).indexOf("--");
+        if (separator < 0 || separator == args.length - 1) {
+            System.err.println("Usage: TimeToPeakProbe [--port=N --duration-s=N --concurrency=N] -- <server command>");
+            System.exit(2);
+        }
+        int port = 18080;
+        int durationSeconds = 30;
+        int concurrency = 8;
+        for (String arg : Arrays.copyOfRange(args, 0, separator)) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value);
+            } else if (arg.startsWith("--duration-s=")) {
+                durationSeconds = Integer.parseInt(value);
+            } else if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(value);
+            }
+        }
+        List<String> command = List.of(Arrays.copyOfRange(args, separator + 1, args.length));
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(2)).build();
+        warmClient(client, concurrency);
+
+        long launched = System.nanoTime();
+        Process server = new ProcessBuilder(command).redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(new File("target/time-to-peak-server.log")))
+            .start();
+        try {
+            URI health = URI.create("http://localhost:" + port + "/api/health");
+            while (status(client, HttpRequest.newBuilder(health).GET().build()) != 200) {
+                if (!server.isAlive()) {
+                    throw new IllegalStateException("Server exited during startup; see target/time-to-peak-server.log");
+                }
+                Thread.sleep(10);
+            }
+            long ready = System.nanoTime();
+
+            AtomicLongArray completed = drive(client, URI.create("http://localhost:" + port + "/api/process-message"),
+                concurrency, durationSeconds);
+            report(completed, millis(ready - launched));
+        } finally {
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    /**
+     * Closed-loop load from {@code concurrency} threads; completions counted per bucket
+     */
+    private static AtomicLongArray drive(HttpClient client, URI uri, int concurrency, int durationSeconds)
+            throws InterruptedException {
+        AtomicLongArray completed = new AtomicLongArray((int) (durationSeconds * 1000 / BUCKET_MS));
+        long start = System.nanoTime();
+        long end = start + durationSeconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < concurrency; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                long sequence = 0;
+                while (System.nanoTime() < end) {
+                    sequence++;
+                    // Fresh conversation ids, so the engine's suggestion cache never answers
+                    String body = "{\"conversationId\":\"probe-" + worker + "-" + sequence + "\",\"userId\":\"probe-"
+                        + worker + "\",\"message\":\"" + MESSAGES[(int) (sequence % MESSAGES.length)] + "\"}";
+                    HttpRequest request = HttpRequest.newBuilder(uri).header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8)).build();
+                    if (status(client, request) == 200) {
+                        int bucket = (int) (millis(System.nanoTime() - start) / BUCKET_MS);
+                        if (bucket < completed.length()) {
+                            completed.incrementAndGet(bucket);
+                        }
+                    }
+                }
+            }, "probe-" + t);
+            thread.start();
+            workers.add(thread);
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        return completed;
+    }
+
+    private static void report(AtomicLongArray completed, long readyMs) {
+        int perSecond = (int) (1000 / BUCKET_MS);
+        int windows = completed.length() - perSecond + 1;
+        long[] rates = new long[windows];
+        for (int w = 0; w < windows; w++) {
+            for (int b = w; b < w + perSecond; b++) {
+                rates[w] += completed.get(b);
+            }
+        }
+        // Steady state: the median one-second rate over the last third of the run
+        long[] tail = Arrays.copyOfRange(rates, windows - windows / 3, windows);
+        Arrays.sort(tail);
+        long steady = tail[tail.length / 2];
+        int reached = 0;
+        while (reached < windows - 1 && rates[reached] < PEAK_FRACTION * steady) {
+            reached++;
+        }
+        long reachedMs = reached * BUCKET_MS + 1000;
+
+        System.out.println("interval        req/s");
+        for (int w = 0; w < windows; w += perSecond) {
+            System.out.printf("%5.1f-%5.1fs %9d%n", w * BUCKET_MS / 1000.0, w * BUCKET_MS / 1000.0 + 1, rates[w]);
+        }
+        System.out.printf("ready (health 200) after launch: %8d ms%n", readyMs);
+        System.out.printf("steady-state throughput:         %8d req/s%n", steady);
+        System.out.printf("first second after ready:        %8d req/s%n", rates[0]);
+        System.out.printf("%d%% of steady state after ready:  %8d ms%n", (int) (PEAK_FRACTION * 100), reachedMs);
+        System.out.printf("time to peak after launch:       %8d ms%n", readyMs + reachedMs);
+    }
+
+    /**
+     * Exercises the probe's own client and request path against an in-process stub
+     */
+    private static void warmClient(HttpClient client, int concurrency) throws IOException, InterruptedException {
+        HttpServer stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        ExecutorService stubThreads = Executors.newFixedThreadPool(concurrency);
+        stub.setExecutor(stubThreads);
+        stub.start();
+        try {
+            URI uri = URI.create("http://localhost:" + stub.getAddress().getPort() + "/api/process-message");
+            for (int i = 0; i < 20_000; i++) {
+                status(client, HttpRequest.newBuilder(uri).header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"conversationId\":\"warm-" + i + "\"}")).build());
+            }
+        } finally {
+            stub.stop(0);
+            stubThreads.shutdownNow();
+        }
+    }
+
+    private static int status(HttpClient client, HttpRequest request) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -0,0 +1,85 @@
+package com.adrelevance.concurrent;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for the latency-driven limit of AdaptiveConcurrencyLimiter
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void testLimitCapsInFlightRequests() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 2, 1, 10, clock::get);
+
+        AdaptiveConcurrencyLimiter.Permit first = limiter.tryAcquire();
+        AdaptiveConcurrencyLimiter.Permit second = limiter.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(limiter.tryAcquire());
+
+        first.ignore();
+        assertTrue("a released permit cannot be released again", !first.success());
+        assertNotNull(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testLimitGrowsWhileLatencyHoldsAndShrinksWhenItRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 100, clock::get);
+
+        runBatches(limiter, 30, 10);
+        int grown = limiter.getLimit();
+        assertTrue("limit grows at steady latency: " + grown, grown > 20);
+
+        runBatches(limiter, 3, 100);
+        assertTrue("limit shrinks when latency rises tenfold: " + limiter.getLimit(), limiter.getLimit() < grown / 2);
+        
+        // The new latency gradually becomes the baseline and the limit recovers
+        runBatches(limiter, 100, 100);
+        assertTrue("limit recovers at the new latency: " + limiter.getLimit(), limiter.getLimit() > grown / 2);
+    }
+
+    @Test
+    public void testUnusedLimitDoesNotGrow() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 10, 1, 100, clock::get);
+
+        for (int i = 0; i < 100; i++) {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            clock.addAndGet(10_000_000);
+            permit.success();
+        }
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void testDropsBackOffMultiplicatively() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter("test", 100, 1, 100, clock::get);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire().dropped();
+        }
+        assertEquals(34, limiter.getLimit());
+        assertEquals(10L, limiter.getMetrics().get("dropped"));
+    }
+
+    /**
+     * Fills the current limit, then completes every request after {@code latencyMs}
+     */
+    private void runBatches(AdaptiveConcurrencyLimiter limiter, int batches, long latencyMs) {
+        for (int b = 0; b < batches; b++) {
+            List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+            AdaptiveConcurrencyLimiter.Permit permit;
+            while ((permit = limiter.tryAcquire()) != null) {
+                permits.add(permit);
+            }
+            clock.addAndGet(latencyMs * 1_000_000);
+            permits.forEach(AdaptiveConcurrencyLimiter.Permit::success);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.adrelevance.concurrent;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for virtual-thread executor creation and the platform fallback
+ */
+public class VirtualThreadsTest {
+
+    @Test
+    public void testSupportFollowsRuntimeVersion() {
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads.isSupported());
+    }
+
+    @Test
+    public void testVirtualExecutorRunsTasksOrFallsBack() throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor(true, "test-",
+            () -> Executors.newSingleThreadExecutor(VirtualThreads.daemonFactory("test-platform")));
+        try {
+            String threadName = executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS);
+            assertEquals(VirtualThreads.isSupported() ? "test-0" : "test-platform", threadName);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testPlatformExecutorWhenNotRequested() throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor(false, "test-",
+            () -> Executors.newSingleThreadExecutor(VirtualThreads.daemonFactory("test-platform")));
+        try {
+            assertEquals("test-platform", executor.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.adrelevance.engine;
+
+import com.adrelevance.concurrent.AdaptiveConcurrencyLimiter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for staged degradation in AdmissionController
+ */
+public class AdmissionControllerTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final AdmissionController admission = new AdmissionController(
+        new AdaptiveConcurrencyLimiter("llm", 2, 1, 2),
+        new AdaptiveConcurrencyLimiter("local", 3, 1, 3),
+        1.0, 7, clock::get);
+
+    @Test
+    public void testStagesDegradeInOrder() {
+        assertEquals(AdmissionController.Stage.FULL, admission.admit().stage());
+        assertEquals(AdmissionController.Stage.FULL, admission.admit().stage());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AdmissionController.Stage.SKIP_LLM, admission.admit().stage());
+        }
+        // No turn has completed yet, so the no-ad budget is one local limit
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AdmissionController.Stage.NO_AD, admission.admit().stage());
+        }
+        AdmissionController.Ticket rejected = admission.admit();
+        assertEquals(AdmissionController.Stage.REJECT, rejected.stage());
+        assertEquals(7, rejected.retryAfterSeconds());
+    }
+
+    @Test
+    public void testNoAdBudgetFollowsCompletedTurns() {
+        // Five turns complete in the first window
+        for (int i = 0; i < 5; i++) {
+            AdmissionController.Ticket ticket = admission.admit();
+            assertNotEquals(AdmissionController.Stage.REJECT, ticket.stage());
+            ticket.success();
+        }
+        clock.addAndGet(1000);
+
+        AdmissionController.Ticket[] held = new AdmissionController.Ticket[5];
+        for (int i = 0; i < 5; i++) {
+            held[i] = admission.admit();
+        }
+        assertEquals(AdmissionController.Stage.SKIP_LLM, held[4].stage());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(AdmissionController.Stage.NO_AD, admission.admit().stage());
+        }
+        assertEquals(AdmissionController.Stage.REJECT, admission.admit().stage());
+
+        // Freed slots are admitted again
+        held[0].release();
+        assertEquals(AdmissionController.Stage.FULL, admission.admit().stage());
+    }
+}
@@ -0,0 +1,100 @@
+package com.adrelevance.engine;
+
+import com.adrelevance.llm.ChatGPTService;
+import com.adrelevance.llm.stub.OpenAIStubServer;
+import com.adrelevance.model.AdSuggestion;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+/**
+ * Tests for the reactive message path of ChatGPTEnhancedAdRelevanceEngine against an {@link OpenAIStubServer}
+ */
+public class ChatGPTEnhancedAdRelevanceEngineTest {
+
+    private OpenAIStubServer stub;
+    private ChatGPTService service;
+    private ChatGPTEnhancedAdRelevanceEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new OpenAIStubServer(0);
+        stub.start();
+
+        service = new ChatGPTService();
+        ReflectionTestUtils.setField(service, "openaiApiKey", "stub-key");
+        ReflectionTestUtils.setField(service, "openaiApiUrl", stub.getCompletionsUrl());
+        ReflectionTestUtils.setField(service, "maxAttempts", 1);
+        ReflectionTestUtils.invokeMethod(service, "configure");
+        engine = new ChatGPTEnhancedAdRelevanceEngine(service);
+    }
+
+    @After
+    public void tearDown() {
+        engine.shutdown();
+        service.shutdown();
+        stub.stop();
+    }
+
+    @Test
+    public void testReactiveTurnReturnsTheModelsAd() {
+        AdSuggestion suggestion = engine.processMessageReactive("conv_1", "user_1", "Which laptop should I buy?").block();
+
+        assertNotNull(suggestion);
+        assertNotNull(suggestion.getAd());
+        assertEquals("Ultrabook Pro", suggestion.getAd().getTitle());
+        assertEquals(1, engine.getStats().getActiveConversations());
+        assertEquals(1L, stub.getStats().get("requests"));
+    }
+
+    @Test
+    public void testReactiveTurnAnswersAnUpstreamErrorWithoutAnAd() {
+        stub.setErrorRate(1.0);
+        stub.setErrorStatus(500);
+
+        AdSuggestion suggestion = engine.processMessageReactive("conv_1", "user_1", "Which laptop should I buy?").block();
+
+        assertNotNull(suggestion);
+        assertNull(suggestion.getAd());
+        assertEquals(0L, engine.getLlmStats().get("degradedToLocalMatching"));
+        // An upstream error says nothing about load, so the limit does not back off
+        assertEquals(0L, llmLimiter().get("dropped"));
+        assertEquals(0, llmLimiter().get("inFlight"));
+    }
+
+    @Test
+    public void testRefusedCallsBackTheLimitOff() {
+        stub.setErrorRate(1.0);
+        stub.setErrorStatus(500);
+        // Two failures open the breaker, which then refuses calls before they leave the process
+        ReflectionTestUtils.setField(service, "breakerWindowSize", 2);
+        ReflectionTestUtils.setField(service, "breakerMinimumCalls", 2);
+        ReflectionTestUtils.invokeMethod(service, "configure");
+
+        for (int i = 0; i < 4; i++) {
+            engine.processMessage("conv_1", "user_1", "Which laptop should I buy?").join();
+        }
+
+        assertEquals(2L, stub.getStats().get("requests"));
+        assertEquals(2L, llmLimiter().get("dropped"));
+        assertEquals(0, llmLimiter().get("inFlight"));
+    }
+
+    @Test
+    public void testReactiveTurnIsNotStartedUntilSubscribed() {
+        engine.processMessageReactive("conv_1", "user_1", "Which laptop should I buy?");
+
+        assertEquals(0, engine.getStats().getActiveConversations());
+        assertEquals(0L, stub.getStats().get("requests"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> llmLimiter() {
+        Map<String, Object> admission = (Map<String, Object>) engine.getLlmStats().get("admission");
+        return (Map<String, Object>) admission.get("llmLimiter");
+    }
+}
@@ -0,0 +1,214 @@
+package com.adrelevance.engine;
+
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.Message;
+import com.adrelevance.model.MessageType;
+import com.adrelevance.model.UserState;
+import com.adrelevance.persistence.ColdConversationStore;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for idle eviction in ConversationManager
+ */
+public class ConversationManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ConversationManager manager;
+
+    @After
+    public void tearDown() {
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testEvictsIdleConversationsAndUsers() throws Exception {
+        manager = new ConversationManager(300, 50);
+        List<String> evicted = new CopyOnWriteArrayList<>();
+        manager.addEvictionListener(new ConversationManager.EvictionListener() {
+            @Override
+            public void onConversationEvicted(ConversationContext context) {
+                evicted.add(context.getConversationId());
+            }
+
+            @Override
+            public void onUserEvicted(UserState userState) {
+                evicted.add(userState.getUserId());
+            }
+        });
+
+        manager.getOrCreateContext("idle_conv", "idle_user");
+        manager.getOrCreateContext("active_conv", "active_user");
+        Thread.sleep(200);
+        manager.getOrCreateContext("active_conv", "active_user");
+
+        manager.runEviction(System.currentTimeMillis() + 150);
+
+        assertNull(manager.getContext("idle_conv"));
+        assertNull(manager.getUserState("idle_user"));
+        assertNotNull(manager.getContext("active_conv"));
+        assertNotNull(manager.getUserState("active_user"));
+        assertTrue(evicted.contains("idle_conv"));
+        assertTrue(evicted.contains("idle_user"));
+        assertEquals(1, manager.getEvictedConversationCount());
+        assertEquals(1, manager.getEvictedUserCount());
+        assertEquals(1, manager.getActiveConversationCount());
+    }
+
+    @Test
+    public void testEvictionDisabledWithoutTtl() {
+        manager = new ConversationManager(0, 50);
+        manager.getOrCreateContext("conv", "user");
+
+        manager.runEviction(System.currentTimeMillis() + 3_600_000);
+
+        assertNotNull(manager.getContext("conv"));
+        assertEquals(0, manager.getEvictedConversationCount());
+    }
+
+    @Test
+    public void testManagersShareOneEvictionThread() {
+        List<ConversationManager> managers = new ArrayList<>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                managers.add(new ConversationManager());
+            }
+            assertTrue(evictorThreads() <= 1);
+        } finally {
+            managers.forEach(ConversationManager::shutdown);
+        }
+    }
+
+    private static long evictorThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(thread -> thread.getName().equals("conversation-evictor"))
+            .count();
+    }
+
+    @Test
+    public void testIdleStateSpillsToColdTierAndComesBack() throws Exception {
+        manager = new ConversationManager(300, 50);
+        manager.enableColdTier(new ColdConversationStore(folder.getRoot().toPath(), 1 << 20));
+        ConversationContext context = manager.getOrCreateContext("conv", "user");
+        for (int i = 0; i < 20; i++) {
+            manager.appendMessage(context, new Message("message " + i, "user", MessageType.USER_MESSAGE));
+        }
+        context.getUserState().addInterest("travel");
+
+        manager.runEviction(System.currentTimeMillis() + 1000);
+        assertEquals(0, manager.getActiveConversationCount());
+        assertEquals(0, manager.getTotalUserCount());
+        assertEquals(1, manager.getColdConversationCount());
+        assertEquals(1, manager.getColdUserCount());
+
+        long start = System.nanoTime();
+        ConversationContext rehydrated = manager.getOrCreateContext("conv", "user");
+        long micros = (System.nanoTime() - start) / 1000;
+        System.out.println("Rehydrated a 20-message conversation in " + micros + "us");
+
+        assertNotSame(context, rehydrated);
+        assertEquals(20, rehydrated.getTotalMessageCount());
+        assertEquals("message 19", rehydrated.getMessages().get(19).getContent());
+        assertTrue(rehydrated.getUserState().hasInterest("travel"));
+        assertSame(rehydrated.getUserState(), manager.getUserState("user"));
+        assertEquals(0, manager.getColdConversationCount());
+        assertEquals(0, manager.getColdUserCount());
+    }
+
+    @Test
+    public void testClearingDiscardsSpilledState() throws Exception {
+        manager = new ConversationManager(300, 50);
+        manager.enableColdTier(new ColdConversationStore(folder.getRoot().toPath(), 1 << 20));
+        manager.getOrCreateContext("spilled", "user");
+        manager.runEviction(System.currentTimeMillis() + 1000);
+        manager.getOrCreateContext("live", "other");
+        assertEquals(1, manager.getColdConversationCount());
+        assertEquals(1, manager.getColdUserCount());
+
+        manager.clearAllConversations();
+        manager.removeUserState("user");
+
+        assertEquals(0, manager.getColdConversationCount());
+        assertEquals(0, manager.getColdUserCount());
+        assertNull(manager.getContext("spilled"));
+        assertNull(manager.getContext("live"));
+        assertNull(manager.getUserState("user"));
+        assertNotNull(manager.getUserState("other"));
+    }
+
+    @Test
+    public void testLookupDuringEvictionGetsTheSpilledConversation() throws Exception {
+        manager = new ConversationManager(300, 50);
+        List<Integer> activeDuringSpill = new CopyOnWriteArrayList<>();
+        CompletableFuture<ConversationContext> lookup = new CompletableFuture<>();
+        // Added before the cold tier, so it runs before the spill
+        manager.addEvictionListener(new ConversationManager.EvictionListener() {
+            @Override
+            public void onConversationEvicted(ConversationContext context) {
+                if (lookup.isDone() || !activeDuringSpill.isEmpty()) {
+                    // The rehydrated copy may be evicted again by the same pass
+                    return;
+                }
+                activeDuringSpill.add(manager.getActiveConversationCount());
+                CompletableFuture.runAsync(() -> lookup.complete(manager.getOrCreateContext("conv", "user")));
+                sleepQuietly(100);
+            }
+        });
+        manager.enableColdTier(new ColdConversationStore(folder.getRoot().toPath(), 1 << 20));
+        ConversationContext context = manager.getOrCreateContext("conv", "user");
+        for (int i = 0; i < 3; i++) {
+            manager.appendMessage(context, new Message("message " + i, "user", MessageType.USER_MESSAGE));
+        }
+
+        manager.runEviction(System.currentTimeMillis() + 1000);
+        ConversationContext rehydrated = lookup.get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0), activeDuringSpill);
+        assertNotSame(context, rehydrated);
+        assertEquals(3, rehydrated.getTotalMessageCount());
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testUserStateUpdateOnlyTouchesThatUsersConversations() {
+        manager = new ConversationManager(0, 50);
+        ConversationContext first = manager.getOrCreateContext("conv_1", "user_a");
+        ConversationContext second = manager.getOrCreateContext("conv_2", "user_a");
+        ConversationContext other = manager.getOrCreateContext("conv_3", "user_b");
+        UserState otherState = other.getUserState();
+
+        UserState replacement = new UserState("user_a");
+        replacement.addInterest("fitness");
+        manager.updateUserState("user_a", replacement);
+
+        assertSame(replacement, first.getUserState());
+        assertSame(replacement, second.getUserState());
+        assertSame(otherState, other.getUserState());
+        assertEquals(3, manager.getActiveConversationCount());
+        assertEquals(2, manager.getConversationIds("user_a").size());
+
+        manager.clearConversation("conv_1");
+        assertEquals(1, manager.getConversationIds("user_a").size());
+        assertTrue(manager.getConversationIds("user_a").contains("conv_2"));
+    }
+}
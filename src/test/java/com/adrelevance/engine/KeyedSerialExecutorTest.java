@@ -0,0 +1,130 @@
+package com.adrelevance.engine;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for per-key ordering in KeyedSerialExecutor
+ */
+public class KeyedSerialExecutorTest {
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(8);
+    private final KeyedSerialExecutor<String> lanes = new KeyedSerialExecutor<>(pool);
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testTasksForOneKeyRunInSubmissionOrder() {
+        List<Integer> seen = new ArrayList<>();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int turn = i;
+            // Unsynchronized list: any overlap or reordering shows up as a wrong sequence
+            futures.add(lanes.submit("conv", () -> {
+                seen.add(turn);
+                return turn;
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Integer.valueOf(i), seen.get(i));
+        }
+        assertEquals(0, lanes.activeLanes());
+    }
+
+    @Test
+    public void testDifferentKeysRunInParallel() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CompletableFuture<Boolean> a = lanes.submit("a", () -> awaitQuietly(bothStarted));
+        CompletableFuture<Boolean> b = lanes.submit("b", () -> awaitQuietly(bothStarted));
+
+        assertTrue(a.get(5, TimeUnit.SECONDS));
+        assertTrue(b.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailureDoesNotBlockTheLane() {
+        CompletableFuture<Object> failed = lanes.submit("conv", () -> {
+            throw new IllegalStateException("boom");
+        });
+        String after = lanes.call("conv", () -> "next");
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertEquals("next", after);
+    }
+
+    @Test
+    public void testRejectedTaskReleasesTheLane() throws Exception {
+        pool.shutdown();
+        CompletableFuture<String> rejected = lanes.submit("conv", () -> "never");
+        CompletableFuture<String> rejectedAsync = lanes.submitAsync("conv", () -> CompletableFuture.completedFuture("never"));
+
+        assertRejected(rejected);
+        assertRejected(rejectedAsync);
+        assertEquals(0, lanes.activeLanes());
+        // The conversation is not stuck behind the rejected tasks
+        assertEquals("next", CompletableFuture.supplyAsync(() -> lanes.call("conv", () -> "next"))
+            .get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAsyncTaskHoldsTheLaneUntilItsStageCompletes() throws Exception {
+        // Runs each task on the thread that releases it, so nothing here depends on timing
+        KeyedSerialExecutor<String> direct = new KeyedSerialExecutor<>(Runnable::run);
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch secondRan = new CountDownLatch(1);
+        CompletableFuture<String> first = direct.submitAsync("conv", () -> {
+            firstStarted.countDown();
+            return upstream;
+        });
+        CompletableFuture<String> second = direct.submit("conv", () -> {
+            secondRan.countDown();
+            return "second";
+        });
+
+        assertEquals(0, firstStarted.getCount());
+        assertEquals("the next task waits for the first one's stage", 1, secondRan.getCount());
+        assertFalse(second.isDone());
+        upstream.complete("first");
+
+        assertEquals(0, secondRan.getCount());
+        assertEquals("first", first.get(5, TimeUnit.SECONDS));
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, direct.activeLanes());
+    }
+
+    private static void assertRejected(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the task to be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    private static boolean awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
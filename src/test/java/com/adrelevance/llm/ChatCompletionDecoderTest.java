@@ -0,0 +1,49 @@
+package com.adrelevance.llm;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for streaming envelope decoding and compiled creative templates
+ */
+public class ChatCompletionDecoderTest {
+    
+    private final JsonFactory jsonFactory = new JsonFactory();
+    
+    private String decode(String json) throws Exception {
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            return ChatCompletionDecoder.readContent(parser);
+        }
+    }
+    
+    @Test
+    public void testReadsFirstChoiceContentSkippingOtherFields() throws Exception {
+        String envelope = "{\"id\":\"x\",\"usage\":{\"total_tokens\":12,\"details\":[1,2]},"
+            + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"{\\\"intent\\\":\\\"travel\\\"}\"}},"
+            + "{\"message\":{\"content\":\"second\"}}]}";
+        
+        assertEquals("{\"intent\":\"travel\"}", decode(envelope));
+    }
+    
+    @Test
+    public void testMissingContentDecodesAsEmpty() throws Exception {
+        assertEquals("", decode("{\"choices\":[]}"));
+        assertEquals("", decode("{\"choices\":[{\"message\":{\"content\":null}}]}"));
+        assertEquals("", decode("{\"object\":\"chat.completion\"}"));
+    }
+    
+    @Test
+    public void testCreativeTemplateRendersSlotsInOrder() {
+        CreativeTemplate template = CreativeTemplate.compile(
+            "<a href=\"{{url}}\">{{title}}</a> {{title}}!", "title", "url");
+        
+        assertEquals("<a href=\"https://x.test\">Shoes</a> Shoes!", template.render("Shoes", "https://x.test"));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testCreativeTemplateRejectsUnknownSlot() {
+        CreativeTemplate.compile("{{price}}", "title");
+    }
+}
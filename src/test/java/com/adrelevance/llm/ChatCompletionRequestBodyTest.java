@@ -0,0 +1,52 @@
+package com.adrelevance.llm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okio.Buffer;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the pre-encoded ChatCompletionRequestBody
+ */
+public class ChatCompletionRequestBodyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testWritesValidRequestWithEscapedContent() throws Exception {
+        ChatCompletionRequestBody.Template template =
+            new ChatCompletionRequestBody.Template("gpt-test", 0.7, "Be \"helpful\"\nand brief");
+        ChatCompletionRequestBody body = template.body("Current User Message: \"café \\ tab\t\"", 250);
+
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(body.contentLength(), buffer.size());
+
+        JsonNode request = objectMapper.readTree(buffer.readByteArray());
+        assertEquals("gpt-test", request.path("model").asText());
+        assertEquals(0.7, request.path("temperature").asDouble(), 0.0);
+        assertEquals(250, request.path("max_tokens").asInt());
+        assertEquals("system", request.path("messages").get(0).path("role").asText());
+        assertEquals("Be \"helpful\"\nand brief", request.path("messages").get(0).path("content").asText());
+        assertEquals("user", request.path("messages").get(1).path("role").asText());
+        assertEquals("Current User Message: \"café \\ tab\t\"", request.path("messages").get(1).path("content").asText());
+    }
+
+    @Test
+    public void testPrefixIsIdenticalAcrossCalls() throws Exception {
+        ChatCompletionRequestBody.Template template =
+            new ChatCompletionRequestBody.Template("gpt-test", 0.7, "Static instructions");
+
+        Buffer first = new Buffer();
+        template.body("first message", 1000).writeTo(first);
+        Buffer second = new Buffer();
+        template.body("a different message", 1000).writeTo(second);
+
+        String a = first.readUtf8();
+        String b = second.readUtf8();
+        String sharedPrefix = a.substring(0, a.indexOf("first message"));
+        assertTrue("System prompt should come first so the provider can cache it", sharedPrefix.contains("Static instructions"));
+        assertTrue(b.startsWith(sharedPrefix));
+    }
+}
@@ -0,0 +1,134 @@
+package com.adrelevance.llm;
+
+import com.adrelevance.benchmark.BenchmarkFixtures;
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.Message;
+import com.adrelevance.model.UserState;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU side of a ChatGPT call, without the network: building the prompt from the
+ * history and user profile, encoding the request body, and decoding the response envelope
+ * into a suggestion. Lives next to {@link ChatGPTService} for its package-private hooks.
+ *
+ * <p>Run with {@code mvn -Pbenchmark test-compile exec:exec -Dbenchmark.include=ChatGPTService}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatGPTServiceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Service {
+        ChatGPTService service;
+
+        @Setup
+        public void setUp() {
+            service = new ChatGPTService();
+        }
+
+        @TearDown
+        public void tearDown() {
+            service.shutdown();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Conversation {
+        @Param({"1", "10", "50"})
+        public int conversationLength;
+
+        List<Message> history;
+        UserState user;
+        String message;
+        String prompt;
+
+        @Setup
+        public void setUp(Service service) {
+            ConversationContext context = BenchmarkFixtures.conversation("bench_conv", "bench_user", conversationLength);
+            history = context.getMessages();
+            user = context.getUserState();
+            message = history.get(history.size() - 1).getContent();
+            prompt = service.service.buildAdSuggestionPrompt(message, history, user);
+        }
+    }
+
+    /**
+     * A chat completion response as OpenAI sends it, with or without an ad in the content
+     */
+    @State(Scope.Benchmark)
+    public static class Response {
+        @Param({"true", "false"})
+        public boolean withAd;
+
+        byte[] body;
+
+        @Setup
+        public void setUp() throws Exception {
+            ObjectMapper mapper = new ObjectMapper();
+            Map<String, Object> payload = new LinkedHashMap<>();
+            payload.put("intent", withAd ? "shopping" : "other");
+            payload.put("mood", "excited");
+            payload.put("confidence", withAd ? 0.85 : 0.1);
+            payload.put("conversational_response", "Great choice! Cushioned trainers make long runs much easier.");
+            if (withAd) {
+                Map<String, Object> ad = new LinkedHashMap<>();
+                ad.put("title", "Nike Air Zoom Pegasus");
+                ad.put("description", "Responsive cushioning for every run");
+                ad.put("category", "sports");
+                ad.put("call_to_action", "Shop now");
+                ad.put("url", "https://www.nike.com/running");
+                ad.put("relevance_reasoning", "The user is training for a marathon");
+                payload.put("ad_suggestion", ad);
+            }
+            Map<String, Object> envelope = new LinkedHashMap<>();
+            envelope.put("id", "chatcmpl-bench");
+            envelope.put("object", "chat.completion");
+            envelope.put("model", "gpt-3.5-turbo");
+            envelope.put("choices", List.of(Map.of("index", 0, "finish_reason", "stop",
+                "message", Map.of("role", "assistant", "content", mapper.writeValueAsString(payload)))));
+            envelope.put("usage", Map.of("prompt_tokens", 420, "completion_tokens", 96, "total_tokens", 516));
+            body = mapper.writeValueAsBytes(envelope);
+        }
+    }
+
+    @Benchmark
+    public String buildPrompt(Service service, Conversation conversation) {
+        return service.service.buildAdSuggestionPrompt(conversation.message, conversation.history, conversation.user);
+    }
+
+    /**
+     * The bytes OkHttp would write for the request, from an already built prompt
+     */
+    @Benchmark
+    public long encodeRequestBody(Service service, Conversation conversation) throws Exception {
+        Buffer sink = new Buffer();
+        service.service.adSuggestionRequestBody(conversation.prompt).writeTo(sink);
+        return sink.size();
+    }
+
+    @Benchmark
+    public ChatGPTService.ChatGPTAdSuggestion parseResponse(Service service, Response response) throws Exception {
+        return service.service.parseAdSuggestionResponse(response.body, "I'm training for a marathon");
+    }
+}
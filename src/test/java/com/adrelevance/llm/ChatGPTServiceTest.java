@@ -0,0 +1,121 @@
+package com.adrelevance.llm;
+
+import com.adrelevance.llm.stub.OpenAIStubServer;
+import com.adrelevance.model.UserState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Tests how calls against an {@link OpenAIStubServer} pass the breaker, bulkhead and quota
+ */
+public class ChatGPTServiceTest {
+
+    private OpenAIStubServer stub;
+    private ChatGPTService service;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new OpenAIStubServer(0);
+        stub.setErrorRate(1.0);
+        stub.setErrorStatus(500);
+        stub.start();
+
+        service = new ChatGPTService();
+        ReflectionTestUtils.setField(service, "openaiApiKey", "stub-key");
+        ReflectionTestUtils.setField(service, "openaiApiUrl", stub.getCompletionsUrl());
+        // Two failures open the breaker; no retries
+        ReflectionTestUtils.setField(service, "breakerWindowSize", 2);
+        ReflectionTestUtils.setField(service, "breakerMinimumCalls", 2);
+        ReflectionTestUtils.setField(service, "maxAttempts", 1);
+        ReflectionTestUtils.setField(service, "quotaRequestsPerMinute", 6000L);
+        service.configure();
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+        stub.stop();
+    }
+
+    @SuppressWarnings("unchecked")
+    private long grantedQuota() {
+        Map<String, Object> quota = (Map<String, Object>) service.getResilienceStats().get("quota");
+        return (Long) quota.get("grantedCalls");
+    }
+
+    private void callBlocking() {
+        try {
+            service.analyzeContextAndSuggestAd("c1", "u1", "Which laptop is best?", List.of(), new UserState("u1")).join();
+            fail("every call fails");
+        } catch (CompletionException expected) {
+            // Upstream error, then the open breaker
+        }
+    }
+
+    @Test
+    public void testCallsTheOpenBreakerRejectsSpendNoQuota() {
+        callBlocking();
+        callBlocking();
+        assertEquals(2L, grantedQuota());
+
+        for (int i = 0; i < 5; i++) {
+            callBlocking();
+        }
+
+        assertEquals(2L, grantedQuota());
+        assertEquals(2L, stub.getStats().get("requests"));
+    }
+
+    @Test
+    public void testReactiveCallsTheOpenBreakerRejectsSpendNoQuota() {
+        for (int i = 0; i < 7; i++) {
+            try {
+                service.suggestAdReactive("c1", "Which laptop is best?", List.of(), new UserState("u1")).block();
+                fail("every call fails");
+            } catch (RuntimeException expected) {
+                // Upstream error, then the open breaker
+            }
+        }
+
+        assertEquals(2L, grantedQuota());
+        assertEquals(2L, stub.getStats().get("requests"));
+    }
+
+    @Test
+    public void testBatchedAndSingleCallsFailAlike() {
+        ChatGPTService batching = new ChatGPTService();
+        ReflectionTestUtils.setField(batching, "openaiApiKey", "stub-key");
+        ReflectionTestUtils.setField(batching, "openaiApiUrl", stub.getCompletionsUrl());
+        ReflectionTestUtils.setField(batching, "maxAttempts", 1);
+        ReflectionTestUtils.setField(batching, "batchingEnabled", true);
+        batching.configure();
+        try {
+            Throwable batched = failureOf(batching);
+            Throwable single = failureOf(service);
+
+            assertEquals(single.getClass(), batched.getClass());
+            assertTrue(batched.getMessage(), batched.getMessage().startsWith("ChatGPT API unavailable: "));
+            assertTrue(batched.getCause() instanceof ChatGPTApiException);
+            assertEquals(1L, ((Map<?, ?>) batching.getResilienceStats().get("batching")).get("batchesSent"));
+        } finally {
+            batching.shutdown();
+        }
+    }
+
+    private static Throwable failureOf(ChatGPTService service) {
+        try {
+            service.analyzeContextAndSuggestAd("c1", "u1", "Which laptop is best?", List.of(), new UserState("u1")).join();
+            fail("every call fails");
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+}
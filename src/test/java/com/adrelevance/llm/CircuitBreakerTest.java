@@ -0,0 +1,85 @@
+package com.adrelevance.llm;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the sliding-window CircuitBreaker
+ */
+public class CircuitBreakerTest {
+    
+    private CircuitBreaker newBreaker(long openDurationMs) {
+        return new CircuitBreaker("test", 10, 4, 50, 100, 1000, openDurationMs, 2);
+    }
+    
+    @Test
+    public void testOpensWhenFailureRateExceeded() {
+        CircuitBreaker breaker = newBreaker(60000);
+        
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+            breaker.onSuccess(0);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+            breaker.onError(0);
+        }
+        
+        assertEquals("50% failures over minimum calls should open the breaker", 
+            CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse("Open breaker should fast-fail", breaker.tryAcquirePermission());
+    }
+    
+    @Test
+    public void testOpensOnSlowCalls() {
+        CircuitBreaker breaker = new CircuitBreaker("slow", 10, 4, 50, 50, 1, 60000, 2);
+        
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+            breaker.onSuccess(5_000_000L);
+        }
+        
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+    
+    @Test
+    public void testHalfOpenProbesCloseBreaker() throws Exception {
+        CircuitBreaker breaker = newBreaker(10);
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquirePermission();
+            breaker.onError(0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        
+        Thread.sleep(20);
+        
+        assertTrue("First probe should be permitted", breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue("Second probe should be permitted", breaker.tryAcquirePermission());
+        assertFalse("Probes beyond the half-open limit should be rejected", breaker.tryAcquirePermission());
+        
+        breaker.onSuccess(0);
+        breaker.onSuccess(0);
+        
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+    
+    @Test
+    public void testFailedProbeReopensBreaker() throws Exception {
+        CircuitBreaker breaker = newBreaker(10);
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquirePermission();
+            breaker.onError(0);
+        }
+        Thread.sleep(20);
+        
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onError(0);
+        breaker.onSuccess(0);
+        
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
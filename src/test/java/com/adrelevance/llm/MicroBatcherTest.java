@@ -0,0 +1,99 @@
+package com.adrelevance.llm;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for when MicroBatcher flushes and how it fans results back out
+ */
+public class MicroBatcherTest {
+
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+    private MicroBatcher<String, String> batcher;
+
+    @After
+    public void tearDown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    private List<String> upperCase(List<String> items) {
+        batches.add(List.copyOf(items));
+        List<String> results = new ArrayList<>(items.size());
+        for (String item : items) {
+            results.add(item.toUpperCase());
+        }
+        return results;
+    }
+
+    @Test
+    public void testFullBatchIsSentWithoutWaitingForTheDeadline() throws Exception {
+        // Runs the handler on the submitting thread, so the batch is done when submit returns
+        batcher = new MicroBatcher<>("test", 3, TimeUnit.MINUTES.toMillis(10), this::upperCase, Runnable::run);
+
+        CompletableFuture<String> a = batcher.submit("a");
+        CompletableFuture<String> b = batcher.submit("b");
+        assertTrue(batches.isEmpty());
+        CompletableFuture<String> c = batcher.submit("c");
+
+        assertEquals(List.of(List.of("a", "b", "c")), batches);
+        assertEquals("A", a.getNow(null));
+        assertEquals("B", b.getNow(null));
+        assertEquals("C", c.getNow(null));
+        assertEquals(1, batcher.getBatchesSent());
+        assertEquals(3, batcher.getItemsSent());
+    }
+
+    @Test
+    public void testPartialBatchIsSentAtTheDeadline() throws Exception {
+        batcher = new MicroBatcher<>("test", 10, 20, this::upperCase, Runnable::run);
+
+        CompletableFuture<String> a = batcher.submit("a");
+        CompletableFuture<String> b = batcher.submit("b");
+
+        assertEquals("A", a.get(5, TimeUnit.SECONDS));
+        assertEquals("B", b.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of(List.of("a", "b")), batches);
+        assertEquals(2, batcher.getItemsSent());
+    }
+
+    @Test
+    public void testMissingResultsCompleteWithNull() {
+        batcher = new MicroBatcher<>("test", 2, TimeUnit.MINUTES.toMillis(10), items -> List.of("only"), Runnable::run);
+
+        CompletableFuture<String> first = batcher.submit("a");
+        CompletableFuture<String> second = batcher.submit("b");
+
+        assertEquals("only", first.getNow("pending"));
+        assertNull(second.getNow("pending"));
+    }
+
+    @Test
+    public void testBatchFailureReachesEveryWaiter() throws Exception {
+        IOException failure = new IOException("upstream down");
+        batcher = new MicroBatcher<>("test", 2, TimeUnit.MINUTES.toMillis(10), items -> {
+            throw failure;
+        }, Runnable::run);
+
+        List<CompletableFuture<String>> waiters = List.of(batcher.submit("a"), batcher.submit("b"));
+
+        for (CompletableFuture<String> waiter : waiters) {
+            try {
+                waiter.get(5, TimeUnit.SECONDS);
+                fail("the batch failed");
+            } catch (ExecutionException e) {
+                assertSame(failure, e.getCause());
+            }
+        }
+    }
+}
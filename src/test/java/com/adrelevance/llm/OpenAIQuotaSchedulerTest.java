@@ -0,0 +1,58 @@
+package com.adrelevance.llm;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tests for the token-bucket OpenAIQuotaScheduler
+ */
+public class OpenAIQuotaSchedulerTest {
+
+    @Test
+    public void testShedsWhenQueuedDemandExceedsBudget() throws Exception {
+        // 600 tokens/minute = 10 per second, burst of one second
+        OpenAIQuotaScheduler scheduler = new OpenAIQuotaScheduler("test", 0, 600, 0, 1000, 100);
+
+        scheduler.acquire(10, OpenAIQuotaScheduler.Priority.NORMAL);
+
+        try {
+            scheduler.acquire(50, OpenAIQuotaScheduler.Priority.NORMAL);
+            fail("Call that cannot be paid for within the max wait should be shed");
+        } catch (ChatGPTCallRejectedException e) {
+            assertEquals(ChatGPTCallRejectedException.Reason.QUOTA_EXHAUSTED, e.getReason());
+        }
+        assertEquals(1L, scheduler.getMetrics().get("shedCalls"));
+        assertEquals(1L, scheduler.getMetrics().get("grantedCalls"));
+    }
+
+    @Test
+    public void testHigherPriorityIsServedFirst() throws Exception {
+        // One request every 250ms, no burst beyond a single call
+        OpenAIQuotaScheduler scheduler = new OpenAIQuotaScheduler("test", 240, 0, 0, 250, 5000);
+        scheduler.acquire(1, OpenAIQuotaScheduler.Priority.NORMAL);
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread normal = new Thread(() -> acquireAndRecord(scheduler, OpenAIQuotaScheduler.Priority.NORMAL, "normal", order));
+        Thread high = new Thread(() -> acquireAndRecord(scheduler, OpenAIQuotaScheduler.Priority.HIGH, "high", order));
+        normal.start();
+        Thread.sleep(50);
+        high.start();
+        normal.join(5000);
+        high.join(5000);
+
+        assertEquals(List.of("high", "normal"), order);
+    }
+
+    private static void acquireAndRecord(OpenAIQuotaScheduler scheduler, OpenAIQuotaScheduler.Priority priority,
+                                         String label, List<String> order) {
+        try {
+            scheduler.acquire(1, priority);
+            order.add(label);
+        } catch (ChatGPTCallRejectedException e) {
+            order.add(label + "-shed");
+        }
+    }
+}
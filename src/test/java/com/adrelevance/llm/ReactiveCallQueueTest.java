@@ -0,0 +1,72 @@
+package com.adrelevance.llm;
+
+import org.junit.After;
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for concurrency capping and load shedding in ReactiveCallQueue
+ */
+public class ReactiveCallQueueTest {
+    
+    private final ReactiveCallQueue queue = new ReactiveCallQueue("test", 2, 3);
+    
+    @After
+    public void tearDown() {
+        queue.dispose();
+    }
+    
+    @Test
+    public void testCapsCallsInFlightAndRejectsPastTheQueue() {
+        List<Sinks.One<String>> upstream = new ArrayList<>();
+        AtomicInteger started = new AtomicInteger();
+        List<Mono<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Sinks.One<String> response = Sinks.one();
+            upstream.add(response);
+            calls.add(queue.submit(Mono.defer(() -> {
+                started.incrementAndGet();
+                return response.asMono();
+            })).cache());
+        }
+        List<Disposable> subscriptions = new ArrayList<>();
+        calls.forEach(call -> subscriptions.add(call.subscribe(value -> { }, error -> { })));
+        
+        assertEquals("only two calls may be in flight", 2, started.get());
+        try {
+            calls.get(5).block(Duration.ofSeconds(1));
+            fail("the sixth call should not fit in flight plus queue");
+        } catch (RuntimeException e) {
+            assertTrue(Exceptions.unwrap(e) instanceof ChatGPTCallRejectedException);
+        }
+        
+        upstream.get(0).tryEmitValue("first");
+        assertEquals("first", calls.get(0).block(Duration.ofSeconds(1)));
+        assertEquals("a finished call lets the next one start", 3, started.get());
+        subscriptions.forEach(Disposable::dispose);
+    }
+    
+    @Test
+    public void testCancelledCallFreesItsSlot() {
+        AtomicInteger started = new AtomicInteger();
+        Disposable hung = queue.submit(Mono.<String>never().doOnSubscribe(s -> started.incrementAndGet())).subscribe();
+        Disposable alsoHung = queue.submit(Mono.<String>never().doOnSubscribe(s -> started.incrementAndGet())).subscribe();
+        
+        Mono<String> waiting = queue.submit(Mono.fromSupplier(() -> "ran"));
+        hung.dispose();
+        
+        assertEquals("ran", waiting.block(Duration.ofSeconds(1)));
+        assertEquals(2, started.get());
+        assertEquals(1, queue.getMetrics().get("inFlightCalls"));
+        alsoHung.dispose();
+    }
+}
@@ -0,0 +1,52 @@
+package com.adrelevance.llm.stub;
+
+import java.util.Random;
+
+/**
+ * Simulated upstream latency for the stub server
+ */
+public interface LatencyDistribution {
+
+    long sampleMillis(Random random);
+
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    static LatencyDistribution fixed(long millis) {
+        return random -> millis;
+    }
+
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    static LatencyDistribution exponential(long meanMillis) {
+        return random -> (long) (-meanMillis * Math.log(1.0 - random.nextDouble()));
+    }
+
+    /**
+     * Log-normal shaped by its median and 99th percentile, which is how LLM
+     * latency is usually described (a long right tail)
+     */
+    static LatencyDistribution logNormal(long medianMillis, long p99Millis) {
+        double mu = Math.log(Math.max(1, medianMillis));
+        double sigma = Math.max(0.0, (Math.log(Math.max(medianMillis, p99Millis)) - mu) / 2.326);
+        return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+    }
+
+    /**
+     * Parses "none", "fixed:MS", "uniform:MIN:MAX", "exponential:MEAN" or "lognormal:MEDIAN:P99"
+     */
+    static LatencyDistribution parse(String spec) {
+        String[] parts = spec.trim().toLowerCase().split(":");
+        switch (parts[0]) {
+            case "none": return none();
+            case "fixed": return fixed(Long.parseLong(parts[1]));
+            case "uniform": return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            case "exponential": return exponential(Long.parseLong(parts[1]));
+            case "lognormal": return logNormal(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            default: throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.adrelevance.llm.stub;
+
+import com.adrelevance.api.AdRelevanceApplication;
+import com.adrelevance.api.ChatGPTAdRelevanceAPI;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives {@link ChatGPTAdRelevanceAPI} end to end through the real OpenAI client path,
+ * backed by an {@link OpenAIStubServer}, and reports throughput and tail latency.
+ * Add {@code --spring.main.web-application-type=reactive} to drive the reactive controller instead.
+ *
+ * <p>Example: {@code --concurrency=32 --duration-s=30 --latency=lognormal:800:3000 --error-rate=0.01}
+ */
+public class LlmPathLoadHarness {
+
+    private static final String[] MESSAGES = {
+        "I need a new dress for a wedding next month",
+        "Which laptop is best for programming?",
+        "Thinking about upgrading my phone this year",
+        "Looking for a hotel in Rome for the weekend",
+        "Planning a trip to Japan in spring",
+        "Any good restaurant recommendations nearby?",
+        "I want to start a workout routine",
+        "How was your day?"
+    };
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = OpenAIStubServer.parseOptions(args);
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "16"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup-s", "5"));
+        int durationSeconds = Integer.parseInt(options.getOrDefault("duration-s", "30"));
+        int conversations = Integer.parseInt(options.getOrDefault("conversations", "200"));
+
+        OpenAIStubServer stub = new OpenAIStubServer(0);
+        stub.setLatency(LatencyDistribution.parse(options.getOrDefault("latency", "lognormal:800:3000")));
+        stub.setErrorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")));
+        stub.setErrorStatus(Integer.parseInt(options.getOrDefault("error-status", "503")));
+        stub.start();
+
+        List<String> appArgs = new ArrayList<>(List.of(
+            "--server.port=0",
+            "--openai.api.url=" + stub.getCompletionsUrl(),
+            "--openai.api.key=stub-key",
+            "--openai.batch.enabled=" + options.getOrDefault("batch", "false")));
+        // Dotted options are application properties, e.g. --openai.quota.requests-per-minute=600
+        options.forEach((key, value) -> {
+            if (key.contains(".")) {
+                appArgs.add("--" + key + "=" + value);
+            }
+        });
+        ConfigurableApplicationContext context = SpringApplication.run(AdRelevanceApplication.class, appArgs.toArray(new String[0]));
+        int apiPort = ((WebServerApplicationContext) context).getWebServer().getPort();
+        String baseUrl = "http://127.0.0.1:" + apiPort + "/api/chatgpt";
+
+        HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(Math.max(4, concurrency / 4)))
+            .build();
+
+        try {
+            System.out.printf("Warming up for %ds...%n", warmupSeconds);
+            run(client, baseUrl, concurrency, conversations, warmupSeconds);
+
+            System.out.printf("Measuring %d closed-loop workers for %ds against %s%n", concurrency, durationSeconds, stub.getCompletionsUrl());
+            Result result = run(client, baseUrl, concurrency, conversations, durationSeconds);
+            result.print(durationSeconds);
+
+            HttpResponse<String> stats = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/stats")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+            System.out.println("Engine stats: " + stats.body());
+            System.out.println("Stub stats: " + stub.getStats());
+        } finally {
+            context.close();
+            stub.stop();
+            System.exit(0);
+        }
+    }
+
+    private static Result run(HttpClient client, String baseUrl, int concurrency, int conversations, int seconds) throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicInteger sequence = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        List<Future<Result>> futures = new ArrayList<>();
+        for (int w = 0; w < concurrency; w++) {
+            futures.add(workers.submit(() -> {
+                Result local = new Result();
+                while (System.nanoTime() < deadline) {
+                    int n = sequence.getAndIncrement();
+                    String body = String.format("{\"conversationId\":\"load-conv-%d\",\"userId\":\"load-user-%d\",\"message\":\"%s\"}",
+                        n % conversations, n % conversations, MESSAGES[n % MESSAGES.length]);
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/process-message"))
+                        .timeout(Duration.ofSeconds(60))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        local.record(System.nanoTime() - start, response.statusCode() == 200);
+                    } catch (Exception e) {
+                        local.record(System.nanoTime() - start, false);
+                    }
+                }
+                return local;
+            }));
+        }
+
+        Result total = new Result();
+        for (Future<Result> future : futures) {
+            total.merge(future.get());
+        }
+        workers.shutdown();
+        return total;
+    }
+
+    private static final class Result {
+        long[] latencies = new long[1024];
+        int count;
+        int errors;
+
+        void record(long nanos, boolean ok) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        void merge(Result other) {
+            for (int i = 0; i < other.count; i++) {
+                record(other.latencies[i], true);
+            }
+            errors += other.errors;
+        }
+
+        void print(int seconds) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            System.out.printf("Requests: %d (errors: %d), throughput: %.1f req/s%n", count, errors, count / (double) seconds);
+            System.out.printf("Latency ms  p50=%.1f  p90=%.1f  p99=%.1f  p99.9=%.1f  max=%.1f%n",
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), count == 0 ? 0.0 : sorted[count - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0.0;
+            }
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.adrelevance.llm.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embeddable OpenAI-compatible chat completions stub for load testing the real client path.
+ * Point {@code openai.api.url} at {@link #getCompletionsUrl()} (any non-empty API key works).
+ *
+ * <p>Replies are deterministic for a given user message, latency is drawn from a configurable
+ * distribution and applied on a timer (no thread is held while "thinking"), a configurable
+ * fraction of calls fail with an error status, and {@code "stream": true} requests are answered
+ * as server-sent event chunks.
+ */
+public class OpenAIStubServer {
+    private static final Logger logger = LoggerFactory.getLogger(OpenAIStubServer.class);
+
+    public static final String COMPLETIONS_PATH = "/v1/chat/completions";
+
+    private static final String NO_AD_CONTENT =
+        "{\"intent\": \"conversation\", \"mood\": \"neutral\", \"confidence\": 0.0, \"conversational_response\": \"How can I help ?\"}";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int requestedPort;
+    private final List<CannedResponse> cannedResponses = new ArrayList<>();
+
+    private volatile LatencyDistribution latency = LatencyDistribution.none();
+    private volatile double errorRate = 0.0;
+    private volatile int errorStatus = 503;
+    private volatile long retryAfterSeconds = 1;
+    private volatile int streamChunkSize = 16;
+    private volatile long streamChunkDelayMs = 5;
+
+    private HttpServer server;
+    private ExecutorService handlerExecutor;
+    private ScheduledExecutorService responseTimer;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong streamedRequests = new AtomicLong();
+
+    public OpenAIStubServer(int port) {
+        this.requestedPort = port;
+        addDefaultCannedResponses();
+    }
+
+    // Configuration (safe to change while running)
+    public void setLatency(LatencyDistribution latency) { this.latency = latency; }
+    public void setErrorRate(double errorRate) { this.errorRate = errorRate; }
+    public void setErrorStatus(int errorStatus) { this.errorStatus = errorStatus; }
+    public void setRetryAfterSeconds(long retryAfterSeconds) { this.retryAfterSeconds = retryAfterSeconds; }
+    public void setStreamChunkSize(int streamChunkSize) { this.streamChunkSize = Math.max(1, streamChunkSize); }
+    public void setStreamChunkDelayMs(long streamChunkDelayMs) { this.streamChunkDelayMs = streamChunkDelayMs; }
+
+    /**
+     * Registers a canned content payload returned when the user message contains the keyword.
+     * Rules are checked in registration order; later calls take precedence over the defaults.
+     */
+    public synchronized void addCannedResponse(String keyword, String contentJson) {
+        cannedResponses.add(0, new CannedResponse(keyword.toLowerCase(), contentJson));
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", requestedPort), 1024);
+        handlerExecutor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()), daemon("openai-stub"));
+        responseTimer = Executors.newScheduledThreadPool(2, daemon("openai-stub-timer"));
+        server.setExecutor(handlerExecutor);
+        server.createContext(COMPLETIONS_PATH, this::handleCompletion);
+        server.start();
+        logger.info("OpenAI stub server listening on {}", getCompletionsUrl());
+    }
+
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        responseTimer.shutdownNow();
+        handlerExecutor.shutdownNow();
+        server = null;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getCompletionsUrl() {
+        return "http://127.0.0.1:" + getPort() + COMPLETIONS_PATH;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("errors", errors.get());
+        stats.put("streamedRequests", streamedRequests.get());
+        return stats;
+    }
+
+    private void handleCompletion(HttpExchange exchange) {
+        try {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                send(exchange, 405, "{\"error\":{\"message\":\"Method not allowed\"}}");
+                return;
+            }
+            JsonNode request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = objectMapper.readTree(body);
+            }
+            requests.incrementAndGet();
+
+            long delayMs = Math.max(0, latency.sampleMillis(ThreadLocalRandom.current()));
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                responseTimer.schedule(() -> sendError(exchange), delayMs, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            String content = buildContent(request);
+            String model = request.path("model").asText("stub-model");
+            if (request.path("stream").asBoolean(false)) {
+                streamedRequests.incrementAndGet();
+                responseTimer.schedule(() -> startStream(exchange, model, content), delayMs, TimeUnit.MILLISECONDS);
+            } else {
+                String envelope = buildEnvelope(model, content);
+                responseTimer.schedule(() -> send(exchange, 200, envelope), delayMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            logger.warn("Stub failed to handle request: {}", e.getMessage());
+            send(exchange, 400, "{\"error\":{\"message\":\"Bad request\"}}");
+        }
+    }
+
+    /**
+     * Builds the assistant content for the request: one result object, or a JSON
+     * array of results when the prompt carries several "### Conversation N" sections
+     */
+    private String buildContent(JsonNode request) throws IOException {
+        String userContent = lastUserContent(request.path("messages"));
+        String[] sections = userContent.split("### Conversation ");
+        if (sections.length <= 1) {
+            return contentFor(extractUserMessage(userContent));
+        }
+
+        ArrayNode results = objectMapper.createArrayNode();
+        for (int i = 1; i < sections.length; i++) {
+            String section = sections[i];
+            int newline = section.indexOf('\n');
+            ObjectNode result = (ObjectNode) objectMapper.readTree(contentFor(extractUserMessage(section)));
+            result.put("id", Integer.parseInt(section.substring(0, newline < 0 ? section.length() : newline).trim()));
+            results.add(result);
+        }
+        return objectMapper.writeValueAsString(results);
+    }
+
+    private synchronized String contentFor(String userMessage) {
+        String lower = userMessage.toLowerCase();
+        for (CannedResponse canned : cannedResponses) {
+            if (lower.contains(canned.keyword)) {
+                return canned.contentJson;
+            }
+        }
+        return NO_AD_CONTENT;
+    }
+
+    private static String lastUserContent(JsonNode messages) {
+        String content = "";
+        for (JsonNode message : messages) {
+            if ("user".equals(message.path("role").asText())) {
+                content = message.path("content").asText();
+            }
+        }
+        return content;
+    }
+
+    private static String extractUserMessage(String prompt) {
+        int marker = prompt.indexOf("Current User Message:");
+        if (marker < 0) {
+            return prompt;
+        }
+        int end = prompt.indexOf('\n', marker);
+        return prompt.substring(marker + "Current User Message:".length(), end < 0 ? prompt.length() : end)
+                     .replace("\"", "").trim();
+    }
+
+    private String buildEnvelope(String model, String content) {
+        ObjectNode envelope = objectMapper.createObjectNode();
+        envelope.put("id", "chatcmpl-stub-" + requests.get());
+        envelope.put("object", "chat.completion");
+        envelope.put("created", System.currentTimeMillis() / 1000);
+        envelope.put("model", model);
+        ObjectNode choice = envelope.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode message = choice.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", content);
+        choice.put("finish_reason", "stop");
+        ObjectNode usage = envelope.putObject("usage");
+        usage.put("completion_tokens", content.length() / 4);
+        return envelope.toString();
+    }
+
+    private void startStream(HttpExchange exchange, String model, String content) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            streamChunk(exchange, model, content, 0);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private void streamChunk(HttpExchange exchange, String model, String content, int offset) {
+        try {
+            OutputStream out = exchange.getResponseBody();
+            if (offset >= content.length()) {
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                exchange.close();
+                return;
+            }
+            int end = Math.min(content.length(), offset + streamChunkSize);
+            ObjectNode chunk = objectMapper.createObjectNode();
+            chunk.put("object", "chat.completion.chunk");
+            chunk.put("model", model);
+            ObjectNode choice = chunk.putArray("choices").addObject();
+            choice.put("index", 0);
+            choice.putObject("delta").put("content", content.substring(offset, end));
+            out.write(("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            responseTimer.schedule(() -> streamChunk(exchange, model, content, end), streamChunkDelayMs, TimeUnit.MILLISECONDS);
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+
+    private void sendError(HttpExchange exchange) {
+        int status = errorStatus;
+        if (status == 429) {
+            exchange.getResponseHeaders().set("Retry-After", Long.toString(retryAfterSeconds));
+        }
+        send(exchange, status, "{\"error\":{\"message\":\"Injected stub failure\",\"type\":\"stub_error\"}}");
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            logger.debug("Stub client went away: {}", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void addDefaultCannedResponses() {
+        cannedResponses.add(new CannedResponse("dress", adContent("shopping", "Summer Collection",
+            "Discover the latest summer fashion trends", "fashion", "Shop Now", "https://fashionbrand.com/summer-collection")));
+        cannedResponses.add(new CannedResponse("laptop", adContent("technology", "Ultrabook Pro",
+            "Lightweight laptops with all-day battery", "tech", "Learn More", "https://techcorp.com/ultrabook")));
+        cannedResponses.add(new CannedResponse("phone", adContent("technology", "Latest Smartphone",
+            "Experience cutting-edge technology", "tech", "Learn More", "https://techcorp.com/latest-smartphone")));
+        cannedResponses.add(new CannedResponse("hotel", adContent("travel", "Luxury Hotel Collection",
+            "Discover amazing hotels and accommodations worldwide", "travel", "Book Hotel", "https://luxuryhotels.com/collection")));
+        cannedResponses.add(new CannedResponse("trip", adContent("travel", "Dream Vacation",
+            "Plan your perfect getaway", "travel", "Book Now", "https://travelagency.com/dream-vacation")));
+        cannedResponses.add(new CannedResponse("restaurant", adContent("food", "Authentic Italian Dining",
+            "Experience the finest Italian cuisine in town", "food", "Book Table", "https://italianrestaurant.com/book-table")));
+        cannedResponses.add(new CannedResponse("workout", adContent("health", "Premium Fitness Program",
+            "Transform your fitness journey with expert guidance", "fitness", "Start Today", "https://fitlife.com/get-fit-fast")));
+    }
+
+    private String adContent(String intent, String title, String description, String category, String callToAction, String url) {
+        ObjectNode content = objectMapper.createObjectNode();
+        content.put("intent", intent);
+        content.put("mood", "curious");
+        content.put("confidence", 0.85);
+        content.put("conversational_response", "Great choice! Here is something that might help.");
+        ObjectNode ad = content.putObject("ad_suggestion");
+        ad.put("title", title);
+        ad.put("description", description);
+        ad.put("category", category);
+        ad.put("call_to_action", callToAction);
+        ad.put("url", url);
+        ad.put("relevance_reasoning", "Stub match on '" + intent + "'");
+        return content.toString();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicLong counter = new AtomicLong();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class CannedResponse {
+        final String keyword;
+        final String contentJson;
+
+        CannedResponse(String keyword, String contentJson) {
+            this.keyword = keyword;
+            this.contentJson = contentJson;
+        }
+    }
+
+    /**
+     * Runs the stub standalone, e.g.
+     * {@code --port=8089 --latency=lognormal:800:3000 --error-rate=0.01 --error-status=429}
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        OpenAIStubServer stub = new OpenAIStubServer(Integer.parseInt(options.getOrDefault("port", "8089")));
+        stub.setLatency(LatencyDistribution.parse(options.getOrDefault("latency", "none")));
+        stub.setErrorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")));
+        stub.setErrorStatus(Integer.parseInt(options.getOrDefault("error-status", "503")));
+        stub.start();
+        System.out.println("OpenAI stub listening: --openai.api.url=" + stub.getCompletionsUrl() + " --openai.api.key=stub");
+        Thread.currentThread().join();
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+}
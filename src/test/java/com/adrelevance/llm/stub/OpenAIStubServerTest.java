@@ -0,0 +1,126 @@
+package com.adrelevance.llm.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Round trips through the stub over HTTP, as the OpenAI clients make them
+ */
+public class OpenAIStubServerTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private OpenAIStubServer stub;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new OpenAIStubServer(0);
+        stub.start();
+    }
+
+    @After
+    public void tearDown() {
+        stub.stop();
+    }
+
+    private HttpResponse<String> post(boolean stream, String userContent) throws Exception {
+        String body = mapper.writeValueAsString(Map.of(
+            "model", "gpt-3.5-turbo",
+            "stream", stream,
+            "messages", List.of(
+                Map.of("role", "system", "content", "You suggest ads."),
+                Map.of("role", "user", "content", userContent))));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(stub.getCompletionsUrl()))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testCompletionCarriesTheCannedAdForTheMessage() throws Exception {
+        HttpResponse<String> response = post(false, "Current User Message: \"Which laptop is best?\"\nHistory: none");
+
+        assertEquals(200, response.statusCode());
+        JsonNode envelope = mapper.readTree(response.body());
+        assertEquals("chat.completion", envelope.path("object").asText());
+        assertEquals("gpt-3.5-turbo", envelope.path("model").asText());
+        JsonNode content = mapper.readTree(envelope.path("choices").get(0).path("message").path("content").asText());
+        assertEquals("Ultrabook Pro", content.path("ad_suggestion").path("title").asText());
+        assertEquals(1L, stub.getStats().get("requests"));
+    }
+
+    @Test
+    public void testBatchPromptGetsOneResultPerConversation() throws Exception {
+        HttpResponse<String> response = post(false,
+            "### Conversation 0\nCurrent User Message: \"I need a dress\"\n"
+            + "### Conversation 1\nCurrent User Message: \"How was your day?\"\n");
+
+        JsonNode results = mapper.readTree(mapper.readTree(response.body())
+            .path("choices").get(0).path("message").path("content").asText());
+        assertEquals(2, results.size());
+        assertEquals(0, results.get(0).path("id").asInt());
+        assertEquals("Summer Collection", results.get(0).path("ad_suggestion").path("title").asText());
+        assertEquals(1, results.get(1).path("id").asInt());
+        assertTrue(results.get(1).path("ad_suggestion").isMissingNode());
+    }
+
+    @Test
+    public void testStreamedChunksAddUpToTheSameContent() throws Exception {
+        String message = "Current User Message: \"Planning a trip\"";
+        String expected = mapper.readTree(post(false, message).body())
+            .path("choices").get(0).path("message").path("content").asText();
+
+        HttpResponse<String> response = post(true, message);
+
+        assertEquals("text/event-stream", response.headers().firstValue("Content-Type").orElse(""));
+        StringBuilder content = new StringBuilder();
+        String last = null;
+        for (String line : response.body().split("\n")) {
+            if (line.startsWith("data: ")) {
+                last = line.substring("data: ".length());
+                if (!last.equals("[DONE]")) {
+                    content.append(mapper.readTree(last).path("choices").get(0).path("delta").path("content").asText());
+                }
+            }
+        }
+        assertEquals("[DONE]", last);
+        assertEquals(expected, content.toString());
+    }
+
+    @Test
+    public void testInjectedErrorsCarryTheConfiguredStatus() throws Exception {
+        stub.setErrorRate(1.0);
+        stub.setErrorStatus(429);
+        stub.setRetryAfterSeconds(7);
+
+        HttpResponse<String> response = post(false, "Current User Message: \"hello\"");
+
+        assertEquals(429, response.statusCode());
+        assertEquals("7", response.headers().firstValue("Retry-After").orElse(""));
+        assertEquals(1L, stub.getStats().get("errors"));
+    }
+
+    @Test
+    public void testLatencyDistributionsParse() {
+        Random random = new Random(1);
+        assertEquals(0, LatencyDistribution.parse("none").sampleMillis(random));
+        assertEquals(250, LatencyDistribution.parse("fixed:250").sampleMillis(random));
+        long uniform = LatencyDistribution.parse("uniform:10:20").sampleMillis(random);
+        assertTrue(uniform >= 10 && uniform < 20);
+        assertTrue(LatencyDistribution.parse("lognormal:800:3000").sampleMillis(random) > 0);
+        assertThrows(IllegalArgumentException.class, () -> LatencyDistribution.parse("gaussian:5"));
+    }
+}
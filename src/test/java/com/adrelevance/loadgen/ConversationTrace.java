@@ -0,0 +1,114 @@
+package com.adrelevance.loadgen;
+
+import com.adrelevance.api.TraceRecorder;
+import com.adrelevance.api.dto.JsonCodec;
+import com.adrelevance.api.dto.TraceEvent;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * User messages in send order, stored as JSON lines of {@link TraceEvent}. Think times and
+ * arrivals are whatever the offsets say, so a recorded trace keeps the shape of the traffic
+ * it came from and {@link #scaledToRate} changes its rate without changing that shape.
+ */
+public class ConversationTrace {
+
+    private static final ObjectReader EVENT_READER = JsonCodec.MAPPER.readerFor(TraceEvent.class);
+    private static final ObjectWriter EVENT_WRITER = JsonCodec.MAPPER.writerFor(TraceEvent.class);
+
+    private final List<TraceEvent> events;
+
+    public ConversationTrace(List<TraceEvent> events) {
+        List<TraceEvent> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparingLong(TraceEvent::atMillis));
+        this.events = List.copyOf(sorted);
+    }
+
+    /**
+     * Reads a trace written by {@link #write} or a {@link TraceRecorder}; blank lines are skipped
+     */
+    public static ConversationTrace read(Path file) throws IOException {
+        List<TraceEvent> events = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    events.add(EVENT_READER.readValue(line));
+                }
+            }
+        }
+        return new ConversationTrace(events);
+    }
+
+    public void write(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (TraceEvent event : events) {
+                writer.write(EVENT_WRITER.writeValueAsString(event));
+                writer.newLine();
+            }
+        }
+    }
+
+    public List<TraceEvent> getEvents() {
+        return events;
+    }
+
+    public int size() {
+        return events.size();
+    }
+
+    /**
+     * Time from the first message to the last
+     */
+    public long getDurationMillis() {
+        return events.isEmpty() ? 0 : events.get(events.size() - 1).atMillis() - events.get(0).atMillis();
+    }
+
+    /**
+     * Messages per second over the trace's duration
+     */
+    public double getRate() {
+        long duration = getDurationMillis();
+        return duration == 0 ? 0.0 : (events.size() - 1) * 1000.0 / duration;
+    }
+
+    public long countConversations() {
+        return events.stream().map(TraceEvent::conversationId).distinct().count();
+    }
+
+    public long countUsers() {
+        return events.stream().map(TraceEvent::userId).distinct().count();
+    }
+
+    /**
+     * The same trace starting at zero and stretched or compressed to {@code messagesPerSecond};
+     * think times scale with it
+     */
+    public ConversationTrace scaledToRate(double messagesPerSecond) {
+        if (messagesPerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + messagesPerSecond);
+        }
+        if (events.isEmpty()) {
+            return this;
+        }
+        double rate = getRate();
+        double factor = rate == 0.0 ? 1.0 : rate / messagesPerSecond;
+        long first = events.get(0).atMillis();
+        List<TraceEvent> scaled = new ArrayList<>(events.size());
+        for (TraceEvent event : events) {
+            scaled.add(new TraceEvent(Math.round((event.atMillis() - first) * factor),
+                event.conversationId(), event.userId(), event.message()));
+        }
+        return new ConversationTrace(scaled);
+    }
+}
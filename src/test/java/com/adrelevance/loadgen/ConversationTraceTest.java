@@ -0,0 +1,95 @@
+package com.adrelevance.loadgen;
+
+import com.adrelevance.api.TraceRecorder;
+import com.adrelevance.api.dto.TraceEvent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests trace files, rate scaling, recording and synthesis
+ */
+public class ConversationTraceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndReadRoundTrip() throws Exception {
+        ConversationTrace trace = new ConversationTrace(List.of(
+            new TraceEvent(1500, "c2", "u1", "Which laptop is best?"),
+            new TraceEvent(0, "c1", "u1", "I need running shoes, \"cushioned\" ones")));
+        Path file = folder.getRoot().toPath().resolve("trace.jsonl");
+
+        trace.write(file);
+        ConversationTrace read = ConversationTrace.read(file);
+
+        assertEquals(trace.getEvents(), read.getEvents());
+        assertEquals("c1", read.getEvents().get(0).conversationId());
+        assertEquals(1500, read.getDurationMillis());
+    }
+
+    @Test
+    public void testScaledToRateKeepsTheShape() {
+        ConversationTrace trace = new ConversationTrace(List.of(
+            new TraceEvent(1000, "c1", "u1", "a"),
+            new TraceEvent(1100, "c1", "u1", "b"),
+            new TraceEvent(3000, "c2", "u2", "c")));
+
+        ConversationTrace scaled = trace.scaledToRate(trace.getRate() * 2);
+
+        assertEquals(List.of(0L, 50L, 1000L), scaled.getEvents().stream().map(TraceEvent::atMillis).toList());
+        assertEquals(trace.getRate() * 2, scaled.getRate(), 1e-9);
+    }
+
+    @Test
+    public void testRecorderWritesAReplayableTrace() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("recorded.jsonl");
+        try (TraceRecorder recorder = new TraceRecorder(file)) {
+            recorder.record("c1", "u1", "Planning a trip to Lisbon");
+            recorder.record("c1", "u1", "Any hotel tips?");
+            assertEquals(2, recorder.getRecorded());
+        }
+
+        ConversationTrace trace = ConversationTrace.read(file);
+
+        assertEquals(2, trace.size());
+        assertEquals("Any hotel tips?", trace.getEvents().get(1).message());
+        assertTrue(trace.getEvents().get(0).atMillis() <= trace.getEvents().get(1).atMillis());
+    }
+
+    @Test
+    public void testSynthesizedTraceHasTheRequestedShape() {
+        List<List<String>> scripts = List.of(List.of("one", "two", "three"), List.of("solo"));
+        ConversationTrace trace = synthesize(scripts);
+
+        // Poisson arrivals: within a few percent of the rate over 12000 messages
+        assertEquals(200, trace.getRate(), 20);
+        assertTrue(trace.countUsers() <= 50);
+        assertTrue(trace.getEvents().get(trace.size() - 1).atMillis() < 60_000);
+        // Turns of a conversation keep script order and are spaced by think times
+        Map<String, TraceEvent> last = new HashMap<>();
+        for (TraceEvent event : trace.getEvents()) {
+            TraceEvent previous = last.put(event.conversationId(), event);
+            if (previous != null) {
+                assertEquals(previous.userId(), event.userId());
+                assertTrue(List.of("two", "three").contains(event.message()));
+            }
+        }
+        // Same seed, same trace
+        assertEquals(trace.getEvents(), synthesize(scripts).getEvents());
+    }
+
+    private static ConversationTrace synthesize(List<List<String>> scripts) {
+        TraceSynthesizer synthesizer = new TraceSynthesizer(scripts);
+        synthesizer.setUsers(50);
+        synthesizer.setMeanThinkMillis(2000);
+        return synthesizer.synthesize(200, 60);
+    }
+}
@@ -0,0 +1,52 @@
+package com.adrelevance.loadgen;
+
+import com.adrelevance.api.dto.JsonCodec;
+import com.adrelevance.api.dto.MessageRequest;
+import com.adrelevance.api.dto.TraceEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Posts each message to a process-message endpoint, e.g. {@code http://localhost:8080/api/process-message}
+ * or {@code .../api/chatgpt/process-message}; served means a 200
+ */
+public class HttpTarget implements OpenLoopReplayer.Target {
+
+    private static final ObjectWriter REQUEST_WRITER = JsonCodec.MAPPER.writerFor(MessageRequest.class);
+
+    private final HttpClient client;
+    private final URI uri;
+    private final Duration timeout;
+
+    public HttpTarget(URI uri, Duration timeout) {
+        // HTTP/1.1 opens a connection per concurrent request, as browsers and the OpenWebUI extension do
+        this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5)).build();
+        this.uri = uri;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> send(TraceEvent event) {
+        byte[] body;
+        try {
+            body = REQUEST_WRITER.writeValueAsBytes(event.toRequest());
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri)
+            .timeout(timeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+            .build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+            .thenApply(response -> response.statusCode() == 200);
+    }
+}
@@ -0,0 +1,25 @@
+package com.adrelevance.loadgen;
+
+import com.adrelevance.api.dto.TraceEvent;
+import com.adrelevance.engine.ConversationalAdRelevanceEngine;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Hands each message straight to a keyword engine, without HTTP or JSON, to separate the
+ * engine's own capacity from the server's
+ */
+public class InProcessTarget implements OpenLoopReplayer.Target {
+
+    private final ConversationalAdRelevanceEngine engine;
+
+    public InProcessTarget(ConversationalAdRelevanceEngine engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> send(TraceEvent event) {
+        return engine.processMessageAsync(event.conversationId(), event.userId(), event.message())
+            .thenApply(suggestion -> true);
+    }
+}
@@ -0,0 +1,106 @@
+package com.adrelevance.loadgen;
+
+import com.adrelevance.api.EngineWarmUp;
+import com.adrelevance.engine.ConversationalAdRelevanceEngine;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Capacity-planning load: replays a conversation trace open-loop against the REST API or a
+ * keyword engine in this process and reports throughput and response-time percentiles.
+ * The trace is either recorded from a server ({@code adrelevance.trace.record-file}, or
+ * {@code --record-trace=} on the standalone server) or synthesized from the warm-up corpus
+ * with many users, multi-turn conversations and think times.
+ *
+ * <p>Examples:
+ * <pre>
+ * --rate=200 --duration-s=60 --users=5000 --think-ms=8000 --save-trace=target/trace.jsonl
+ * --trace=target/trace.jsonl --rate=400 --target=http://localhost:8080/api/process-message --hgrm=target/latency.hgrm
+ * </pre>
+ * {@code --target=none} only writes the trace.
+ */
+public class LoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        ConversationTrace trace = loadOrSynthesize(options);
+        if (options.containsKey("save-trace")) {
+            trace.write(Path.of(options.get("save-trace")));
+            System.out.printf("Wrote %d messages to %s%n", trace.size(), options.get("save-trace"));
+        }
+        System.out.printf("Trace: %d messages in %d conversations from %d users over %.1fs (%.1f msg/s)%n",
+            trace.size(), trace.countConversations(), trace.countUsers(), trace.getDurationMillis() / 1000.0, trace.getRate());
+
+        String targetOption = options.getOrDefault("target", "inprocess");
+        if (targetOption.equals("none")) {
+            return;
+        }
+        ConversationalAdRelevanceEngine engine = null;
+        OpenLoopReplayer.Target target;
+        if (targetOption.equals("inprocess")) {
+            engine = new ConversationalAdRelevanceEngine();
+            target = new InProcessTarget(engine);
+        } else {
+            target = new HttpTarget(URI.create(targetOption),
+                Duration.ofSeconds(Long.parseLong(options.getOrDefault("timeout-s", "30"))));
+        }
+
+        OpenLoopReplayer replayer = new OpenLoopReplayer(target);
+        replayer.setWarmupMillis(Long.parseLong(options.getOrDefault("warmup-s", "5")) * 1000);
+        replayer.setDrainTimeoutMillis(Long.parseLong(options.getOrDefault("drain-s", "30")) * 1000);
+        replayer.setProgress(System.out);
+        try {
+            System.out.printf("Replaying open-loop against %s%n", targetOption);
+            OpenLoopReplayer.Result result = replayer.replay(trace);
+            result.print(System.out);
+            if (options.containsKey("hgrm")) {
+                Histogram responseTime = result.getResponseTime();
+                try (PrintStream out = new PrintStream(Files.newOutputStream(Path.of(options.get("hgrm"))))) {
+                    // Microseconds recorded, milliseconds written
+                    responseTime.outputPercentileDistribution(out, 1000.0);
+                }
+                System.out.printf("Response-time distribution written to %s%n", options.get("hgrm"));
+            }
+        } finally {
+            if (engine != null) {
+                engine.shutdown();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * {@code --trace=} if given, rescaled to {@code --rate=} if that is given too; otherwise
+     * a synthesized trace at {@code --rate=} (default 100) for {@code --duration-s=} (default 60)
+     */
+    static ConversationTrace loadOrSynthesize(Map<String, String> options) throws Exception {
+        if (options.containsKey("trace")) {
+            ConversationTrace trace = ConversationTrace.read(Path.of(options.get("trace")));
+            return options.containsKey("rate") ? trace.scaledToRate(Double.parseDouble(options.get("rate"))) : trace;
+        }
+        TraceSynthesizer synthesizer = new TraceSynthesizer(EngineWarmUp.fromClasspath().getConversations());
+        synthesizer.setUsers(Integer.parseInt(options.getOrDefault("users", "1000")));
+        synthesizer.setMeanThinkMillis(Long.parseLong(options.getOrDefault("think-ms", "8000")));
+        synthesizer.setSeed(Long.parseLong(options.getOrDefault("seed", "42")));
+        return synthesizer.synthesize(Double.parseDouble(options.getOrDefault("rate", "100")),
+            Integer.parseInt(options.getOrDefault("duration-s", "60")));
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+}
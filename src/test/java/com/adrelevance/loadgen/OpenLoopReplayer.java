@@ -0,0 +1,240 @@
+package com.adrelevance.loadgen;
+
+import com.adrelevance.api.dto.TraceEvent;
+import com.adrelevance.concurrent.VirtualThreads;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a trace's messages at the times the trace gives them, whether or not earlier ones
+ * have been answered. Response time is measured from when a message was due, not from when
+ * it went out: a closed-loop client that waits for each answer sends less while the server
+ * stalls and leaves the stall out of its percentiles (coordinated omission), while here a
+ * stall shows up in every message that came due during it. Service time, from the actual
+ * send, is reported next to it; a gap between the two means the target, or this client,
+ * could not keep up with the rate.
+ */
+public class OpenLoopReplayer {
+
+    /**
+     * Where messages go. {@link #send} must not wait for the answer; the future completes
+     * with true when the message was served and false, or exceptionally, when it was not.
+     */
+    public interface Target {
+        CompletableFuture<Boolean> send(TraceEvent event);
+    }
+
+    // Latencies are recorded in microseconds, up to an hour, to three significant digits
+    private static final long MAX_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Target target;
+    private long warmupMillis;
+    private long drainTimeoutMillis = 30000;
+    private PrintStream progress;
+
+    public OpenLoopReplayer(Target target) {
+        this.target = target;
+    }
+
+    /**
+     * Messages due in the trace's first {@code warmupMillis} are sent but left out of the result
+     */
+    public void setWarmupMillis(long warmupMillis) {
+        this.warmupMillis = Math.max(0, warmupMillis);
+    }
+
+    /**
+     * How long to wait for answers after the last message has gone out
+     */
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = Math.max(0, drainTimeoutMillis);
+    }
+
+    /**
+     * Prints one line a second while replaying; null for none
+     */
+    public void setProgress(PrintStream progress) {
+        this.progress = progress;
+    }
+
+    public Result replay(ConversationTrace trace) throws InterruptedException {
+        Recorder responseTimes = new Recorder(MAX_MICROS, SIGNIFICANT_DIGITS);
+        Recorder serviceTimes = new Recorder(MAX_MICROS, SIGNIFICANT_DIGITS);
+        Result result = new Result();
+        // Sends not yet answered; whoever removes one records it, so each is timed exactly once
+        Map<Long, Pending> pending = new ConcurrentHashMap<>();
+        AtomicLong lastCompletion = new AtomicLong();
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemonFactory("loadgen-report"));
+        long start = System.nanoTime();
+        long firstAt = trace.size() == 0 ? 0 : trace.getEvents().get(0).atMillis();
+        reporter.scheduleAtFixedRate(() -> result.collect(responseTimes, serviceTimes, progress, start, pending.size()),
+            1, 1, TimeUnit.SECONDS);
+        try {
+            for (TraceEvent event : trace.getEvents()) {
+                long dueAfter = event.atMillis() - firstAt;
+                long due = start + TimeUnit.MILLISECONDS.toNanos(dueAfter);
+                long now;
+                while ((now = System.nanoTime()) < due) {
+                    LockSupport.parkNanos(due - now);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                long sequence = result.sent.incrementAndGet();
+                CompletableFuture<Boolean> answer;
+                try {
+                    answer = target.send(event);
+                } catch (RuntimeException e) {
+                    answer = CompletableFuture.failedFuture(e);
+                }
+                pending.put(sequence, new Pending(due, now, dueAfter >= warmupMillis));
+                answer.whenComplete((served, error) -> {
+                    Pending send = pending.remove(sequence);
+                    if (send == null) {
+                        return;
+                    }
+                    long done = System.nanoTime();
+                    boolean ok = error == null && Boolean.TRUE.equals(served);
+                    (ok ? result.succeeded : result.failed).incrementAndGet();
+                    if (send.measured()) {
+                        record(responseTimes, serviceTimes, send, done);
+                        if (ok) {
+                            result.measuredSucceeded.incrementAndGet();
+                        }
+                    }
+                    lastCompletion.accumulateAndGet(done, Math::max);
+                });
+            }
+
+            long drainDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+            while (!pending.isEmpty() && System.nanoTime() < drainDeadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            reporter.shutdownNow();
+            reporter.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        // Unanswered sends took at least until now; leaving them out would hide the worst of the tail
+        long drained = System.nanoTime();
+        for (Long unanswered : pending.keySet()) {
+            Pending send = pending.remove(unanswered);
+            if (send != null) {
+                result.incomplete++;
+                if (send.measured()) {
+                    record(responseTimes, serviceTimes, send, drained);
+                }
+            }
+        }
+        result.collect(responseTimes, serviceTimes, null, start, 0);
+        long measuredFrom = start + TimeUnit.MILLISECONDS.toNanos(Math.min(warmupMillis, trace.getDurationMillis()));
+        result.measuredNanos = Math.max(0, Math.max(lastCompletion.get(), start) - measuredFrom);
+        return result;
+    }
+
+    private static void record(Recorder responseTimes, Recorder serviceTimes, Pending send, long done) {
+        responseTimes.recordValue(micros(done - send.due()));
+        serviceTimes.recordValue(micros(done - send.sentAt()));
+    }
+
+    private static long micros(long nanos) {
+        return Math.min(MAX_MICROS, Math.max(0, nanos / 1000));
+    }
+
+    private record Pending(long due, long sentAt, boolean measured) {
+    }
+
+    /**
+     * Counts and latency histograms, in microseconds, of one replay
+     */
+    public static class Result {
+        private final Histogram responseTime = new Histogram(MAX_MICROS, SIGNIFICANT_DIGITS);
+        private final Histogram serviceTime = new Histogram(MAX_MICROS, SIGNIFICANT_DIGITS);
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong measuredSucceeded = new AtomicLong();
+        private Histogram interval;
+        private long incomplete;
+        private long measuredNanos;
+
+        private synchronized void collect(Recorder responseTimes, Recorder serviceTimes, PrintStream progress,
+                                          long start, long inFlight) {
+            interval = responseTimes.getIntervalHistogram(interval);
+            responseTime.add(interval);
+            serviceTime.add(serviceTimes.getIntervalHistogram());
+            if (progress != null) {
+                progress.printf("%5ds  sent %8d  ok %8d  failed %6d  in flight %6d  interval p50 %8.2fms  p99 %8.2fms%n",
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), sent.get(), succeeded.get(), failed.get(),
+                    inFlight, interval.getValueAtPercentile(50) / 1000.0, interval.getValueAtPercentile(99) / 1000.0);
+            }
+        }
+
+        /**
+         * From when each message was due to its answer, failed answers included, and to the end
+         * of the drain for messages never answered; the numbers to plan capacity with
+         */
+        public synchronized Histogram getResponseTime() {
+            return responseTime.copy();
+        }
+
+        /**
+         * From when each message was actually sent to its answer
+         */
+        public synchronized Histogram getServiceTime() {
+            return serviceTime.copy();
+        }
+
+        public long getSent() {
+            return sent.get();
+        }
+
+        public long getSucceeded() {
+            return succeeded.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Messages still unanswered when the drain timeout ran out
+         */
+        public long getIncomplete() {
+            return incomplete;
+        }
+
+        /**
+         * Successfully answered messages per second after the warm-up
+         */
+        public synchronized double getThroughput() {
+            return measuredNanos == 0 ? 0.0 : measuredSucceeded.get() * 1e9 / measuredNanos;
+        }
+
+        public synchronized void print(PrintStream out) {
+            out.printf("Sent %d, succeeded %d, failed %d, incomplete %d%n", getSent(), getSucceeded(), getFailed(), incomplete);
+            out.printf("Throughput after warm-up: %.1f msg/s%n", getThroughput());
+            // Both include failed and unanswered messages, so an overloaded target can't look fast by failing
+            printLatency(out, "Response time", responseTime);
+            printLatency(out, "Service time ", serviceTime);
+        }
+
+        private static void printLatency(PrintStream out, String label, Histogram histogram) {
+            out.printf("%s ms  p50=%.2f  p90=%.2f  p99=%.2f  p99.9=%.2f  max=%.2f%n", label,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.adrelevance.loadgen;
+
+import com.adrelevance.api.dto.TraceEvent;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Tests open-loop pacing and latency accounting
+ */
+public class OpenLoopReplayerTest {
+
+    private static ConversationTrace everyMillis(int count, long intervalMillis) {
+        List<TraceEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(new TraceEvent(i * intervalMillis, "c" + i, "u" + i, "message " + i));
+        }
+        return new ConversationTrace(events);
+    }
+
+    @Test
+    public void testSendsOnScheduleWithoutWaitingForAnswers() throws Exception {
+        List<CompletableFuture<Boolean>> answers = new ArrayList<>();
+        OpenLoopReplayer replayer = new OpenLoopReplayer(event -> {
+            CompletableFuture<Boolean> answer = new CompletableFuture<>();
+            synchronized (answers) {
+                answers.add(answer);
+            }
+            return answer;
+        });
+        replayer.setDrainTimeoutMillis(0);
+
+        long start = System.nanoTime();
+        OpenLoopReplayer.Result result = replayer.replay(everyMillis(20, 5));
+
+        // Nothing was ever answered, yet all 20 went out on time
+        assertEquals(20, result.getSent());
+        assertEquals(20, result.getIncomplete());
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 1000);
+        // Unanswered messages are timed up to the drain deadline rather than left out
+        assertEquals(20, result.getResponseTime().getTotalCount());
+        assertTrue(result.getResponseTime().getMaxValue() >= 90_000);
+    }
+
+    @Test
+    public void testResponseTimeIncludesTheWaitOfLateSends() throws Exception {
+        // A target that answers in 20ms but holds the sender meanwhile, offered one message every
+        // 5ms: sends fall further behind schedule, as they would for a closed-loop client
+        OpenLoopReplayer replayer = new OpenLoopReplayer(event -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return CompletableFuture.completedFuture(true);
+        });
+
+        OpenLoopReplayer.Result result = replayer.replay(everyMillis(20, 5));
+
+        assertEquals(20, result.getSucceeded());
+        assertEquals(20, result.getResponseTime().getTotalCount());
+        // The last message is answered about 20 * 20ms - 19 * 5ms after it was due...
+        assertTrue(result.getResponseTime().getMaxValue() >= 250_000);
+        // ...while each send, timed on its own, took about 20ms
+        assertTrue(result.getServiceTime().getMaxValue() < 150_000);
+    }
+
+    @Test
+    public void testFailuresAreCountedAndTimed() throws Exception {
+        OpenLoopReplayer replayer = new OpenLoopReplayer(event -> event.conversationId().equals("c1")
+            ? CompletableFuture.completedFuture(false)
+            : CompletableFuture.completedFuture(true));
+
+        OpenLoopReplayer.Result result = replayer.replay(everyMillis(4, 1));
+
+        assertEquals(3, result.getSucceeded());
+        assertEquals(1, result.getFailed());
+        assertEquals(4, result.getResponseTime().getTotalCount());
+    }
+}
@@ -0,0 +1,79 @@
+package com.adrelevance.loadgen;
+
+import com.adrelevance.api.dto.TraceEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds a trace from conversation scripts: conversations start as a Poisson process, each
+ * plays one script turn by turn with exponentially distributed think times in between, and
+ * belongs to one of {@code users} users, so users come back with new conversations.
+ * Conversations already under way when the trace starts are included from their first turn
+ * inside it, so the message rate is flat from the start rather than ramping up.
+ */
+public class TraceSynthesizer {
+
+    private final List<List<String>> scripts;
+    private int users = 1000;
+    private long meanThinkMillis = 8000;
+    private long seed = 42;
+
+    public TraceSynthesizer(List<List<String>> scripts) {
+        if (scripts.isEmpty() || scripts.stream().anyMatch(List::isEmpty)) {
+            throw new IllegalArgumentException("Every script needs at least one message");
+        }
+        this.scripts = scripts;
+    }
+
+    public void setUsers(int users) {
+        this.users = Math.max(1, users);
+    }
+
+    public void setMeanThinkMillis(long meanThinkMillis) {
+        this.meanThinkMillis = Math.max(0, meanThinkMillis);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * About {@code messagesPerSecond} messages a second for {@code durationSeconds}; the same
+     * seed gives the same trace
+     */
+    public ConversationTrace synthesize(double messagesPerSecond, int durationSeconds) {
+        if (messagesPerSecond <= 0 || durationSeconds <= 0) {
+            throw new IllegalArgumentException("Rate and duration must be positive");
+        }
+        Random random = new Random(seed);
+        double meanTurns = scripts.stream().mapToInt(List::size).average().orElse(1);
+        double conversationsPerMilli = messagesPerSecond / meanTurns / 1000.0;
+        long durationMillis = durationSeconds * 1000L;
+        // Long enough for almost every conversation in progress at zero to have started
+        long leadIn = (long) (scripts.stream().mapToInt(List::size).max().orElse(1) * meanThinkMillis * 2);
+
+        List<TraceEvent> events = new ArrayList<>();
+        int conversation = 0;
+        double start = -leadIn;
+        while ((start += exponential(random, 1.0 / conversationsPerMilli)) < durationMillis) {
+            List<String> script = scripts.get(random.nextInt(scripts.size()));
+            String conversationId = "trace-conv-" + conversation++;
+            String userId = "trace-user-" + random.nextInt(users);
+            double at = start;
+            for (int turn = 0; turn < script.size() && at < durationMillis; turn++) {
+                if (turn > 0) {
+                    at += exponential(random, meanThinkMillis);
+                }
+                if (at >= 0 && at < durationMillis) {
+                    events.add(new TraceEvent((long) at, conversationId, userId, script.get(turn)));
+                }
+            }
+        }
+        return new ConversationTrace(events);
+    }
+
+    private static double exponential(Random random, double mean) {
+        return -mean * Math.log(1.0 - random.nextDouble());
+    }
+}
@@ -0,0 +1,94 @@
+package com.adrelevance.model;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+import static org.junit.Assert.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Measures retained bytes per Message with JOL against the previous field layout
+ */
+public class MessageFootprintTest {
+
+    private static final int MESSAGES = 2000;
+    private static final String CANNED = "I don't have ad suggestions for this product right now. Try asking about technology, fashion, travel, food, fitness, or beauty products!";
+
+    @Test
+    public void testCompactMessageAtLeastHalvesFootprint() {
+        Object[] legacy = new Object[MESSAGES];
+        Object[] compact = new Object[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            // Sender ids arrive as fresh strings from each request, as they do from JSON bodies
+            String sender = new String("user_" + (i % 50));
+            String content = i % 2 == 0 ? "I need a new dress for the wedding, number " + i : CANNED;
+            legacy[i] = new LegacyMessage(content, sender, MessageType.USER_MESSAGE);
+            compact[i] = i % 2 == 0
+                ? new Message(content, sender, MessageType.USER_MESSAGE)
+                : Message.canned(CANNED, "assistant", MessageType.BOT_RESPONSE);
+            // The engines read every message on its turn; measure them as they are afterwards
+            assertEquals(content, ((Message) compact[i]).getContent());
+        }
+
+        long legacyBytes = GraphLayout.parseInstance(legacy).totalSize() / MESSAGES;
+        long compactBytes = GraphLayout.parseInstance(compact).totalSize() / MESSAGES;
+        System.out.println("Bytes per message: legacy=" + legacyBytes + ", compact=" + compactBytes);
+
+        assertTrue("Expected at least 2x smaller, got legacy=" + legacyBytes + " compact=" + compactBytes,
+            compactBytes * 2 <= legacyBytes);
+    }
+
+    @Test
+    public void testRoundTripsFields() {
+        LocalDateTime at = LocalDateTime.of(2024, 5, 1, 12, 30, 15);
+        Message message = new Message("héllo wörld", "user_1", MessageType.AD_SUGGESTION);
+        message.setTimestamp(at);
+
+        assertEquals("héllo wörld", message.getContent());
+        assertEquals(MessageType.AD_SUGGESTION, message.getType());
+        assertEquals(at, message.getTimestamp());
+        assertSame(message.getSenderId(), new Message("x", new String("user_1"), MessageType.USER_MESSAGE).getSenderId());
+        assertNull(message.getId());
+        assertEquals(0.0, message.getSentimentScore(), 0.0);
+        assertSame(CANNED, Message.canned(CANNED, "assistant", MessageType.BOT_RESPONSE).getContent());
+    }
+
+    @Test
+    public void testReadingContentKeepsItCompact() {
+        Message message = new Message("héllo wörld", "user_1", MessageType.USER_MESSAGE);
+        long unread = GraphLayout.parseInstance(message).totalSize();
+
+        assertEquals("héllo wörld", message.getContent());
+        assertEquals("héllo wörld", message.getContent());
+        assertEquals(unread, GraphLayout.parseInstance(message).totalSize());
+    }
+
+    @Test
+    public void testNullTimestampReadsBackAsNull() {
+        Message message = new Message("hi", "user_1", MessageType.USER_MESSAGE);
+        message.setTimestamp(null);
+
+        assertNull(message.getTimestamp());
+        assertTrue(message.toString().contains("timestamp=null"));
+    }
+
+    /**
+     * Field layout of Message before the compact encoding
+     */
+    @SuppressWarnings("unused")
+    private static final class LegacyMessage {
+        private String id;
+        private final String content;
+        private final String senderId;
+        private final MessageType type;
+        private final LocalDateTime timestamp = LocalDateTime.now();
+        private double sentimentScore;
+        private String detectedLanguage;
+
+        LegacyMessage(String content, String senderId, MessageType type) {
+            this.content = content;
+            this.senderId = senderId;
+            this.type = type;
+        }
+    }
+}
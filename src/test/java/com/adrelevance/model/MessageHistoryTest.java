@@ -0,0 +1,62 @@
+package com.adrelevance.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the ring-buffer MessageHistory
+ */
+public class MessageHistoryTest {
+
+    private static Message message(int i) {
+        return new Message("message " + i, "user", MessageType.USER_MESSAGE);
+    }
+
+    @Test
+    public void testKeepsNewestMessagesAndReportsEvictions() {
+        MessageHistory history = new MessageHistory(3);
+        List<Message> evicted = new ArrayList<>();
+        history.setEvictionListener(evicted::add);
+
+        for (int i = 0; i < 5; i++) {
+            history.add(message(i));
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(5, history.getTotalAdded());
+        assertEquals("message 2", history.get(0).getContent());
+        assertEquals("message 4", history.get(2).getContent());
+        assertEquals(2, evicted.size());
+        assertEquals("message 0", evicted.get(0).getContent());
+        assertEquals("message 1", evicted.get(1).getContent());
+    }
+
+    @Test
+    public void testRecentAndReadOnlyView() {
+        MessageHistory history = new MessageHistory(4);
+        for (int i = 0; i < 6; i++) {
+            history.add(message(i));
+        }
+
+        List<Message> recent = history.recent(2);
+        assertEquals(2, recent.size());
+        assertEquals("message 4", recent.get(0).getContent());
+        assertEquals("message 5", recent.get(1).getContent());
+        assertEquals(4, history.recent(10).size());
+
+        List<Message> view = history.asList();
+        assertEquals("message 2", view.get(0).getContent());
+        try {
+            view.add(message(99));
+            fail("History view should be read-only");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+
+        history.add(message(6));
+        assertEquals("View should reflect later additions", "message 6", view.get(3).getContent());
+    }
+}
@@ -0,0 +1,109 @@
+package com.adrelevance.model;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the compact UserState representation
+ */
+public class UserStateTest {
+
+    @Test
+    public void testInterestsAndBlockedCategories() {
+        UserState state = new UserState("user_1");
+        state.addInterest("fashion");
+        state.addInterest("travel");
+        state.addInterest("fashion");
+        state.setBlockedCategories(Arrays.asList("gambling"));
+
+        assertTrue(state.hasInterest("fashion"));
+        assertFalse(state.hasInterest("never-registered-category"));
+        assertEquals(-1, UserState.CATEGORIES.find("never-registered-category"));
+        assertEquals(2, state.getInterests().size());
+        assertTrue(state.getInterests().containsAll(Arrays.asList("fashion", "travel")));
+        assertEquals(List.of("gambling"), state.getBlockedCategories());
+    }
+
+    @Test
+    public void testSymbolTableIsBounded() {
+        SymbolTable table = new SymbolTable(2, 8);
+
+        assertEquals(0, table.idOf("fashion"));
+        assertEquals(-1, table.idOf("much-too-long"));
+        assertEquals(1, table.idOf("travel"));
+        assertEquals(-1, table.idOf("food"));
+        assertEquals(0, table.idOf("fashion"));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testNamesTheTablesRefuseStayWithTheUser() {
+        // Longer than either table accepts, as a client could send
+        String category = "c".repeat(200);
+        String adId = "a".repeat(200);
+        int categories = UserState.CATEGORIES.size();
+        int adIds = UserState.AD_IDS.size();
+        UserState state = new UserState("user_4");
+
+        state.addInterest(category);
+        state.addInterest(category);
+        state.setBlockedCategories(Arrays.asList("gambling", category));
+        state.recordAdInteraction(adId);
+        state.recordAdInteraction(adId);
+
+        assertTrue(state.hasInterest(category));
+        assertEquals(List.of(category), state.getInterests());
+        assertEquals(List.of("gambling", category), state.getBlockedCategories());
+        assertEquals(2, state.getAdInteractionCount(adId));
+        assertEquals(Integer.valueOf(2), state.getAdInteractionHistory().get(adId));
+        assertEquals(-1, UserState.CATEGORIES.find(category));
+        assertTrue(UserState.CATEGORIES.size() <= categories + 1);
+        assertEquals(adIds, UserState.AD_IDS.size());
+    }
+
+    @Test
+    public void testRecentSearchesKeepLastTenInOrder() {
+        UserState state = new UserState("user_2");
+        for (int i = 0; i < 15; i++) {
+            state.addRecentSearch("query " + i);
+        }
+
+        List<String> searches = state.getRecentSearches();
+        assertEquals(10, searches.size());
+        assertEquals("query 5", searches.get(0));
+        assertEquals("query 14", searches.get(9));
+    }
+
+    @Test
+    public void testAdInteractionCounts() {
+        UserState state = new UserState("user_3");
+        state.recordAdInteraction("ad_1");
+        state.recordAdInteraction("ad_1");
+        state.recordAdInteraction("ad_2");
+
+        assertEquals(2, state.getAdInteractionCount("ad_1"));
+        assertEquals(0, state.getAdInteractionCount("ad_unseen"));
+        Map<String, Integer> history = state.getAdInteractionHistory();
+        assertEquals(Integer.valueOf(1), history.get("ad_2"));
+        assertEquals(2, history.size());
+    }
+
+    @Test
+    public void testIntIntHashMapGrowsAndKeepsEntries() {
+        IntIntHashMap map = new IntIntHashMap();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 7, i);
+        }
+        map.addTo(7, 5);
+
+        assertEquals(1000, map.size());
+        assertEquals(6, map.get(7, -1));
+        assertEquals(999, map.get(999 * 7, -1));
+        assertEquals(-1, map.get(3, -1));
+        assertEquals(-1, map.get(-1, -1));
+    }
+}
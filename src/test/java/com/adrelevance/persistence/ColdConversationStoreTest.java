@@ -0,0 +1,72 @@
+package com.adrelevance.persistence;
+
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.Message;
+import com.adrelevance.model.MessageType;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.stream.Stream;
+
+/**
+ * Tests for spilling and rehydrating conversations through mapped segments
+ */
+public class ColdConversationStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ColdConversationStore store;
+
+    @After
+    public void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testDrainedSegmentsAreDeleted() throws IOException {
+        store = new ColdConversationStore(folder.getRoot().toPath(), 4096);
+        for (int i = 0; i < 200; i++) {
+            store.spill(conversation("conv_" + i));
+        }
+        assertTrue(store.getSegmentCount() > 1);
+
+        for (int i = 0; i < 200; i++) {
+            ConversationContext context = store.takeConversation("conv_" + i, ConversationContext::new);
+            assertEquals("conv_" + i, context.getConversationId());
+            assertEquals("hello from conv_" + i, context.getMessages().get(0).getContent());
+        }
+
+        assertNull(store.takeConversation("conv_0", ConversationContext::new));
+        assertEquals(0, store.getConversationCount());
+        assertEquals("only the active segment remains", 1, store.getSegmentCount());
+        try (Stream<java.nio.file.Path> files = Files.list(folder.getRoot().toPath())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testRespillSupersedesEarlierCopy() throws IOException {
+        store = new ColdConversationStore(folder.getRoot().toPath(), 4096);
+        ConversationContext context = conversation("conv");
+        store.spill(context);
+        context.addMessage(new Message("second", "user", MessageType.USER_MESSAGE));
+        store.spill(context);
+
+        assertEquals(1, store.getConversationCount());
+        assertEquals(2, store.takeConversation("conv", ConversationContext::new).getTotalMessageCount());
+    }
+
+    private static ConversationContext conversation(String id) {
+        ConversationContext context = new ConversationContext(id, "user");
+        context.addMessage(new Message("hello from " + id, "user", MessageType.USER_MESSAGE));
+        return context;
+    }
+}
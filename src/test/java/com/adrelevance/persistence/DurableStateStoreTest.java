@@ -0,0 +1,238 @@
+package com.adrelevance.persistence;
+
+import com.adrelevance.engine.ConversationManager;
+import com.adrelevance.model.ConversationContext;
+import com.adrelevance.model.Message;
+import com.adrelevance.model.MessageType;
+import com.adrelevance.model.UserState;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Tests for write-ahead logging, snapshots and recovery of conversation state
+ */
+public class DurableStateStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ConversationManager> managers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        managers.forEach(ConversationManager::shutdown);
+    }
+
+    @Test
+    public void testRecoversMessagesAndUserStateFromLog() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        ConversationManager manager = open(dir);
+        ConversationContext context = manager.getOrCreateContext("conv_1", "user_1");
+        for (int i = 0; i < 60; i++) {
+            manager.appendMessage(context, new Message("message " + i, "user_1", MessageType.USER_MESSAGE));
+        }
+        UserState userState = context.getUserState();
+        userState.setInterests(Arrays.asList("fashion", "travel"));
+        userState.recordAdInteraction("ad_7");
+        userState.setPremium(true);
+        manager.syncUserState(userState);
+        manager.shutdown();
+
+        ConversationManager recovered = open(dir);
+        ConversationContext restored = recovered.getContext("conv_1");
+        assertNotNull(restored);
+        assertEquals(60, restored.getTotalMessageCount());
+        assertEquals(manager.getHistoryCapacity(), restored.getMessages().size());
+        assertEquals("message 59", restored.getMessages().get(restored.getMessages().size() - 1).getContent());
+        UserState restoredUser = recovered.getUserState("user_1");
+        assertSame(restoredUser, restored.getUserState());
+        assertTrue(restoredUser.hasInterest("travel"));
+        assertEquals(1, restoredUser.getAdInteractionCount("ad_7"));
+        assertTrue(restoredUser.isPremium());
+    }
+
+    @Test
+    public void testSnapshotCompactsLogWithoutDuplicatingMessages() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        DurableStateStore store = new DurableStateStore(dir);
+        ConversationManager manager = new ConversationManager();
+        managers.add(manager);
+        manager.enableDurability(store, 0);
+        ConversationContext context = manager.getOrCreateContext("conv_1", "user_1");
+        for (int i = 0; i < 5; i++) {
+            manager.appendMessage(context, new Message("before " + i, "user_1", MessageType.USER_MESSAGE));
+        }
+        manager.getOrCreateContext("conv_cleared", "user_1");
+        manager.appendMessage(manager.getContext("conv_cleared"), new Message("gone", "user_1", MessageType.USER_MESSAGE));
+
+        store.snapshot(List.of(context.getUserState()), List.of(context, manager.getContext("conv_cleared")));
+        manager.appendMessage(context, new Message("after", "user_1", MessageType.USER_MESSAGE));
+        manager.clearConversation("conv_cleared");
+        manager.shutdown();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals("segments before the snapshot are deleted", 1, files.filter(p -> p.toString().endsWith(".log")).count());
+        }
+        ConversationManager recovered = open(dir);
+        ConversationContext restored = recovered.getContext("conv_1");
+        assertEquals(6, restored.getTotalMessageCount());
+        assertEquals(6, restored.getMessages().size());
+        assertEquals("after", restored.getMessages().get(5).getContent());
+        assertNull(recovered.getContext("conv_cleared"));
+    }
+
+    @Test
+    public void testRemovedUserAndClearedConversationsStayGone() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        ConversationManager manager = open(dir);
+        manager.getOrCreateContext("conv_1", "user_1");
+        manager.appendMessage(manager.getContext("conv_1"), new Message("hello", "user_1", MessageType.USER_MESSAGE));
+        UserState kept = manager.getOrCreateUserState("user_2");
+        kept.setPremium(true);
+        manager.syncUserState(kept);
+        UserState removed = manager.getOrCreateUserState("user_1");
+        removed.setPremium(true);
+        manager.syncUserState(removed);
+
+        manager.clearAllConversations();
+        manager.removeUserState("user_1");
+        manager.shutdown();
+
+        ConversationManager recovered = open(dir);
+        assertNull(recovered.getContext("conv_1"));
+        assertNull(recovered.getUserState("user_1"));
+        assertNotNull(recovered.getUserState("user_2"));
+    }
+
+    @Test
+    public void testIgnoresTornTailOfLastSegment() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        ConversationManager manager = open(dir);
+        ConversationContext context = manager.getOrCreateContext("conv_1", "user_1");
+        manager.appendMessage(context, new Message("kept", "user_1", MessageType.USER_MESSAGE));
+        manager.shutdown();
+
+        Path segment = lastSegment(dir);
+        // Half of a record header followed by nothing, as left by a crash mid-write
+        Files.write(segment, new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+
+        ConversationManager recovered = open(dir);
+        assertEquals(1, recovered.getContext("conv_1").getTotalMessageCount());
+        assertEquals("kept", recovered.getContext("conv_1").getMessages().get(0).getContent());
+    }
+
+    @Test
+    public void testTornTailIsCutSoLaterRecoveriesReplayPastIt() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        ConversationManager manager = open(dir);
+        manager.appendMessage(manager.getOrCreateContext("conv_1", "user_1"),
+            new Message("first", "user_1", MessageType.USER_MESSAGE));
+        manager.shutdown();
+        Files.write(lastSegment(dir), new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+
+        // The torn segment is now followed by the next one
+        ConversationManager second = open(dir);
+        second.appendMessage(second.getContext("conv_1"), new Message("second", "user_1", MessageType.USER_MESSAGE));
+        second.shutdown();
+
+        ConversationManager recovered = open(dir);
+        assertEquals(2, recovered.getContext("conv_1").getTotalMessageCount());
+    }
+
+    @Test
+    public void testMissingMiddleSegmentFailsRecovery() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        writeThreeSegments(dir);
+        Files.delete(dir.resolve(WriteAheadLog.segmentName(2)));
+
+        try {
+            open(dir);
+            fail("recovery must not replay past a missing segment");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(WriteAheadLog.segmentName(2)));
+        }
+    }
+
+    @Test
+    public void testCorruptMiddleSegmentFailsRecovery() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        writeThreeSegments(dir);
+        Path middle = dir.resolve(WriteAheadLog.segmentName(2));
+        byte[] bytes = Files.readAllBytes(middle);
+        bytes[WriteAheadLog.HEADER_BYTES] ^= 0x5a;
+        Files.write(middle, bytes);
+
+        try {
+            open(dir);
+            fail("recovery must not replay past a corrupt segment");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains(WriteAheadLog.segmentName(2)));
+        }
+    }
+
+    @Test
+    public void testAppendDoesNotWaitForTheDisk() throws Exception {
+        DurableStateStore store = new DurableStateStore(folder.getRoot().toPath());
+        ConversationManager manager = new ConversationManager();
+        managers.add(manager);
+        manager.enableDurability(store, 0);
+        ConversationContext context = manager.getOrCreateContext("conv_1", "user_1");
+        WriteAheadLog log = (WriteAheadLog) ReflectionTestUtils.getField(store, "log");
+        ReentrantLock ioLock = (ReentrantLock) ReflectionTestUtils.getField(log, "ioLock");
+
+        // With the writer shut out of the file, appends still return
+        long durable = log.getDurableSequence();
+        ioLock.lock();
+        try {
+            for (int i = 0; i < 100; i++) {
+                manager.appendMessage(context, new Message("message " + i, "user_1", MessageType.USER_MESSAGE));
+            }
+            assertEquals(durable, log.getDurableSequence());
+        } finally {
+            ioLock.unlock();
+        }
+        store.flush();
+        assertTrue(log.getDurableSequence() >= durable + 100);
+    }
+
+    /**
+     * One message in each of segments 1, 2 and 3, with no snapshot
+     */
+    private void writeThreeSegments(Path dir) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            ConversationManager manager = open(dir);
+            manager.appendMessage(manager.getOrCreateContext("conv_1", "user_1"),
+                new Message("message " + i, "user_1", MessageType.USER_MESSAGE));
+            manager.shutdown();
+        }
+    }
+
+    private ConversationManager open(Path dir) throws IOException {
+        ConversationManager manager = new ConversationManager();
+        managers.add(manager);
+        manager.enableDurability(new DurableStateStore(dir), 0);
+        return manager;
+    }
+
+    private static Path lastSegment(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("wal-"))
+                .max(Path::compareTo)
+                .orElseThrow();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.adrelevance.persistence;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for framing and write failures in WriteAheadLog
+ */
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRecordsReadBackInOrder() throws Exception {
+        List<String> read = new ArrayList<>();
+        try (WriteAheadLog log = new WriteAheadLog(folder.getRoot().toPath(), 1)) {
+            log.append((byte) 1, "one".getBytes());
+            log.append((byte) 2, "two".getBytes());
+            log.flush();
+        }
+
+        WriteAheadLog.ReadResult result = WriteAheadLog.readRecords(
+            folder.getRoot().toPath().resolve(WriteAheadLog.segmentName(1)),
+            (type, payload) -> read.add(type + ":" + new String(payload)));
+
+        assertEquals(List.of("1:one", "2:two"), read);
+        assertEquals(2, result.records());
+        assertTrue(result.complete());
+    }
+
+    @Test
+    public void testWriteFailureIsSurfaced() throws Exception {
+        WriteAheadLog log = new WriteAheadLog(folder.getRoot().toPath(), 1);
+        // The writer's next write hits a closed channel
+        ((FileChannel) ReflectionTestUtils.getField(log, "channel")).close();
+
+        long sequence = log.append((byte) 1, "lost".getBytes());
+        try {
+            log.awaitDurable(sequence);
+            fail("the record was never written");
+        } catch (IOException expected) {
+            // The write failure itself
+        }
+        try {
+            log.append((byte) 1, "after".getBytes());
+            fail("appends after a write failure cannot become durable");
+        } catch (UncheckedIOException expected) {
+            assertNotNull(expected.getCause());
+        }
+    }
+}